@@ -0,0 +1,156 @@
+package io.perfseer.aggregate;
+
+import io.perfseer.bench.SyntheticTraces;
+import io.perfseer.ingest.JaegerJsonDecoder;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per-span cost of aggregation. Scores are spans/second; run with
+ * {@code -prof gc} and read {@code gc.alloc.rate.norm} as bytes per span.
+ * The {@code legacy*} methods replay the former three-map, boxed-list
+ * implementation over the same input for a before/after comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AggregatorBenchmark {
+
+    static final int SPANS = 100_000;
+
+    @Param({"50", "1000"})
+    public int operations;
+
+    @Param({"20"})
+    public int spansPerTrace;
+
+    @Param({"0.02"})
+    public double errorRatio;
+
+    String[] ops;
+    long[] durations;
+    boolean[] errors;
+    byte[] json;
+    Aggregator aggregator;
+
+    @Setup
+    public void setup() {
+        SyntheticTraces traces = new SyntheticTraces()
+                .traces(SPANS / spansPerTrace)
+                .spansPerTrace(spansPerTrace)
+                .operations(operations)
+                .errorRatio(errorRatio);
+        ops = new String[SPANS];
+        durations = new long[SPANS];
+        errors = new boolean[SPANS];
+        int[] n = {0};
+        traces.forEachSpan((trace, span, parent, operation, startTime, duration, error) -> {
+            ops[n[0]] = operation;
+            durations[n[0]] = duration;
+            errors[n[0]++] = error;
+        });
+        json = traces.toJson();
+        aggregator = new Aggregator();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SPANS)
+    public Object accumulate() {
+        Aggregator.Aggregation a = aggregator.newAggregation();
+        for (int i=0;i<SPANS;i++){
+            a.add(ops[i], durations[i], errors[i]);
+        }
+        return a.features();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SPANS)
+    public Object legacyAccumulate() {
+        Map<String, List<Long>> latenciesByOp = new HashMap<>();
+        Map<String, Long> errorsByOp = new HashMap<>();
+        Map<String, Long> countsByOp = new HashMap<>();
+        for (int i=0;i<SPANS;i++){
+            legacyAdd(latenciesByOp, errorsByOp, countsByOp, ops[i], durations[i], errors[i]);
+        }
+        return legacyFeatures(latenciesByOp, errorsByOp, countsByOp);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SPANS)
+    public Object decodeAndAggregate() throws IOException {
+        return JaegerJsonDecoder.decode(new ByteArrayInputStream(json), aggregator.newAggregation()).features();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SPANS)
+    public Object legacyJsonObject() {
+        JsonObject response = new JsonObject(Buffer.buffer(json));
+        Map<String, List<Long>> latenciesByOp = new HashMap<>();
+        Map<String, Long> errorsByOp = new HashMap<>();
+        Map<String, Long> countsByOp = new HashMap<>();
+        JsonArray data = response.getJsonArray("data", new JsonArray());
+        for (int i=0;i<data.size();i++){
+            JsonArray spans = data.getJsonObject(i).getJsonArray("spans", new JsonArray());
+            for (int j=0;j<spans.size();j++){
+                JsonObject span = spans.getJsonObject(j);
+                boolean error = false;
+                JsonArray tags = span.getJsonArray("tags", new JsonArray());
+                for (int t=0;t<tags.size();t++){
+                    JsonObject tag = tags.getJsonObject(t);
+                    if ("error".equals(tag.getString("key")) && Boolean.TRUE.equals(tag.getValue("value"))) {
+                        error = true; break;
+                    }
+                }
+                legacyAdd(latenciesByOp, errorsByOp, countsByOp,
+                        span.getString("operationName", "unknown"), span.getLong("duration", 0L), error);
+            }
+        }
+        return legacyFeatures(latenciesByOp, errorsByOp, countsByOp);
+    }
+
+    private static void legacyAdd(Map<String, List<Long>> latenciesByOp, Map<String, Long> errorsByOp,
+                                  Map<String, Long> countsByOp, String op, long duration, boolean error) {
+        countsByOp.put(op, countsByOp.getOrDefault(op,0L)+1);
+        latenciesByOp.computeIfAbsent(op,k->new ArrayList<>()).add(duration);
+        if (error) errorsByOp.put(op, errorsByOp.getOrDefault(op,0L)+1);
+    }
+
+    private static List<double[]> legacyFeatures(Map<String, List<Long>> latenciesByOp, Map<String, Long> errorsByOp,
+                                                 Map<String, Long> countsByOp) {
+        List<double[]> out = new ArrayList<>();
+        for (String op: countsByOp.keySet()){
+            long count = countsByOp.get(op);
+            List<Long> lats = latenciesByOp.get(op);
+            Collections.sort(lats);
+            out.add(new double[]{count, errorsByOp.getOrDefault(op,0L) / (double) count,
+                    lats.get((int) Math.ceil(0.50 * lats.size()) - 1),
+                    lats.get((int) Math.ceil(0.95 * lats.size()) - 1),
+                    lats.get((int) Math.ceil(0.99 * lats.size()) - 1)});
+        }
+        return out;
+    }
+}
@@ -0,0 +1,96 @@
+package io.perfseer.aggregate;
+
+import io.perfseer.bench.SyntheticTraces;
+import io.perfseer.ingest.JaegerJsonDecoder;
+import io.perfseer.ingest.Span;
+import io.perfseer.ingest.Trace;
+import io.perfseer.ingest.TraceSink;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decode and aggregate of one response grouped by {@code groupBy} (empty for
+ * per-operation features), over 40 hosts and a 5-valued span tag. The
+ * {@code concatenatedKeys} method groups the same spans under a key string
+ * built per span, the obvious alternative to {@link GroupKeys}. Scores are
+ * spans/second; run with {@code -prof gc} for bytes per span.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GroupingBenchmark {
+
+    static final int SPANS = 100_000;
+
+    @Param({"", "hostname", "hostname,tag.1"})
+    public String groupBy;
+
+    byte[] json;
+    Aggregator aggregator;
+    Grouping grouping;
+
+    @Setup
+    public void setup() throws IOException {
+        json = new SyntheticTraces()
+                .traces(SPANS / 20)
+                .spansPerTrace(20)
+                .services(40)
+                .toJson();
+        grouping = new Grouping(groupBy.isEmpty() ? List.of() : Arrays.asList(groupBy.split(",")), 100_000);
+        aggregator = new Aggregator(LatencySketch.DEFAULT_RELATIVE_ACCURACY, 1, grouping);
+        System.out.println("groups: " + grouped().size());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SPANS)
+    public List<Aggregator.Feature> grouped() throws IOException {
+        return JaegerJsonDecoder.decode(new ByteArrayInputStream(json), aggregator.newAggregation()).features();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SPANS)
+    public Object concatenatedKeys() throws IOException {
+        Aggregator.Aggregation aggregation = new Aggregator.Aggregation(LatencySketch.DEFAULT_RELATIVE_ACCURACY);
+        SpanTree tree = new SpanTree();
+        String[] dimensions = grouping.dimensions();
+        JaegerJsonDecoder.decode(new ByteArrayInputStream(json), new TraceSink() {
+            @Override
+            public void onTrace(Trace trace) {
+                tree.build(trace);
+                for (int i=0;i<trace.size();i++){
+                    Span span = trace.span(i);
+                    StringBuilder key = new StringBuilder(span.operationName);
+                    for (int d=0;d<dimensions.length;d++){
+                        key.append(d == 0 ? " [" : ", ").append(dimensions[d]).append('=').append(span.dimensions[d]);
+                    }
+                    if (dimensions.length > 0) key.append(']');
+                    aggregation.add(key.toString(), span.duration, span.error, tree.selfTime(i), tree.criticalPath(i));
+                }
+            }
+
+            @Override
+            public String[] dimensions() {
+                return dimensions;
+            }
+        });
+        return aggregation.features();
+    }
+}
@@ -0,0 +1,73 @@
+package io.perfseer.aggregate;
+
+import io.perfseer.bench.SyntheticTraces;
+import io.perfseer.ingest.JaegerJsonDecoder;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Scaling of {@code perf.aggregation-parallelism}; scores are spans/second.
+ * {@code streamingDecode} overlaps the single decoder thread with batch
+ * aggregation on the workers; {@code parsedResponse} does the same for an
+ * already parsed response, which is serialized again first.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class ParallelAggregatorBenchmark {
+
+    static final int SPANS = 200_000;
+
+    @Param({"1", "2", "4", "8"})
+    public int parallelism;
+
+    @Param({"200"})
+    public int operations;
+
+    byte[] json;
+    JsonObject parsed;
+    Aggregator aggregator;
+
+    @Setup
+    public void setup() {
+        json = new SyntheticTraces().traces(SPANS / 20).spansPerTrace(20).operations(operations).toJson();
+        parsed = new JsonObject(Buffer.buffer(json));
+        aggregator = new Aggregator(LatencySketch.DEFAULT_RELATIVE_ACCURACY, parallelism);
+    }
+
+    @TearDown
+    public void tearDown() {
+        aggregator.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SPANS)
+    public Object parsedResponse() {
+        return aggregator.aggregate(parsed);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SPANS)
+    public Object streamingDecode() throws IOException {
+        return JaegerJsonDecoder.decode(new ByteArrayInputStream(json), aggregator.newAggregation()).features();
+    }
+}
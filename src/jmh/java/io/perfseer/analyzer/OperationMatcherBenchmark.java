@@ -0,0 +1,125 @@
+package io.perfseer.analyzer;
+
+import io.perfseer.indexer.CodeIndexer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link OperationMatcher} over {@code methods} generated method pointers, a
+ * tenth of them REST handlers, and {@code operations} distinct operations
+ * mixing FQNs, {@code Class.method} names, partial names, concrete request
+ * paths, code tags and misses. {@code build} is the per-analysis index cost in
+ * ms; {@code match} is operations resolved per second. Setup fails unless every
+ * operation resolves to the method it was generated from.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class OperationMatcherBenchmark {
+
+    static final int OPERATIONS = 10_000;
+    static final int METHODS_PER_CLASS = 10;
+    static final int CLASSES_PER_PACKAGE = 50;
+
+    @Param({"100000"})
+    public int methods;
+
+    List<CodeIndexer.CodePointer> pointers;
+    OperationMatcher matcher;
+    String[] ops = new String[OPERATIONS];
+    String[] namespaces = new String[OPERATIONS];
+    String[] functions = new String[OPERATIONS];
+
+    @Setup
+    public void setup() {
+        pointers = new ArrayList<>(methods);
+        for (int i=0;i<methods;i++){
+            int cls = i / METHODS_PER_CLASS;
+            int pkg = cls / CLASSES_PER_PACKAGE;
+            CodeIndexer.CodePointer cp = new CodeIndexer.CodePointer();
+            cp.file = "com/example/p" + pkg + "/C" + cls + ".java";
+            cp.line = 10 + (i % METHODS_PER_CLASS) * 5;
+            cp.endLine = cp.line + 4;
+            cp.symbol = "C" + cls + "#m" + (i % METHODS_PER_CLASS);
+            cp.fullyQualifiedName = "com.example.p" + pkg + ".C" + cls + ".m" + (i % METHODS_PER_CLASS);
+            if (cls % 10 == 0) cp.route = "GET /p" + pkg + "/c" + cls + "/{id}/m" + (i % METHODS_PER_CLASS);
+            pointers.add(cp);
+        }
+        matcher = new OperationMatcher(pointers, true);
+
+        Random random = new Random(42);
+        CodeIndexer.CodePointer[] expected = new CodeIndexer.CodePointer[OPERATIONS];
+        for (int i=0;i<OPERATIONS;i++){
+            int kind = i % 10;
+            CodeIndexer.CodePointer cp = pointers.get(random.nextInt(methods));
+            if (kind == 6 || kind == 7) {
+                // a handler, hit with a concrete id
+                int handler = random.nextInt(methods / (10 * METHODS_PER_CLASS)) * 10 * METHODS_PER_CLASS
+                        + random.nextInt(METHODS_PER_CLASS);
+                cp = pointers.get(handler);
+            }
+            String fqn = cp.fullyQualifiedName;
+            String[] parts = fqn.split("\\.");
+            int n = parts.length;
+            expected[i] = kind == 9 ? null : cp;
+            switch (kind) {
+                case 0: case 1: ops[i] = fqn; break;
+                case 2: case 3: ops[i] = parts[n - 2] + "." + parts[n - 1]; break;
+                case 4: ops[i] = parts[n - 3] + "." + parts[n - 2] + "#" + parts[n - 1]; break;
+                case 5: ops[i] = parts[n - 2] + "::" + parts[n - 1] + "(long)"; break;
+                case 6: case 7:
+                    ops[i] = cp.route.replace("{id}", Integer.toString(random.nextInt(1_000_000))) + "?q=" + i;
+                    break;
+                case 8:
+                    ops[i] = "span-" + i;
+                    namespaces[i] = fqn.substring(0, fqn.lastIndexOf('.'));
+                    functions[i] = parts[n - 1];
+                    break;
+                default: ops[i] = "GET /unknown/" + i;
+            }
+        }
+        for (int i=0;i<OPERATIONS;i++){
+            OperationMatcher.Match m = matcher.match(ops[i], namespaces[i], functions[i]);
+            CodeIndexer.CodePointer got = m != null ? m.method : null;
+            if (got != expected[i]) {
+                throw new IllegalStateException("Operation " + ops[i] + " matched "
+                        + (got != null ? got.fullyQualifiedName : null) + ", expected "
+                        + (expected[i] != null ? expected[i].fullyQualifiedName : null));
+            }
+        }
+    }
+
+    @Benchmark
+    public Object build() {
+        return new OperationMatcher(pointers, true);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(OPERATIONS)
+    public int match() {
+        int matched = 0;
+        for (int i=0;i<OPERATIONS;i++){
+            if (matcher.match(ops[i], namespaces[i], functions[i]) != null) matched++;
+        }
+        return matched;
+    }
+}
@@ -0,0 +1,72 @@
+package io.perfseer.analyzer;
+
+import io.perfseer.aggregate.Aggregator;
+import io.perfseer.bench.SyntheticSources;
+import io.perfseer.bench.SyntheticTraces;
+import io.perfseer.indexer.CodeIndexer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end correlation: index a generated tree and match it against
+ * features whose operation names are the generated method FQNs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class PerformanceAnalyzerBenchmark {
+
+    @Param({"10"})
+    public int packages;
+
+    @Param({"500"})
+    public int operations;
+
+    Path root;
+    PerformanceAnalyzer analyzer;
+    List<Aggregator.Feature> features;
+
+    @Setup
+    public void setup() {
+        SyntheticSources sources = new SyntheticSources().packages(packages);
+        root = SyntheticSources.createTempTree(sources);
+        List<String> methods = sources.methods();
+
+        Aggregator aggregator = new Aggregator();
+        Aggregator.Aggregation a = aggregator.newAggregation();
+        new SyntheticTraces()
+                .operationNames(methods.subList(0, Math.min(operations, methods.size())))
+                .forEachSpan((trace, span, parent, operation, startTime, duration, error) -> a.add(operation, duration, error));
+        features = a.features();
+
+        analyzer = new PerformanceAnalyzer();
+        analyzer.aggregator = aggregator;
+        analyzer.codeIndexer = new CodeIndexer();
+    }
+
+    @TearDown
+    public void tearDown() {
+        SyntheticSources.delete(root);
+    }
+
+    @Benchmark
+    public Object analyzePerformance() {
+        return analyzer.analyzePerformance(root.toString(), features);
+    }
+}
@@ -0,0 +1,121 @@
+package io.perfseer.bench;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Writes a deterministic tree of Java sources for indexing benchmarks and
+ * remembers the fully qualified name of every generated method.
+ */
+public final class SyntheticSources {
+
+    private int packages = 10;
+    private int classesPerPackage = 20;
+    private int methodsPerClass = 10;
+    private int statementsPerMethod = 8;
+    private long seed = 42;
+
+    private final List<String> methods = new ArrayList<>();
+
+    public SyntheticSources packages(int packages) { this.packages = packages; return this; }
+    public SyntheticSources classesPerPackage(int classesPerPackage) { this.classesPerPackage = classesPerPackage; return this; }
+    public SyntheticSources methodsPerClass(int methodsPerClass) { this.methodsPerClass = methodsPerClass; return this; }
+    public SyntheticSources statementsPerMethod(int statementsPerMethod) { this.statementsPerMethod = statementsPerMethod; return this; }
+    public SyntheticSources seed(long seed) { this.seed = seed; return this; }
+
+    /** Fully qualified {@code package.Class.method} names written by the last {@link #write}. */
+    public List<String> methods() {
+        return methods;
+    }
+
+    public Path write(Path root) {
+        methods.clear();
+        Random rnd = new Random(seed);
+        try {
+            for (int p=0;p<packages;p++){
+                String pkg = "io.perfseer.synthetic.module" + p;
+                Path dir = root.resolve("src/main/java").resolve(pkg.replace('.', '/'));
+                Files.createDirectories(dir);
+                for (int c=0;c<classesPerPackage;c++){
+                    String cls = "Component" + c;
+                    Files.writeString(dir.resolve(cls + ".java"), source(pkg, cls, rnd));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return root;
+    }
+
+    public static Path createTempTree(SyntheticSources sources) {
+        try {
+            return sources.write(Files.createTempDirectory("perfseer-bench-src"));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static void delete(Path root) {
+        if (root == null) return;
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Files.delete(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                    Files.delete(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private String source(String pkg, String cls, Random rnd) {
+        StringBuilder sb = new StringBuilder(4096);
+        sb.append("package ").append(pkg).append(";\n\n");
+        sb.append("import java.util.List;\nimport java.util.stream.Collectors;\n\n");
+        sb.append("/**\n * Generated component ").append(cls).append(".\n */\n");
+        sb.append("public class ").append(cls).append(" {\n\n");
+        sb.append("    private final List<String> items = new java.util.ArrayList<>();\n\n");
+        for (int m=0;m<methodsPerClass;m++){
+            String name = "handle" + m;
+            methods.add(pkg + "." + cls + "." + name);
+            sb.append("    /** Handles case ").append(m).append(". */\n");
+            if (m % 4 == 0) sb.append("    @Deprecated\n");
+            sb.append("    public List<String> ").append(name).append("(String key, int limit) {\n");
+            for (int s=0;s<statementsPerMethod;s++){
+                switch (rnd.nextInt(4)) {
+                    case 0:
+                        sb.append("        String q").append(s).append(" = \"SELECT id FROM t WHERE k IN (\" + key + \")\";\n");
+                        break;
+                    case 1:
+                        sb.append("        List<String> l").append(s).append(" = items.stream().filter(i -> i.startsWith(key)).distinct().collect(Collectors.toList());\n");
+                        break;
+                    case 2:
+                        sb.append("        if (limit > ").append(s).append(") { limit--; }\n");
+                        break;
+                    default:
+                        sb.append("        for (int i").append(s).append(" = 0; i").append(s).append(" < limit; i").append(s).append("++) { items.add(key + i").append(s).append("); }\n");
+                }
+            }
+            sb.append("        return items;\n    }\n\n");
+        }
+        sb.append("    static class Helper {\n        int size() { return 0; }\n    }\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+}
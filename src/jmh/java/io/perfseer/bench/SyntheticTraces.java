@@ -0,0 +1,294 @@
+package io.perfseer.bench;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic generator of Jaeger query API responses
+ * ({@code {"data":[{"traceID":..,"spans":[..],"processes":{..}}]}}), or of
+ * the same traces as the {@code SpansResponseChunk} messages of the gRPC
+ * {@code FindTraces} call. Every knob has a default so benchmarks only set
+ * what they vary.
+ */
+public final class SyntheticTraces {
+
+    /** Receives each generated span in order; {@code parent} is -1 for roots. */
+    public interface SpanConsumer {
+        void accept(int trace, int span, int parent, String operation, long startTime, long duration, boolean error);
+    }
+
+    private int traces = 1000;
+    private int spansPerTrace = 20;
+    private int operations = 50;
+    private double errorRatio = 0.02;
+    private int tagsPerSpan = 4;
+    private int services = 1;
+    private long seed = 42;
+    private long start = 1_700_000_000_000_000L;
+    private String[] operationNames;
+
+    public SyntheticTraces traces(int traces) { this.traces = traces; return this; }
+    public SyntheticTraces spansPerTrace(int spansPerTrace) { this.spansPerTrace = spansPerTrace; return this; }
+    public SyntheticTraces operations(int operations) { this.operations = operations; this.operationNames = null; return this; }
+    public SyntheticTraces errorRatio(double errorRatio) { this.errorRatio = errorRatio; return this; }
+    public SyntheticTraces tagsPerSpan(int tagsPerSpan) { this.tagsPerSpan = tagsPerSpan; return this; }
+    public SyntheticTraces services(int services) { this.services = services; return this; }
+    public SyntheticTraces seed(long seed) { this.seed = seed; return this; }
+    /** Start of the first trace, epoch microseconds; traces follow 1ms apart. */
+    public SyntheticTraces start(long epochMicros) { this.start = epochMicros; return this; }
+
+    /** Use these names (e.g. method FQNs from {@link SyntheticSources}) instead of generated ones. */
+    public SyntheticTraces operationNames(List<String> names) {
+        this.operationNames = names.toArray(new String[0]);
+        this.operations = names.size();
+        return this;
+    }
+
+    public int spanCount() {
+        return traces * spansPerTrace;
+    }
+
+    public String[] operationNames() {
+        if (operationNames == null) {
+            operationNames = new String[operations];
+            for (int i=0;i<operations;i++){
+                operationNames[i] = "io.perfseer.bench.pkg" + (i % 10) + ".Service" + (i % 37) + ".operation" + i;
+            }
+        }
+        return operationNames;
+    }
+
+    public void forEachSpan(SpanConsumer consumer) {
+        String[] names = operationNames();
+        Random rnd = new Random(seed);
+        for (int t=0;t<traces;t++){
+            long traceStart = start + t * 1_000L;
+            for (int s=0;s<spansPerTrace;s++){
+                int parent = s == 0 ? -1 : rnd.nextInt(s);
+                // skewed popularity, log-normal latencies
+                int op = (int) Math.min(names.length - 1, Math.abs(rnd.nextGaussian()) * names.length / 3);
+                long duration = Math.max(1, (long) Math.exp(6 + 1.5 * rnd.nextGaussian()));
+                boolean error = rnd.nextDouble() < errorRatio;
+                consumer.accept(t, s, parent, names[op], traceStart + s * 10L, duration, error);
+            }
+        }
+    }
+
+    public byte[] toJson() {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(1024, spanCount() * (200 + 60 * tagsPerSpan)));
+            JsonGenerator g = new JsonFactory().createGenerator(out);
+            long[] spanIds = new long[spansPerTrace];
+            Random ids = new Random(seed ^ 0x5DEECE66DL);
+            g.writeStartObject();
+            g.writeArrayFieldStart("data");
+            int[] currentTrace = {-1};
+            String[] traceId = new String[1];
+            forEachSpan((trace, span, parent, operation, startTime, duration, error) -> {
+                try {
+                    if (trace != currentTrace[0]) {
+                        if (currentTrace[0] >= 0) endTrace(g);
+                        currentTrace[0] = trace;
+                        traceId[0] = hex(ids.nextLong()) + hex(ids.nextLong());
+                        g.writeStartObject();
+                        g.writeStringField("traceID", traceId[0]);
+                        g.writeArrayFieldStart("spans");
+                    }
+                    spanIds[span] = ids.nextLong();
+                    g.writeStartObject();
+                    g.writeStringField("traceID", traceId[0]);
+                    g.writeStringField("spanID", hex(spanIds[span]));
+                    g.writeNumberField("flags", 1);
+                    g.writeStringField("operationName", operation);
+                    g.writeArrayFieldStart("references");
+                    if (parent >= 0) {
+                        g.writeStartObject();
+                        g.writeStringField("refType", "CHILD_OF");
+                        g.writeStringField("traceID", traceId[0]);
+                        g.writeStringField("spanID", hex(spanIds[parent]));
+                        g.writeEndObject();
+                    }
+                    g.writeEndArray();
+                    g.writeNumberField("startTime", startTime);
+                    g.writeNumberField("duration", duration);
+                    g.writeArrayFieldStart("tags");
+                    writeTag(g, "span.kind", span == 0 ? "server" : "internal");
+                    for (int i=1;i<tagsPerSpan;i++){
+                        writeTag(g, "tag." + i, "value-" + ((span + i) % 5));
+                    }
+                    if (error) {
+                        g.writeStartObject();
+                        g.writeStringField("key", "error");
+                        g.writeStringField("type", "bool");
+                        g.writeBooleanField("value", true);
+                        g.writeEndObject();
+                    }
+                    g.writeEndArray();
+                    g.writeArrayFieldStart("logs");
+                    g.writeEndArray();
+                    g.writeStringField("processID", "p" + (trace % services + 1));
+                    g.writeNullField("warnings");
+                    g.writeEndObject();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            if (currentTrace[0] >= 0) endTrace(g);
+            g.writeEndArray();
+            g.writeNumberField("total", 0);
+            g.writeNumberField("limit", 0);
+            g.writeNumberField("offset", 0);
+            g.writeNullField("errors");
+            g.writeEndObject();
+            g.close();
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * The traces of {@link #toJson()} as Jaeger's {@code FindTraces} streams
+     * them: {@code SpansResponseChunk} messages of up to {@code spansPerChunk}
+     * spans of one trace, each span with its process embedded.
+     */
+    public List<byte[]> toJaegerProto(int spansPerChunk) {
+        List<byte[]> chunks = new ArrayList<>();
+        Proto chunk = new Proto();
+        int[] inChunk = {0};
+        long[] spanIds = new long[spansPerTrace];
+        long[] traceId = new long[2];
+        int[] currentTrace = {-1};
+        Random ids = new Random(seed ^ 0x5DEECE66DL);
+        forEachSpan((trace, span, parent, operation, startTime, duration, error) -> {
+            if (trace != currentTrace[0] || inChunk[0] == spansPerChunk) {
+                if (inChunk[0] > 0) chunks.add(chunk.toByteArray());
+                chunk.reset();
+                inChunk[0] = 0;
+            }
+            if (trace != currentTrace[0]) {
+                currentTrace[0] = trace;
+                traceId[0] = ids.nextLong();
+                traceId[1] = ids.nextLong();
+            }
+            spanIds[span] = ids.nextLong();
+            Proto s = new Proto()
+                    .bytes(1, id(traceId[0], traceId[1]))
+                    .bytes(2, id(spanIds[span]))
+                    .string(3, operation);
+            if (parent >= 0) {
+                s.message(4, new Proto().bytes(1, id(traceId[0], traceId[1])).bytes(2, id(spanIds[parent])));
+            }
+            s.varint(5, 1)
+                    .message(6, time(startTime))
+                    .message(7, time(duration))
+                    .message(8, tag("span.kind", span == 0 ? "server" : "internal"));
+            for (int i=1;i<tagsPerSpan;i++){
+                s.message(8, tag("tag." + i, "value-" + ((span + i) % 5)));
+            }
+            if (error) s.message(8, new Proto().string(1, "error").varint(2, 1).varint(4, 1));
+            int p = trace % services + 1;
+            s.message(10, new Proto().string(1, "bench-service-" + p).message(2, tag("hostname", "host-" + p)));
+            chunk.message(1, s);
+            inChunk[0]++;
+        });
+        if (inChunk[0] > 0) chunks.add(chunk.toByteArray());
+        return chunks;
+    }
+
+    private static Proto tag(String key, String value) {
+        return new Proto().string(1, key).string(3, value);
+    }
+
+    private static Proto time(long micros) {
+        return new Proto().varint(1, micros / 1_000_000).varint(2, micros % 1_000_000 * 1000);
+    }
+
+    private static byte[] id(long... words) {
+        byte[] b = new byte[words.length * 8];
+        for (int w=0;w<words.length;w++){
+            for (int i=0;i<8;i++){
+                b[w * 8 + i] = (byte) (words[w] >>> (56 - 8 * i));
+            }
+        }
+        return b;
+    }
+
+    /** Just enough protobuf writing for the messages above. */
+    private static final class Proto {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        Proto varint(int field, long v) {
+            raw(field << 3);
+            raw(v);
+            return this;
+        }
+
+        Proto string(int field, String v) {
+            return bytes(field, v.getBytes(StandardCharsets.UTF_8));
+        }
+
+        Proto bytes(int field, byte[] v) {
+            raw(field << 3 | 2);
+            raw(v.length);
+            out.writeBytes(v);
+            return this;
+        }
+
+        Proto message(int field, Proto v) {
+            return bytes(field, v.toByteArray());
+        }
+
+        byte[] toByteArray() {
+            return out.toByteArray();
+        }
+
+        void reset() {
+            out.reset();
+        }
+
+        private void raw(long v) {
+            while ((v & ~0x7fL) != 0) {
+                out.write((int) ((v & 0x7f) | 0x80));
+                v >>>= 7;
+            }
+            out.write((int) v);
+        }
+    }
+
+    private void endTrace(JsonGenerator g) throws IOException {
+        g.writeEndArray();
+        g.writeObjectFieldStart("processes");
+        for (int p=1;p<=services;p++){
+            g.writeObjectFieldStart("p" + p);
+            g.writeStringField("serviceName", "bench-service-" + p);
+            g.writeArrayFieldStart("tags");
+            writeTag(g, "hostname", "host-" + p);
+            g.writeEndArray();
+            g.writeEndObject();
+        }
+        g.writeEndObject();
+        g.writeNullField("warnings");
+        g.writeEndObject();
+    }
+
+    private static void writeTag(JsonGenerator g, String key, String value) throws IOException {
+        g.writeStartObject();
+        g.writeStringField("key", key);
+        g.writeStringField("type", "string");
+        g.writeStringField("value", value);
+        g.writeEndObject();
+    }
+
+    private static String hex(long v) {
+        String s = Long.toHexString(v);
+        return s.length() == 16 ? s : "0".repeat(16 - s.length()) + s;
+    }
+}
@@ -0,0 +1,94 @@
+package io.perfseer.indexer;
+
+import io.perfseer.bench.SyntheticSources;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to index a generated source tree of {@code packages * 20} files with
+ * {@code methodsPerClass} methods each: {@code indexProject} parses every file,
+ * {@code indexSymbols} scans every file for declarations only and
+ * {@code reindexUnchanged} re-runs against a primed on-disk index. Setup fails
+ * unless both modes produce the same methods, names, lines and body ranges.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class CodeIndexerBenchmark {
+
+    @Param({"10", "50"})
+    public int packages;
+
+    @Param({"10"})
+    public int methodsPerClass;
+
+    Path root;
+    Path cacheDir;
+    CodeIndexer indexer;
+    CodeIndexer cachedIndexer;
+
+    @Setup
+    public void setup() throws IOException {
+        root = SyntheticSources.createTempTree(new SyntheticSources()
+                .packages(packages)
+                .methodsPerClass(methodsPerClass));
+        cacheDir = Files.createTempDirectory("perfseer-bench-index");
+        indexer = new CodeIndexer();
+        cachedIndexer = new CodeIndexer(cacheDir, 0);
+        cachedIndexer.indexProject(root.toString());
+        List<String> ast = describe(indexer.indexProject(root.toString(), CodeIndexer.IndexMode.AST));
+        List<String> symbols = describe(indexer.indexProject(root.toString(), CodeIndexer.IndexMode.SYMBOLS));
+        if (!ast.equals(symbols)) {
+            throw new IllegalStateException("Symbol index differs from AST index: " + ast.size() + " vs " + symbols.size() + " methods");
+        }
+    }
+
+    private static List<String> describe(List<CodeIndexer.CodePointer> pointers) {
+        List<String> out = new ArrayList<>(pointers.size());
+        for (CodeIndexer.CodePointer cp : pointers) {
+            out.add(cp.file + ":" + cp.line + "-" + cp.endLine + " " + cp.symbol + " " + cp.fullyQualifiedName
+                    + " @" + cp.bodyOffset + "+" + cp.bodyLength);
+        }
+        return out;
+    }
+
+    @TearDown
+    public void tearDown() {
+        SyntheticSources.delete(root);
+        SyntheticSources.delete(cacheDir);
+    }
+
+    @Benchmark
+    public Object indexProject() {
+        return indexer.indexProject(root.toString());
+    }
+
+    @Benchmark
+    public Object indexSymbols() {
+        return indexer.indexProject(root.toString(), CodeIndexer.IndexMode.SYMBOLS);
+    }
+
+    @Benchmark
+    public Object reindexUnchanged() {
+        return cachedIndexer.indexProject(root.toString());
+    }
+}
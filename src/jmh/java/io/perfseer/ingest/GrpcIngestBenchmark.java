@@ -0,0 +1,165 @@
+package io.perfseer.ingest;
+
+import io.perfseer.aggregate.Aggregator;
+import io.perfseer.bench.SyntheticTraces;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.net.SocketAddress;
+import io.vertx.ext.web.client.WebClientOptions;
+import io.vertx.grpc.client.GrpcClient;
+import io.vertx.grpc.client.GrpcClientOptions;
+import io.vertx.grpc.server.GrpcServer;
+import io.vertx.grpc.server.GrpcServerResponse;
+import io.vertx.mutiny.ext.web.client.WebClient;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The same traces fetched as Jaeger's HTTP JSON or as the protobuf chunks of
+ * the gRPC {@code FindTraces} stream. {@code decode} feeds bytes already in
+ * memory into an aggregation, the CPU side; {@code fetch} also moves them over
+ * loopback, from a Vert.x HTTP or gRPC server, through the client's streaming
+ * codec. Scores are spans/second; the bytes each
+ * format takes are printed once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GrpcIngestBenchmark {
+
+    static final int SPANS = 100_000;
+    /** Spans per chunk of Jaeger's FindTraces. */
+    static final int SPANS_PER_CHUNK = 10;
+
+    @Param({"json", "protobuf"})
+    public String format;
+
+    @Param({"4", "16"})
+    public int tagsPerSpan;
+
+    byte[] json;
+    List<byte[]> chunks;
+    List<Buffer> chunkBuffers;
+    Aggregator aggregator;
+
+    Vertx vertx;
+    ExecutorService compute;
+    HttpServer httpServer;
+    WebClient web;
+    GrpcClient grpc;
+    SocketAddress grpcServer;
+
+    @Setup
+    public void setup() {
+        SyntheticTraces traces = new SyntheticTraces()
+                .traces(SPANS / 20)
+                .spansPerTrace(20)
+                .tagsPerSpan(tagsPerSpan);
+        json = traces.toJson();
+        chunks = traces.toJaegerProto(SPANS_PER_CHUNK);
+        long proto = 0;
+        for (byte[] chunk : chunks) {
+            proto += chunk.length;
+        }
+        System.out.println("json: " + json.length + " bytes (" + json.length / SPANS + " bytes/span); protobuf: "
+                + proto + " bytes (" + proto / SPANS + " bytes/span) in " + chunks.size()
+                + " messages, plus 5 bytes of gRPC framing each");
+        aggregator = new Aggregator();
+
+        vertx = Vertx.vertx();
+        compute = Executors.newFixedThreadPool(2);
+        Buffer body = Buffer.buffer(json);
+        chunkBuffers = new ArrayList<>();
+        for (byte[] chunk : chunks) {
+            chunkBuffers.add(Buffer.buffer(chunk));
+        }
+        httpServer = vertx.createHttpServer()
+                .requestHandler(request -> request.response().end(body))
+                .listen(0, "localhost").toCompletionStage().toCompletableFuture().join();
+        web = WebClient.create(new io.vertx.mutiny.core.Vertx(vertx),
+                new WebClientOptions().setDefaultHost("localhost").setDefaultPort(httpServer.actualPort()));
+        HttpServer server = vertx.createHttpServer()
+                .requestHandler(GrpcServer.server(vertx).callHandler(call -> call.endHandler(v -> send(call.response(), 0))))
+                .listen(0, "localhost").toCompletionStage().toCompletableFuture().join();
+        grpc = GrpcClient.client(vertx, new GrpcClientOptions()
+                .setTransportOptions(new HttpClientOptions().setHttp2ClearTextUpgrade(false)));
+        grpcServer = SocketAddress.inetSocketAddress(server.actualPort(), "localhost");
+    }
+
+    /** Streams the chunks as FindTraces does, whatever the call, pausing while the write queue is full. */
+    private void send(GrpcServerResponse<Buffer, Buffer> response, int from) {
+        int i = from;
+        while (i < chunkBuffers.size() && !response.writeQueueFull()) {
+            response.write(chunkBuffers.get(i++));
+        }
+        if (i == chunkBuffers.size()) {
+            response.end();
+        } else {
+            int next = i;
+            response.drainHandler(v -> send(response, next));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        compute.shutdown();
+        vertx.close().toCompletionStage().toCompletableFuture().join();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SPANS)
+    public List<Aggregator.Feature> decode() throws IOException {
+        Aggregator.Aggregation aggregation = aggregator.newAggregation();
+        if ("json".equals(format)) {
+            JaegerJsonDecoder.decode(new ByteArrayInputStream(json), aggregation);
+        } else {
+            JaegerProtoDecoder decoder = new JaegerProtoDecoder(aggregation);
+            for (byte[] chunk : chunks) {
+                decoder.feed(chunk, 0, chunk.length);
+            }
+            decoder.end();
+        }
+        return aggregation.features();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SPANS)
+    public List<Aggregator.Feature> fetch() {
+        Aggregator.Aggregation aggregation = aggregator.newAggregation();
+        TraceSinkBodyCodec.Progress progress = new TraceSinkBodyCodec.Progress();
+        if ("json".equals(format)) {
+            web.get("/api/traces")
+                    .as(TraceSinkBodyCodec.of(aggregation, SpanFilter.ALL, aggregation, 0, progress, compute))
+                    .send().await().indefinitely();
+        } else {
+            byte[] request = JaegerGrpc.findTraces("bench-service-1", 0, Long.MAX_VALUE / 2, null, SpanFilter.ALL);
+            JaegerGrpc.stream(grpc, grpcServer, JaegerGrpc.FIND_TRACES, request, "FindTraces",
+                            () -> TraceSinkBodyCodec.stream(new JaegerProtoDecoder(aggregation), aggregation, 0, progress, compute))
+                    .toCompletionStage().toCompletableFuture().join();
+        }
+        return aggregation.features();
+    }
+}
@@ -0,0 +1,63 @@
+package io.perfseer.ingest;
+
+import io.perfseer.bench.SyntheticTraces;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decode cost of a Jaeger response without any aggregation; scores are
+ * spans/second. The response size is printed once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IngestBenchmark {
+
+    static final int SPANS = 100_000;
+
+    @Param({"20"})
+    public int spansPerTrace;
+
+    @Param({"4", "16"})
+    public int tagsPerSpan;
+
+    byte[] json;
+
+    @Setup
+    public void setup() {
+        json = new SyntheticTraces()
+                .traces(SPANS / spansPerTrace)
+                .spansPerTrace(spansPerTrace)
+                .tagsPerSpan(tagsPerSpan)
+                .toJson();
+        System.out.println("response size: " + json.length + " bytes (" + (json.length / SPANS) + " bytes/span)");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SPANS)
+    public long decode() throws IOException {
+        long[] checksum = new long[1];
+        JaegerJsonDecoder.decode(new ByteArrayInputStream(json), trace -> {
+            for (int i=0;i<trace.size();i++){
+                checksum[0] += trace.span(i).duration;
+            }
+        });
+        return checksum[0];
+    }
+}
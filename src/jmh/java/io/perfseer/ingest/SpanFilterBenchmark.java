@@ -0,0 +1,58 @@
+package io.perfseer.ingest;
+
+import io.perfseer.aggregate.Aggregator;
+import io.perfseer.bench.SyntheticTraces;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decode and aggregate of one response with a {@link SpanFilter} applied in
+ * the decoder, against none. Scores are input spans/second; what Jaeger
+ * would no longer send once the filter is pushed down is not part of it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SpanFilterBenchmark {
+
+    static final int SPANS = 100_000;
+
+    @Param({"", "kind=server", "operation=*.pkg3.*", "duration>=5ms", "tag:tag.1~-[34]$"})
+    public String filter;
+
+    byte[] json;
+    Aggregator aggregator;
+    SpanFilter spans;
+
+    @Setup
+    public void setup() {
+        json = new SyntheticTraces()
+                .traces(SPANS / 20)
+                .spansPerTrace(20)
+                .toJson();
+        aggregator = new Aggregator();
+        spans = SpanFilter.parse(filter);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SPANS)
+    public Object decodeAndAggregate() throws IOException {
+        return JaegerJsonDecoder.decode(new ByteArrayInputStream(json), spans, aggregator.newAggregation()).features();
+    }
+}
@@ -0,0 +1,81 @@
+package io.perfseer.ingest;
+
+import io.perfseer.aggregate.Aggregator;
+import io.perfseer.bench.SyntheticTraces;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Re-analysing a captured file: features of the same traces read from Jaeger
+ * JSON and from a {@link SpanSnapshot}. Scores are spans/second; both file
+ * sizes are printed once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SpanSnapshotBenchmark {
+
+    static final int SPANS = 100_000;
+
+    @Param({"20"})
+    public int spansPerTrace;
+
+    @Param({"4"})
+    public int tagsPerSpan;
+
+    Path json;
+    Path snapshot;
+    Aggregator aggregator;
+
+    @Setup
+    public void setup() throws IOException {
+        json = Files.createTempFile("spans", ".json");
+        snapshot = Files.createTempFile("spans", ".snap");
+        Files.write(json, new SyntheticTraces()
+                .traces(SPANS / spansPerTrace)
+                .spansPerTrace(spansPerTrace)
+                .tagsPerSpan(tagsPerSpan)
+                .toJson());
+        try (SpanSnapshot.Writer writer = new SpanSnapshot.Writer(snapshot)) {
+            JaegerJsonDecoder.decode(json, writer);
+        }
+        aggregator = new Aggregator();
+        System.out.println("json: " + Files.size(json) + " bytes, snapshot: " + Files.size(snapshot) + " bytes");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(json);
+        Files.deleteIfExists(snapshot);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SPANS)
+    public Object json() throws IOException {
+        return JaegerJsonDecoder.decode(json, aggregator.newAggregation()).features();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SPANS)
+    public Object snapshot() throws IOException {
+        return SpanSnapshot.read(snapshot, aggregator.newAggregation()).features();
+    }
+}
@@ -0,0 +1,75 @@
+package io.perfseer.metrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.perfseer.aggregate.Aggregator;
+import io.perfseer.bench.SyntheticTraces;
+import io.perfseer.ingest.JaegerJsonDecoder;
+import io.perfseer.ingest.TimedSink;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of stage metrics on the decode and aggregate loop: one response decoded
+ * and aggregated as is, and through a {@link TimedSink} with its counts and
+ * timings recorded the way {@code JaegerClient} does. Scores are spans/second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelineMetricsBenchmark {
+
+    static final int SPANS = 100_000;
+
+    @Param({"1", "20"})
+    public int spansPerTrace;
+
+    byte[] body;
+    Aggregator aggregator;
+    PipelineMetrics metrics;
+
+    @Setup
+    public void setup() {
+        body = new SyntheticTraces()
+                .traces(SPANS / spansPerTrace)
+                .spansPerTrace(spansPerTrace)
+                .toJson();
+        aggregator = new Aggregator();
+        metrics = new PipelineMetrics(new SimpleMeterRegistry());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SPANS)
+    public Object plain() throws IOException {
+        return JaegerJsonDecoder.decode(new ByteArrayInputStream(body), aggregator.newAggregation()).features();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SPANS)
+    public Object instrumented() throws IOException {
+        Aggregator.Aggregation aggregation = aggregator.newAggregation();
+        TimedSink counted = new TimedSink(aggregation);
+        long t0 = System.nanoTime();
+        JaegerJsonDecoder.decode(new ByteArrayInputStream(body), counted);
+        long nanos = System.nanoTime() - t0;
+        metrics.spans("jaeger", counted.spans);
+        metrics.record(PipelineMetrics.Stage.DECODE, nanos - counted.nanos);
+        metrics.record(PipelineMetrics.Stage.AGGREGATE, counted.nanos);
+        return aggregation.features();
+    }
+}
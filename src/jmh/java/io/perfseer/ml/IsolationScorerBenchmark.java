@@ -0,0 +1,90 @@
+package io.perfseer.ml;
+
+import io.perfseer.aggregate.Aggregator;
+import io.perfseer.bench.SyntheticTraces;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import smile.anomaly.IsolationForest;
+
+/**
+ * Training and scoring cost as the baseline grows: {@code subWindows}
+ * one-minute sub-windows of {@code operations} operations each, i.e. up to
+ * {@code subWindows * operations} training rows. Ten distinct sub-windows are
+ * generated and repeated, which leaves the cost unchanged. {@code score} scores
+ * one current window of {@code operations} rows. Setup fails unless every
+ * score is a number.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IsolationScorerBenchmark {
+
+    static final long SUB_WINDOW_MICROS = TimeUnit.MINUTES.toMicros(1);
+    static final int DISTINCT_SUB_WINDOWS = 10;
+
+    @Param({"1000"})
+    public int operations;
+
+    @Param({"1", "10", "100", "300"})
+    public int subWindows;
+
+    @Param({"0"})
+    public int parallelism;
+
+    List<List<Aggregator.Feature>> baseline;
+    List<Aggregator.Feature> current;
+    IsolationScorer scorer;
+    IsolationForest model;
+
+    @Setup
+    public void setup() {
+        Aggregator aggregator = new Aggregator();
+        List<List<Aggregator.Feature>> distinct = new ArrayList<>();
+        for (int i=0;i<Math.min(subWindows, DISTINCT_SUB_WINDOWS);i++){
+            distinct.add(features(aggregator, 100 + i));
+        }
+        baseline = new ArrayList<>(subWindows);
+        for (int i=0;i<subWindows;i++){
+            baseline.add(distinct.get(i % distinct.size()));
+        }
+        current = features(aggregator, 1);
+        scorer = new IsolationScorer(parallelism);
+        model = scorer.train(baseline, SUB_WINDOW_MICROS);
+        for (IsolationScorer.ScoredFeature sf : scorer.score(model, current, SUB_WINDOW_MICROS)) {
+            if (Double.isNaN(sf.score)) throw new IllegalStateException("No score for " + sf.key);
+        }
+    }
+
+    private List<Aggregator.Feature> features(Aggregator aggregator, long seed) {
+        Aggregator.Aggregation a = aggregator.newAggregation();
+        new SyntheticTraces().seed(seed).operations(operations).traces(operations * 10)
+                .forEachSpan((trace, span, parent, operation, startTime, duration, error) -> a.add(operation, duration, error));
+        return a.features();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object train() {
+        return scorer.train(baseline, SUB_WINDOW_MICROS);
+    }
+
+    @Benchmark
+    public Object score() {
+        return scorer.score(model, current, SUB_WINDOW_MICROS);
+    }
+}
@@ -21,6 +21,7 @@ public class App implements io.quarkus.runtime.QuarkusApplication {
                 return CDI.current().select(cls).get();
             }
         });
+        commandLine.setCaseInsensitiveEnumValuesAllowed(true);
         int exit = commandLine.execute(args);
         if (args.length == 0) {
             Quarkus.waitForExit();
@@ -1,85 +1,377 @@
 package io.perfseer.aggregate;
 
-import io.vertx.core.json.JsonArray;
+import io.perfseer.config.PerfConfig;
+import io.perfseer.ingest.JaegerJsonDecoder;
+import io.perfseer.ingest.Span;
+import io.perfseer.ingest.Trace;
+import io.perfseer.ingest.TraceSink;
 import io.vertx.core.json.JsonObject;
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 @ApplicationScoped
 public class Aggregator {
 
+    private final double relativeAccuracy;
+    private final int parallelism;
+    private final ForkJoinPool pool;
+    private final Grouping grouping;
+
+    public Aggregator() {
+        this(LatencySketch.DEFAULT_RELATIVE_ACCURACY, 1);
+    }
+
+    @Inject
+    public Aggregator(PerfConfig cfg) {
+        this(cfg.sketchRelativeAccuracy(), cfg.aggregationParallelism(),
+                new Grouping(cfg.groupBy().orElse(List.of()), cfg.groupMaxGroups()));
+    }
+
+    public Aggregator(double relativeAccuracy, int parallelism) {
+        this(relativeAccuracy, parallelism, Grouping.NONE);
+    }
+
+    /** @param parallelism aggregation threads; 1 runs on the caller, 0 uses one per core */
+    public Aggregator(double relativeAccuracy, int parallelism, Grouping grouping) {
+        this.relativeAccuracy = relativeAccuracy;
+        this.grouping = grouping;
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.pool = this.parallelism > 1 ? new ForkJoinPool(this.parallelism) : null;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (pool != null) pool.shutdown();
+    }
+
+    public int parallelism() {
+        return parallelism;
+    }
+
+    public Grouping grouping() {
+        return grouping;
+    }
+
     public static class Feature {
+        /** The operation, followed by its group's dimension values when features are grouped. */
         public String key;
+        public String operation;
+        /** Dimension values of the group, by tag key; null when features are not grouped. */
+        public Map<String,String> group;
         public long count;
+        public long errorCount;
         public double errorRate;
         public double p50;
         public double p95;
         public double p99;
+        public LatencySketch latency;
+        /** {@code code.namespace} / {@code code.function} of the operation's spans, if any span carried them. */
+        public String codeNamespace;
+        public String codeFunction;
+        /** Sums of self time and critical path time over the spans. */
+        public long selfTimeSum;
+        public long criticalPathSum;
+        public double meanSelfTime;
+        public double meanCriticalPath;
+
+        public static Feature of(String key, long count, long errorCount, LatencySketch latency,
+                                 long selfTimeSum, long criticalPathSum) {
+            Feature f = new Feature();
+            f.key = key;
+            f.operation = key;
+            f.count = count;
+            f.errorCount = errorCount;
+            f.latency = latency;
+            f.selfTimeSum = selfTimeSum;
+            f.criticalPathSum = criticalPathSum;
+            f.summarize();
+            return f;
+        }
+
+        public void merge(Feature other) {
+            count += other.count;
+            errorCount += other.errorCount;
+            latency.merge(other.latency);
+            selfTimeSum += other.selfTimeSum;
+            criticalPathSum += other.criticalPathSum;
+            if (codeFunction == null) {
+                codeNamespace = other.codeNamespace;
+                codeFunction = other.codeFunction;
+            }
+            summarize();
+        }
+
+        void summarize() {
+            errorRate = count>0 ? ((double)errorCount)/count : 0.0;
+            p50 = latency.quantile(0.50);
+            p95 = latency.quantile(0.95);
+            p99 = latency.quantile(0.99);
+            meanSelfTime = count>0 ? ((double)selfTimeSum)/count : 0.0;
+            meanCriticalPath = count>0 ? ((double)criticalPathSum)/count : 0.0;
+        }
+
         public Map<String,Object> toMap(){
             Map<String,Object> m = new LinkedHashMap<>();
             m.put("key", key);
+            if (group != null) {
+                m.put("operation", operation);
+                m.put("group", group);
+            }
             m.put("count", count);
             m.put("errorRate", errorRate);
             m.put("p50", p50);
             m.put("p95", p95);
             m.put("p99", p99);
+            m.put("meanSelfTime", meanSelfTime);
+            m.put("meanCriticalPath", meanCriticalPath);
+            if (codeFunction != null) {
+                m.put("codeNamespace", codeNamespace);
+                m.put("codeFunction", codeFunction);
+            }
             return m;
         }
     }
 
-    public List<Feature> aggregate(JsonObject jaegerResponse) {
-        Map<String, List<Long>> latenciesByOp = new HashMap<>();
-        Map<String, Long> errorsByOp = new HashMap<>();
-        Map<String, Long> countsByOp = new HashMap<>();
-
-        JsonArray data = jaegerResponse.getJsonArray("data", new JsonArray());
-        for (int i=0;i<data.size();i++){
-            JsonObject trace = data.getJsonObject(i);
-            JsonArray spans = trace.getJsonArray("spans", new JsonArray());
-            for (int j=0;j<spans.size();j++){
-                JsonObject span = spans.getJsonObject(j);
-                String op = span.getString("operationName", "unknown");
-                long duration = span.getLong("duration", 0L);
-                countsByOp.put(op, countsByOp.getOrDefault(op,0L)+1);
-                latenciesByOp.computeIfAbsent(op,k->new ArrayList<>()).add(duration);
-                boolean error = false;
-                JsonArray tags = span.getJsonArray("tags", new JsonArray());
-                for (int t=0;t<tags.size();t++){
-                    JsonObject tag = tags.getJsonObject(t);
-                    if ("error".equals(tag.getString("key")) && Boolean.TRUE.equals(tag.getValue("value"))) {
-                        error = true; break;
-                    }
+    static final class OperationStats {
+        long count;
+        long errors;
+        long selfTime;
+        long criticalPath;
+        final LatencySketch latency;
+        String codeNamespace;
+        String codeFunction;
+
+        OperationStats(double relativeAccuracy) {
+            this.latency = new LatencySketch(relativeAccuracy);
+        }
+
+        void add(long duration, boolean error, long selfTime, long criticalPath) {
+            count++;
+            if (error) errors++;
+            latency.add(duration);
+            this.selfTime += selfTime;
+            this.criticalPath += criticalPath;
+        }
+
+        void merge(OperationStats other) {
+            count += other.count;
+            errors += other.errors;
+            selfTime += other.selfTime;
+            criticalPath += other.criticalPath;
+            latency.merge(other.latency);
+            if (codeFunction == null) code(other.codeNamespace, other.codeFunction);
+        }
+
+        void code(String namespace, String function) {
+            if (codeFunction == null && function != null) {
+                codeNamespace = namespace;
+                codeFunction = function;
+            }
+        }
+    }
+
+    /** Per-operation state; call {@link #features()} once the input is exhausted. */
+    public static class Aggregation implements TraceSink {
+        private final double relativeAccuracy;
+        private final Grouping grouping;
+        private final Map<String, OperationStats> statsByOp = new HashMap<>();
+        private final GroupKeys groups;
+        private final List<OperationStats> statsByGroup;
+        private SpanTree tree;
+
+        Aggregation(double relativeAccuracy) {
+            this(relativeAccuracy, Grouping.NONE);
+        }
+
+        Aggregation(double relativeAccuracy, Grouping grouping) {
+            this.relativeAccuracy = relativeAccuracy;
+            this.grouping = grouping;
+            this.groups = grouping.enabled() ? grouping.newKeys() : null;
+            this.statsByGroup = grouping.enabled() ? new ArrayList<>() : null;
+        }
+
+        @Override
+        public String[] dimensions() {
+            return grouping.dimensions();
+        }
+
+        Grouping grouping() {
+            return grouping;
+        }
+
+        /** Spans of groups beyond {@code perf.group-max-groups}, counted under their operation's overflow group. */
+        public long overflowed() {
+            return groups != null ? groups.overflowed() : 0;
+        }
+
+        @Override
+        public void onTrace(Trace trace) {
+            SpanTree tree = tree().build(trace);
+            for (int i=0;i<trace.size();i++){
+                Span span = trace.span(i);
+                if (!span.skip) add(span, tree.selfTime(i), tree.criticalPath(i));
+            }
+        }
+
+        SpanTree tree() {
+            if (tree == null) tree = new SpanTree();
+            return tree;
+        }
+
+        void add(Span span, long selfTime, long criticalPath) {
+            String op = span.operationName != null ? span.operationName : "unknown";
+            OperationStats stats = groups != null ? group(op, span.dimensions) : stats(op);
+            stats.add(span.duration, span.error, selfTime, criticalPath);
+            if (span.codeFunction != null) stats.code(span.codeNamespace, span.codeFunction);
+        }
+
+        /** Registers the span's group; false when the span went to its operation's overflow group. */
+        boolean admit(Span span) {
+            long overflowed = groups.overflowed();
+            group(span.operationName != null ? span.operationName : "unknown", span.dimensions);
+            return groups.overflowed() == overflowed;
+        }
+
+        /** A span whose children are unknown. */
+        public void add(String op, long duration, boolean error) {
+            add(op, duration, error, duration, duration);
+        }
+
+        public void add(String op, long duration, boolean error, long selfTime, long criticalPath) {
+            stats(op).add(duration, error, selfTime, criticalPath);
+        }
+
+        private OperationStats stats(String op) {
+            if (groups != null) return group(op, null);
+            OperationStats stats = statsByOp.get(op);
+            if (stats == null) {
+                stats = new OperationStats(relativeAccuracy);
+                statsByOp.put(op, stats);
+            }
+            return stats;
+        }
+
+        private OperationStats group(String op, String[] values) {
+            int id = groups.id(op, values);
+            if (id < statsByGroup.size()) return statsByGroup.get(id);
+            OperationStats stats = new OperationStats(relativeAccuracy);
+            statsByGroup.add(stats);
+            return stats;
+        }
+
+        /** Takes over {@code other}'s state; {@code other} must not be used afterwards. */
+        void merge(Aggregation other) {
+            if (groups != null) {
+                for (int id=0;id<other.groups.size();id++){
+                    OperationStats theirs = other.statsByGroup.get(id);
+                    int mine = groups.id(other.groups.operation(id), other.groups.values(id));
+                    if (mine < statsByGroup.size()) statsByGroup.get(mine).merge(theirs);
+                    else statsByGroup.add(theirs);
+                }
+                return;
+            }
+            for (Map.Entry<String, OperationStats> e : other.statsByOp.entrySet()){
+                OperationStats stats = statsByOp.putIfAbsent(e.getKey(), e.getValue());
+                if (stats != null) stats.merge(e.getValue());
+            }
+        }
+
+        /** Adds {@code other}'s state, leaving {@code other} untouched. */
+        void mergeCopy(Aggregation other) {
+            if (groups != null) {
+                for (int id=0;id<other.groups.size();id++){
+                    group(other.groups.operation(id), other.groups.values(id)).merge(other.statsByGroup.get(id));
+                }
+                return;
+            }
+            for (Map.Entry<String, OperationStats> e : other.statsByOp.entrySet()){
+                OperationStats stats = statsByOp.get(e.getKey());
+                if (stats == null) {
+                    stats = new OperationStats(relativeAccuracy);
+                    statsByOp.put(e.getKey(), stats);
+                }
+                stats.merge(e.getValue());
+            }
+        }
+
+        public List<Feature> features() {
+            if (groups != null) {
+                List<Feature> features = new ArrayList<>(statsByGroup.size());
+                for (int id=0;id<statsByGroup.size();id++){
+                    Feature f = feature(groups.key(id), groups.operation(id), statsByGroup.get(id));
+                    f.group = groups.group(id);
+                    features.add(f);
                 }
-                if (error) errorsByOp.put(op, errorsByOp.getOrDefault(op,0L)+1);
+                return features;
             }
+            List<Feature> features = new ArrayList<>(statsByOp.size());
+            for (Map.Entry<String, OperationStats> e : statsByOp.entrySet()){
+                features.add(feature(e.getKey(), e.getKey(), e.getValue()));
+            }
+            return features;
         }
 
-        List<Feature> features = new ArrayList<>();
-        for (String op: countsByOp.keySet()){
+        private static Feature feature(String key, String operation, OperationStats stats) {
             Feature f = new Feature();
-            f.key = op;
-            f.count = countsByOp.getOrDefault(op,0L);
-            long err = errorsByOp.getOrDefault(op,0L);
-            f.errorRate = f.count>0 ? ((double)err)/f.count : 0.0;
-            List<Long> lats = latenciesByOp.getOrDefault(op, Collections.emptyList());
-            Collections.sort(lats);
-            f.p50 = percentile(lats, 0.50);
-            f.p95 = percentile(lats, 0.95);
-            f.p99 = percentile(lats, 0.99);
-            features.add(f);
-        }
-        return features;
+            f.key = key;
+            f.operation = operation;
+            f.count = stats.count;
+            f.errorCount = stats.errors;
+            f.latency = stats.latency;
+            f.codeNamespace = stats.codeNamespace;
+            f.codeFunction = stats.codeFunction;
+            f.selfTimeSum = stats.selfTime;
+            f.criticalPathSum = stats.criticalPath;
+            f.summarize();
+            return f;
+        }
     }
 
-    private double percentile(List<Long> list, double p){
-        if (list.isEmpty()) return 0;
-        int idx = (int)Math.ceil(p*list.size()) - 1;
-        idx = Math.max(0, Math.min(idx, list.size()-1));
-        return list.get(idx);
+    public Aggregation newAggregation() {
+        return pool != null ? new ParallelAggregation(relativeAccuracy, grouping, parallelism, pool)
+                : new Aggregation(relativeAccuracy, grouping);
+    }
+
+    /** Aggregates {@code [startMicros, endMicros)} per bucket of span start time. */
+    public BucketedAggregation newBucketedAggregation(long startMicros, long endMicros, long bucketMicros) {
+        return new BucketedAggregation(relativeAccuracy, grouping, startMicros, endMicros, bucketMicros);
+    }
+
+    public RollingAggregation newRollingAggregation(long bucketMicros, int buckets) {
+        return new RollingAggregation(relativeAccuracy, bucketMicros, buckets);
+    }
+
+    /** Merges features of disjoint span sets per key; consumes the inputs. */
+    public static List<Feature> merge(Collection<? extends List<Feature>> partials) {
+        Map<String, Feature> byKey = new LinkedHashMap<>();
+        for (List<Feature> partial : partials) {
+            for (Feature f : partial) {
+                Feature acc = byKey.putIfAbsent(f.key, f);
+                if (acc != null) acc.merge(f);
+            }
+        }
+        return new ArrayList<>(byKey.values());
+    }
+
+    public List<Feature> aggregate(JsonObject jaegerResponse) {
+        Aggregation aggregation = newAggregation();
+        JaegerJsonDecoder decoder = new JaegerJsonDecoder(aggregation);
+        try {
+            decoder.feed(jaegerResponse.toBuffer().getBytes());
+            decoder.end();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return aggregation.features();
     }
 }
@@ -0,0 +1,83 @@
+package io.perfseer.aggregate;
+
+import io.perfseer.ingest.Span;
+import io.perfseer.ingest.Trace;
+import io.perfseer.ingest.TraceSink;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Per-bucket aggregation of a window; spans starting outside it are dropped. */
+public final class BucketedAggregation implements TraceSink {
+
+    private final double relativeAccuracy;
+    private final Grouping grouping;
+    private final long startMicros;
+    private final long endMicros;
+    private final long bucketMicros;
+    private final Map<Long, Aggregator.Aggregation> buckets = new TreeMap<>();
+    private final SpanTree tree = new SpanTree();
+
+    BucketedAggregation(double relativeAccuracy, Grouping grouping, long startMicros, long endMicros, long bucketMicros) {
+        if (bucketMicros <= 0) throw new IllegalArgumentException("bucket width must be positive: " + bucketMicros);
+        this.relativeAccuracy = relativeAccuracy;
+        this.grouping = grouping;
+        this.startMicros = startMicros;
+        this.endMicros = endMicros;
+        this.bucketMicros = bucketMicros;
+    }
+
+    @Override
+    public String[] dimensions() {
+        return grouping.dimensions();
+    }
+
+    public Grouping grouping() {
+        return grouping;
+    }
+
+    public long bucketMicros() {
+        return bucketMicros;
+    }
+
+    @Override
+    public void onTrace(Trace trace) {
+        SpanTree tree = this.tree.build(trace);
+        Aggregator.Aggregation last = null;
+        long lastBucket = Long.MIN_VALUE;
+        for (int i=0;i<trace.size();i++){
+            Span span = trace.span(i);
+            if (span.skip || span.startTime < startMicros || span.startTime >= endMicros) continue;
+            long bucket = Math.floorDiv(span.startTime, bucketMicros) * bucketMicros;
+            if (bucket != lastBucket) {
+                last = buckets.computeIfAbsent(bucket, b -> new Aggregator.Aggregation(relativeAccuracy, grouping));
+                lastBucket = bucket;
+            }
+            last.add(span, tree.selfTime(i), tree.criticalPath(i));
+        }
+    }
+
+    /** Buckets lying entirely inside the window, including empty ones. */
+    public List<Long> completeBuckets() {
+        List<Long> out = new ArrayList<>();
+        long first = Math.floorDiv(startMicros + bucketMicros - 1, bucketMicros) * bucketMicros;
+        for (long b=first;b+bucketMicros<=endMicros;b+=bucketMicros){
+            out.add(b);
+        }
+        return out;
+    }
+
+    public List<Aggregator.Feature> features(long bucketStart) {
+        Aggregator.Aggregation a = buckets.get(bucketStart);
+        return a != null ? a.features() : List.of();
+    }
+
+    public List<Aggregator.Feature> features() {
+        Aggregator.Aggregation all = new Aggregator.Aggregation(relativeAccuracy, grouping);
+        for (Aggregator.Aggregation a : buckets.values()) {
+            all.mergeCopy(a);
+        }
+        return all.features();
+    }
+}
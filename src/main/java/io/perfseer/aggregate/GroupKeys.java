@@ -0,0 +1,168 @@
+package io.perfseer.aggregate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Dense ids for (operation, dimension values); tuples past the cap share one overflow id per operation. */
+final class GroupKeys {
+
+    static final String OVERFLOW = "(other)";
+
+    private static final int MISSING = -1;
+    private static final int UNKNOWN = -2;
+
+    private final String[] dimensions;
+    private final int width;
+    private final int maxGroups;
+    private final Map<String, Integer> codes = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+    private final int[] scratch;
+    private int[] tuples;
+    private int[] table = new int[64]; // id + 1, 0 when free
+    private int size;
+    private int groups;
+    private long overflowed;
+
+    GroupKeys(String[] dimensions, int maxGroups) {
+        this.dimensions = dimensions;
+        this.width = 1 + dimensions.length;
+        this.maxGroups = maxGroups;
+        this.scratch = new int[width];
+        this.tuples = new int[16 * width];
+    }
+
+    int size() {
+        return size;
+    }
+
+    long overflowed() {
+        return overflowed;
+    }
+
+    int id(String operation, String[] values) {
+        boolean known = true;
+        scratch[0] = lookup(operation);
+        for (int d=0;d<dimensions.length;d++){
+            String v = values != null ? values[d] : null;
+            scratch[d + 1] = v != null ? lookup(v) : MISSING;
+        }
+        for (int i=0;i<width;i++){
+            if (scratch[i] == UNKNOWN) known = false;
+        }
+        if (known) {
+            int id = find();
+            if (id >= 0) return id;
+        }
+        if (groups >= maxGroups) {
+            overflowed++;
+            scratch[0] = code(operation);
+            int other = code(OVERFLOW);
+            for (int d=1;d<width;d++){
+                scratch[d] = other;
+            }
+            int id = find();
+            return id >= 0 ? id : insert();
+        }
+        scratch[0] = code(operation);
+        for (int d=0;d<dimensions.length;d++){
+            if (scratch[d + 1] == UNKNOWN) scratch[d + 1] = code(values[d]);
+        }
+        groups++;
+        return insert();
+    }
+
+    String operation(int id) {
+        return strings.get(tuples[id * width]);
+    }
+
+    String value(int id, int d) {
+        int c = tuples[id * width + 1 + d];
+        return c == MISSING ? null : strings.get(c);
+    }
+
+    String[] values(int id) {
+        String[] values = new String[dimensions.length];
+        for (int d=0;d<values.length;d++){
+            values[d] = value(id, d);
+        }
+        return values;
+    }
+
+    Map<String, String> group(int id) {
+        Map<String, String> group = new LinkedHashMap<>();
+        for (int d=0;d<dimensions.length;d++){
+            String v = value(id, d);
+            if (v != null) group.put(dimensions[d], v);
+        }
+        return group;
+    }
+
+    String key(int id) {
+        StringBuilder key = new StringBuilder(operation(id));
+        String sep = " [";
+        for (int d=0;d<dimensions.length;d++){
+            String v = value(id, d);
+            if (v == null) continue;
+            key.append(sep).append(dimensions[d]).append('=').append(v);
+            sep = ", ";
+        }
+        if (!" [".equals(sep)) key.append(']');
+        return key.toString();
+    }
+
+    private int lookup(String s) {
+        Integer c = codes.get(s);
+        return c != null ? c : UNKNOWN;
+    }
+
+    private int code(String s) {
+        Integer c = codes.get(s);
+        if (c != null) return c;
+        codes.put(s, strings.size());
+        strings.add(s);
+        return strings.size() - 1;
+    }
+
+    private int hash(int[] tuple, int offset) {
+        int h = 0;
+        for (int i=0;i<width;i++){
+            h = 31 * h + tuple[offset + i];
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private int find() {
+        int mask = table.length - 1;
+        for (int i=hash(scratch, 0)&mask;table[i]!=0;i=(i+1)&mask){
+            int id = table[i] - 1;
+            if (Arrays.equals(tuples, id * width, id * width + width, scratch, 0, width)) return id;
+        }
+        return -1;
+    }
+
+    private int insert() {
+        if (size * width == tuples.length) tuples = Arrays.copyOf(tuples, tuples.length * 2);
+        System.arraycopy(scratch, 0, tuples, size * width, width);
+        int id = size++;
+        if (size * 2 > table.length) {
+            table = new int[table.length * 2];
+            for (int j=0;j<size;j++){
+                place(j);
+            }
+        } else {
+            place(id);
+        }
+        return id;
+    }
+
+    private void place(int id) {
+        int mask = table.length - 1;
+        int i = hash(tuples, id * width) & mask;
+        while (table[i] != 0) i = (i + 1) & mask;
+        table[i] = id + 1;
+    }
+}
@@ -0,0 +1,46 @@
+package io.perfseer.aggregate;
+
+import java.util.List;
+
+/** Tags that split an operation's features into groups, and the cap on groups. */
+public final class Grouping {
+
+    public static final Grouping NONE = new Grouping(List.of(), 0);
+
+    private final String[] dimensions;
+    private final int maxGroups;
+
+    public Grouping(List<String> dimensions, int maxGroups) {
+        this(dimensions.stream().map(String::trim).filter(d -> !d.isEmpty()).distinct().toArray(String[]::new), maxGroups);
+    }
+
+    private Grouping(String[] dimensions, int maxGroups) {
+        this.dimensions = dimensions;
+        this.maxGroups = maxGroups;
+        if (this.dimensions.length > 0 && maxGroups <= 0) {
+            throw new IllegalArgumentException("perf.group-max-groups must be positive: " + maxGroups);
+        }
+    }
+
+    public boolean enabled() {
+        return dimensions.length > 0;
+    }
+
+    /** Shared; do not modify. */
+    public String[] dimensions() {
+        return dimensions;
+    }
+
+    public int maxGroups() {
+        return maxGroups;
+    }
+
+    /** The same tags without a cap, for shards whose spans were admitted elsewhere. */
+    Grouping uncapped() {
+        return new Grouping(dimensions, Integer.MAX_VALUE);
+    }
+
+    GroupKeys newKeys() {
+        return new GroupKeys(dimensions, maxGroups);
+    }
+}
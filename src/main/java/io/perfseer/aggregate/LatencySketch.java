@@ -0,0 +1,159 @@
+package io.perfseer.aggregate;
+
+import java.nio.ByteBuffer;
+
+/** Log-bucketed quantile sketch (DDSketch style) for non-negative durations. */
+public final class LatencySketch {
+
+    public static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+    static final int MAX_BUCKETS = 2048;
+
+    private final double relativeAccuracy;
+    private final double gamma;
+    private final double logGamma;
+
+    private long[] counts = new long[0];
+    private int offset;       // bucket index of counts[0]
+    private long zeroCount;   // values below 1us
+    private long count;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+
+    public LatencySketch() {
+        this(DEFAULT_RELATIVE_ACCURACY);
+    }
+
+    public LatencySketch(double relativeAccuracy) {
+        if (!(relativeAccuracy > 0 && relativeAccuracy < 1)) {
+            throw new IllegalArgumentException("relative accuracy must be in (0, 1): " + relativeAccuracy);
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+    }
+
+    public double relativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public void add(long value) {
+        if (value < 1) {
+            zeroCount++;
+            value = Math.max(value, 0);
+        } else {
+            int slot = slot((int) Math.ceil(Math.log(value) / logGamma));
+            counts[slot]++;
+        }
+        count++;
+        if (value < min) min = value;
+        if (value > max) max = value;
+    }
+
+    /** Both sketches must share the same accuracy. */
+    public void merge(LatencySketch other) {
+        if (other.relativeAccuracy != relativeAccuracy) {
+            throw new IllegalArgumentException("cannot merge sketches with accuracy "
+                    + relativeAccuracy + " and " + other.relativeAccuracy);
+        }
+        if (other.count == 0) return;
+        for (int i=0;i<other.counts.length;i++){
+            long c = other.counts[i];
+            if (c == 0) continue;
+            int slot = slot(other.offset + i);
+            counts[slot] += c;
+        }
+        zeroCount += other.zeroCount;
+        count += other.count;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /** Value at rank {@code ceil(q * count) - 1}. */
+    public double quantile(double q) {
+        if (count == 0) return 0;
+        long rank = (long) Math.ceil(q * count) - 1;
+        rank = Math.max(0, Math.min(rank, count - 1));
+        if (rank < zeroCount) return Math.max(min, 0);
+        long seen = zeroCount;
+        for (int i=0;i<counts.length;i++){
+            seen += counts[i];
+            if (seen > rank) {
+                double v = 2 * Math.pow(gamma, offset + i) / (gamma + 1);
+                return Math.max(min, Math.min(max, v));
+            }
+        }
+        return max;
+    }
+
+    private int slot(int idx) {
+        if (counts.length == 0) {
+            counts = new long[8];
+            offset = idx - 4;
+        }
+        int slot = idx - offset;
+        if (slot < 0 || slot >= counts.length) {
+            grow(idx);
+            slot = idx - offset;
+            if (slot < 0) slot = 0; // below a collapsed range: fold into the lowest bucket
+        }
+        return slot;
+    }
+
+    private void grow(int idx) {
+        int hi = Math.max(offset + counts.length - 1, idx);
+        // past the cap the lowest buckets are folded together, keeping the tail exact
+        int lo = Math.max(Math.min(offset, idx), hi - MAX_BUCKETS + 1);
+        int size = Math.min(MAX_BUCKETS, Math.max(hi - lo + 1, counts.length * 2));
+        // leave the headroom on the side we are growing towards
+        int newOffset = idx < offset ? hi - size + 1 : lo;
+        long[] next = new long[size];
+        for (int i=0;i<counts.length;i++){
+            long c = counts[i];
+            if (c != 0) next[Math.max(0, offset + i - newOffset)] += c;
+        }
+        counts = next;
+        offset = newOffset;
+    }
+
+    public byte[] toBytes() {
+        int lo = 0, hi = counts.length;
+        while (lo < hi && counts[lo] == 0) lo++;
+        while (hi > lo && counts[hi - 1] == 0) hi--;
+        ByteBuffer buf = ByteBuffer.allocate(8 + 8 * 4 + 4 + 4 + 8 * (hi - lo));
+        buf.putDouble(relativeAccuracy).putLong(count).putLong(zeroCount).putLong(min).putLong(max);
+        buf.putInt(offset + lo).putInt(hi - lo);
+        for (int i=lo;i<hi;i++){
+            buf.putLong(counts[i]);
+        }
+        return buf.array();
+    }
+
+    public static LatencySketch fromBytes(byte[] bytes) {
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        LatencySketch sketch = new LatencySketch(buf.getDouble());
+        sketch.count = buf.getLong();
+        sketch.zeroCount = buf.getLong();
+        sketch.min = buf.getLong();
+        sketch.max = buf.getLong();
+        sketch.offset = buf.getInt();
+        int n = buf.getInt();
+        if (n < 0 || n > MAX_BUCKETS || buf.remaining() != 8L * n) {
+            throw new IllegalArgumentException("corrupt latency sketch (" + bytes.length + " bytes)");
+        }
+        sketch.counts = new long[n];
+        for (int i=0;i<n;i++){
+            sketch.counts[i] = buf.getLong();
+        }
+        return sketch;
+    }
+
+    @Override
+    public String toString() {
+        return "LatencySketch{count=" + count + ", buckets=" + counts.length
+                + ", accuracy=" + relativeAccuracy + "}";
+    }
+}
@@ -0,0 +1,131 @@
+package io.perfseer.aggregate;
+
+import io.perfseer.ingest.Span;
+import io.perfseer.ingest.Trace;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Aggregates batches of traces on a pool into per-worker shards; {@link #onTrace} is single-threaded.
+ * Groups are admitted here in arrival order, so the group cap overflows the same spans as sequentially.
+ */
+final class ParallelAggregation extends Aggregator.Aggregation {
+
+    static final int BATCH_SPANS = 4096;
+
+    private final double relativeAccuracy;
+    private final Grouping shardGrouping;
+    private final int maxInFlight;
+    private final ForkJoinPool pool;
+    private final Queue<Aggregator.Aggregation> idleShards = new ConcurrentLinkedQueue<>();
+    private final Queue<Aggregator.Aggregation> allShards = new ConcurrentLinkedQueue<>();
+    private final Queue<Batch> freeBatches = new ConcurrentLinkedQueue<>();
+    private final ArrayDeque<ForkJoinTask<?>> pending = new ArrayDeque<>();
+    private Batch current;
+
+    ParallelAggregation(double relativeAccuracy, Grouping grouping, int parallelism, ForkJoinPool pool) {
+        super(relativeAccuracy, grouping);
+        this.relativeAccuracy = relativeAccuracy;
+        this.shardGrouping = grouping.uncapped();
+        this.maxInFlight = parallelism * 2;
+        this.pool = pool;
+        for (int i=0;i<parallelism;i++){
+            Aggregator.Aggregation shard = new Aggregator.Aggregation(relativeAccuracy, shardGrouping);
+            idleShards.add(shard);
+            allShards.add(shard);
+        }
+    }
+
+    @Override
+    public void onTrace(Trace trace) {
+        if (current == null) {
+            current = freeBatches.poll();
+            if (current == null) current = new Batch();
+        }
+        Trace copy = current.add(trace);
+        if (grouping().enabled()) admit(copy);
+        if (current.spans >= BATCH_SPANS) submit();
+    }
+
+    private void admit(Trace trace) {
+        for (int i=0;i<trace.size();i++){
+            Span span = trace.span(i);
+            if (span.skip || admit(span)) continue;
+            if (span.dimensions == null) span.dimensions = new String[grouping().dimensions().length];
+            Arrays.fill(span.dimensions, GroupKeys.OVERFLOW);
+        }
+    }
+
+    @Override
+    public void add(String op, long duration, boolean error) {
+        flush();
+        super.add(op, duration, error);
+    }
+
+    @Override
+    public List<Aggregator.Feature> features() {
+        flush();
+        Aggregator.Aggregation shard;
+        while ((shard = allShards.poll()) != null) {
+            merge(shard);
+        }
+        idleShards.clear();
+        return super.features();
+    }
+
+    private void flush() {
+        if (current != null && current.size > 0) submit();
+        ForkJoinTask<?> task;
+        while ((task = pending.poll()) != null) {
+            task.join();
+        }
+    }
+
+    private void submit() {
+        Batch batch = current;
+        current = null;
+        // the decoder waits for the oldest batch rather than copying traces ahead of the workers
+        while (!pending.isEmpty() && (pending.size() >= maxInFlight || pending.peek().isDone())) {
+            pending.poll().join();
+        }
+        pending.add(pool.submit(() -> aggregate(batch)));
+    }
+
+    private void aggregate(Batch batch) {
+        Aggregator.Aggregation shard = idleShards.poll();
+        if (shard == null) {
+            shard = new Aggregator.Aggregation(relativeAccuracy, shardGrouping);
+            allShards.add(shard);
+        }
+        try {
+            for (int i=0;i<batch.size;i++){
+                shard.onTrace(batch.traces[i]);
+            }
+        } finally {
+            idleShards.add(shard);
+            batch.size = 0;
+            batch.spans = 0;
+            freeBatches.add(batch);
+        }
+    }
+
+    private static final class Batch {
+        Trace[] traces = new Trace[64];
+        int size;
+        int spans;
+
+        Trace add(Trace trace) {
+            if (size == traces.length) traces = Arrays.copyOf(traces, size * 2);
+            if (traces[size] == null) traces[size] = new Trace();
+            Trace copy = traces[size++];
+            copy.copyFrom(trace);
+            spans += trace.size();
+            return copy;
+        }
+    }
+}
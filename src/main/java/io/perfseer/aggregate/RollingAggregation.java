@@ -0,0 +1,59 @@
+package io.perfseer.aggregate;
+
+import java.util.List;
+
+/** Per-operation aggregates over a ring of buckets by span start time. */
+public final class RollingAggregation {
+
+    private final double relativeAccuracy;
+    private final long bucketMicros;
+    private final Aggregator.Aggregation[] slots;
+    private final long[] slotStart;
+    private long newest = Long.MIN_VALUE;
+    private long dropped;
+
+    RollingAggregation(double relativeAccuracy, long bucketMicros, int buckets) {
+        if (bucketMicros <= 0 || buckets <= 0) {
+            throw new IllegalArgumentException("rolling window needs a positive bucket width and count");
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.bucketMicros = bucketMicros;
+        this.slots = new Aggregator.Aggregation[buckets];
+        this.slotStart = new long[buckets];
+    }
+
+    public long retentionMicros() {
+        return bucketMicros * slots.length;
+    }
+
+    public synchronized long dropped() {
+        return dropped;
+    }
+
+    public synchronized void add(String op, long startMicros, long duration, boolean error,
+                                 long selfTime, long criticalPath) {
+        long bucket = Math.floorDiv(startMicros, bucketMicros) * bucketMicros;
+        if (newest != Long.MIN_VALUE && bucket <= newest - retentionMicros()) {
+            dropped++;
+            return;
+        }
+        if (bucket > newest) newest = bucket;
+        int i = (int) Math.floorMod(bucket / bucketMicros, (long) slots.length);
+        if (slots[i] == null || slotStart[i] != bucket) {
+            slots[i] = new Aggregator.Aggregation(relativeAccuracy);
+            slotStart[i] = bucket;
+        }
+        slots[i].add(op, duration, error, selfTime, criticalPath);
+    }
+
+    public synchronized List<Aggregator.Feature> features(long fromMicros, long toMicros) {
+        long from = Math.floorDiv(fromMicros, bucketMicros) * bucketMicros;
+        long oldest = newest - retentionMicros();
+        Aggregator.Aggregation all = new Aggregator.Aggregation(relativeAccuracy);
+        for (int i=0;i<slots.length;i++){
+            long start = slotStart[i];
+            if (slots[i] != null && start > oldest && start >= from && start < toMicros) all.mergeCopy(slots[i]);
+        }
+        return all.features();
+    }
+}
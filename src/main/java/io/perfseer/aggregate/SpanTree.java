@@ -0,0 +1,262 @@
+package io.perfseer.aggregate;
+
+import io.perfseer.ingest.Span;
+import io.perfseer.ingest.Trace;
+import java.util.Arrays;
+
+/** Parent/child structure of one trace, for self time and critical path. Not thread-safe. */
+public final class SpanTree {
+
+    private static final int NO_SPAN = -1;
+
+    private int n;
+    private long[] ids = new long[64];
+    private long[] parentIds = new long[64];
+    private long[] starts = new long[64];
+    private long[] ends = new long[64];
+    private int[] parent = new int[64];
+    private int[] firstChild = new int[65];
+    private int[] byStart = new int[64];
+    private int[] byEnd = new int[64];
+    private long[] selfTime = new long[64];
+    private long[] criticalPath = new long[64];
+    private long[] keys = new long[64];
+    private int[] slots = new int[128];
+    // critical path walk
+    private int[] stackSpan = new int[64];
+    private int[] stackNext = new int[64];
+    private long[] stackCursor = new long[64];
+    private long[] stackFloor = new long[64];
+
+    public int size() {
+        return n;
+    }
+
+    public long selfTime(int i) {
+        return selfTime[i];
+    }
+
+    public long criticalPath(int i) {
+        return criticalPath[i];
+    }
+
+    public SpanTree build(Trace trace) {
+        reset(trace.size());
+        for (int i=0;i<trace.size();i++){
+            Span s = trace.span(i);
+            add(s.spanId, s.parentSpanId, s.startTime, s.duration);
+        }
+        compute();
+        return this;
+    }
+
+    public void reset(int capacity) {
+        n = 0;
+        if (ids.length < capacity) grow(capacity);
+    }
+
+    /** A {@code parentId} of 0 marks a root. */
+    public void add(long id, long parentId, long start, long duration) {
+        if (n == ids.length) grow(n * 2);
+        ids[n] = id;
+        parentIds[n] = parentId;
+        starts[n] = start;
+        ends[n] = start + Math.max(0, duration);
+        n++;
+    }
+
+    public void compute() {
+        link();
+        order();
+        for (int i=0;i<n;i++){
+            selfTime[i] = ends[i] - starts[i] - covered(i);
+            criticalPath[i] = 0;
+        }
+        for (int i=0;i<n;i++){
+            if (parent[i] == NO_SPAN) walkCriticalPath(i);
+        }
+    }
+
+    private void link() {
+        int capacity = Integer.highestOneBit(Math.max(2, n) * 2 - 1) << 1;
+        if (slots.length < capacity) slots = new int[capacity];
+        int mask = capacity - 1;
+        Arrays.fill(slots, 0, capacity, NO_SPAN);
+        for (int i=0;i<n;i++){
+            if (ids[i] == 0) continue;
+            int h = hash(ids[i]) & mask;
+            while (slots[h] != NO_SPAN && ids[slots[h]] != ids[i]) h = (h + 1) & mask;
+            if (slots[h] == NO_SPAN) slots[h] = i; // first span with a duplicate id wins
+        }
+        Arrays.fill(firstChild, 0, n + 1, 0);
+        for (int i=0;i<n;i++){
+            int p = NO_SPAN;
+            long pid = parentIds[i];
+            if (pid != 0 && pid != ids[i]) {
+                int h = hash(pid) & mask;
+                while (slots[h] != NO_SPAN) {
+                    if (ids[slots[h]] == pid) {
+                        p = slots[h];
+                        break;
+                    }
+                    h = (h + 1) & mask;
+                }
+            }
+            parent[i] = p;
+            if (p != NO_SPAN) firstChild[p + 1]++;
+        }
+        for (int i=0;i<n;i++){
+            firstChild[i + 1] += firstChild[i];
+        }
+        // fill, using byEnd's slots as the per-parent write cursor
+        System.arraycopy(firstChild, 0, byEnd, 0, n);
+        for (int i=0;i<n;i++){
+            int p = parent[i];
+            if (p != NO_SPAN) byStart[byEnd[p]++] = i;
+        }
+    }
+
+    private void order() {
+        System.arraycopy(byStart, 0, byEnd, 0, firstChild[n]);
+        for (int p=0;p<n;p++){
+            int from = firstChild[p];
+            int to = firstChild[p + 1];
+            if (to - from < 2) continue;
+            sort(byStart, from, to, starts, false);
+            sort(byEnd, from, to, ends, true);
+        }
+    }
+
+    private void sort(int[] order, int from, int to, long[] time, boolean descending) {
+        boolean sorted = true;
+        for (int i=from+1;i<to && sorted;i++){
+            long a = time[order[i - 1]];
+            long b = time[order[i]];
+            sorted = descending ? a >= b : a <= b;
+        }
+        if (sorted) return;
+        // order by (time, index) through one primitive sort of packed keys
+        long base = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i=from;i<to;i++){
+            base = Math.min(base, time[order[i]]);
+            max = Math.max(max, time[order[i]]);
+        }
+        if (max - base >= (1L << 38) || n >= (1 << 25)) {
+            insertionSort(order, from, to, time, descending);
+            return;
+        }
+        for (int i=from;i<to;i++){
+            long t = time[order[i]] - base;
+            keys[i] = (descending ? ((1L << 38) - 1 - t) : t) << 25 | order[i];
+        }
+        Arrays.sort(keys, from, to);
+        for (int i=from;i<to;i++){
+            order[i] = (int) (keys[i] & ((1 << 25) - 1));
+        }
+    }
+
+    private static void insertionSort(int[] order, int from, int to, long[] time, boolean descending) {
+        for (int i=from+1;i<to;i++){
+            int x = order[i];
+            int j = i - 1;
+            while (j >= from && (descending ? time[order[j]] < time[x] : time[order[j]] > time[x])) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = x;
+        }
+    }
+
+    private long covered(int p) {
+        long ps = starts[p];
+        long pe = ends[p];
+        long covered = 0;
+        long runStart = 0;
+        long runEnd = Long.MIN_VALUE;
+        for (int k=firstChild[p];k<firstChild[p + 1];k++){
+            int c = byStart[k];
+            long cs = Math.max(starts[c], ps);
+            long ce = Math.min(ends[c], pe);
+            if (ce <= cs) continue;
+            if (cs > runEnd) {
+                if (runEnd > runStart) covered += runEnd - runStart;
+                runStart = cs;
+                runEnd = ce;
+            } else if (ce > runEnd) {
+                runEnd = ce;
+            }
+        }
+        if (runEnd > runStart) covered += runEnd - runStart;
+        return covered;
+    }
+
+    private void walkCriticalPath(int root) {
+        int top = 0;
+        push(top++, root, ends[root], starts[root]);
+        while (top > 0) {
+            int f = top - 1;
+            int span = stackSpan[f];
+            long cursor = stackCursor[f];
+            int k = stackNext[f];
+            int last = firstChild[span + 1];
+            int next = NO_SPAN;
+            long nextEnd = 0;
+            long nextStart = 0;
+            for (;k<last;k++){
+                int c = byEnd[k];
+                long ce = Math.min(ends[c], ends[span]);
+                long cs = Math.max(starts[c], stackFloor[f]);
+                // children finishing after the cursor ran alongside the part already on the path
+                if (ce > cursor || ce <= cs) continue;
+                next = c;
+                nextEnd = ce;
+                nextStart = cs;
+                k++;
+                break;
+            }
+            if (next == NO_SPAN) {
+                criticalPath[span] += Math.max(0, cursor - stackFloor[f]);
+                top--;
+                continue;
+            }
+            criticalPath[span] += cursor - nextEnd;
+            stackCursor[f] = nextStart;
+            stackNext[f] = k;
+            push(top++, next, nextEnd, nextStart);
+        }
+    }
+
+    private void push(int at, int span, long cursor, long floor) {
+        if (at == stackSpan.length) {
+            int size = at * 2;
+            stackSpan = Arrays.copyOf(stackSpan, size);
+            stackNext = Arrays.copyOf(stackNext, size);
+            stackCursor = Arrays.copyOf(stackCursor, size);
+            stackFloor = Arrays.copyOf(stackFloor, size);
+        }
+        stackSpan[at] = span;
+        stackNext[at] = firstChild[span];
+        stackCursor[at] = cursor;
+        stackFloor[at] = floor;
+    }
+
+    private void grow(int capacity) {
+        ids = Arrays.copyOf(ids, capacity);
+        parentIds = Arrays.copyOf(parentIds, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        ends = Arrays.copyOf(ends, capacity);
+        parent = Arrays.copyOf(parent, capacity);
+        firstChild = Arrays.copyOf(firstChild, capacity + 1);
+        byStart = Arrays.copyOf(byStart, capacity);
+        byEnd = Arrays.copyOf(byEnd, capacity);
+        selfTime = Arrays.copyOf(selfTime, capacity);
+        criticalPath = Arrays.copyOf(criticalPath, capacity);
+        keys = Arrays.copyOf(keys, capacity);
+    }
+
+    private static int hash(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,284 @@
+package io.perfseer.analyzer;
+
+import io.perfseer.indexer.CodeIndexer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Resolves operation names to indexed methods by code tags, qualified name, route, short name, then name suffix. */
+public final class OperationMatcher {
+
+    public enum MatchKind { CODE_TAGS, FQN, ROUTE, SHORT_NAME, SUFFIX }
+
+    public static final class Match {
+        public final CodeIndexer.CodePointer method;
+        public final MatchKind kind;
+
+        Match(CodeIndexer.CodePointer method, MatchKind kind) {
+            this.method = method;
+            this.kind = kind;
+        }
+    }
+
+    private static final CodeIndexer.CodePointer AMBIGUOUS = new CodeIndexer.CodePointer();
+    private static final String ANY_METHOD = "*";
+    private static final String PARAM = "{}";
+
+    private final boolean normalizeRoutes;
+    private final Map<String, CodeIndexer.CodePointer> byFqn = new HashMap<>();
+    private final Map<String, CodeIndexer.CodePointer> byShortName = new HashMap<>();
+    private final SuffixNode suffixes = new SuffixNode();
+    private final RouteNode routes = new RouteNode();
+
+    public OperationMatcher(List<CodeIndexer.CodePointer> methods, boolean normalizeRoutes) {
+        this.normalizeRoutes = normalizeRoutes;
+        for (CodeIndexer.CodePointer cp : methods) {
+            if (cp.fullyQualifiedName == null || byFqn.putIfAbsent(cp.fullyQualifiedName, cp) != null) continue;
+            String[] segments = cp.fullyQualifiedName.split("\\.");
+            reverse(segments);
+            if (segments.length >= 2) {
+                byShortName.merge(segments[1] + "." + segments[0], cp, (a, b) -> AMBIGUOUS);
+            }
+            suffixes.insert(cp, segments);
+            if (cp.route != null) addRoute(cp);
+        }
+    }
+
+    public int size() {
+        return byFqn.size();
+    }
+
+    public Match match(String operation) {
+        return match(operation, null, null);
+    }
+
+    /** Null when no method or several fit. */
+    public Match match(String operation, String codeNamespace, String codeFunction) {
+        if (codeFunction != null) {
+            String name = codeNamespace != null && codeFunction.indexOf('.') < 0
+                    ? codeNamespace + "." + codeFunction : codeFunction;
+            CodeIndexer.CodePointer cp = byFqn.get(name);
+            if (cp == null) cp = bySuffix(name, 1);
+            if (cp != null) return new Match(cp, MatchKind.CODE_TAGS);
+        }
+        if (operation == null || operation.isEmpty()) return null;
+        CodeIndexer.CodePointer cp = byFqn.get(operation);
+        if (cp != null) return new Match(cp, MatchKind.FQN);
+
+        String path = routePath(operation);
+        if (path != null) {
+            cp = matchRoute(routeMethod(operation), path);
+            return cp != null ? new Match(cp, MatchKind.ROUTE) : null;
+        }
+        String name = codeName(operation);
+        if (name == null) return null;
+        cp = byFqn.get(name);
+        if (cp != null) return new Match(cp, MatchKind.FQN);
+        int lastDot = name.lastIndexOf('.');
+        if (lastDot < 0) return null;
+        cp = byShortName.get(name);
+        if (cp == null && Character.isUpperCase(name.charAt(lastDot + 1))) {
+            // gRPC style Service/Method against a Java method
+            name = name.substring(0, lastDot + 1) + Character.toLowerCase(name.charAt(lastDot + 1)) + name.substring(lastDot + 2);
+            cp = byFqn.get(name);
+            if (cp == null) cp = byShortName.get(name);
+        }
+        if (cp == AMBIGUOUS) return null;
+        if (cp != null) return new Match(cp, name.indexOf('.') == lastDot ? MatchKind.SHORT_NAME : MatchKind.FQN);
+        cp = bySuffix(name, 2);
+        return cp != null ? new Match(cp, MatchKind.SUFFIX) : null;
+    }
+
+    // ---- names ----
+
+    /** {@code Class#method}, {@code Service/Method} and {@code Class::method} as dotted names; null otherwise. */
+    private static String codeName(String operation) {
+        int end = operation.indexOf('(');
+        if (end < 0) end = operation.length();
+        StringBuilder sb = null;
+        for (int i=0;i<end;i++){
+            char c = operation.charAt(i);
+            if (Character.isJavaIdentifierPart(c) || c == '.') {
+                if (sb != null) sb.append(c);
+                continue;
+            }
+            if (c == '#' || c == '/' || (c == ':' && i + 1 < end && operation.charAt(i + 1) == ':')) {
+                if (sb == null) sb = new StringBuilder(end).append(operation, 0, i);
+                sb.append('.');
+                if (c == ':') i++;
+                continue;
+            }
+            return null;
+        }
+        String name = sb != null ? sb.toString() : operation.substring(0, end);
+        if (name.isEmpty() || name.startsWith(".") || name.endsWith(".") || name.contains("..")) return null;
+        return name;
+    }
+
+    private CodeIndexer.CodePointer bySuffix(String name, int minSegments) {
+        String[] segments = name.split("\\.");
+        if (segments.length < minSegments) return null;
+        reverse(segments);
+        return suffixes.find(segments);
+    }
+
+    private static void reverse(String[] a) {
+        for (int i=0, j=a.length-1;i<j;i++, j--){
+            String t = a[i];
+            a[i] = a[j];
+            a[j] = t;
+        }
+    }
+
+    /** Trie over reversed name segments; single-method subtrees are not expanded. */
+    private static final class SuffixNode {
+        Map<String, SuffixNode> children;
+        CodeIndexer.CodePointer method;
+        String[] segments;
+        boolean shared;
+
+        void insert(CodeIndexer.CodePointer cp, String[] reversed) {
+            SuffixNode node = this;
+            for (int depth=0;;depth++){
+                if (!node.shared) {
+                    if (node.method == null) {
+                        node.method = cp;
+                        node.segments = reversed;
+                        return;
+                    }
+                    // second method below this node: push the first one down
+                    CodeIndexer.CodePointer first = node.method;
+                    String[] firstSegments = node.segments;
+                    node.method = null;
+                    node.segments = null;
+                    node.shared = true;
+                    node.children = new HashMap<>(4);
+                    if (depth < firstSegments.length) {
+                        SuffixNode child = node.child(firstSegments[depth]);
+                        child.method = first;
+                        child.segments = firstSegments;
+                    }
+                }
+                if (depth == reversed.length) return;
+                node = node.child(reversed[depth]);
+            }
+        }
+
+        private SuffixNode child(String segment) {
+            return children.computeIfAbsent(segment, s -> new SuffixNode());
+        }
+
+        CodeIndexer.CodePointer find(String[] reversed) {
+            SuffixNode node = this;
+            for (int depth=0;depth<reversed.length;depth++){
+                if (!node.shared) return node.matchesFrom(reversed, depth) ? node.method : null;
+                node = node.children.get(reversed[depth]);
+                if (node == null) return null;
+            }
+            return node.shared ? null : node.method;
+        }
+
+        private boolean matchesFrom(String[] reversed, int depth) {
+            if (method == null || segments.length < reversed.length) return false;
+            for (int i=depth;i<reversed.length;i++){
+                if (!segments[i].equals(reversed[i])) return false;
+            }
+            return true;
+        }
+    }
+
+    // ---- routes ----
+
+    private void addRoute(CodeIndexer.CodePointer cp) {
+        int space = cp.route.indexOf(' ');
+        if (space < 0) return;
+        RouteNode node = routes;
+        for (String segment : cp.route.substring(space + 1).split("/")) {
+            if (segment.isEmpty()) continue;
+            node = segment.indexOf('{') >= 0 || segment.indexOf('*') >= 0 ? node.param() : node.literal(segment);
+        }
+        if (node.methods == null) node.methods = new HashMap<>(2);
+        node.methods.putIfAbsent(cp.route.substring(0, space), cp);
+    }
+
+    private static String routePath(String operation) {
+        int start = operation.indexOf('/');
+        if (start < 0) return null;
+        if (start > 0 && operation.charAt(start - 1) != ' ') {
+            int scheme = operation.indexOf("://");
+            if (scheme < 0 || scheme + 1 != start) return null;
+            start = operation.indexOf('/', scheme + 3);
+            if (start < 0) return "/";
+        }
+        int end = operation.length();
+        for (int i=start;i<end;i++){
+            char c = operation.charAt(i);
+            if (c == '?' || c == '#' || c == ' ') {
+                end = i;
+                break;
+            }
+        }
+        return operation.substring(start, end);
+    }
+
+    private static String routeMethod(String operation) {
+        int slash = operation.indexOf('/');
+        String head = operation.substring(0, Math.max(slash, 0)).trim();
+        if (head.startsWith("HTTP ")) head = head.substring(5).trim();
+        switch (head) {
+            case "GET": case "POST": case "PUT": case "DELETE": case "PATCH": case "HEAD": case "OPTIONS":
+                return head;
+            default:
+                return null;
+        }
+    }
+
+    private CodeIndexer.CodePointer matchRoute(String method, String path) {
+        String[] segments = path.split("/");
+        for (int i=0;i<segments.length;i++){
+            String s = segments[i];
+            if (s.startsWith("{") && s.endsWith("}") || s.startsWith(":") && s.length() > 1) segments[i] = PARAM;
+        }
+        return routes.find(segments, 0, method, normalizeRoutes);
+    }
+
+    private static final class RouteNode {
+        Map<String, RouteNode> literals;
+        RouteNode param;
+        Map<String, CodeIndexer.CodePointer> methods;
+
+        RouteNode literal(String segment) {
+            if (literals == null) literals = new HashMap<>(4);
+            return literals.computeIfAbsent(segment, s -> new RouteNode());
+        }
+
+        RouteNode param() {
+            if (param == null) param = new RouteNode();
+            return param;
+        }
+
+        /** Literal segments take precedence over parameters. */
+        CodeIndexer.CodePointer find(String[] segments, int i, String method, boolean normalize) {
+            while (i < segments.length && segments[i].isEmpty()) i++;
+            if (i == segments.length) return handler(method);
+            String segment = segments[i];
+            boolean param = PARAM.equals(segment);
+            if (!param && literals != null) {
+                RouteNode next = literals.get(segment);
+                CodeIndexer.CodePointer cp = next != null ? next.find(segments, i + 1, method, normalize) : null;
+                if (cp != null) return cp;
+            }
+            if (this.param != null && (param || normalize)) return this.param.find(segments, i + 1, method, normalize);
+            return null;
+        }
+
+        private CodeIndexer.CodePointer handler(String method) {
+            if (methods == null) return null;
+            if (method != null) {
+                CodeIndexer.CodePointer cp = methods.get(method);
+                return cp != null ? cp : methods.get(ANY_METHOD);
+            }
+            return methods.size() == 1 ? methods.values().iterator().next() : null;
+        }
+    }
+}
@@ -1,14 +1,16 @@
 package io.perfseer.analyzer;
 
 import io.perfseer.aggregate.Aggregator;
+import io.perfseer.aggregate.LatencySketch;
+import io.perfseer.config.PerfConfig;
 import io.perfseer.indexer.CodeIndexer;
 import io.vertx.core.json.JsonObject;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 @ApplicationScoped
 public class PerformanceAnalyzer {
@@ -19,9 +21,19 @@ public class PerformanceAnalyzer {
     @Inject
     CodeIndexer codeIndexer;
 
+    boolean normalizeRoutes = true;
+
+    @Inject
+    void configure(PerfConfig cfg) {
+        normalizeRoutes = cfg.routesNormalize();
+    }
+
     public static class MethodAnalysis {
         public String methodName;
         public String fullyQualifiedName;
+        public String operationName;
+        /** An {@link OperationMatcher.MatchKind} name. */
+        public String matchedBy;
         public String fileName;
         public int lineNumber;
         public String methodBody;
@@ -37,44 +49,93 @@ public class PerformanceAnalyzer {
     }
 
     public List<MethodAnalysis> analyzePerformance(String projectRoot, JsonObject jaegerData) {
+        return analyzePerformance(projectRoot, aggregator.aggregate(jaegerData));
+    }
+
+    public List<MethodAnalysis> analyzePerformance(String projectRoot, List<Aggregator.Feature> features) {
+        return analyzePerformance(projectRoot, features, null);
+    }
+
+    /** @param mode null for {@code perf.index-mode} */
+    public List<MethodAnalysis> analyzePerformance(String projectRoot, List<Aggregator.Feature> features,
+                                                   CodeIndexer.IndexMode mode) {
         // 1. Index all methods in the project
-        List<CodeIndexer.CodePointer> codePointers = codeIndexer.indexProject(projectRoot);
-        Map<String, CodeIndexer.CodePointer> methodsByFQN = codePointers.stream()
-            .collect(Collectors.toMap(cp -> cp.fullyQualifiedName, cp -> cp, (a, b) -> a));
+        return analyzePerformance(index(projectRoot, mode), features);
+    }
 
-        // 2. Extract performance features from Jaeger data
-        List<Aggregator.Feature> features = aggregator.aggregate(jaegerData);
-        Map<String, Aggregator.Feature> featuresByOperation = features.stream()
-            .collect(Collectors.toMap(f -> f.key, f -> f, (a, b) -> a));
+    /** Blocks on file I/O. */
+    public List<CodeIndexer.CodePointer> index(String projectRoot, CodeIndexer.IndexMode mode) {
+        return mode != null ? codeIndexer.indexProject(projectRoot, mode) : codeIndexer.indexProject(projectRoot);
+    }
 
-        // 3. Correlate methods with their performance data
-        List<MethodAnalysis> analyses = new ArrayList<>();
+    public List<MethodAnalysis> analyzePerformance(List<CodeIndexer.CodePointer> codePointers,
+                                                   List<Aggregator.Feature> features) {
+        OperationMatcher matcher = new OperationMatcher(codePointers, normalizeRoutes);
 
+        // 2. Performance features come pre-aggregated from the Jaeger data; resolve each
+        //    operation once and fold operations that land on the same method together
+        Map<CodeIndexer.CodePointer, Matched> byMethod = new LinkedHashMap<>();
         for (Aggregator.Feature feature : features) {
-            String operationName = feature.key;
-            CodeIndexer.CodePointer codePointer = methodsByFQN.get(operationName);
-
-            if (codePointer != null) {
-                MethodAnalysis analysis = new MethodAnalysis();
-                analysis.methodName = extractMethodName(operationName);
-                analysis.fullyQualifiedName = operationName;
-                analysis.fileName = codePointer.file;
-                analysis.lineNumber = codePointer.line;
-                analysis.methodBody = codePointer.methodBody;
-                analysis.duration = (long) feature.p50;
-                analysis.count = feature.count;
-                analysis.errorRate = feature.errorRate;
-
-                // Analyze performance and provide recommendations
-                analyzeMethodPerformance(analysis);
-
-                analyses.add(analysis);
+            OperationMatcher.Match match = matcher.match(feature.operation, feature.codeNamespace, feature.codeFunction);
+            if (match == null) continue;
+            Matched m = byMethod.get(match.method);
+            if (m == null) {
+                byMethod.put(match.method, new Matched(match, feature));
+            } else {
+                m.add(feature);
             }
         }
 
+        // 3. Correlate methods with their performance data
+        List<MethodAnalysis> analyses = new ArrayList<>();
+
+        for (Matched m : byMethod.values()) {
+            CodeIndexer.CodePointer codePointer = m.match.method;
+            MethodAnalysis analysis = new MethodAnalysis();
+            analysis.methodName = extractMethodName(codePointer.fullyQualifiedName);
+            analysis.fullyQualifiedName = codePointer.fullyQualifiedName;
+            analysis.operationName = m.operationName;
+            analysis.matchedBy = m.match.kind.name();
+            analysis.fileName = codePointer.file;
+            analysis.lineNumber = codePointer.line;
+            analysis.methodBody = codePointer.methodBody();
+            analysis.duration = (long) m.feature.p50;
+            analysis.count = m.feature.count;
+            analysis.errorRate = m.feature.errorRate;
+
+            // Analyze performance and provide recommendations
+            analyzeMethodPerformance(analysis);
+
+            analyses.add(analysis);
+        }
+
         return analyses;
     }
 
+    private static final class Matched {
+        final OperationMatcher.Match match;
+        final String operationName;
+        Aggregator.Feature feature;
+        boolean copied;
+
+        Matched(OperationMatcher.Match match, Aggregator.Feature feature) {
+            this.match = match;
+            this.operationName = feature.operation;
+            this.feature = feature;
+        }
+
+        void add(Aggregator.Feature other) {
+            if (!copied) {
+                LatencySketch latency = new LatencySketch(feature.latency.relativeAccuracy());
+                latency.merge(feature.latency);
+                feature = Aggregator.Feature.of(feature.key, feature.count, feature.errorCount, latency,
+                        feature.selfTimeSum, feature.criticalPathSum);
+                copied = true;
+            }
+            feature.merge(other);
+        }
+    }
+
     private void analyzeMethodPerformance(MethodAnalysis analysis) {
         List<String> issues = new ArrayList<>();
         List<String> recommendations = new ArrayList<>();
@@ -0,0 +1,40 @@
+package io.perfseer.api;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.perfseer.aggregate.Aggregator;
+import java.util.Map;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class FeatureView {
+    public String key;
+    public String operation;
+    public Map<String,String> group;
+    public long count;
+    public double errorRate;
+    public double p50;
+    public double p95;
+    public double p99;
+    public double meanSelfTime;
+    public double meanCriticalPath;
+    public String codeNamespace;
+    public String codeFunction;
+
+    public static FeatureView of(Aggregator.Feature f) {
+        FeatureView v = new FeatureView();
+        v.key = f.key;
+        if (f.group != null) {
+            v.operation = f.operation;
+            v.group = f.group;
+        }
+        v.count = f.count;
+        v.errorRate = f.errorRate;
+        v.p50 = f.p50;
+        v.p95 = f.p95;
+        v.p99 = f.p99;
+        v.meanSelfTime = f.meanSelfTime;
+        v.meanCriticalPath = f.meanCriticalPath;
+        v.codeNamespace = f.codeNamespace;
+        v.codeFunction = f.codeFunction;
+        return v;
+    }
+}
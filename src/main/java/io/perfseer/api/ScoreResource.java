@@ -2,14 +2,23 @@ package io.perfseer.api;
 
 import io.perfseer.aggregate.Aggregator;
 import io.perfseer.ingest.JaegerClient;
-import io.perfseer.ml.IsolationScorer;
+import io.perfseer.ingest.SpanFilter;
+import io.perfseer.ml.BatchScoringService;
+import io.perfseer.ml.ModelCache;
+import io.perfseer.ml.ScoringService;
+import io.perfseer.ml.StreamingScoringService;
+import io.perfseer.ml.WindowedScorer;
+import io.perfseer.stream.KafkaSpanConsumer;
+import io.smallrye.common.annotation.NonBlocking;
 import io.smallrye.mutiny.Uni;
 import jakarta.inject.Inject;
+import jakarta.ws.rs.DefaultValue;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.MediaType;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -21,13 +30,21 @@ public class ScoreResource {
     @Inject
     JaegerClient jaeger;
     @Inject
-    Aggregator aggregator;
+    ScoringService scoring;
     @Inject
-    IsolationScorer scorer;
+    KafkaSpanConsumer stream;
+    @Inject
+    ModelCache models;
+    @Inject
+    StreamingScoringService streaming;
+    @Inject
+    BatchScoringService batch;
 
+    /** Answered on the event loop. */
     @GET
     @Path("/health")
     @Produces(MediaType.APPLICATION_JSON)
+    @NonBlocking
     public Map<String,Object> health(){
         Map<String,Object> m = new HashMap<>();
         m.put("status", "ok");
@@ -38,33 +55,80 @@ public class ScoreResource {
     @Path("/features")
     @Produces(MediaType.APPLICATION_JSON)
     public Uni<List<Map<String,Object>>> features(@QueryParam("service") String service,
-                                                  @QueryParam("lookback") String lookback){
-        return jaeger.fetchTraces(service, lookback)
-                .onItem().transform(aggregator::aggregate)
+                                                  @QueryParam("lookback") String lookback,
+                                                  @QueryParam("filter") String filter){
+        return scoring.features(service, lookback, SpanFilter.parseGlobs(filter))
                 .onItem().transform(list -> list.stream().map(Aggregator.Feature::toMap).collect(Collectors.toList()));
     }
 
+    @GET
+    @Path("/jaeger/cache/stats")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Map<String,Object> jaegerCacheStats(){
+        return jaeger.cacheStats();
+    }
+
+    @GET
+    @Path("/models/stats")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Map<String,Object> modelStats(){
+        return models.stats();
+    }
+
+    @GET
+    @Path("/ingest/stats")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Map<String,Object> ingestStats(){
+        return stream.stats();
+    }
+
     @GET
     @Path("/score")
     @Produces(MediaType.APPLICATION_JSON)
     public Uni<List<Map<String,Object>>> score(@QueryParam("service") String service,
                                                @QueryParam("lookbackBaseline") String lookbackBaseline,
-                                               @QueryParam("lookbackCurrent") String lookbackCurrent){
-        Uni<List<Aggregator.Feature>> baseline = jaeger.fetchTraces(service, lookbackBaseline)
-                .onItem().transform(aggregator::aggregate);
-        Uni<List<Aggregator.Feature>> current = jaeger.fetchTraces(service, lookbackCurrent)
-                .onItem().transform(aggregator::aggregate);
-        return Uni.combine().all().unis(baseline, current).asTuple()
-                .onItem().transform(tuple -> {
-                    var model = scorer.train(tuple.getItem1());
-                    var scored = scorer.score(model, tuple.getItem2());
-                    return scored.stream().map(sf -> {
-                        Map<String,Object> m = new HashMap<>();
-                        m.put("key", sf.key);
-                        m.put("score", sf.score);
-                        m.put("features", sf.featureValues);
-                        return m;
-                    }).collect(Collectors.toList());
-                });
+                                               @QueryParam("lookbackCurrent") String lookbackCurrent,
+                                               @QueryParam("filter") String filter){
+        return scoring.score(service, lookbackBaseline, lookbackCurrent, SpanFilter.parseGlobs(filter))
+                .onItem().transform(scored -> scored.stream().map(sf -> {
+                    Map<String,Object> m = new HashMap<>();
+                    m.put("key", sf.key);
+                    if (sf.group != null) m.put("group", sf.group);
+                    m.put("score", sf.score);
+                    m.put("features", sf.featureValues);
+                    return m;
+                }).collect(Collectors.toList()));
+    }
+
+    /** No {@code service} scores all of Jaeger's services. */
+    @GET
+    @Path("/score/batch")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Uni<BatchScoringService.Report> scoreBatch(@QueryParam("service") List<String> services,
+                                                      @QueryParam("lookbackBaseline") String lookbackBaseline,
+                                                      @QueryParam("lookbackCurrent") String lookbackCurrent,
+                                                      @QueryParam("top") @DefaultValue("100") int top){
+        List<String> names = new ArrayList<>();
+        for (String s : services) {
+            for (String name : s.split(",")) {
+                if (!name.isBlank()) names.add(name.trim());
+            }
+        }
+        return batch.score(names, lookbackBaseline, lookbackCurrent, top);
+    }
+
+    /** The first request starts scoring the service in the background. */
+    @GET
+    @Path("/score/windows")
+    @Produces(MediaType.APPLICATION_JSON)
+    public List<WindowedScorer.WindowScore> scoreWindows(@QueryParam("service") String service){
+        return streaming.recent(service);
+    }
+
+    @GET
+    @Path("/score/windows/stats")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Map<String,Object> scoreWindowStats(){
+        return streaming.stats();
     }
 }
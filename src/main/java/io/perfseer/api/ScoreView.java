@@ -0,0 +1,21 @@
+package io.perfseer.api;
+
+import io.perfseer.aggregate.Aggregator;
+
+public class ScoreView {
+    public String key;
+    public double score;
+    public long windowStart;
+    public long windowEnd;
+    public FeatureView features;
+
+    public static ScoreView of(Aggregator.Feature f, double score, long windowStart, long windowEnd) {
+        ScoreView v = new ScoreView();
+        v.key = f.key;
+        v.score = score;
+        v.windowStart = windowStart;
+        v.windowEnd = windowEnd;
+        v.features = FeatureView.of(f);
+        return v;
+    }
+}
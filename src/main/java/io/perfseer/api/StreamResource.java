@@ -0,0 +1,144 @@
+package io.perfseer.api;
+
+import io.perfseer.aggregate.Aggregator;
+import io.perfseer.exec.WorkerPools;
+import io.perfseer.ingest.Lookback;
+import io.perfseer.ml.IsolationScorer;
+import io.perfseer.ml.ScoringService;
+import io.perfseer.ml.StreamingScoringService;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.MediaType;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.jboss.logging.Logger;
+import org.jboss.resteasy.reactive.RestStreamElementType;
+import org.jboss.resteasy.reactive.common.util.RestMediaType;
+
+/** Streaming feature and score endpoints, as SSE or NDJSON depending on {@code Accept}. */
+@Path("/api/stream")
+public class StreamResource {
+    private static final Logger LOG = Logger.getLogger(StreamResource.class);
+
+    static final int SCORE_CHUNK = 64;
+    static final long MIN_EVERY_MICROS = TimeUnit.SECONDS.toMicros(1);
+
+    @Inject
+    ScoringService scoring;
+    @Inject
+    StreamingScoringService streaming;
+    @Inject
+    IsolationScorer scorer;
+    @Inject
+    WorkerPools pools;
+
+    @GET
+    @Path("/features")
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    @RestStreamElementType(MediaType.APPLICATION_JSON)
+    public Multi<FeatureView> features(@QueryParam("service") String service,
+                                       @QueryParam("lookback") String lookback,
+                                       @QueryParam("every") String every){
+        return repeat(every, () -> scoring.features(service, lookback)
+                .onItem().transformToMulti(list -> Multi.createFrom().iterable(list))
+                .onItem().transform(FeatureView::of));
+    }
+
+    @GET
+    @Path("/features")
+    @Produces(RestMediaType.APPLICATION_NDJSON)
+    @RestStreamElementType(MediaType.APPLICATION_JSON)
+    public Multi<FeatureView> featuresNdjson(@QueryParam("service") String service,
+                                             @QueryParam("lookback") String lookback,
+                                             @QueryParam("every") String every){
+        return features(service, lookback, every);
+    }
+
+    @GET
+    @Path("/score")
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    @RestStreamElementType(MediaType.APPLICATION_JSON)
+    public Multi<ScoreView> score(@QueryParam("service") String service,
+                                  @QueryParam("lookbackBaseline") String lookbackBaseline,
+                                  @QueryParam("lookbackCurrent") String lookbackCurrent,
+                                  @QueryParam("every") String every){
+        return repeat(every, () -> {
+            long width = scoring.windowMicros(lookbackCurrent);
+            return Uni.combine().all().unis(scoring.model(service, lookbackBaseline), scoring.features(service, lookbackCurrent))
+                    .asTuple()
+                    .onItem().transformToMulti(t -> {
+                        long end = Lookback.nowMicros();
+                        List<Aggregator.Feature> current = t.getItem2();
+                        return Multi.createFrom().range(0, (current.size() + SCORE_CHUNK - 1) / SCORE_CHUNK)
+                                .emitOn(pools.compute())
+                                .onItem().transformToIterable(chunk -> {
+                                    List<Aggregator.Feature> part = current.subList(chunk * SCORE_CHUNK,
+                                            Math.min(current.size(), (chunk + 1) * SCORE_CHUNK));
+                                    double[] s = scorer.scores(t.getItem1(), part, width);
+                                    List<ScoreView> out = new ArrayList<>(part.size());
+                                    for (int i=0;i<part.size();i++){
+                                        out.add(ScoreView.of(part.get(i), s[i], end - width, end));
+                                    }
+                                    return out;
+                                });
+                    });
+        });
+    }
+
+    @GET
+    @Path("/score")
+    @Produces(RestMediaType.APPLICATION_NDJSON)
+    @RestStreamElementType(MediaType.APPLICATION_JSON)
+    public Multi<ScoreView> scoreNdjson(@QueryParam("service") String service,
+                                        @QueryParam("lookbackBaseline") String lookbackBaseline,
+                                        @QueryParam("lookbackCurrent") String lookbackCurrent,
+                                        @QueryParam("every") String every){
+        return score(service, lookbackBaseline, lookbackCurrent, every);
+    }
+
+    @GET
+    @Path("/score/windows")
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    @RestStreamElementType(MediaType.APPLICATION_JSON)
+    public Multi<ScoreView> scoreWindows(@QueryParam("service") String service,
+                                         @QueryParam("window") String window){
+        long windowMicros = window != null ? Lookback.toMicros(window) : streaming.windowMicros();
+        return streaming.watch(service, windowMicros)
+                .onItem().transformToIterable(ws -> {
+                    List<ScoreView> out = new ArrayList<>(ws.scores.size());
+                    for (IsolationScorer.ScoredFeature sf : ws.scores) {
+                        out.add(ScoreView.of(sf.feature, sf.score, ws.windowStart, ws.windowEnd));
+                    }
+                    return out;
+                });
+    }
+
+    @GET
+    @Path("/score/windows")
+    @Produces(RestMediaType.APPLICATION_NDJSON)
+    @RestStreamElementType(MediaType.APPLICATION_JSON)
+    public Multi<ScoreView> scoreWindowsNdjson(@QueryParam("service") String service,
+                                               @QueryParam("window") String window){
+        return scoreWindows(service, window);
+    }
+
+    private static <T> Multi<T> repeat(String every, Supplier<Multi<? extends T>> round) {
+        if (every == null) return Multi.createFrom().<T>deferred(round);
+        long micros = Math.max(MIN_EVERY_MICROS, Lookback.toMicros(every));
+        return Multi.createFrom().ticks()
+                .startingAfter(Duration.ofMillis(1))
+                .every(Duration.ofNanos(TimeUnit.MICROSECONDS.toNanos(micros)))
+                .onOverflow().drop()
+                .onItem().<T>transformToMultiAndConcatenate(tick -> round.get()
+                        .onFailure().invoke(e -> LOG.warnf("Skipping a streamed update: %s", e.getMessage()))
+                        .onFailure().recoverWithCompletion());
+    }
+}
@@ -1,11 +1,19 @@
 package io.perfseer.cli;
 
+import io.perfseer.aggregate.Aggregator;
 import io.perfseer.analyzer.PerformanceAnalyzer;
+import io.perfseer.exec.WorkerPools;
+import io.perfseer.indexer.CodeIndexer;
 import io.perfseer.ingest.JaegerClient;
+import io.perfseer.ingest.SpanFilter;
+import io.perfseer.ingest.TraceFiles;
 import io.quarkus.arc.Unremovable;
 import jakarta.enterprise.context.Dependent;
 import jakarta.inject.Inject;
+import java.nio.file.Paths;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import picocli.CommandLine;
 
 @CommandLine.Command(name = "analyze", description = "Analyze Java project methods using Jaeger trace data")
@@ -13,12 +21,14 @@ import picocli.CommandLine;
 @Unremovable
 public class AnalyzeCommand implements Runnable {
     @Inject JaegerClient jaeger;
+    @Inject Aggregator aggregator;
     @Inject PerformanceAnalyzer analyzer;
+    @Inject WorkerPools pools;
 
     @CommandLine.Option(names = {"-p", "--project"}, description = "Path to Java project root", required = true)
     String projectPath;
 
-    @CommandLine.Option(names = {"-f", "--file"}, description = "Path to Jaeger JSON file")
+    @CommandLine.Option(names = {"-f", "--file"}, description = "Path to a span snapshot (fetch --output) or Jaeger JSON file")
     String jaegerFile;
 
     @CommandLine.Option(names = {"-s", "--service"}, description = "Service name for live Jaeger data")
@@ -27,32 +37,43 @@ public class AnalyzeCommand implements Runnable {
     @CommandLine.Option(names = {"-l", "--lookback"}, description = "Lookback period for live data")
     String lookback;
 
+    @CommandLine.Option(names = {"--index-mode"},
+            description = "How to index the project: ${COMPLETION-CANDIDATES} (default: perf.index-mode)")
+    CodeIndexer.IndexMode indexMode;
+
+    @CommandLine.Option(names = {"--filter"}, description = "Only aggregate spans matching this filter, e.g. 'kind=server;duration>=5ms'")
+    String filter;
+
     @Override
     public void run() {
+        if (jaegerFile == null && service == null) {
+            System.err.println("Either --file or --service must be specified");
+            return;
+        }
         try {
-            io.vertx.core.json.JsonObject jaegerData;
-
+            SpanFilter spans = SpanFilter.parse(filter);
+            // index the project while the spans are read or fetched
+            CompletableFuture<List<CodeIndexer.CodePointer>> index =
+                    CompletableFuture.supplyAsync(() -> analyzer.index(projectPath, indexMode), pools.blocking());
+            List<Aggregator.Feature> features;
             if (jaegerFile != null) {
-                // Read from file
-                String content = java.nio.file.Files.readString(java.nio.file.Paths.get(jaegerFile));
-                jaegerData = new io.vertx.core.json.JsonObject(content);
-                processAnalysis(jaegerData);
-            } else if (service != null) {
+                // Stream from file
+                features = TraceFiles.read(Paths.get(jaegerFile), spans, aggregator.newAggregation()).features();
+            } else {
                 // Fetch from Jaeger
-                jaeger.fetchTraces(service, lookback)
-                        .onItem().invoke(this::processAnalysis)
+                features = jaeger.fetchSpans(service, lookback, null, spans, aggregator.newAggregation())
+                        .onItem().transform(Aggregator.Aggregation::features)
                         .await().indefinitely();
-            } else {
-                System.err.println("Either --file or --service must be specified");
-                return;
             }
+            processAnalysis(index.join(), features);
         } catch (Exception e) {
-            System.err.println("Error during analysis: " + e.getMessage());
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            System.err.println("Error during analysis: " + cause.getMessage());
         }
     }
 
-    private void processAnalysis(io.vertx.core.json.JsonObject jaegerData) {
-        List<PerformanceAnalyzer.MethodAnalysis> analyses = analyzer.analyzePerformance(projectPath, jaegerData);
+    private void processAnalysis(List<CodeIndexer.CodePointer> codePointers, List<Aggregator.Feature> features) {
+        List<PerformanceAnalyzer.MethodAnalysis> analyses = analyzer.analyzePerformance(codePointers, features);
 
         System.out.println("\n=== PERFORMANCE ANALYSIS REPORT ===\n");
 
@@ -63,6 +84,9 @@ public class AnalyzeCommand implements Runnable {
 
         for (PerformanceAnalyzer.MethodAnalysis analysis : analyses) {
             System.out.println("Method: " + analysis.fullyQualifiedName);
+            if (!analysis.fullyQualifiedName.equals(analysis.operationName)) {
+                System.out.println("Operation: " + analysis.operationName + " (matched by " + analysis.matchedBy + ")");
+            }
             System.out.println("File: " + analysis.fileName + ":" + analysis.lineNumber);
             System.out.println("Performance Assessment: " + analysis.performanceAssessment);
             System.out.println("Duration: " + analysis.duration + "μs (" + (analysis.duration/1000.0) + "ms)");
@@ -2,9 +2,14 @@ package io.perfseer.cli;
 
 import io.perfseer.aggregate.Aggregator;
 import io.perfseer.ingest.JaegerClient;
+import io.perfseer.ingest.SpanFilter;
+import io.perfseer.ingest.TraceFiles;
 import io.quarkus.arc.Unremovable;
 import jakarta.enterprise.context.Dependent;
 import jakarta.inject.Inject;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import picocli.CommandLine;
 
 @CommandLine.Command(name = "features", description = "Aggregate spans into features")
@@ -15,11 +20,22 @@ public class FeaturesCommand implements Runnable {
     @Inject Aggregator agg;
     @CommandLine.Option(names = {"-s","--service"}) String service;
     @CommandLine.Option(names = {"-l","--lookback"}) String lookback;
+    @CommandLine.Option(names = {"-f","--file"}, description = "Span snapshot or Jaeger JSON file to read instead of Jaeger") Path file;
+    @CommandLine.Option(names = {"--filter"}, description = "Only aggregate spans matching this filter, e.g. 'kind=server;duration>=5ms'") String filter;
 
     @Override
     public void run() {
-        jaeger.fetchTraces(service, lookback)
-                .onItem().transform(agg::aggregate)
+        SpanFilter spans = SpanFilter.parse(filter);
+        if (file != null) {
+            try {
+                TraceFiles.read(file, spans, agg.newAggregation()).features().forEach(f -> System.out.println(f.toMap()));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return;
+        }
+        jaeger.fetchSpans(service, lookback, null, spans, agg.newAggregation())
+                .onItem().transform(Aggregator.Aggregation::features)
                 .onItem().invoke(list -> list.forEach(f -> System.out.println(f.toMap())))
                 .await().indefinitely();
     }
@@ -1,10 +1,15 @@
 package io.perfseer.cli;
 
 import io.perfseer.ingest.JaegerClient;
+import io.perfseer.ingest.SpanFilter;
+import io.perfseer.ingest.SpanSnapshot;
 import io.quarkus.arc.Unremovable;
 import io.smallrye.mutiny.Uni;
 import jakarta.enterprise.context.Dependent;
 import jakarta.inject.Inject;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import picocli.CommandLine;
 
 @CommandLine.Command(name = "fetch", description = "Fetch raw traces from Jaeger")
@@ -16,12 +21,34 @@ public class FetchCommand implements Runnable {
     @CommandLine.Option(names = {"-l","--lookback"}) String lookback;
     @CommandLine.Option(names = {"--limit"}) Integer limit;
     @CommandLine.Option(names = {"--prettyPrint"}) Boolean prettyPrint;
+    @CommandLine.Option(names = {"-o","--output"}, description = "Write a binary span snapshot here instead of printing JSON") Path output;
+    @CommandLine.Option(names = {"--filter"}, description = "Only fetch traces with a span matching this filter; printed JSON "
+            + "is narrowed by the clauses Jaeger evaluates, a snapshot by all of them") String filter;
 
     @Override
     public void run() {
-        Uni<?> u = jaeger.fetchTraces(service, lookback, limit, prettyPrint).onItem().invoke(j -> {
+        if (output != null) {
+            writeSnapshot();
+            return;
+        }
+        Uni<?> u = jaeger.fetchTraces(service, lookback, limit, prettyPrint, SpanFilter.parse(filter)).onItem().invoke(j -> {
             System.out.println(j.encodePrettily());
         });
         u.await().indefinitely();
     }
+
+    private void writeSnapshot() {
+        try {
+            SpanSnapshot.Writer writer = new SpanSnapshot.Writer(output);
+            try {
+                jaeger.fetchSpans(service, lookback, limit, SpanFilter.parse(filter), writer).await().indefinitely();
+            } finally {
+                writer.close();
+            }
+            System.out.println("Wrote " + writer.spans() + " spans of " + writer.traces() + " traces to " + output
+                    + " (" + writer.bytes() + " bytes)");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 }
@@ -6,7 +6,7 @@ import jakarta.inject.Inject;
 import picocli.CommandLine;
 
 @CommandLine.Command(name = "perfseer", mixinStandardHelpOptions = true,
-        subcommands = {FetchCommand.class, FeaturesCommand.class, ScoreCommand.class, AnalyzeCommand.class})
+        subcommands = {FetchCommand.class, FeaturesCommand.class, ScoreCommand.class, ScoreBatchCommand.class, WatchCommand.class, AnalyzeCommand.class})
 @Dependent
 public class MainCommand implements Runnable {
     @CommandLine.Spec
@@ -0,0 +1,34 @@
+package io.perfseer.cli;
+
+import io.perfseer.ml.BatchScoringService;
+import io.quarkus.arc.Unremovable;
+import jakarta.enterprise.context.Dependent;
+import jakarta.inject.Inject;
+import java.util.List;
+import picocli.CommandLine;
+
+@CommandLine.Command(name = "score-batch", description = "Score several services, or all of Jaeger's, and rank their anomalies together")
+@Dependent
+@Unremovable
+public class ScoreBatchCommand implements Runnable {
+    @Inject BatchScoringService batch;
+    @CommandLine.Option(names = {"-s","--service"}, split = ",", description = "Services to score; all services known to Jaeger when omitted") List<String> services;
+    @CommandLine.Option(names = {"--baseline"}) String baseline;
+    @CommandLine.Option(names = {"--current"}) String current;
+    @CommandLine.Option(names = {"--top"}, defaultValue = "20", description = "Operations printed, most anomalous first") int top;
+
+    @Override
+    public void run() {
+        BatchScoringService.Report report = batch.score(services, baseline, current, top).await().indefinitely();
+        System.out.println("Scored " + report.services + " services in " + report.elapsedMillis + " ms");
+        System.out.println("Services:");
+        for (BatchScoringService.ServiceScore ss : report.ranking) {
+            System.out.printf("  %.3f  %s  (%d operations, top %s)%n", ss.maxScore, ss.service, ss.operations, ss.topOperation);
+        }
+        System.out.println("Operations:");
+        for (BatchScoringService.OperationScore os : report.operations) {
+            System.out.printf("  %.3f  %s  %s  %s%n", os.score, os.service, os.key, os.features);
+        }
+        report.failures.forEach((service, reason) -> System.out.println("Failed " + service + ": " + reason));
+    }
+}
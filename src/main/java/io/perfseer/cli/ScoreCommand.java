@@ -1,12 +1,15 @@
 package io.perfseer.cli;
 
-import io.perfseer.aggregate.Aggregator;
-import io.perfseer.ingest.JaegerClient;
+import io.perfseer.ingest.SpanFilter;
 import io.perfseer.ml.IsolationScorer;
+import io.perfseer.ml.ScoringService;
 import io.quarkus.arc.Unremovable;
-import io.smallrye.mutiny.Uni;
 import jakarta.enterprise.context.Dependent;
 import jakarta.inject.Inject;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Map;
 import picocli.CommandLine;
 
@@ -14,26 +17,33 @@ import picocli.CommandLine;
 @Dependent
 @Unremovable
 public class ScoreCommand implements Runnable {
-    @Inject JaegerClient jaeger;
-    @Inject Aggregator agg;
-    @Inject IsolationScorer scorer;
+    @Inject ScoringService scoring;
     @CommandLine.Option(names = {"-s","--service"}) String service;
     @CommandLine.Option(names = {"--baseline"}) String baseline;
     @CommandLine.Option(names = {"--current"}) String current;
+    @CommandLine.Option(names = {"-f","--file"}, description = "Span snapshot or Jaeger JSON file holding both windows; the current one is its last --current") Path file;
+    @CommandLine.Option(names = {"--filter"}, description = "Only aggregate spans matching this filter, e.g. 'kind=server;duration>=5ms'") String filter;
 
     @Override
     public void run() {
-        var baseU = jaeger.fetchTraces(service, baseline).onItem().transform(agg::aggregate);
-        var curU = jaeger.fetchTraces(service, current).onItem().transform(agg::aggregate);
-        Uni.combine().all().unis(baseU, curU).asTuple()
-                .onItem().invoke(t -> {
-                    var model = scorer.train(t.getItem1());
-                    var scored = scorer.score(model, t.getItem2());
-                    scored.forEach(sf -> System.out.println(Map.of(
-                            "key", sf.key,
-                            "score", sf.score,
-                            "features", sf.featureValues
-                    )));
-                }).await().indefinitely();
+        SpanFilter spans = SpanFilter.parse(filter);
+        if (file != null) {
+            try {
+                print(scoring.score(file, baseline, current, spans));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return;
+        }
+        scoring.score(service, baseline, current, spans)
+                .onItem().invoke(this::print).await().indefinitely();
+    }
+
+    private void print(List<IsolationScorer.ScoredFeature> scored) {
+        scored.forEach(sf -> System.out.println(Map.of(
+                "key", sf.key,
+                "score", sf.score,
+                "features", sf.featureValues
+        )));
     }
 }
@@ -0,0 +1,44 @@
+package io.perfseer.cli;
+
+import io.perfseer.ingest.Lookback;
+import io.perfseer.ml.IsolationScorer;
+import io.perfseer.ml.StreamingScoringService;
+import io.perfseer.ml.WindowedScorer;
+import io.quarkus.arc.Unremovable;
+import jakarta.enterprise.context.Dependent;
+import jakarta.inject.Inject;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import picocli.CommandLine;
+
+@CommandLine.Command(name = "watch", description = "Score each window of a service as it closes, until interrupted")
+@Dependent
+@Unremovable
+public class WatchCommand implements Runnable {
+    @Inject StreamingScoringService streaming;
+    @CommandLine.Option(names = {"-s","--service"}) String service;
+    @CommandLine.Option(names = {"-w","--window"}, description = "Window width, e.g. 1m; defaults to perf.stream-window") String window;
+    @CommandLine.Option(names = {"--top"}, defaultValue = "10", description = "Operations printed per window, most anomalous first") int top;
+
+    @Override
+    public void run() {
+        long windowMicros = window != null ? Lookback.toMicros(window) : streaming.windowMicros();
+        for (WindowedScorer.WindowScore ws : streaming.watch(service, windowMicros).subscribe().asIterable()) {
+            System.out.println("Window " + instant(ws.windowStart) + " - " + instant(ws.windowEnd)
+                    + (ws.trees > 0 ? " (" + ws.baselineWindows + " baseline windows, " + ws.trees + " trees)" : " (no baseline yet)"));
+            List<IsolationScorer.ScoredFeature> scores = new ArrayList<>(ws.scores);
+            scores.sort(Comparator.comparingDouble((IsolationScorer.ScoredFeature sf) -> sf.score).reversed());
+            for (int i=0;i<Math.min(top, scores.size());i++){
+                IsolationScorer.ScoredFeature sf = scores.get(i);
+                System.out.printf("  %.3f  %s  %s%n", sf.score, sf.key, sf.featureValues);
+            }
+        }
+    }
+
+    private static Instant instant(long micros) {
+        return Instant.ofEpochMilli(TimeUnit.MICROSECONDS.toMillis(micros));
+    }
+}
@@ -1,8 +1,13 @@
 package io.perfseer.config;
 
+import io.perfseer.indexer.CodeIndexer;
+import io.perfseer.ingest.JaegerClient;
 import io.quarkus.runtime.annotations.StaticInitSafe;
 import io.smallrye.config.ConfigMapping;
 import io.smallrye.config.WithDefault;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
 
 @StaticInitSafe
 @ConfigMapping(prefix = "perf")
@@ -13,6 +18,16 @@ public interface PerfConfig {
     @WithDefault("/api/traces")
     String jaegerQueryPath();
 
+    @WithDefault("/api/services")
+    String jaegerServicesPath();
+
+    /** {@code json} fetches spans from the query UI's HTTP API, {@code grpc} from the api_v2 QueryService. */
+    @WithDefault("json")
+    JaegerClient.Protocol jaegerProtocol();
+
+    @WithDefault("16685")
+    int jaegerGrpcPort();
+
     @WithDefault("example-service")
     String serviceName();
 
@@ -25,12 +40,121 @@ public interface PerfConfig {
     @WithDefault("otlp_spans")
     String kafkaTopic();
 
+    @WithDefault("perfseer")
+    String kafkaGroupId();
+
+    @WithDefault("1m")
+    Duration kafkaBucket();
+
+    /** How far back the rolling aggregates reach; longer lookbacks go to Jaeger. */
+    @WithDefault("1h")
+    Duration kafkaRetention();
+
     @WithDefault("perfseer.db")
     String storageSqlitePath();
 
+    @WithDefault("true")
+    boolean storageEnabled();
+
+    @WithDefault("1m")
+    Duration storageBucket();
+
+    /** How long after a bucket ends it may be stored, so late spans are counted. */
+    @WithDefault("10s")
+    Duration storageSettle();
+
+    /** Trained models kept for reuse across score requests; 0 disables the cache. */
+    @WithDefault("64")
+    int modelCacheSize();
+
+    @WithDefault("10m")
+    Duration modelCacheTtl();
+
+    /** Isolation tree training threads: 1 trains on the calling thread, 0 uses one per core. */
+    @WithDefault("0")
+    int trainParallelism();
+
+    /** Threads that decode Jaeger responses, train and score off the event loop: 0 uses one per core. */
+    @WithDefault("0")
+    int computeParallelism();
+
+    @WithDefault("1m")
+    Duration streamWindow();
+
+    /** How long after a window ends it is fetched, so late spans are counted. */
+    @WithDefault("10s")
+    Duration streamSettle();
+
+    @WithDefault("30")
+    int streamBaselineWindows();
+
+    /** Trees each window adds to the streaming model; they leave with the window. */
+    @WithDefault("4")
+    int streamTreesPerWindow();
+
+    /** Rows a window keeps for growing later trees; larger windows are sampled. */
+    @WithDefault("4096")
+    int streamRowsPerWindow();
+
+    @WithDefault("60")
+    int streamHistory();
+
+    /** Services scored in the background at once; the least recently read one is stopped first. */
+    @WithDefault("16")
+    int streamMaxServices();
+
+    /** Services a batch score fetches, trains and scores at once; each still fetches up to {@code perf.fetch-max-in-flight} slices. */
+    @WithDefault("8")
+    int batchMaxServicesInFlight();
+
     @WithDefault("true")
     boolean routesNormalize();
 
+    @WithDefault("true")
+    boolean indexCacheEnabled();
+
+    /** Directory of the code indexes; defaults to {@code ~/.cache/perfseer}. */
+    Optional<String> indexCacheDir();
+
+    /** Parser threads for changed files: 0 uses one per core. */
+    @WithDefault("0")
+    int indexParallelism();
+
+    /** {@code ast} parses every file with JavaParser; {@code symbols} only scans for declarations. */
+    @WithDefault("ast")
+    CodeIndexer.IndexMode indexMode();
+
     @WithDefault("1h")
     String lookbackDefault();
+
+    @WithDefault("0.01")
+    double sketchRelativeAccuracy();
+
+    /** Aggregation threads: 1 aggregates on the calling thread, 0 uses one per core. */
+    @WithDefault("1")
+    int aggregationParallelism();
+
+    /** Span or process tags to split each operation's features by, e.g. {@code hostname,http.status_code}. */
+    Optional<List<String>> groupBy();
+
+    /** Groups per aggregation; spans of further groups are counted in one overflow group per operation. */
+    @WithDefault("1000")
+    int groupMaxGroups();
+
+    /** Width of the time slices a lookback is fetched in; 0 fetches it in one request. */
+    @WithDefault("15m")
+    Duration fetchSlice();
+
+    @WithDefault("4")
+    int fetchMaxInFlight();
+
+    @WithDefault("2")
+    int fetchRetries();
+
+    @WithDefault("30s")
+    Duration fetchCacheTtl();
+
+    /** Bound on cached Jaeger response bytes; 0 disables caching and request coalescing. */
+    @WithDefault("67108864")
+    long fetchCacheMaxBytes();
 }
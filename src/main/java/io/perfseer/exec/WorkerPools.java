@@ -0,0 +1,70 @@
+package io.perfseer.exec;
+
+import io.perfseer.config.PerfConfig;
+import io.perfseer.metrics.PipelineMetrics;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jboss.logging.Logger;
+
+/** Executors for work that must not run on the event loop. */
+@ApplicationScoped
+public class WorkerPools {
+    private static final Logger LOG = Logger.getLogger(WorkerPools.class);
+
+    private final ExecutorService compute;
+    private final ExecutorService blocking;
+
+    @Inject
+    public WorkerPools(PerfConfig cfg, PipelineMetrics metrics) {
+        this(cfg.computeParallelism(), metrics);
+    }
+
+    /** @param computeThreads 0 uses one per core */
+    public WorkerPools(int computeThreads, PipelineMetrics metrics) {
+        int n = computeThreads > 0 ? computeThreads : Runtime.getRuntime().availableProcessors();
+        this.compute = metrics.executor("perfseer-compute", new ThreadPoolExecutor(n, n, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), daemon("perfseer-compute-")));
+        this.blocking = virtualThreads();
+    }
+
+    @PreDestroy
+    void close() {
+        compute.shutdown();
+        blocking.shutdown();
+    }
+
+    public ExecutorService compute() {
+        return compute;
+    }
+
+    public ExecutorService blocking() {
+        return blocking;
+    }
+
+    private static ExecutorService virtualThreads() {
+        try {
+            // looked up so the build keeps its Java 17 baseline
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            LOG.debug("No virtual threads before Java 21, blocking work runs on a cached thread pool");
+            return Executors.newCachedThreadPool(daemon("perfseer-blocking-"));
+        }
+    }
+
+    private static ThreadFactory daemon(String prefix) {
+        AtomicInteger ids = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + ids.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
@@ -1,76 +1,338 @@
 package io.perfseer.indexer;
 
 import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseResult;
 import com.github.javaparser.ParserConfiguration;
 import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.NodeList;
 import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
 import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.expr.AnnotationExpr;
+import com.github.javaparser.ast.expr.ArrayInitializerExpr;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.FieldAccessExpr;
+import com.github.javaparser.ast.expr.MemberValuePair;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.expr.NormalAnnotationExpr;
+import com.github.javaparser.ast.expr.SingleMemberAnnotationExpr;
+import com.github.javaparser.ast.expr.StringLiteralExpr;
+import io.perfseer.config.PerfConfig;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
 import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Stream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 
 @ApplicationScoped
 public class CodeIndexer {
 
-    private final JavaParser javaParser;
+    public enum IndexMode {
+        AST,
+        /** Declaration scan without an AST; same methods as {@link #AST}. */
+        SYMBOLS
+    }
 
-    public CodeIndexer() {
+    private final Path cacheDir;
+    private final int parallelism;
+    private final IndexMode defaultMode;
+    private final ThreadLocal<SymbolScanner> symbolScanner = ThreadLocal.withInitial(SymbolScanner::new);
+    private final ThreadLocal<JavaParser> javaParser = ThreadLocal.withInitial(() -> {
         ParserConfiguration config = new ParserConfiguration();
         config.setLanguageLevel(ParserConfiguration.LanguageLevel.JAVA_17);
-        this.javaParser = new JavaParser(config);
+        // only names and positions are needed
+        config.setAttributeComments(false);
+        return new JavaParser(config);
+    });
+
+    public CodeIndexer() {
+        this(null, 0, IndexMode.AST);
+    }
+
+    @Inject
+    public CodeIndexer(PerfConfig cfg) {
+        this(cfg.indexCacheEnabled()
+                ? Paths.get(cfg.indexCacheDir().orElse(System.getProperty("user.home") + "/.cache/perfseer"))
+                : null, cfg.indexParallelism(), cfg.indexMode());
+    }
+
+    /** @param cacheDir null always parses every file */
+    public CodeIndexer(Path cacheDir, int parallelism) {
+        this(cacheDir, parallelism, IndexMode.AST);
+    }
+
+    public CodeIndexer(Path cacheDir, int parallelism, IndexMode defaultMode) {
+        this.cacheDir = cacheDir;
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.defaultMode = defaultMode;
     }
 
     public static class CodePointer {
         public String file;
         public int line;
+        public int endLine;
         public String symbol;
         public String fullyQualifiedName;
-        public String methodBody;
+        /** E.g. {@code GET /users/{id}}, {@code *} for any method; null otherwise. */
+        public String route;
+        public long bodyOffset;
+        public int bodyLength;
+        Path root;
+
+        /** Read from the file on demand; empty when it can no longer be read. */
+        public String methodBody() {
+            if (root == null || bodyLength <= 0) return "";
+            try (FileChannel ch = FileChannel.open(root.resolve(file), StandardOpenOption.READ)) {
+                ByteBuffer buf = ByteBuffer.allocate(bodyLength);
+                while (buf.hasRemaining() && ch.read(buf, bodyOffset + buf.position()) >= 0) {
+                    // positional reads until the range is complete or the file ends
+                }
+                return new String(buf.array(), 0, buf.position(), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                return "";
+            }
+        }
     }
 
+    /** Files unchanged since the project's on-disk index are not parsed again. */
     public List<CodePointer> indexProject(String rootDir) {
+        return indexProject(rootDir, defaultMode);
+    }
+
+    /** Each mode keeps its own index. */
+    public List<CodePointer> indexProject(String rootDir, IndexMode mode) {
         List<CodePointer> res = new ArrayList<>();
         Path root = Paths.get(rootDir);
         if (!Files.exists(root)) return res;
-        try (Stream<Path> paths = Files.walk(root)){
-            paths.filter(p -> p.toString().endsWith(".java")).forEach(p -> {
-                try {
-                    CompilationUnit cu = javaParser.parse(p).getResult().orElseThrow();
-                    cu.findAll(MethodDeclaration.class).forEach(m -> {
-                        Optional<ClassOrInterfaceDeclaration> cls = m.findAncestor(ClassOrInterfaceDeclaration.class);
-                        String symbol = cls.map(c -> c.getNameAsString()+"#"+m.getNameAsString()).orElse(m.getNameAsString());
-
-                        // Build fully qualified name
-                        String packageName = cu.getPackageDeclaration()
-                            .map(pd -> pd.getNameAsString())
-                            .orElse("");
-                        String className = cls.map(c -> c.getNameAsString()).orElse("Unknown");
-                        String methodName = m.getNameAsString();
-                        String fullyQualifiedName = packageName.isEmpty() ?
-                            className + "." + methodName :
-                            packageName + "." + className + "." + methodName;
-
-                        CodePointer cp = new CodePointer();
-                        cp.file = root.relativize(p).toString();
-                        cp.line = m.getBegin().map(pn->pn.line).orElse(1);
-                        cp.symbol = symbol;
-                        cp.fullyQualifiedName = fullyQualifiedName;
-                        cp.methodBody = m.toString();
-                        res.add(cp);
-                    });
-                } catch (IOException e) {
-                    // ignore file
+        List<SourceFile> files = sourceFiles(root);
+        Path indexFile = cacheDir != null ? cacheDir.resolve(ProjectIndex.fileName(root, mode)) : null;
+        Map<String, ProjectIndex.Entry> previous = indexFile != null ? ProjectIndex.read(indexFile, root) : Map.of();
+
+        List<SourceFile> stale = new ArrayList<>();
+        for (SourceFile f : files) {
+            ProjectIndex.Entry e = previous.get(f.entry.path);
+            if (e != null && e.size == f.entry.size && e.modified == f.entry.modified) {
+                f.entry = e;
+            } else {
+                if (e != null) f.previous = e;
+                stale.add(f);
+            }
+        }
+        if (!stale.isEmpty()) parse(root, stale, mode);
+
+        boolean changed = !stale.isEmpty() || previous.size() != files.size();
+        for (SourceFile f : files) {
+            res.addAll(f.entry.pointers);
+        }
+        if (indexFile != null && changed) {
+            List<ProjectIndex.Entry> entries = new ArrayList<>(files.size());
+            for (SourceFile f : files) entries.add(f.entry);
+            ProjectIndex.write(indexFile, entries);
+        }
+        return res;
+    }
+
+    private void parse(Path root, List<SourceFile> stale, IndexMode mode) {
+        if (parallelism == 1) {
+            stale.forEach(f -> parse(root, f, mode));
+            return;
+        }
+        // parallelStream runs on the pool it is submitted from, so it stays within perf.index-parallelism
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.submit(() -> stale.parallelStream().forEach(f -> parse(root, f, mode))).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Indexing failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void parse(Path root, SourceFile f, IndexMode mode) {
+        try {
+            byte[] content = Files.readAllBytes(f.file);
+            byte[] hash = ProjectIndex.hash(content);
+            if (f.previous != null && Arrays.equals(f.previous.hash, hash)) {
+                // touched but unchanged: keep the methods, remember the new mtime
+                f.entry.pointers = f.previous.pointers;
+            } else {
+                f.entry.pointers = mode == IndexMode.SYMBOLS
+                        ? symbols(root, f.entry.path, content)
+                        : methods(root, f.entry.path, content);
+            }
+            f.entry.hash = hash;
+        } catch (IOException e) {
+            // ignore file
+        }
+    }
+
+    private List<CodePointer> methods(Path root, String file, byte[] content) {
+        List<CodePointer> res = new ArrayList<>();
+        ParseResult<CompilationUnit> parsed = javaParser.get().parse(new String(content, StandardCharsets.UTF_8));
+        Optional<CompilationUnit> result = parsed.getResult();
+        if (result.isEmpty()) return res;
+        CompilationUnit cu = result.get();
+        String packageName = cu.getPackageDeclaration()
+            .map(pd -> pd.getNameAsString())
+            .orElse("");
+        int[] lineStarts = lineStarts(content);
+        cu.findAll(MethodDeclaration.class).forEach(m -> {
+            Optional<ClassOrInterfaceDeclaration> cls = enclosingClass(m);
+            String symbol = cls.map(c -> c.getNameAsString()+"#"+m.getNameAsString()).orElse(m.getNameAsString());
+
+            // Build fully qualified name
+            String className = cls.map(c -> c.getNameAsString()).orElse("Unknown");
+            String methodName = m.getNameAsString();
+            String fullyQualifiedName = packageName.isEmpty() ?
+                className + "." + methodName :
+                packageName + "." + className + "." + methodName;
+
+            CodePointer cp = new CodePointer();
+            cp.root = root;
+            cp.file = file;
+            cp.line = m.getBegin().map(pn->pn.line).orElse(1);
+            cp.endLine = m.getEnd().map(pn->pn.line).orElse(cp.line);
+            cp.symbol = symbol;
+            cp.fullyQualifiedName = fullyQualifiedName;
+            cp.route = Route.of(cls.map(c -> routeAnnotations(c.getAnnotations())).orElse(List.of()),
+                    routeAnnotations(m.getAnnotations()));
+            setBodyRange(cp, lineStarts, content);
+            res.add(cp);
+        });
+        return res;
+    }
+
+    private static Optional<ClassOrInterfaceDeclaration> enclosingClass(Node node) {
+        Optional<Node> parent = node.getParentNode();
+        while (parent.isPresent() && !(parent.get() instanceof ClassOrInterfaceDeclaration)) {
+            parent = parent.get().getParentNode();
+        }
+        return parent.map(ClassOrInterfaceDeclaration.class::cast);
+    }
+
+    private List<CodePointer> symbols(Path root, String file, byte[] content) {
+        char[] source = new String(content, StandardCharsets.UTF_8).toCharArray();
+        List<CodePointer> res = symbolScanner.get().scan(file, source, source.length);
+        int[] lineStarts = lineStarts(content);
+        for (CodePointer cp : res) {
+            cp.root = root;
+            setBodyRange(cp, lineStarts, content);
+        }
+        return res;
+    }
+
+    private static List<Route.Annotation> routeAnnotations(NodeList<AnnotationExpr> annotations) {
+        List<Route.Annotation> res = new ArrayList<>();
+        for (AnnotationExpr a : annotations) {
+            String name = a.getName().getIdentifier();
+            if (!Route.relevant(name)) continue;
+            Expression path = null;
+            Expression method = null;
+            if (a instanceof SingleMemberAnnotationExpr) {
+                path = ((SingleMemberAnnotationExpr) a).getMemberValue();
+            } else if (a instanceof NormalAnnotationExpr) {
+                for (MemberValuePair p : ((NormalAnnotationExpr) a).getPairs()) {
+                    String key = p.getNameAsString();
+                    if (key.equals("value") || key.equals("path")) path = p.getValue();
+                    else if (key.equals("method")) method = p.getValue();
+                }
+            }
+            String literal = literal(first(path));
+            res.add(new Route.Annotation(name, literal, path != null && literal == null, constant(first(method))));
+        }
+        return res;
+    }
+
+    private static Expression first(Expression e) {
+        if (e instanceof ArrayInitializerExpr) {
+            NodeList<Expression> values = ((ArrayInitializerExpr) e).getValues();
+            return values.isEmpty() ? null : values.get(0);
+        }
+        return e;
+    }
+
+    private static String literal(Expression e) {
+        return e instanceof StringLiteralExpr ? ((StringLiteralExpr) e).getValue() : null;
+    }
+
+    private static String constant(Expression e) {
+        if (e instanceof FieldAccessExpr) return ((FieldAccessExpr) e).getNameAsString();
+        if (e instanceof NameExpr) return ((NameExpr) e).getNameAsString();
+        return null;
+    }
+
+    static int[] lineStarts(byte[] content) {
+        int lines = 1;
+        for (byte b : content) if (b == '\n') lines++;
+        int[] starts = new int[lines + 1];
+        int n = 1;
+        for (int i=0;i<content.length;i++){
+            if (content[i] == '\n') starts[n++] = i + 1;
+        }
+        starts[n] = content.length;
+        return starts;
+    }
+
+    static void setBodyRange(CodePointer cp, int[] lineStarts, byte[] content) {
+        int lines = lineStarts.length - 1;
+        int first = Math.min(Math.max(cp.line, 1), lines);
+        int last = Math.min(Math.max(cp.endLine, first), lines);
+        int from = lineStarts[first - 1];
+        int to = lineStarts[last];
+        while (to > from && (content[to - 1] == '\n' || content[to - 1] == '\r')) to--;
+        cp.bodyOffset = from;
+        cp.bodyLength = to - from;
+    }
+
+    private static List<SourceFile> sourceFiles(Path root) {
+        List<SourceFile> files = new ArrayList<>();
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile() && file.toString().endsWith(".java")) {
+                        files.add(new SourceFile(file, root.relativize(file).toString(),
+                                attrs.size(), attrs.lastModifiedTime().toMillis()));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    return FileVisitResult.CONTINUE;
                 }
             });
         } catch (IOException e) {
             // ignore
         }
-        return res;
+        return files;
+    }
+
+    private static final class SourceFile {
+        final Path file;
+        ProjectIndex.Entry entry;
+        ProjectIndex.Entry previous;
+
+        SourceFile(Path file, String path, long size, long modified) {
+            this.file = file;
+            this.entry = new ProjectIndex.Entry(path, size, modified);
+        }
     }
 }
@@ -0,0 +1,135 @@
+package io.perfseer.indexer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.jboss.logging.Logger;
+
+/** On-disk index of one project; a missing or corrupt one reads as empty. */
+final class ProjectIndex {
+    private static final Logger LOG = Logger.getLogger(ProjectIndex.class);
+    private static final int MAGIC = 0x50534958; // "PSIX"
+    private static final int VERSION = 3;
+
+    static final class Entry {
+        final String path;
+        final long size;
+        final long modified;
+        byte[] hash;
+        List<CodeIndexer.CodePointer> pointers = List.of();
+
+        Entry(String path, long size, long modified) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+
+    private ProjectIndex() {
+    }
+
+    static String fileName(Path root, CodeIndexer.IndexMode mode) {
+        byte[] h = hash(root.toAbsolutePath().normalize().toString().getBytes(StandardCharsets.UTF_8));
+        StringBuilder sb = new StringBuilder("index-");
+        for (int i=0;i<8;i++){
+            sb.append(String.format("%02x", h[i]));
+        }
+        if (mode != CodeIndexer.IndexMode.AST) sb.append('-').append(mode.name().toLowerCase());
+        return sb.append(".bin").toString();
+    }
+
+    static byte[] hash(byte[] content) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static Map<String, Entry> read(Path file, Path root) {
+        Map<String, Entry> entries = new HashMap<>();
+        if (!Files.isRegularFile(file)) return entries;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return entries;
+            int files = in.readInt();
+            for (int i=0;i<files;i++){
+                Entry e = new Entry(in.readUTF(), in.readLong(), in.readLong());
+                e.hash = new byte[in.readUnsignedByte()];
+                in.readFully(e.hash);
+                int n = in.readInt();
+                List<CodeIndexer.CodePointer> pointers = new ArrayList<>(n);
+                for (int j=0;j<n;j++){
+                    CodeIndexer.CodePointer cp = new CodeIndexer.CodePointer();
+                    cp.root = root;
+                    cp.file = e.path;
+                    cp.line = in.readInt();
+                    cp.endLine = in.readInt();
+                    cp.symbol = in.readUTF();
+                    cp.fullyQualifiedName = in.readUTF();
+                    String route = in.readUTF();
+                    cp.route = route.isEmpty() ? null : route;
+                    cp.bodyOffset = in.readLong();
+                    cp.bodyLength = in.readInt();
+                    pointers.add(cp);
+                }
+                e.pointers = pointers;
+                entries.put(e.path, e);
+            }
+        } catch (IOException | RuntimeException e) {
+            LOG.debugf("Ignoring unreadable index %s: %s", file, e);
+            entries.clear();
+        }
+        return entries;
+    }
+
+    static void write(Path file, List<Entry> entries) {
+        try {
+            Files.createDirectories(file.getParent());
+            Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                int files = 0;
+                for (Entry e : entries) if (e.hash != null) files++;
+                out.writeInt(files);
+                for (Entry e : entries) {
+                    if (e.hash == null) continue; // unreadable, retry next run
+                    out.writeUTF(e.path);
+                    out.writeLong(e.size);
+                    out.writeLong(e.modified);
+                    out.writeByte(e.hash.length);
+                    out.write(e.hash);
+                    out.writeInt(e.pointers.size());
+                    for (CodeIndexer.CodePointer cp : e.pointers) {
+                        out.writeInt(cp.line);
+                        out.writeInt(cp.endLine);
+                        out.writeUTF(cp.symbol);
+                        out.writeUTF(cp.fullyQualifiedName);
+                        out.writeUTF(cp.route != null ? cp.route : "");
+                        out.writeLong(cp.bodyOffset);
+                        out.writeInt(cp.bodyLength);
+                    }
+                }
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } catch (IOException e) {
+            LOG.warnf("Could not write code index %s: %s", file, e.getMessage());
+        }
+    }
+}
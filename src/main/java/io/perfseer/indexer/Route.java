@@ -0,0 +1,85 @@
+package io.perfseer.indexer;
+
+import java.util.List;
+
+/** HTTP routes from JAX-RS or Spring annotations, shared by both index modes. */
+final class Route {
+
+    /** Values that are not plain literals are null. */
+    static final class Annotation {
+        final String name;
+        final String path;
+        final boolean dynamic;
+        final String method;
+
+        Annotation(String name, String path, boolean dynamic, String method) {
+            this.name = name;
+            this.path = path;
+            this.dynamic = dynamic;
+            this.method = method;
+        }
+    }
+
+    private Route() {
+    }
+
+    static boolean relevant(String name) {
+        return name.equals("Path") || name.equals("RequestMapping") || httpMethod(name) != null;
+    }
+
+    /** {@code "GET /a/{id}"}, {@code "*"} for any method; null when not a handler or not a literal path. */
+    static String of(List<Annotation> typeAnnotations, List<Annotation> methodAnnotations) {
+        String prefix = null;
+        for (Annotation a : typeAnnotations) {
+            if (a.name.equals("Path") || a.name.equals("RequestMapping")) {
+                if (a.dynamic) return null;
+                prefix = a.path;
+                break;
+            }
+        }
+        String method = null;
+        String path = null;
+        for (Annotation a : methodAnnotations) {
+            if (a.dynamic) return null;
+            String m = httpMethod(a.name);
+            if (m != null) {
+                method = m;
+                if (a.name.endsWith("Mapping")) path = a.path;
+            } else if (a.name.equals("RequestMapping")) {
+                method = a.method != null ? a.method : "*";
+                path = a.path;
+            } else if (a.name.equals("Path")) {
+                path = a.path;
+            }
+        }
+        if (method == null) return null;
+        return method + " " + join(prefix, path);
+    }
+
+    private static String httpMethod(String annotation) {
+        switch (annotation) {
+            case "GET": case "GetMapping": return "GET";
+            case "POST": case "PostMapping": return "POST";
+            case "PUT": case "PutMapping": return "PUT";
+            case "DELETE": case "DeleteMapping": return "DELETE";
+            case "PATCH": case "PatchMapping": return "PATCH";
+            case "HEAD": return "HEAD";
+            case "OPTIONS": return "OPTIONS";
+            default: return null;
+        }
+    }
+
+    private static String join(String prefix, String path) {
+        StringBuilder sb = new StringBuilder();
+        append(sb, prefix);
+        append(sb, path);
+        return sb.length() == 0 ? "/" : sb.toString();
+    }
+
+    private static void append(StringBuilder sb, String segment) {
+        if (segment == null) return;
+        for (String s : segment.split("/")) {
+            if (!s.isEmpty()) sb.append('/').append(s);
+        }
+    }
+}
@@ -0,0 +1,456 @@
+package io.perfseer.indexer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/** Finds method declarations without an AST, named as the JavaParser path names them. One instance per thread. */
+final class SymbolScanner {
+
+    private static final int IDENT = 0;
+    private static final int SYMBOL = 1;
+    private static final int LITERAL = 2;
+
+    private char[] src;
+    private int len;
+    private int n;
+    private int[] kind = new int[1024];
+    private int[] start = new int[1024];
+    private int[] end = new int[1024];
+    private int[] line = new int[1024];
+
+    private String file;
+    private String packageName;
+    private List<CodeIndexer.CodePointer> out;
+
+    List<CodeIndexer.CodePointer> scan(String file, char[] source, int length) {
+        this.src = source;
+        this.len = length;
+        this.file = file;
+        this.packageName = "";
+        this.out = new ArrayList<>();
+        lex();
+        members(0, null, false, true);
+        return out;
+    }
+
+    // ---- lexer ----
+
+    private void lex() {
+        n = 0;
+        int ln = 1;
+        int i = 0;
+        while (i < len) {
+            char c = src[i];
+            if (c == '\n') { ln++; i++; continue; }
+            if (c == '\r') { if (i + 1 >= len || src[i + 1] != '\n') ln++; i++; continue; }
+            if (c == ' ' || c == '\t' || c == '\f') { i++; continue; }
+            if (c == '/' && i + 1 < len && src[i + 1] == '/') {
+                while (i < len && src[i] != '\n' && src[i] != '\r') i++;
+                continue;
+            }
+            if (c == '/' && i + 1 < len && src[i + 1] == '*') {
+                i += 2;
+                while (i < len && !(src[i] == '*' && i + 1 < len && src[i + 1] == '/')) {
+                    if (src[i] == '\n' || (src[i] == '\r' && (i + 1 >= len || src[i + 1] != '\n'))) ln++;
+                    i++;
+                }
+                i = Math.min(len, i + 2);
+                continue;
+            }
+            int from = i;
+            int fromLine = ln;
+            int k;
+            if (c == '"' && i + 2 < len && src[i + 1] == '"' && src[i + 2] == '"') {
+                i += 3;
+                while (i < len && !(src[i] == '"' && i + 2 < len && src[i + 1] == '"' && src[i + 2] == '"')) {
+                    if (src[i] == '\\') i++;
+                    else if (src[i] == '\n' || (src[i] == '\r' && (i + 1 >= len || src[i + 1] != '\n'))) ln++;
+                    i++;
+                }
+                i = Math.min(len, i + 3);
+                k = LITERAL;
+            } else if (c == '"' || c == '\'') {
+                i++;
+                while (i < len && src[i] != c && src[i] != '\n') {
+                    if (src[i] == '\\') i++;
+                    i++;
+                }
+                i = Math.min(len, i + 1);
+                k = LITERAL;
+            } else if (Character.isJavaIdentifierStart(c)) {
+                while (i < len && Character.isJavaIdentifierPart(src[i])) i++;
+                if (i - from == 3 && src[from] == 'n' && src[from + 1] == 'o' && src[from + 2] == 'n'
+                        && i + 7 <= len && new String(src, i, 7).equals("-sealed")) {
+                    i += 7;
+                }
+                k = IDENT;
+            } else if (c >= '0' && c <= '9' || (c == '.' && i + 1 < len && src[i + 1] >= '0' && src[i + 1] <= '9')) {
+                i++;
+                while (i < len) {
+                    char d = src[i];
+                    if (Character.isLetterOrDigit(d) || d == '_' || d == '.') i++;
+                    else if ((d == '+' || d == '-') && (src[i - 1] == 'e' || src[i - 1] == 'E' || src[i - 1] == 'p' || src[i - 1] == 'P')
+                            && !(src[from] == '0' && from + 1 < i && (src[from + 1] == 'x' || src[from + 1] == 'X') && src[i - 1] != 'p' && src[i - 1] != 'P')) i++;
+                    else break;
+                }
+                k = LITERAL;
+            } else {
+                i++;
+                k = SYMBOL;
+            }
+            add(k, from, i, fromLine);
+        }
+    }
+
+    private void add(int k, int from, int to, int ln) {
+        if (n == kind.length) {
+            kind = Arrays.copyOf(kind, n * 2);
+            start = Arrays.copyOf(start, n * 2);
+            end = Arrays.copyOf(end, n * 2);
+            line = Arrays.copyOf(line, n * 2);
+        }
+        kind[n] = k;
+        start[n] = from;
+        end[n] = to;
+        line[n] = ln;
+        n++;
+    }
+
+    private boolean sym(int i, char c) {
+        return i < n && kind[i] == SYMBOL && src[start[i]] == c;
+    }
+
+    private boolean is(int i, String word) {
+        if (i >= n || kind[i] != IDENT || end[i] - start[i] != word.length()) return false;
+        for (int j=0;j<word.length();j++){
+            if (src[start[i] + j] != word.charAt(j)) return false;
+        }
+        return true;
+    }
+
+    private String text(int i) {
+        return new String(src, start[i], end[i] - start[i]);
+    }
+
+    private static boolean isModifier(String s) {
+        switch (s) {
+            case "public": case "protected": case "private": case "static": case "final": case "abstract":
+            case "native": case "synchronized": case "transient": case "volatile": case "strictfp":
+            case "default": case "sealed": case "non-sealed":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // ---- structure ----
+
+    /** Returns the index of the closing brace, or {@code n}. */
+    private int members(int i, Scope owner, boolean annotation, boolean topLevel) {
+        while (i < n) {
+            if (sym(i, '}')) {
+                if (!topLevel) return i;
+                i++;
+                continue;
+            }
+            if (sym(i, ';')) { i++; continue; }
+            if (topLevel && (is(i, "package") || is(i, "import"))) {
+                boolean pkg = is(i, "package");
+                StringBuilder sb = new StringBuilder();
+                i++;
+                while (i < n && !sym(i, ';')) {
+                    if (pkg && !is(i, "static")) sb.append(src, start[i], end[i] - start[i]);
+                    i++;
+                }
+                if (pkg) packageName = sb.toString();
+                i++;
+                continue;
+            }
+            i = member(i, owner, annotation);
+        }
+        return n;
+    }
+
+    private int member(int first, Scope owner, boolean annotation) {
+        int i = first;
+        int header = 0;          // non-annotation, non-modifier tokens before the first '('
+        int nameIdx = -1;
+        boolean typeParams = false;
+        List<Route.Annotation> routeAnnotations = List.of();
+        while (i < n) {
+            if (sym(i, '@') && !is(i + 1, "interface")) {
+                Route.Annotation a = routeAnnotation(i);
+                if (a != null) {
+                    if (routeAnnotations.isEmpty()) routeAnnotations = new ArrayList<>(2);
+                    routeAnnotations.add(a);
+                }
+                i = skipAnnotation(i);
+                continue;
+            }
+            if (sym(i, '@') && is(i + 1, "interface")) {
+                return typeDeclaration(i + 1, owner, routeAnnotations);
+            }
+            if (kind[i] == IDENT && header == 0 && isModifier(text(i))) { i++; continue; }
+            if (kind[i] == IDENT && (is(i, "class") || is(i, "interface") || is(i, "enum"))) {
+                return typeDeclaration(i, owner, routeAnnotations);
+            }
+            if (is(i, "record") && i + 1 < n && kind[i + 1] == IDENT && (sym(i + 2, '(') || sym(i + 2, '<'))) {
+                return typeDeclaration(i, owner, routeAnnotations);
+            }
+            if (header == 0 && !typeParams && sym(i, '<')) {
+                i = skipAngles(i);
+                typeParams = true;
+                continue;
+            }
+            if (sym(i, '(')) {
+                nameIdx = i - 1;
+                break;
+            }
+            if (sym(i, '=')) {
+                // field with initializer
+                return expression(i + 1, owner) + 1;
+            }
+            if (sym(i, ';')) return i + 1;
+            if (sym(i, '{')) {
+                // initializer block or compact record constructor
+                return block(i + 1, owner) + 1;
+            }
+            if (sym(i, '}')) return i;
+            header++;
+            i++;
+        }
+        if (nameIdx < 0) return n;
+        // header counts the name itself; a method also has a result type before it
+        boolean method = !annotation && header >= 2 && kind[nameIdx] == IDENT;
+        i = code(nameIdx + 2, ')', owner) + 1;
+        while (i < n && !sym(i, '{') && !sym(i, ';') && !sym(i, '}')) {
+            if (sym(i, '(')) i = code(i + 1, ')', owner);
+            else if (sym(i, '@')) { i = skipAnnotation(i); continue; }
+            i++;
+        }
+        // recorded before the body so nested methods follow it, in document order
+        CodeIndexer.CodePointer cp = method ? record(first, nameIdx, owner, routeAnnotations) : null;
+        int last = i;
+        if (sym(i, '{')) last = block(i + 1, owner);
+        if (cp != null) cp.endLine = line[Math.min(last, n - 1)];
+        return sym(last, '}') || sym(last, ';') ? last + 1 : last;
+    }
+
+    private CodeIndexer.CodePointer record(int first, int nameIdx, Scope owner, List<Route.Annotation> routeAnnotations) {
+        String name = text(nameIdx);
+        CodeIndexer.CodePointer cp = new CodeIndexer.CodePointer();
+        cp.file = file;
+        cp.line = line[first];
+        cp.symbol = owner != null ? owner.name + "#" + name : name;
+        String className = owner != null ? owner.name : "Unknown";
+        cp.fullyQualifiedName = packageName.isEmpty() ? className + "." + name : packageName + "." + className + "." + name;
+        if (!routeAnnotations.isEmpty()) cp.route = Route.of(owner != null ? owner.routeAnnotations : List.of(), routeAnnotations);
+        out.add(cp);
+        return cp;
+    }
+
+    private int typeDeclaration(int kw, Scope owner, List<Route.Annotation> routeAnnotations) {
+        boolean isClass = is(kw, "class") || is(kw, "interface");
+        boolean isEnum = is(kw, "enum");
+        boolean isAnnotation = is(kw, "interface") && sym(kw - 1, '@');
+        String name = kw + 1 < n ? text(kw + 1) : "";
+        Scope inner = isClass && !isAnnotation ? new Scope(name, routeAnnotations) : owner;
+        int i = kw + 2;
+        while (i < n && !sym(i, '{')) {
+            if (sym(i, '(')) i = code(i + 1, ')', owner);
+            if (sym(i, ';')) return i + 1;
+            i++;
+        }
+        if (i >= n) return n;
+        int close = isEnum ? enumBody(i + 1, inner) : members(i + 1, inner, isAnnotation, false);
+        return close + 1;
+    }
+
+    /** Methods of constant bodies go last, as JavaParser reports them. */
+    private int enumBody(int i, Scope owner) {
+        int mark = out.size();
+        while (i < n) {
+            if (sym(i, '@')) { i = skipAnnotation(i); continue; }
+            if (sym(i, ';')) {
+                int constants = out.size() - mark;
+                int close = members(i + 1, owner, false, false);
+                Collections.rotate(out.subList(mark, out.size()), -constants);
+                return close;
+            }
+            if (sym(i, '}')) return i;
+            if (sym(i, '(')) { i = code(i + 1, ')', owner) + 1; continue; }
+            if (sym(i, '{')) { i = members(i + 1, owner, false, false) + 1; continue; }
+            i++;
+        }
+        return n;
+    }
+
+    private int block(int i, Scope owner) {
+        return code(i, '}', owner);
+    }
+
+    private int expression(int i, Scope owner) {
+        return code(i, ';', owner);
+    }
+
+    /** Returns the index of the unmatched {@code close}. */
+    private int code(int i, char close, Scope owner) {
+        while (i < n) {
+            if (kind[i] == SYMBOL) {
+                char c = src[start[i]];
+                if (c == close) return i;
+                if (c == '}' && close != '}') return i;
+                switch (c) {
+                    case '(': i = code(i + 1, ')', owner) + 1; continue;
+                    case '[': i = code(i + 1, ']', owner) + 1; continue;
+                    case '{':
+                        i = (anonymousBody(i) ? members(i + 1, owner, false, false) : code(i + 1, '}', owner)) + 1;
+                        continue;
+                    default:
+                        i++;
+                        continue;
+                }
+            }
+            if (kind[i] == IDENT && !sym(i - 1, '.') && !sym(i - 1, '@')
+                    && ((is(i, "class") || is(i, "interface") || is(i, "enum")) && i + 1 < n && kind[i + 1] == IDENT
+                        || is(i, "record") && i + 1 < n && kind[i + 1] == IDENT && (sym(i + 2, '(') || sym(i + 2, '<')))) {
+                i = typeDeclaration(i, owner, List.of());
+                continue;
+            }
+            i++;
+        }
+        return n;
+    }
+
+    private boolean anonymousBody(int brace) {
+        if (!sym(brace - 1, ')')) return false;
+        int depth = 0;
+        int i = brace - 1;
+        for (;i>=0;i--){
+            if (sym(i, ')')) depth++;
+            else if (sym(i, '(') && --depth == 0) break;
+        }
+        i--;
+        // type name: qualified identifiers with optional type arguments
+        while (i >= 0) {
+            if (sym(i, '>')) {
+                int d = 0;
+                for (;i>=0;i--){
+                    if (sym(i, '>')) d++;
+                    else if (sym(i, '<') && --d == 0) break;
+                }
+                i--;
+                continue;
+            }
+            if (kind[i] == IDENT && !is(i, "new")) {
+                i--;
+                if (sym(i, '.')) { i--; continue; }
+                break;
+            }
+            break;
+        }
+        return is(i, "new");
+    }
+
+    private Route.Annotation routeAnnotation(int at) {
+        int i = at + 1;
+        int nameIdx = i;
+        while (i < n && kind[i] == IDENT) {
+            nameIdx = i++;
+            if (sym(i, '.') && i + 1 < n && kind[i + 1] == IDENT) i++;
+            else break;
+        }
+        String name = text(nameIdx);
+        if (!Route.relevant(name)) return null;
+        if (!sym(i, '(')) return new Route.Annotation(name, null, false, null);
+        int close = code(i + 1, ')', null);
+        String path = null;
+        boolean dynamic = false;
+        String method = null;
+        if (kind[i + 1] == IDENT && sym(i + 2, '=')) {
+            int p = i + 1;
+            while (p < close) {
+                int valueEnd = valueEnd(p + 2, close);
+                String key = text(p);
+                if (key.equals("value") || key.equals("path")) {
+                    path = literal(p + 2, valueEnd);
+                    dynamic = path == null;
+                }
+                else if (key.equals("method")) method = constant(p + 2, valueEnd);
+                p = valueEnd + 1;
+            }
+        } else if (close > i + 1) {
+            path = literal(i + 1, close);
+            dynamic = path == null;
+        }
+        return new Route.Annotation(name, path, dynamic, method);
+    }
+
+    private int valueEnd(int from, int close) {
+        int depth = 0;
+        for (int i=from;i<close;i++){
+            if (sym(i, '(') || sym(i, '{') || sym(i, '[')) depth++;
+            else if (sym(i, ')') || sym(i, '}') || sym(i, ']')) depth--;
+            else if (depth == 0 && sym(i, ',')) return i;
+        }
+        return close;
+    }
+
+    private int[] firstElement(int from, int to) {
+        if (sym(from, '{') && to > from) return new int[]{from + 1, valueEnd(from + 1, to - 1)};
+        return new int[]{from, to};
+    }
+
+    /** As JavaParser's {@code StringLiteralExpr.getValue()}. */
+    private String literal(int from, int to) {
+        int[] r = firstElement(from, to);
+        if (r[1] - r[0] != 1 || kind[r[0]] != LITERAL || src[start[r[0]]] != '"') return null;
+        int s = start[r[0]];
+        int e = end[r[0]];
+        if (e - s >= 3 && src[s + 1] == '"' && src[s + 2] == '"') return null; // text block
+        return new String(src, s + 1, e - s - 2);
+    }
+
+    private String constant(int from, int to) {
+        int[] r = firstElement(from, to);
+        if (r[1] <= r[0]) return null;
+        for (int i=r[0];i<r[1];i++){
+            boolean expectIdent = (i - r[0]) % 2 == 0;
+            if (expectIdent ? kind[i] != IDENT : !sym(i, '.')) return null;
+        }
+        return (r[1] - r[0]) % 2 == 1 ? text(r[1] - 1) : null;
+    }
+
+    private int skipAnnotation(int i) {
+        i++; // '@'
+        while (i < n && kind[i] == IDENT) {
+            i++;
+            if (sym(i, '.') && i + 1 < n && kind[i + 1] == IDENT) i++;
+            else break;
+        }
+        if (sym(i, '(')) i = code(i + 1, ')', null) + 1;
+        return i;
+    }
+
+    private static final class Scope {
+        final String name;
+        final List<Route.Annotation> routeAnnotations;
+
+        Scope(String name, List<Route.Annotation> routeAnnotations) {
+            this.name = name;
+            this.routeAnnotations = routeAnnotations;
+        }
+    }
+
+    private int skipAngles(int i) {
+        int depth = 0;
+        for (;i<n;i++){
+            if (sym(i, '<')) depth++;
+            else if (sym(i, '>') && --depth == 0) return i + 1;
+            else if (sym(i, ';') || sym(i, '{') || sym(i, '(')) return i;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,11 @@
+package io.perfseer.ingest;
+
+import java.io.IOException;
+
+interface BodyDecoder {
+
+    /** The array may be reused by the caller once this returns. */
+    void feed(byte[] buf, int offset, int length) throws IOException;
+
+    void end() throws IOException;
+}
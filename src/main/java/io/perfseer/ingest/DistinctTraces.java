@@ -0,0 +1,51 @@
+package io.perfseer.ingest;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/** Forwards each trace id once per fetch, across slice retries and slice boundaries. */
+final class DistinctTraces {
+
+    private final TraceSink delegate;
+    private final Set<String> crossing = new HashSet<>();
+
+    DistinctTraces(TraceSink delegate) {
+        this.delegate = delegate;
+    }
+
+    /** Use one sink across the slice's retries, under this object's lock. */
+    TraceSink slice(long start, long end) {
+        return new Slice(start, end);
+    }
+
+    private final class Slice implements TraceSink {
+        private final long start;
+        private final long end;
+        private final Set<String> seen = new HashSet<>();
+
+        Slice(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public void onTrace(Trace trace) {
+            if (trace.traceId != null && !(crosses(trace) ? crossing : seen).add(trace.traceId)) return;
+            delegate.onTrace(trace);
+        }
+
+        /** Jaeger's query bounds are inclusive. */
+        private boolean crosses(Trace trace) {
+            for (int i=0;i<trace.size();i++){
+                long t = trace.span(i).startTime;
+                if (t <= start || t >= end) return true;
+            }
+            return false;
+        }
+
+        @Override
+        public String[] dimensions() {
+            return delegate.dimensions();
+        }
+    }
+}
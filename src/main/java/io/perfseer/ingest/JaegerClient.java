@@ -1,31 +1,93 @@
 package io.perfseer.ingest;
 
 import io.perfseer.config.PerfConfig;
+import io.perfseer.exec.WorkerPools;
+import io.perfseer.metrics.PipelineMetrics;
+import io.opentelemetry.instrumentation.annotations.SpanAttribute;
+import io.opentelemetry.instrumentation.annotations.WithSpan;
+import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.SocketAddress;
 import io.vertx.ext.web.client.WebClientOptions;
+import io.vertx.grpc.client.GrpcClient;
+import io.vertx.grpc.client.GrpcClientOptions;
 import io.vertx.mutiny.core.Vertx;
+import io.vertx.mutiny.core.buffer.Buffer;
+import io.vertx.mutiny.ext.web.client.HttpRequest;
 import io.vertx.mutiny.ext.web.client.HttpResponse;
 import io.vertx.mutiny.ext.web.client.WebClient;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import org.jboss.logging.Logger;
 
+/** Fetches spans from Jaeger query over its HTTP JSON API or the {@code api_v2} gRPC QueryService. */
 @ApplicationScoped
 public class JaegerClient {
+    private static final Logger LOG = Logger.getLogger(JaegerClient.class);
+
+    private static final long GRPC_MAX_MESSAGE_SIZE = 64L << 20;
+
+    public enum Protocol {
+        JSON,
+        GRPC
+    }
+
     private final WebClient client;
+    private final GrpcClient grpc; // null unless perf.jaeger-protocol=grpc
+    private final SocketAddress grpcServer;
     private final PerfConfig cfg;
     private final URI base;
+    private final ResponseCache cache;
+    private final PipelineMetrics metrics;
+    private final WorkerPools pools;
 
     @Inject
-    public JaegerClient(Vertx vertx, PerfConfig cfg) {
+    public JaegerClient(Vertx vertx, PerfConfig cfg, PipelineMetrics metrics, WorkerPools pools) {
         this.cfg = cfg;
+        this.metrics = metrics;
+        this.pools = pools;
         this.base = URI.create(cfg.jaegerUrl());
         WebClientOptions options = new WebClientOptions()
                 .setDefaultHost(base.getHost())
                 .setDefaultPort(base.getPort() > 0 ? base.getPort() : ("https".equals(base.getScheme()) ? 443 : 80))
-                .setSsl("https".equalsIgnoreCase(base.getScheme()));
+                .setSsl("https".equalsIgnoreCase(base.getScheme()))
+                // enough connections for every slice a batch score can have in flight
+                .setMaxPoolSize(Math.max(1, cfg.fetchMaxInFlight()) * Math.max(1, cfg.batchMaxServicesInFlight()));
         this.client = WebClient.create(vertx, options);
+        if (cfg.jaegerProtocol() == Protocol.GRPC) {
+            boolean tls = "https".equalsIgnoreCase(base.getScheme());
+            HttpClientOptions transport = new HttpClientOptions()
+                    .setSsl(tls)
+                    .setUseAlpn(tls)
+                    .setHttp2ClearTextUpgrade(false);
+            this.grpc = GrpcClient.client(vertx.getDelegate(),
+                    new GrpcClientOptions().setTransportOptions(transport).setMaxMessageSize(GRPC_MAX_MESSAGE_SIZE));
+            this.grpcServer = SocketAddress.inetSocketAddress(cfg.jaegerGrpcPort(), base.getHost());
+        } else {
+            this.grpc = null;
+            this.grpcServer = null;
+        }
+        this.cache = cfg.fetchCacheMaxBytes() > 0
+                ? new ResponseCache(cfg.fetchCacheTtl().toNanos(), cfg.fetchCacheMaxBytes())
+                : null;
+        if (cache != null) metrics.cache("jaeger-response", cache, ResponseCache::stats);
+    }
+
+    public Map<String, Object> cacheStats() {
+        return cache != null ? cache.stats() : Map.of();
     }
 
     public Uni<JsonObject> fetchTraces(String service, String lookback) {
@@ -33,20 +95,231 @@ public class JaegerClient {
     }
 
     public Uni<JsonObject> fetchTraces(String service, String lookback, Integer limit, Boolean prettyPrint) {
-        String path = base.getPath() + cfg.jaegerQueryPath();
-        var request = client.get(path)
-                .addQueryParam("service", service != null ? service : cfg.serviceName())
-                .addQueryParam("lookback", lookback != null ? lookback : cfg.lookbackDefault());
+        return fetchTraces(service, lookback, limit, prettyPrint, SpanFilter.ALL);
+    }
 
-        if (limit != null) {
-            request.addQueryParam("limit", String.valueOf(limit));
+    /** Raw HTTP response; only what Jaeger evaluates of {@code filter} applies. */
+    public Uni<JsonObject> fetchTraces(String service, String lookback, Integer limit, Boolean prettyPrint, SpanFilter filter) {
+        String key = "traces " + (service != null ? service : cfg.serviceName()) + " "
+                + (lookback != null ? lookback : cfg.lookbackDefault()) + " " + limit + " " + prettyPrint
+                + " " + filter.queryParams();
+        return cached(key, () -> query(service, lookback, limit, prettyPrint, filter).send()
+                        .onItem().transformToUni(response -> body(response, "Jaeger query")))
+                .onItem().transform(body -> body.length > 0 ? new JsonObject(io.vertx.core.buffer.Buffer.buffer(body)) : null);
+    }
+
+    public Uni<List<String>> services() {
+        if (grpc != null) {
+            return cached("services grpc", () -> Uni.createFrom().completionStage(() -> JaegerGrpc.unary(grpc, grpcServer,
+                            JaegerGrpc.GET_SERVICES, new byte[0], "Jaeger service list").toCompletionStage()))
+                    .onItem().transform(JaegerGrpc::services);
+        }
+        return cached("services", () -> client.get(base.getPath() + cfg.jaegerServicesPath()).send()
+                        .onItem().transformToUni(response -> body(response, "Jaeger service list")))
+                .onItem().transform(body -> {
+                    JsonArray data = body.length > 0
+                            ? new JsonObject(io.vertx.core.buffer.Buffer.buffer(body)).getJsonArray("data") : null;
+                    List<String> services = new ArrayList<>();
+                    if (data != null) {
+                        for (int i=0;i<data.size();i++){
+                            services.add(data.getString(i));
+                        }
+                    }
+                    Collections.sort(services);
+                    return services;
+                });
+    }
+
+    private static Uni<byte[]> body(HttpResponse<Buffer> response, String what) {
+        if (response.statusCode() / 100 != 2) {
+            return Uni.createFrom().failure(new IllegalStateException(what + " failed with HTTP " + response.statusCode()));
         }
+        Buffer body = response.body();
+        return Uni.createFrom().item(body != null ? body.getBytes() : new byte[0]);
+    }
+
+    public <S extends TraceSink> Uni<S> fetchSpans(String service, String lookback, S sink) {
+        return fetchSpans(service, lookback, null, sink);
+    }
+
+    public <S extends TraceSink> Uni<S> fetchSpans(String service, String lookback, Integer limit, S sink) {
+        return fetchSpans(service, lookback, limit, SpanFilter.ALL, sink);
+    }
+
+    public <S extends TraceSink> Uni<S> fetchSpans(String service, String lookback, Integer limit, SpanFilter filter, S sink) {
+        long end = Lookback.nowMicros();
+        long start = end - Lookback.toMicros(lookback != null ? lookback : cfg.lookbackDefault());
+        return fetchSpans(service, start, end, limit, filter, sink);
+    }
+
+    public <S extends TraceSink> Uni<S> fetchSpans(String service, long startMicros, long endMicros, Integer limit, S sink) {
+        return fetchSpans(service, startMicros, endMicros, limit, SpanFilter.ALL, sink);
+    }
+
+    /** Streams every trace of {@code [startMicros, endMicros)} into {@code sink}, slice by slice, never concurrently. */
+    @WithSpan("jaeger.fetchSpans")
+    public <S extends TraceSink> Uni<S> fetchSpans(@SpanAttribute("service") String service, long startMicros, long endMicros,
+                                                   Integer limit, SpanFilter filter, S sink) {
+        DistinctTraces distinct = new DistinctTraces(sink);
+        return Multi.createFrom().iterable(slices(startMicros, endMicros))
+                .onItem().transformToUni(slice -> fetchSlice(service, slice[0], slice[1], limit, filter, distinct))
+                .merge(Math.max(1, cfg.fetchMaxInFlight()))
+                .collect().last()
+                .onItem().transform(ignored -> sink);
+    }
+
+    private Uni<Void> fetchSlice(String service, long start, long end, Integer limit, SpanFilter filter, DistinctTraces sink) {
+        String svc = service != null ? service : cfg.serviceName();
+        // the body depends only on what was pushed down; the rest of the filter is applied per decode
+        String key = "slice " + cfg.jaegerProtocol() + " " + svc + " " + start + " " + end + " " + limit + " " + filter.queryParams();
+        TraceSink slice = sink.slice(start, end);
+        Uni<Void> attempt = Uni.createFrom().deferred(() -> {
+                    TimedSink counted = new TimedSink(slice);
+                    TraceSinkBodyCodec.Progress progress = new TraceSinkBodyCodec.Progress();
+                    ResponseCache.Lookup cached = cache != null ? cache.lookup(key) : null;
+                    Uni<Void> body;
+                    if (cached != null && cached.body != null) {
+                        body = decode(cached.body, filter, counted, sink, progress);
+                    } else if (cached != null && cached.pending != null) {
+                        body = Uni.createFrom().completionStage(cached.pending::copy)
+                                .onItem().transformToUni(bytes -> {
+                                    if (bytes == null) {
+                                        return sliceRequest(svc, start, end, limit, filter, counted, sink, key, null, progress);
+                                    }
+                                    cache.saved(bytes.length);
+                                    return decode(bytes, filter, counted, sink, progress);
+                                });
+                    } else {
+                        body = sliceRequest(svc, start, end, limit, filter, counted, sink, key,
+                                cached != null ? cached.owned : null, progress);
+                    }
+                    return body.onItem().invoke(() -> {
+                        metrics.spans("jaeger", counted.spans);
+                        metrics.record(PipelineMetrics.Stage.DECODE, progress.nanos - counted.nanos);
+                        metrics.record(PipelineMetrics.Stage.AGGREGATE, counted.nanos);
+                        if (limit != null && counted.traces >= limit) {
+                            LOG.warnf("Slice %d..%d of %s returned %d traces, the limit; shorten perf.fetch-slice for complete data",
+                                    start, end, svc, counted.traces);
+                        }
+                    });
+                });
+        return cfg.fetchRetries() > 0 ? attempt.onFailure().retry().atMost(cfg.fetchRetries()) : attempt;
+    }
+
+    private Uni<Void> sliceRequest(String service, long start, long end, Integer limit, SpanFilter filter, TraceSink counted,
+                                   Object lock, String key, CompletableFuture<byte[]> owned,
+                                   TraceSinkBodyCodec.Progress progress) {
+        long t0 = System.nanoTime();
+        Uni<Void> body = grpc != null
+                ? grpcSlice(service, start, end, limit, filter, counted, lock, owned != null ? cfg.fetchCacheMaxBytes() : 0, progress)
+                : httpSlice(service, start, end, limit, filter, counted, lock, owned != null ? cfg.fetchCacheMaxBytes() : 0, progress);
+        Uni<Void> fetched = body.onItem().invoke(() -> {
+            metrics.record(PipelineMetrics.Stage.JAEGER, System.nanoTime() - t0);
+            metrics.bytes(progress.bytes);
+            if (owned != null && progress.body != null) {
+                cache.complete(key, owned, progress.body);
+            } else if (owned != null) {
+                cache.uncached(key, owned, progress.bytes);
+            }
+        });
+        if (owned == null) return fetched;
+        return fetched
+                .onFailure().invoke(failure -> cache.fail(key, owned, failure))
+                .onCancellation().invoke(() -> cache.fail(key, owned, new CancellationException()));
+    }
+
+    private Uni<Void> httpSlice(String service, long start, long end, Integer limit, SpanFilter filter, TraceSink counted,
+                                Object lock, long keepBody, TraceSinkBodyCodec.Progress progress) {
+        return request(service, limit, filter)
+                .addQueryParam("start", String.valueOf(start))
+                .addQueryParam("end", String.valueOf(end))
+                .as(TraceSinkBodyCodec.of(counted, filter, lock, keepBody, progress, pools.compute()))
+                .send()
+                .onItem().transformToUni(response -> response.statusCode() / 100 != 2
+                        ? Uni.createFrom().failure(new IllegalStateException(
+                                "Jaeger query " + start + ".." + end + " failed with HTTP " + response.statusCode()))
+                        : Uni.createFrom().voidItem());
+    }
+
+    private Uni<Void> grpcSlice(String service, long start, long end, Integer limit, SpanFilter filter, TraceSink counted,
+                                Object lock, long keepBody, TraceSinkBodyCodec.Progress progress) {
+        byte[] request = JaegerGrpc.findTraces(service, start, end, limit, filter);
+        return Uni.createFrom().completionStage(() -> JaegerGrpc.stream(grpc, grpcServer, JaegerGrpc.FIND_TRACES, request,
+                "Jaeger FindTraces " + start + ".." + end,
+                () -> TraceSinkBodyCodec.stream(new JaegerProtoDecoder(counted, filter), lock, keepBody, progress, pools.compute()))
+                .toCompletionStage());
+    }
+
+    private Uni<Void> decode(byte[] body, SpanFilter filter, TraceSink sink, Object lock, TraceSinkBodyCodec.Progress progress) {
+        return Uni.createFrom().<Void>item(() -> {
+            synchronized (lock) {
+                long t0 = System.nanoTime();
+                BodyDecoder decoder = grpc != null ? new JaegerProtoDecoder(sink, filter) : new JaegerJsonDecoder(sink, filter);
+                try {
+                    decoder.feed(body, 0, body.length);
+                    decoder.end();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                progress.nanos += System.nanoTime() - t0;
+            }
+            return null;
+        }).runSubscriptionOn(pools.compute());
+    }
+
+    private Uni<byte[]> cached(String key, Supplier<Uni<byte[]>> upstream) {
+        if (cache == null) return upstream.get();
+        return Uni.createFrom().deferred(() -> {
+            ResponseCache.Lookup cached = cache.lookup(key);
+            if (cached.body != null) return Uni.createFrom().item(cached.body);
+            if (cached.pending != null) {
+                return Uni.createFrom().completionStage(cached.pending::copy)
+                        .onItem().invoke(bytes -> cache.saved(bytes.length));
+            }
+            return upstream.get()
+                    .onItem().invoke(bytes -> cache.complete(key, cached.owned, bytes))
+                    .onFailure().invoke(failure -> cache.fail(key, cached.owned, failure))
+                    .onCancellation().invoke(() -> cache.fail(key, cached.owned, new CancellationException()));
+        });
+    }
+
+    List<long[]> slices(long startMicros, long endMicros) {
+        long width = cfg.fetchSlice().toNanos() / 1000;
+        List<long[]> slices = new ArrayList<>();
+        if (width <= 0 || endMicros - startMicros <= width) {
+            slices.add(new long[]{startMicros, endMicros});
+            return slices;
+        }
+        long from = startMicros;
+        while (from < endMicros) {
+            long to = Math.min(endMicros, Math.floorDiv(from, width) * width + width);
+            slices.add(new long[]{from, to});
+            from = to;
+        }
+        return slices;
+    }
+
+    private HttpRequest<Buffer> query(String service, String lookback, Integer limit, Boolean prettyPrint, SpanFilter filter) {
+        var request = request(service, limit, filter)
+                .addQueryParam("lookback", lookback != null ? lookback : cfg.lookbackDefault());
 
         if (prettyPrint != null && prettyPrint) {
             request.addQueryParam("prettyPrint", "true");
         }
+        return request;
+    }
 
-        return request.send()
-                .onItem().transform(HttpResponse::bodyAsJsonObject);
+    private HttpRequest<Buffer> request(String service, Integer limit, SpanFilter filter) {
+        String path = base.getPath() + cfg.jaegerQueryPath();
+        var request = client.get(path)
+                .addQueryParam("service", service != null ? service : cfg.serviceName());
+
+        if (limit != null) {
+            request.addQueryParam("limit", String.valueOf(limit));
+        }
+        for (Map.Entry<String, String> param : filter.queryParams().entrySet()) {
+            request.addQueryParam(param.getKey(), param.getValue());
+        }
+        return request;
     }
 }
@@ -0,0 +1,101 @@
+package io.perfseer.ingest;
+
+import io.vertx.core.Future;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.net.SocketAddress;
+import io.vertx.core.streams.WriteStream;
+import io.vertx.grpc.client.GrpcClient;
+import io.vertx.grpc.client.GrpcClientResponse;
+import io.vertx.grpc.common.GrpcStatus;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/** Calls of Jaeger's {@code api_v2} QueryService on raw protobuf messages, without generated stubs. */
+final class JaegerGrpc {
+
+    static final String FIND_TRACES = "jaeger.api_v2.QueryService/FindTraces";
+    static final String GET_SERVICES = "jaeger.api_v2.QueryService/GetServices";
+
+    private JaegerGrpc() {
+    }
+
+    /** {@code start} and {@code end} are epoch microseconds, both inclusive. */
+    static byte[] findTraces(String service, long start, long end, Integer limit, SpanFilter filter) {
+        ProtoWriter query = new ProtoWriter().string(1, service);
+        if (filter.exactOperation() != null) query.string(2, filter.exactOperation());
+        for (Map.Entry<String, String> tag : filter.equalTags().entrySet()) {
+            query.message(3, new ProtoWriter().string(1, tag.getKey()).string(2, tag.getValue()));
+        }
+        query.message(4, timestamp(start));
+        query.message(5, timestamp(end));
+        if (filter.minDuration() > 0) query.message(6, timestamp(filter.minDuration()));
+        if (limit != null) query.varint(8, limit);
+        return new ProtoWriter().message(1, query).toByteArray();
+    }
+
+    private static ProtoWriter timestamp(long micros) {
+        ProtoWriter t = new ProtoWriter();
+        long seconds = Math.floorDiv(micros, 1_000_000L);
+        long nanos = Math.floorMod(micros, 1_000_000L) * 1000;
+        if (seconds != 0) t.varint(1, seconds);
+        if (nanos != 0) t.varint(2, nanos);
+        return t;
+    }
+
+    static List<String> services(byte[] response) {
+        List<String> services = new ArrayList<>();
+        ProtoReader in = new ProtoReader().reset(response, 0, response.length);
+        while (in.hasRemaining()) {
+            int tag = in.readTag();
+            if (tag == (1 << 3 | ProtoReader.LENGTH_DELIMITED)) {
+                int len = in.readLength();
+                services.add(new String(response, in.position(), len, StandardCharsets.UTF_8));
+                in.skip(len);
+            } else {
+                in.skipField(tag);
+            }
+        }
+        Collections.sort(services);
+        return services;
+    }
+
+    /** Completes once the response stream has ended; fails on any status but OK. */
+    static Future<Void> stream(GrpcClient client, SocketAddress server, String method, byte[] request, String what,
+                               Supplier<WriteStream<Buffer>> into) {
+        return send(client, server, method, request)
+                .compose(response -> response.pipeTo(into.get())
+                        .transform(piped -> checked(response, what).compose(ok -> piped.succeeded()
+                                ? Future.<Void>succeededFuture() : Future.<Void>failedFuture(piped.cause()))));
+    }
+
+    static Future<byte[]> unary(GrpcClient client, SocketAddress server, String method, byte[] request, String what) {
+        return send(client, server, method, request)
+                .compose(response -> response.last()
+                        .transform(last -> checked(response, what).compose(ok -> !last.succeeded()
+                                ? Future.<byte[]>failedFuture(last.cause())
+                                : Future.succeededFuture(last.result() != null ? last.result().getBytes() : new byte[0]))));
+    }
+
+    private static Future<GrpcClientResponse<Buffer, Buffer>> send(GrpcClient client, SocketAddress server, String method,
+                                                                   byte[] request) {
+        return client.request(server).compose(call -> {
+            call.fullMethodName(method);
+            return call.send(Buffer.buffer(request));
+        });
+    }
+
+    private static Future<Void> checked(GrpcClientResponse<Buffer, Buffer> response, String what) {
+        GrpcStatus status = response.status();
+        if (status == GrpcStatus.OK) return Future.succeededFuture();
+        if (status == null) {
+            return Future.failedFuture(new IllegalStateException(what + " got no gRPC status; is perf.jaeger-grpc-port Jaeger's gRPC port?"));
+        }
+        String message = response.statusMessage();
+        return Future.failedFuture(new IllegalStateException(what + " failed with gRPC status " + status
+                + (message != null && !message.isEmpty() ? ": " + message : "")));
+    }
+}
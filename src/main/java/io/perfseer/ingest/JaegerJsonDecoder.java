@@ -0,0 +1,458 @@
+package io.perfseer.ingest;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Incremental decoder for Jaeger query API responses; holds one trace at a time. Not thread-safe. */
+public final class JaegerJsonDecoder implements BodyDecoder {
+
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    // containers we descend into; everything else is skipped
+    private static final int C_START = 0;
+    private static final int C_ROOT = 1;
+    private static final int C_TRACES = 2;
+    private static final int C_TRACE = 3;
+    private static final int C_SPANS = 4;
+    private static final int C_SPAN = 5;
+    private static final int C_TAGS = 6;
+    private static final int C_TAG = 7;
+    private static final int C_PROCESSES = 8;
+    private static final int C_PROCESS = 9;
+    private static final int C_DONE = 10;
+    private static final int C_REFS = 11;
+    private static final int C_REF = 12;
+    private static final int C_PROCESS_TAGS = 13;
+    private static final int C_PROCESS_TAG = 14;
+
+    // tags we keep
+    private static final int T_OTHER = 0;
+    private static final int T_ERROR = 1;
+    private static final int T_CODE_NAMESPACE = 2;
+    private static final int T_CODE_FUNCTION = 3;
+
+    private static final int F_NONE = 0;
+    private static final int F_SKIP = 1;
+    private static final int F_DATA = 2;
+    private static final int F_TRACE_ID = 3;
+    private static final int F_SPANS = 4;
+    private static final int F_PROCESSES = 5;
+    private static final int F_SPAN_ID = 6;
+    private static final int F_OPERATION = 7;
+    private static final int F_START_TIME = 8;
+    private static final int F_DURATION = 9;
+    private static final int F_PROCESS_ID = 10;
+    private static final int F_TAGS = 11;
+    private static final int F_KEY = 12;
+    private static final int F_VALUE = 13;
+    private static final int F_PROCESS = 14;
+    private static final int F_SERVICE_NAME = 15;
+    private static final int F_PARENT_SPAN_ID = 16;
+    private static final int F_REFERENCES = 17;
+    private static final int F_REF_TYPE = 18;
+
+    private final TraceSink sink;
+    private final SpanFilter.Matcher matcher; // null without a filter
+    private final String[] dimensions;
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+
+    private final NameTable names = new NameTable();
+    private final Trace trace = new Trace();
+    private final Map<String,String> servicesByProcess = new HashMap<>();
+    private final Map<String,String[]> dimensionsByProcess = new HashMap<>();
+    private int[] stack = new int[8];
+    private int depth;
+    private int ctx = C_START;
+    private int field = F_NONE;
+    private int skipDepth;
+
+    private Span span;
+    private String processKey;
+    private int tagKey;
+    private boolean tagIsTrue;
+    private String tagString;
+    private int tagSlot;
+    private int tagDimension;
+    private String tagText;
+    private boolean traceMatched;
+    private long refSpanId;
+    private boolean refChildOf;
+    private long traces;
+
+    public JaegerJsonDecoder(TraceSink sink) {
+        this(sink, SpanFilter.ALL);
+    }
+
+    public JaegerJsonDecoder(TraceSink sink, SpanFilter filter) {
+        this.sink = sink;
+        this.matcher = filter.isAll() ? null : filter.matcher();
+        this.dimensions = sink.dimensions();
+        try {
+            this.parser = JSON.createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+    }
+
+    public static <S extends TraceSink> S decode(InputStream in, S sink) throws IOException {
+        return decode(in, SpanFilter.ALL, sink);
+    }
+
+    public static <S extends TraceSink> S decode(InputStream in, SpanFilter filter, S sink) throws IOException {
+        JaegerJsonDecoder decoder = new JaegerJsonDecoder(sink, filter);
+        byte[] buf = new byte[CHUNK_SIZE];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            decoder.feed(buf, 0, n);
+        }
+        decoder.end();
+        return sink;
+    }
+
+    public static <S extends TraceSink> S decode(Path file, S sink) throws IOException {
+        return decode(file, SpanFilter.ALL, sink);
+    }
+
+    public static <S extends TraceSink> S decode(Path file, SpanFilter filter, S sink) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return decode(in, filter, sink);
+        }
+    }
+
+    public void feed(byte[] buf) throws IOException {
+        feed(buf, 0, buf.length);
+    }
+
+    @Override
+    public void feed(byte[] buf, int offset, int length) throws IOException {
+        if (length == 0) return;
+        feeder.feedInput(buf, offset, offset + length);
+        drain();
+    }
+
+    @Override
+    public void end() throws IOException {
+        feeder.endOfInput();
+        drain();
+        parser.close();
+        if (ctx != C_DONE) {
+            throw new IOException("Truncated Jaeger response");
+        }
+    }
+
+    /** Traces a filter dropped are not counted. */
+    public long traces() {
+        return traces;
+    }
+
+    private void drain() throws IOException {
+        JsonToken t;
+        while ((t = parser.nextToken()) != null && t != JsonToken.NOT_AVAILABLE) {
+            onToken(t);
+        }
+    }
+
+    private void onToken(JsonToken t) throws IOException {
+        if (skipDepth > 0) {
+            if (t.isStructStart()) skipDepth++;
+            else if (t.isStructEnd()) skipDepth--;
+            return;
+        }
+        if (t == JsonToken.FIELD_NAME) {
+            field = fieldId(parser.currentName());
+            return;
+        }
+        if (t.isStructEnd()) {
+            close();
+            return;
+        }
+        int f = field;
+        field = F_NONE;
+        switch (ctx) {
+            case C_START:
+                if (t != JsonToken.START_OBJECT) {
+                    throw new IOException("Unexpected Jaeger response: " + t);
+                }
+                ctx = C_ROOT;
+                break;
+            case C_ROOT:
+                if (f == F_DATA && t == JsonToken.START_ARRAY) push(C_TRACES);
+                else skip(t);
+                break;
+            case C_TRACES:
+                if (t == JsonToken.START_OBJECT) {
+                    trace.reset();
+                    servicesByProcess.clear();
+                    if (dimensions.length > 0) dimensionsByProcess.clear();
+                    traceMatched = false;
+                    push(C_TRACE);
+                } else {
+                    skip(t);
+                }
+                break;
+            case C_TRACE:
+                if (f == F_TRACE_ID) trace.traceId = parser.getValueAsString();
+                else if (f == F_SPANS && t == JsonToken.START_ARRAY) push(C_SPANS);
+                else if (f == F_PROCESSES && t == JsonToken.START_OBJECT) push(C_PROCESSES);
+                else skip(t);
+                break;
+            case C_SPANS:
+                if (t == JsonToken.START_OBJECT) {
+                    span = trace.addSpan();
+                    if (dimensions.length > 0 && span.dimensions == null) span.dimensions = new String[dimensions.length];
+                    if (matcher != null) matcher.startSpan();
+                    push(C_SPAN);
+                } else {
+                    skip(t);
+                }
+                break;
+            case C_SPAN:
+                switch (f) {
+                    case F_SPAN_ID: span.spanId = id(t); break;
+                    case F_PARENT_SPAN_ID:
+                        if (span.parentSpanId == 0) span.parentSpanId = id(t);
+                        break;
+                    case F_OPERATION: span.operationName = name(t); break;
+                    case F_START_TIME: span.startTime = parser.getValueAsLong(); break;
+                    case F_DURATION: span.duration = parser.getValueAsLong(); break;
+                    case F_PROCESS_ID: span.processId = name(t); break;
+                    case F_TAGS:
+                        if (t == JsonToken.START_ARRAY) push(C_TAGS);
+                        else skip(t);
+                        break;
+                    case F_REFERENCES:
+                        if (t == JsonToken.START_ARRAY) push(C_REFS);
+                        else skip(t);
+                        break;
+                    default: skip(t);
+                }
+                break;
+            case C_REFS:
+                if (t == JsonToken.START_OBJECT) {
+                    refSpanId = 0;
+                    refChildOf = true;
+                    push(C_REF);
+                } else {
+                    skip(t);
+                }
+                break;
+            case C_REF:
+                if (f == F_SPAN_ID) refSpanId = id(t);
+                else if (f == F_REF_TYPE) refChildOf = !"FOLLOWS_FROM".equals(parser.getValueAsString());
+                else skip(t);
+                break;
+            case C_TAGS:
+            case C_PROCESS_TAGS:
+                if (t == JsonToken.START_OBJECT) {
+                    tagKey = -1;
+                    tagIsTrue = false;
+                    tagString = null;
+                    tagSlot = -2;
+                    tagDimension = -2;
+                    tagText = null;
+                    push(ctx == C_TAGS ? C_TAG : C_PROCESS_TAG);
+                } else {
+                    skip(t);
+                }
+                break;
+            case C_TAG:
+            case C_PROCESS_TAG:
+                if (f == F_KEY) {
+                    String key = name(t);
+                    tagKey = tagKey(key);
+                    if (matcher != null && ctx == C_TAG) tagSlot = matcher.slot(key);
+                    if (dimensions.length > 0) tagDimension = dimension(key);
+                } else if (f == F_VALUE) {
+                    tagIsTrue = t == JsonToken.VALUE_TRUE;
+                    // keep string values of the tags we use, or of any tag whose key is still to come
+                    if (t == JsonToken.VALUE_STRING && tagKey != T_OTHER && tagKey != T_ERROR) tagString = name(t);
+                    else if (t.isStructStart()) skip(t);
+                    // filters and dimensions take any scalar as text; repeated values resolve to one instance
+                    if (((matcher != null && tagSlot != -1) || (dimensions.length > 0 && tagDimension != -1)) && t.isScalarValue()) {
+                        tagText = name(t);
+                    }
+                } else {
+                    skip(t);
+                }
+                break;
+            case C_PROCESSES:
+                if (f == F_PROCESS && t == JsonToken.START_OBJECT) push(C_PROCESS);
+                else skip(t);
+                break;
+            case C_PROCESS:
+                if (f == F_SERVICE_NAME) servicesByProcess.put(processKey, name(t));
+                else if (f == F_TAGS && t == JsonToken.START_ARRAY && dimensions.length > 0) push(C_PROCESS_TAGS);
+                else skip(t);
+                break;
+            default:
+                skip(t);
+        }
+    }
+
+    private static int tagKey(String key) {
+        switch (key) {
+            case "error": return T_ERROR;
+            case "code.namespace": return T_CODE_NAMESPACE;
+            case "code.function": return T_CODE_FUNCTION;
+            case "code.function.name": return T_CODE_FUNCTION;
+            default: return T_OTHER;
+        }
+    }
+
+    private int dimension(String key) {
+        for (int i=0;i<dimensions.length;i++){
+            if (dimensions[i].equals(key)) return i;
+        }
+        return -1;
+    }
+
+    private String name(JsonToken t) throws IOException {
+        if (t != JsonToken.VALUE_STRING) return parser.getValueAsString();
+        return names.intern(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+    }
+
+    /** Jaeger span ids are 64-bit hex strings; anything else is hashed. */
+    private long id(JsonToken t) throws IOException {
+        if (t != JsonToken.VALUE_STRING) return parser.getValueAsLong();
+        char[] buf = parser.getTextCharacters();
+        int off = parser.getTextOffset();
+        int len = parser.getTextLength();
+        long v = 0;
+        boolean hex = len <= 16;
+        for (int i=0;i<len;i++){
+            int d = Character.digit(buf[off + i], 16);
+            if (d < 0) hex = false;
+            v = hex ? (v << 4) | d : 31 * v + buf[off + i];
+        }
+        return v;
+    }
+
+    private int fieldId(String name) {
+        switch (ctx) {
+            case C_ROOT:
+                return "data".equals(name) ? F_DATA : F_SKIP;
+            case C_TRACE:
+                switch (name) {
+                    case "traceID": return F_TRACE_ID;
+                    case "spans": return F_SPANS;
+                    case "processes": return F_PROCESSES;
+                    default: return F_SKIP;
+                }
+            case C_SPAN:
+                switch (name) {
+                    case "spanID": return F_SPAN_ID;
+                    case "operationName": return F_OPERATION;
+                    case "startTime": return F_START_TIME;
+                    case "duration": return F_DURATION;
+                    case "processID": return F_PROCESS_ID;
+                    case "tags": return F_TAGS;
+                    case "parentSpanID": return F_PARENT_SPAN_ID;
+                    case "references": return F_REFERENCES;
+                    default: return F_SKIP;
+                }
+            case C_TAG:
+                switch (name) {
+                    case "key": return F_KEY;
+                    case "value": return F_VALUE;
+                    default: return F_SKIP;
+                }
+            case C_REF:
+                switch (name) {
+                    case "spanID": return F_SPAN_ID;
+                    case "refType": return F_REF_TYPE;
+                    default: return F_SKIP;
+                }
+            case C_PROCESSES:
+                processKey = name;
+                return F_PROCESS;
+            case C_PROCESS:
+                switch (name) {
+                    case "serviceName": return F_SERVICE_NAME;
+                    case "tags": return F_TAGS;
+                    default: return F_SKIP;
+                }
+            case C_PROCESS_TAG:
+                switch (name) {
+                    case "key": return F_KEY;
+                    case "value": return F_VALUE;
+                    default: return F_SKIP;
+                }
+            default:
+                return F_SKIP;
+        }
+    }
+
+    private void close() {
+        switch (ctx) {
+            case C_TAG:
+                if (tagKey == T_ERROR && tagIsTrue) span.error = true;
+                else if (tagKey == T_CODE_NAMESPACE) span.codeNamespace = tagString;
+                else if (tagKey == T_CODE_FUNCTION) span.codeFunction = tagString;
+                if (tagSlot >= 0) matcher.tag(tagSlot, tagText);
+                if (tagDimension >= 0) span.dimensions[tagDimension] = tagText;
+                break;
+            case C_PROCESS_TAG:
+                if (tagDimension >= 0) {
+                    dimensionsByProcess.computeIfAbsent(processKey, k -> new String[dimensions.length])[tagDimension] = tagText;
+                }
+                break;
+            case C_SPAN:
+                if (matcher != null) {
+                    span.skip = !matcher.matches(span);
+                    traceMatched |= !span.skip;
+                }
+                break;
+            case C_REF:
+                // the first CHILD_OF reference is the parent; FOLLOWS_FROM spans do not hold their caller up
+                if (refChildOf && span.parentSpanId == 0) span.parentSpanId = refSpanId;
+                break;
+            case C_TRACE:
+                emitTrace();
+                break;
+            case C_ROOT:
+                ctx = C_DONE;
+                return;
+            default:
+                break;
+        }
+        ctx = stack[--depth];
+    }
+
+    private void emitTrace() {
+        if (matcher != null && !traceMatched) return;
+        for (int i=0;i<trace.size();i++){
+            Span s = trace.span(i);
+            if (s.processId != null) s.serviceName = servicesByProcess.get(s.processId);
+            String[] process = s.processId != null && dimensions.length > 0 ? dimensionsByProcess.get(s.processId) : null;
+            for (int d=0;process!=null && d<dimensions.length;d++){
+                if (s.dimensions[d] == null) s.dimensions[d] = process[d];
+            }
+        }
+        traces++;
+        sink.onTrace(trace);
+    }
+
+    private void push(int next) {
+        if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+        }
+        stack[depth++] = ctx;
+        ctx = next;
+    }
+
+    private void skip(JsonToken t) {
+        if (t.isStructStart()) skipDepth = 1;
+    }
+}
@@ -0,0 +1,309 @@
+package io.perfseer.ingest;
+
+import java.util.Arrays;
+
+/** Decodes {@code FindTraces} {@code SpansResponseChunk} messages into traces. Not thread-safe. */
+public final class JaegerProtoDecoder implements BodyDecoder {
+
+    private static final int REF_CHILD_OF = 0;
+
+    private static final int V_STRING = 0;
+    private static final int V_BOOL = 1;
+    private static final int V_INT64 = 2;
+    private static final int V_FLOAT64 = 3;
+
+    // tags we keep
+    private static final int T_OTHER = 0;
+    private static final int T_ERROR = 1;
+    private static final int T_CODE_NAMESPACE = 2;
+    private static final int T_CODE_FUNCTION = 3;
+
+    private final TraceSink sink;
+    private final SpanFilter.Matcher matcher; // null without a filter
+    private final String[] dimensions;
+    private final String[] processDimensions; // of the current span
+    private final ProtoReader in = new ProtoReader();
+    private final ProtoReader peek = new ProtoReader();
+    private final NameTable names = new NameTable();
+    private final Trace trace = new Trace();
+    private final byte[] digits = new byte[20];
+    private long traceHigh;
+    private long traceLow;
+    private boolean traceMatched;
+    private long traces;
+
+    public JaegerProtoDecoder(TraceSink sink) {
+        this(sink, SpanFilter.ALL);
+    }
+
+    public JaegerProtoDecoder(TraceSink sink, SpanFilter filter) {
+        this.sink = sink;
+        this.matcher = filter.isAll() ? null : filter.matcher();
+        this.dimensions = sink.dimensions();
+        this.processDimensions = new String[dimensions.length];
+    }
+
+    public static <S extends TraceSink> S decode(byte[] chunks, SpanFilter filter, S sink) {
+        JaegerProtoDecoder decoder = new JaegerProtoDecoder(sink, filter);
+        decoder.feed(chunks, 0, chunks.length);
+        decoder.end();
+        return sink;
+    }
+
+    /** Traces a filter dropped are not counted. */
+    public long traces() {
+        return traces;
+    }
+
+    @Override
+    public void feed(byte[] buf, int offset, int length) {
+        in.reset(buf, offset, length);
+        while (in.hasRemaining()) {
+            int tag = in.readTag();
+            if (tag == (1 << 3 | ProtoReader.LENGTH_DELIMITED)) { // spans
+                int len = in.readLength();
+                startSpan(in.position(), len);
+                int outer = in.pushLimit(len);
+                span(trace.span(trace.size() - 1));
+                in.popLimit(outer);
+            } else {
+                in.skipField(tag);
+            }
+        }
+    }
+
+    @Override
+    public void end() {
+        emitTrace();
+    }
+
+    private void startSpan(int offset, int length) {
+        long high = 0, low = 0;
+        peek.reset(in.buffer(), offset, length);
+        while (peek.hasRemaining()) {
+            int tag = peek.readTag();
+            if (tag == (1 << 3 | ProtoReader.LENGTH_DELIMITED)) { // trace_id, normally the first field
+                int len = peek.readLength();
+                byte[] buf = peek.buffer();
+                int at = peek.position();
+                for (int i=0;i<len;i++){
+                    high = (high << 8) | (low >>> 56);
+                    low = (low << 8) | (buf[at + i] & 0xffL);
+                }
+                break;
+            }
+            peek.skipField(tag);
+        }
+        if (trace.size() == 0 || high != traceHigh || low != traceLow) {
+            emitTrace();
+            trace.traceId = high == 0 ? hex(low) : hex(high) + hex(low);
+            traceHigh = high;
+            traceLow = low;
+            traceMatched = false;
+        }
+        trace.addSpan();
+    }
+
+    private void span(Span span) {
+        if (dimensions.length > 0) {
+            if (span.dimensions == null) span.dimensions = new String[dimensions.length];
+            Arrays.fill(processDimensions, null);
+        }
+        if (matcher != null) matcher.startSpan();
+        while (in.hasRemaining()) {
+            int tag = in.readTag();
+            switch (tag) {
+                case 2 << 3 | ProtoReader.LENGTH_DELIMITED: span.spanId = id(); break;
+                case 3 << 3 | ProtoReader.LENGTH_DELIMITED: span.operationName = string(); break;
+                case 4 << 3 | ProtoReader.LENGTH_DELIMITED: { // references
+                    int outer = in.pushLimit(in.readLength());
+                    reference(span);
+                    in.popLimit(outer);
+                    break;
+                }
+                case 6 << 3 | ProtoReader.LENGTH_DELIMITED: span.startTime = micros(); break;
+                case 7 << 3 | ProtoReader.LENGTH_DELIMITED: span.duration = micros(); break;
+                case 8 << 3 | ProtoReader.LENGTH_DELIMITED: { // tags
+                    int outer = in.pushLimit(in.readLength());
+                    keyValue(span, false);
+                    in.popLimit(outer);
+                    break;
+                }
+                case 10 << 3 | ProtoReader.LENGTH_DELIMITED: { // process
+                    int outer = in.pushLimit(in.readLength());
+                    process(span);
+                    in.popLimit(outer);
+                    break;
+                }
+                case 11 << 3 | ProtoReader.LENGTH_DELIMITED: span.processId = string(); break;
+                default: in.skipField(tag);
+            }
+        }
+        for (int d=0;d<dimensions.length;d++){
+            if (span.dimensions[d] == null) span.dimensions[d] = processDimensions[d];
+        }
+        if (matcher != null) {
+            span.skip = !matcher.matches(span);
+            traceMatched |= !span.skip;
+        }
+    }
+
+    /** The first CHILD_OF reference is the parent. */
+    private void reference(Span span) {
+        long spanId = 0;
+        long type = REF_CHILD_OF;
+        while (in.hasRemaining()) {
+            int tag = in.readTag();
+            if (tag == (2 << 3 | ProtoReader.LENGTH_DELIMITED)) spanId = id();
+            else if (tag == (3 << 3 | ProtoReader.VARINT)) type = in.readVarint();
+            else in.skipField(tag);
+        }
+        if (type == REF_CHILD_OF && span.parentSpanId == 0) span.parentSpanId = spanId;
+    }
+
+    private void process(Span span) {
+        while (in.hasRemaining()) {
+            int tag = in.readTag();
+            if (tag == (1 << 3 | ProtoReader.LENGTH_DELIMITED)) {
+                span.serviceName = string();
+            } else if (tag == (2 << 3 | ProtoReader.LENGTH_DELIMITED) && dimensions.length > 0) {
+                int outer = in.pushLimit(in.readLength());
+                keyValue(span, true);
+                in.popLimit(outer);
+            } else {
+                in.skipField(tag);
+            }
+        }
+    }
+
+    private void keyValue(Span span, boolean process) {
+        int key = T_OTHER;
+        int slot = -1;
+        int dimension = -1;
+        long type = V_STRING;
+        int strAt = -1;
+        int strLength = 0;
+        boolean bool = false;
+        long int64 = 0;
+        double float64 = 0;
+        while (in.hasRemaining()) {
+            int tag = in.readTag();
+            switch (tag) {
+                case 1 << 3 | ProtoReader.LENGTH_DELIMITED: {
+                    String k = string();
+                    key = tagKey(k);
+                    if (matcher != null && !process) slot = matcher.slot(k);
+                    if (dimensions.length > 0) dimension = dimension(k);
+                    break;
+                }
+                case 2 << 3 | ProtoReader.VARINT: type = in.readVarint(); break;
+                case 3 << 3 | ProtoReader.LENGTH_DELIMITED:
+                    strLength = in.readLength();
+                    strAt = in.position();
+                    in.skip(strLength);
+                    break;
+                case 4 << 3 | ProtoReader.VARINT: bool = in.readVarint() != 0; break;
+                case 5 << 3 | ProtoReader.VARINT: int64 = in.readVarint(); break;
+                case 6 << 3 | ProtoReader.FIXED64: float64 = Double.longBitsToDouble(in.readFixed64()); break;
+                default: in.skipField(tag);
+            }
+        }
+        if (!process) {
+            if (key == T_ERROR && type == V_BOOL && bool) span.error = true;
+            else if (key == T_CODE_NAMESPACE && type == V_STRING) span.codeNamespace = string(strAt, strLength);
+            else if (key == T_CODE_FUNCTION && type == V_STRING) span.codeFunction = string(strAt, strLength);
+        }
+        if (slot < 0 && dimension < 0) return;
+        // filters and dimensions take any scalar as text, as the JSON API renders it
+        String text;
+        switch ((int) type) {
+            case V_STRING: text = string(strAt, strLength); break;
+            case V_BOOL: text = bool ? "true" : "false"; break;
+            case V_INT64: text = number(int64); break;
+            case V_FLOAT64: text = Double.toString(float64); break;
+            default: text = null;
+        }
+        if (slot >= 0) matcher.tag(slot, text);
+        if (dimension >= 0) {
+            if (process) processDimensions[dimension] = text;
+            else span.dimensions[dimension] = text;
+        }
+    }
+
+    private static int tagKey(String key) {
+        switch (key) {
+            case "error": return T_ERROR;
+            case "code.namespace": return T_CODE_NAMESPACE;
+            case "code.function": return T_CODE_FUNCTION;
+            case "code.function.name": return T_CODE_FUNCTION;
+            default: return T_OTHER;
+        }
+    }
+
+    private int dimension(String key) {
+        for (int i=0;i<dimensions.length;i++){
+            if (dimensions[i].equals(key)) return i;
+        }
+        return -1;
+    }
+
+    private void emitTrace() {
+        if (trace.size() == 0) return;
+        if (matcher == null || traceMatched) {
+            traces++;
+            sink.onTrace(trace);
+        }
+        trace.reset();
+    }
+
+    private long micros() {
+        int outer = in.pushLimit(in.readLength());
+        long seconds = 0, nanos = 0;
+        while (in.hasRemaining()) {
+            int tag = in.readTag();
+            if (tag == (1 << 3 | ProtoReader.VARINT)) seconds = in.readVarint();
+            else if (tag == (2 << 3 | ProtoReader.VARINT)) nanos = (int) in.readVarint();
+            else in.skipField(tag);
+        }
+        in.popLimit(outer);
+        return seconds * 1_000_000 + nanos / 1000;
+    }
+
+    private long id() {
+        int len = in.readLength();
+        long id = 0;
+        for (int i=0;i<len;i++){
+            id = (id << 8) | (in.buffer()[in.position() + i] & 0xffL);
+        }
+        in.skip(len);
+        return id;
+    }
+
+    private String string() {
+        int len = in.readLength();
+        String s = names.intern(in.buffer(), in.position(), len);
+        in.skip(len);
+        return s;
+    }
+
+    private String string(int offset, int length) {
+        return offset < 0 ? "" : names.intern(in.buffer(), offset, length);
+    }
+
+    private String number(long v) {
+        if (v == Long.MIN_VALUE) return Long.toString(v);
+        int pos = digits.length;
+        long n = Math.abs(v);
+        do {
+            digits[--pos] = (byte) ('0' + n % 10);
+            n /= 10;
+        } while (n != 0);
+        if (v < 0) digits[--pos] = '-';
+        return names.intern(digits, pos, digits.length - pos);
+    }
+
+    private static String hex(long v) {
+        String s = Long.toHexString(v);
+        return s.length() == 16 ? s : "0".repeat(16 - s.length()) + s;
+    }
+}
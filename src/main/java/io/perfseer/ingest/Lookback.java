@@ -0,0 +1,37 @@
+package io.perfseer.ingest;
+
+import java.util.concurrent.TimeUnit;
+
+public final class Lookback {
+
+    private Lookback() {
+    }
+
+    public static long toMicros(String lookback) {
+        if (lookback == null || lookback.isBlank()) {
+            throw new IllegalArgumentException("Empty lookback");
+        }
+        String s = lookback.trim();
+        int i = 0;
+        while (i < s.length() && Character.isDigit(s.charAt(i))) i++;
+        if (i == 0) {
+            throw new IllegalArgumentException("Invalid lookback: " + lookback);
+        }
+        long amount = Long.parseLong(s.substring(0, i));
+        switch (s.substring(i)) {
+            case "us":
+            case "µs": return amount;
+            case "ms": return TimeUnit.MILLISECONDS.toMicros(amount);
+            case "s": return TimeUnit.SECONDS.toMicros(amount);
+            case "m": return TimeUnit.MINUTES.toMicros(amount);
+            case "h": return TimeUnit.HOURS.toMicros(amount);
+            case "d": return TimeUnit.DAYS.toMicros(amount);
+            case "w": return TimeUnit.DAYS.toMicros(amount * 7);
+            default: throw new IllegalArgumentException("Invalid lookback: " + lookback);
+        }
+    }
+
+    public static long nowMicros() {
+        return TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,85 @@
+package io.perfseer.ingest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/** Intern table that resolves raw characters or bytes to a shared String without allocating. */
+final class NameTable {
+
+    private static final int MAX_ENTRIES = 1 << 16;
+
+    private String[] names = new String[64];
+    private int[] hashes = new int[64];
+    private byte[][] utf8; // keys of byte-interned names, allocated on first use
+    private int size;
+
+    String intern(char[] buf, int offset, int length) {
+        int h = 0;
+        for (int i=0;i<length;i++){
+            h = 31 * h + buf[offset + i];
+        }
+        int mask = names.length - 1;
+        int i = (h ^ (h >>> 16)) & mask;
+        String n;
+        while ((n = names[i]) != null) {
+            if (hashes[i] == h && matches(n, buf, offset, length)) return n;
+            i = (i + 1) & mask;
+        }
+        String s = new String(buf, offset, length);
+        if (size < MAX_ENTRIES) {
+            names[i] = s;
+            hashes[i] = h;
+            if (++size * 2 > names.length) rehash();
+        }
+        return s;
+    }
+
+    String intern(byte[] buf, int offset, int length) {
+        if (utf8 == null) utf8 = new byte[names.length][];
+        int h = 0;
+        for (int i=0;i<length;i++){
+            h = 31 * h + buf[offset + i];
+        }
+        int mask = names.length - 1;
+        int i = (h ^ (h >>> 16)) & mask;
+        while (names[i] != null) {
+            if (hashes[i] == h && Arrays.equals(utf8[i], 0, utf8[i].length, buf, offset, offset + length)) return names[i];
+            i = (i + 1) & mask;
+        }
+        String s = new String(buf, offset, length, StandardCharsets.UTF_8);
+        if (size < MAX_ENTRIES) {
+            names[i] = s;
+            hashes[i] = h;
+            utf8[i] = Arrays.copyOfRange(buf, offset, offset + length);
+            if (++size * 2 > names.length) rehash();
+        }
+        return s;
+    }
+
+    private static boolean matches(String s, char[] buf, int offset, int length) {
+        if (s.length() != length) return false;
+        for (int i=0;i<length;i++){
+            if (s.charAt(i) != buf[offset + i]) return false;
+        }
+        return true;
+    }
+
+    private void rehash() {
+        String[] oldNames = names;
+        int[] oldHashes = hashes;
+        byte[][] oldUtf8 = utf8;
+        names = new String[oldNames.length * 2];
+        hashes = new int[oldNames.length * 2];
+        if (oldUtf8 != null) utf8 = new byte[names.length][];
+        int mask = names.length - 1;
+        for (int j=0;j<oldNames.length;j++){
+            if (oldNames[j] == null) continue;
+            int h = oldHashes[j];
+            int i = (h ^ (h >>> 16)) & mask;
+            while (names[i] != null) i = (i + 1) & mask;
+            names[i] = oldNames[j];
+            hashes[i] = h;
+            if (oldUtf8 != null) utf8[i] = oldUtf8[j];
+        }
+    }
+}
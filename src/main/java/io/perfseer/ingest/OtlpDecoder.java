@@ -0,0 +1,213 @@
+package io.perfseer.ingest;
+
+/** Decodes OTLP/protobuf trace payloads, one trace per {@code ResourceSpans}. Not thread-safe. */
+public final class OtlpDecoder {
+
+    private static final int STATUS_CODE_ERROR = 2;
+
+    private final ProtoReader in = new ProtoReader();
+    private final NameTable names = new NameTable();
+    private final Trace trace = new Trace();
+    private long spans;
+
+    public long spans() {
+        return spans;
+    }
+
+    public void decode(byte[] payload, TraceSink sink) {
+        decode(payload, 0, payload.length, sink);
+    }
+
+    public void decode(byte[] payload, int offset, int length, TraceSink sink) {
+        in.reset(payload, offset, length);
+        while (in.hasRemaining()) {
+            int tag = in.readTag();
+            if (tag == (1 << 3 | ProtoReader.LENGTH_DELIMITED)) {
+                int outer = in.pushLimit(in.readLength());
+                resourceSpans();
+                in.popLimit(outer);
+                if (trace.size() > 0) sink.onTrace(trace);
+            } else {
+                in.skipField(tag);
+            }
+        }
+    }
+
+    private void resourceSpans() {
+        trace.reset();
+        String service = null;
+        while (in.hasRemaining()) {
+            int tag = in.readTag();
+            switch (tag) {
+                case 1 << 3 | ProtoReader.LENGTH_DELIMITED: { // Resource
+                    int outer = in.pushLimit(in.readLength());
+                    service = resourceService();
+                    in.popLimit(outer);
+                    break;
+                }
+                case 2 << 3 | ProtoReader.LENGTH_DELIMITED: { // ScopeSpans
+                    int outer = in.pushLimit(in.readLength());
+                    scopeSpans();
+                    in.popLimit(outer);
+                    break;
+                }
+                default: in.skipField(tag);
+            }
+        }
+        for (int i=0;i<trace.size();i++){
+            trace.span(i).serviceName = service;
+        }
+    }
+
+    private String resourceService() {
+        String service = null;
+        while (in.hasRemaining()) {
+            int tag = in.readTag();
+            if (tag == (1 << 3 | ProtoReader.LENGTH_DELIMITED)) { // attributes
+                int outer = in.pushLimit(in.readLength());
+                String key = null;
+                String value = null;
+                while (in.hasRemaining()) {
+                    int t = in.readTag();
+                    if (t == (1 << 3 | ProtoReader.LENGTH_DELIMITED)) {
+                        key = string();
+                    } else if (t == (2 << 3 | ProtoReader.LENGTH_DELIMITED)) {
+                        int av = in.pushLimit(in.readLength());
+                        while (in.hasRemaining()) {
+                            int vt = in.readTag();
+                            if (vt == (1 << 3 | ProtoReader.LENGTH_DELIMITED)) value = string();
+                            else in.skipField(vt);
+                        }
+                        in.popLimit(av);
+                    } else {
+                        in.skipField(t);
+                    }
+                }
+                in.popLimit(outer);
+                if ("service.name".equals(key)) service = value;
+            } else {
+                in.skipField(tag);
+            }
+        }
+        return service;
+    }
+
+    private void scopeSpans() {
+        while (in.hasRemaining()) {
+            int tag = in.readTag();
+            if (tag == (2 << 3 | ProtoReader.LENGTH_DELIMITED)) {
+                int outer = in.pushLimit(in.readLength());
+                span(trace.addSpan());
+                in.popLimit(outer);
+                spans++;
+            } else {
+                in.skipField(tag);
+            }
+        }
+    }
+
+    private void span(Span span) {
+        long start = 0, end = 0;
+        while (in.hasRemaining()) {
+            int tag = in.readTag();
+            switch (tag) {
+                case 2 << 3 | ProtoReader.LENGTH_DELIMITED: span.spanId = id(); break;
+                case 4 << 3 | ProtoReader.LENGTH_DELIMITED: span.parentSpanId = id(); break;
+                case 5 << 3 | ProtoReader.LENGTH_DELIMITED: span.operationName = string(); break;
+                case 7 << 3 | ProtoReader.FIXED64: start = in.readFixed64(); break;
+                case 8 << 3 | ProtoReader.FIXED64: end = in.readFixed64(); break;
+                case 9 << 3 | ProtoReader.LENGTH_DELIMITED: { // attributes
+                    int outer = in.pushLimit(in.readLength());
+                    attribute(span);
+                    in.popLimit(outer);
+                    break;
+                }
+                case 15 << 3 | ProtoReader.LENGTH_DELIMITED: { // status
+                    int outer = in.pushLimit(in.readLength());
+                    while (in.hasRemaining()) {
+                        int t = in.readTag();
+                        if (t == (3 << 3 | ProtoReader.VARINT)) {
+                            if (in.readVarint() == STATUS_CODE_ERROR) span.error = true;
+                        } else {
+                            in.skipField(t);
+                        }
+                    }
+                    in.popLimit(outer);
+                    break;
+                }
+                default: in.skipField(tag);
+            }
+        }
+        span.startTime = start / 1000;
+        span.duration = end > start ? (end - start) / 1000 : 0;
+    }
+
+    private long id() {
+        int len = in.readLength();
+        long id = 0;
+        for (int i=0;i<len;i++){
+            id = (id << 8) | (in.buffer()[in.position() + i] & 0xffL);
+        }
+        in.skip(len);
+        return id;
+    }
+
+    private static final int A_OTHER = 0;
+    private static final int A_ERROR = 1;
+    private static final int A_CODE_NAMESPACE = 2;
+    private static final int A_CODE_FUNCTION = 3;
+
+    private void attribute(Span span) {
+        int key = A_OTHER;
+        boolean bool = false;
+        String string = null;
+        while (in.hasRemaining()) {
+            int t = in.readTag();
+            if (t == (1 << 3 | ProtoReader.LENGTH_DELIMITED)) {
+                int len = in.readLength();
+                key = attributeKey(in.buffer(), in.position(), len);
+                in.skip(len);
+            } else if (t == (2 << 3 | ProtoReader.LENGTH_DELIMITED)) {
+                int av = in.pushLimit(in.readLength());
+                while (in.hasRemaining()) {
+                    int vt = in.readTag();
+                    if (vt == (2 << 3 | ProtoReader.VARINT)) bool = in.readVarint() != 0;
+                    // key precedes value in encoder output; only intern the values we use
+                    else if (vt == (1 << 3 | ProtoReader.LENGTH_DELIMITED) && key >= A_CODE_NAMESPACE) string = string();
+                    else in.skipField(vt);
+                }
+                in.popLimit(av);
+            } else {
+                in.skipField(t);
+            }
+        }
+        switch (key) {
+            case A_ERROR: if (bool) span.error = true; break;
+            case A_CODE_NAMESPACE: span.codeNamespace = string; break;
+            case A_CODE_FUNCTION: span.codeFunction = string; break;
+            default: break;
+        }
+    }
+
+    private static int attributeKey(byte[] buf, int offset, int len) {
+        if (len == 5 && equalsAscii("error", buf, offset)) return A_ERROR;
+        if (len == 14 && equalsAscii("code.namespace", buf, offset)) return A_CODE_NAMESPACE;
+        if (len == 13 && equalsAscii("code.function", buf, offset)) return A_CODE_FUNCTION;
+        if (len == 18 && equalsAscii("code.function.name", buf, offset)) return A_CODE_FUNCTION;
+        return A_OTHER;
+    }
+
+    private String string() {
+        int len = in.readLength();
+        String s = names.intern(in.buffer(), in.position(), len);
+        in.skip(len);
+        return s;
+    }
+
+    private static boolean equalsAscii(String s, byte[] buf, int offset) {
+        for (int i=0;i<s.length();i++){
+            if (buf[offset + i] != s.charAt(i)) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,100 @@
+package io.perfseer.ingest;
+
+final class ProtoReader {
+
+    static final int VARINT = 0;
+    static final int FIXED64 = 1;
+    static final int LENGTH_DELIMITED = 2;
+    static final int FIXED32 = 5;
+
+    private byte[] buf;
+    private int pos;
+    private int limit;
+
+    ProtoReader reset(byte[] buf, int offset, int length) {
+        this.buf = buf;
+        this.pos = offset;
+        this.limit = offset + length;
+        return this;
+    }
+
+    boolean hasRemaining() {
+        return pos < limit;
+    }
+
+    byte[] buffer() {
+        return buf;
+    }
+
+    int position() {
+        return pos;
+    }
+
+    int readTag() {
+        return (int) readVarint();
+    }
+
+    long readVarint() {
+        long result = 0;
+        for (int shift=0;shift<64;shift+=7){
+            if (pos >= limit) throw truncated();
+            byte b = buf[pos++];
+            result |= (long) (b & 0x7f) << shift;
+            if (b >= 0) return result;
+        }
+        throw new IllegalArgumentException("Malformed protobuf varint at " + pos);
+    }
+
+    long readFixed64() {
+        if (limit - pos < 8) throw truncated();
+        long v = 0;
+        for (int i=7;i>=0;i--){
+            v = (v << 8) | (buf[pos + i] & 0xffL);
+        }
+        pos += 8;
+        return v;
+    }
+
+    int readFixed32() {
+        if (limit - pos < 4) throw truncated();
+        int v = (buf[pos] & 0xff) | (buf[pos + 1] & 0xff) << 8 | (buf[pos + 2] & 0xff) << 16 | (buf[pos + 3] & 0xff) << 24;
+        pos += 4;
+        return v;
+    }
+
+    int readLength() {
+        long len = readVarint();
+        if (len < 0 || len > limit - pos) throw truncated();
+        return (int) len;
+    }
+
+    /** Returns the limit to restore. */
+    int pushLimit(int length) {
+        int old = limit;
+        limit = pos + length;
+        return old;
+    }
+
+    void popLimit(int oldLimit) {
+        pos = limit;
+        limit = oldLimit;
+    }
+
+    void skip(int length) {
+        pos += length;
+    }
+
+    void skipField(int tag) {
+        switch (tag & 7) {
+            case VARINT: readVarint(); break;
+            case FIXED64: readFixed64(); break;
+            case LENGTH_DELIMITED: skip(readLength()); break;
+            case FIXED32: readFixed32(); break;
+            default: throw new IllegalArgumentException("Unsupported protobuf wire type " + (tag & 7) + " at " + pos);
+        }
+    }
+
+    private IllegalArgumentException truncated() {
+        return new IllegalArgumentException("Truncated protobuf message at " + pos);
+    }
+}
@@ -0,0 +1,61 @@
+package io.perfseer.ingest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+final class ProtoWriter {
+
+    private byte[] buf = new byte[64];
+    private int size;
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buf, size);
+    }
+
+    ProtoWriter varint(int field, long value) {
+        tag(field, ProtoReader.VARINT);
+        rawVarint(value);
+        return this;
+    }
+
+    ProtoWriter string(int field, String value) {
+        return bytes(field, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    ProtoWriter bytes(int field, byte[] value) {
+        tag(field, ProtoReader.LENGTH_DELIMITED);
+        rawVarint(value.length);
+        append(value, 0, value.length);
+        return this;
+    }
+
+    ProtoWriter message(int field, ProtoWriter nested) {
+        tag(field, ProtoReader.LENGTH_DELIMITED);
+        rawVarint(nested.size);
+        append(nested.buf, 0, nested.size);
+        return this;
+    }
+
+    private void tag(int field, int wireType) {
+        rawVarint(field << 3 | wireType);
+    }
+
+    private void rawVarint(long value) {
+        ensure(10);
+        while ((value & ~0x7fL) != 0) {
+            buf[size++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        buf[size++] = (byte) value;
+    }
+
+    private void append(byte[] bytes, int offset, int length) {
+        ensure(length);
+        System.arraycopy(bytes, offset, buf, size, length);
+        size += length;
+    }
+
+    private void ensure(int more) {
+        if (size + more > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + more));
+    }
+}
@@ -0,0 +1,124 @@
+package io.perfseer.ingest;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/** Raw Jaeger response bodies by query, bounded by TTL and total bytes, plus in-flight fetches. */
+final class ResponseCache {
+
+    /** Exactly one of the fields is set. */
+    static final class Lookup {
+        final byte[] body;
+        final CompletableFuture<byte[]> pending;
+        /** The caller must fetch and then {@link #complete} or {@link #fail}. */
+        final CompletableFuture<byte[]> owned;
+
+        private Lookup(byte[] body, CompletableFuture<byte[]> pending, CompletableFuture<byte[]> owned) {
+            this.body = body;
+            this.pending = pending;
+            this.owned = owned;
+        }
+    }
+
+    private static final class Entry {
+        final byte[] body;
+        final long storedNanos = System.nanoTime();
+
+        Entry(byte[] body) {
+            this.body = body;
+        }
+    }
+
+    private final long ttlNanos;
+    private final long maxBytes;
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, CompletableFuture<byte[]>> inFlight = new HashMap<>();
+    private long bytes;
+    private long hits;
+    private long coalesced;
+    private long misses;
+    private long upstreamBytes;
+    private long bytesSaved;
+
+    ResponseCache(long ttlNanos, long maxBytes) {
+        this.ttlNanos = ttlNanos;
+        this.maxBytes = maxBytes;
+    }
+
+    synchronized Lookup lookup(String key) {
+        Entry e = entries.get(key);
+        if (e != null) {
+            if (System.nanoTime() - e.storedNanos <= ttlNanos) {
+                hits++;
+                bytesSaved += e.body.length;
+                return new Lookup(e.body, null, null);
+            }
+            entries.remove(key);
+            bytes -= e.body.length;
+        }
+        CompletableFuture<byte[]> pending = inFlight.get(key);
+        if (pending != null) {
+            coalesced++;
+            return new Lookup(null, pending, null);
+        }
+        misses++;
+        CompletableFuture<byte[]> owned = new CompletableFuture<>();
+        inFlight.put(key, owned);
+        return new Lookup(null, null, owned);
+    }
+
+    void complete(String key, CompletableFuture<byte[]> owned, byte[] body) {
+        synchronized (this) {
+            inFlight.remove(key, owned);
+            upstreamBytes += body.length;
+            if (ttlNanos > 0 && body.length <= maxBytes) {
+                Entry old = entries.put(key, new Entry(body));
+                if (old != null) bytes -= old.body.length;
+                bytes += body.length;
+                Iterator<Entry> it = entries.values().iterator();
+                while (bytes > maxBytes && it.hasNext()) {
+                    bytes -= it.next().body.length;
+                    it.remove();
+                }
+            }
+        }
+        owned.complete(body);
+    }
+
+    /** The body was too large to keep; waiters get null and fetch it themselves. */
+    void uncached(String key, CompletableFuture<byte[]> owned, long length) {
+        synchronized (this) {
+            inFlight.remove(key, owned);
+            upstreamBytes += length;
+        }
+        owned.complete(null);
+    }
+
+    void fail(String key, CompletableFuture<byte[]> owned, Throwable failure) {
+        synchronized (this) {
+            inFlight.remove(key, owned);
+        }
+        owned.completeExceptionally(failure);
+    }
+
+    synchronized void saved(int length) {
+        bytesSaved += length;
+    }
+
+    synchronized Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        long served = hits + coalesced;
+        m.put("entries", entries.size());
+        m.put("bytes", bytes);
+        m.put("hits", hits);
+        m.put("coalesced", coalesced);
+        m.put("misses", misses);
+        m.put("hitRate", served + misses > 0 ? (double) served / (served + misses) : 0.0);
+        m.put("upstreamBytes", upstreamBytes);
+        m.put("upstreamBytesSaved", bytesSaved);
+        return m;
+    }
+}
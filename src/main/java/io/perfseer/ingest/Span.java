@@ -0,0 +1,56 @@
+package io.perfseer.ingest;
+
+import java.util.Arrays;
+
+/** Pooled and reused for the next trace; sinks copy what they keep. */
+public final class Span {
+    public long spanId;
+    public long parentSpanId;
+    public String operationName;
+    public String processId;
+    public String serviceName;
+    public long startTime; // epoch microseconds
+    public long duration;  // microseconds
+    public boolean error;
+    public String codeNamespace;
+    public String codeFunction;
+    /** Rejected by the filter: kept in the tree but not aggregated. */
+    public boolean skip;
+    /** Values of the sink's {@link TraceSink#dimensions()}; null when it reads none. */
+    public String[] dimensions;
+
+    public void copyFrom(Span other) {
+        spanId = other.spanId;
+        parentSpanId = other.parentSpanId;
+        operationName = other.operationName;
+        processId = other.processId;
+        serviceName = other.serviceName;
+        startTime = other.startTime;
+        duration = other.duration;
+        error = other.error;
+        codeNamespace = other.codeNamespace;
+        codeFunction = other.codeFunction;
+        skip = other.skip;
+        if (other.dimensions == null) {
+            if (dimensions != null) Arrays.fill(dimensions, null);
+        } else {
+            if (dimensions == null || dimensions.length != other.dimensions.length) dimensions = new String[other.dimensions.length];
+            System.arraycopy(other.dimensions, 0, dimensions, 0, dimensions.length);
+        }
+    }
+
+    void reset() {
+        spanId = 0L;
+        parentSpanId = 0L;
+        operationName = null;
+        processId = null;
+        serviceName = null;
+        startTime = 0L;
+        duration = 0L;
+        error = false;
+        codeNamespace = null;
+        codeFunction = null;
+        skip = false;
+        if (dimensions != null) Arrays.fill(dimensions, null);
+    }
+}
@@ -0,0 +1,288 @@
+package io.perfseer.ingest;
+
+import io.vertx.core.json.JsonObject;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/** Which spans to aggregate; see the README for the syntax. */
+public final class SpanFilter {
+
+    public static final SpanFilter ALL = new SpanFilter("", null, null, null, 0, new String[0], new TagPredicate[0]);
+
+    private static final int EQUALS = 0;
+    private static final int NOT_EQUALS = 1;
+    private static final int MATCHES = 2;
+    private static final int PRESENT = 3;
+
+    private static final int MAX_MEMO = 1 << 12;
+
+    private static final class TagPredicate {
+        final int slot;
+        final int op;
+        final String value;
+        final Pattern pattern;
+
+        TagPredicate(int slot, int op, String value, Pattern pattern) {
+            this.slot = slot;
+            this.op = op;
+            this.value = value;
+            this.pattern = pattern;
+        }
+
+        boolean test(String actual) {
+            switch (op) {
+                case EQUALS: return value.equals(actual);
+                case NOT_EQUALS: return !value.equals(actual);
+                case MATCHES: return actual != null && pattern.matcher(actual).find();
+                default: return actual != null;
+            }
+        }
+    }
+
+    private final String expression;
+    private final Pattern operation;
+    private final String operationGlob;
+    private final String exactOperation;
+    private final long minDuration;
+    private final String[] tagKeys;
+    private final TagPredicate[] tags;
+
+    private SpanFilter(String expression, Pattern operation, String operationGlob, String exactOperation, long minDuration,
+                       String[] tagKeys, TagPredicate[] tags) {
+        this.expression = expression;
+        this.operation = operation;
+        this.operationGlob = operationGlob;
+        this.exactOperation = exactOperation;
+        this.minDuration = minDuration;
+        this.tagKeys = tagKeys;
+        this.tags = tags;
+    }
+
+    /** Null or blank gives {@link #ALL}. */
+    public static SpanFilter parse(String expression) {
+        return parse(expression, true);
+    }
+
+    /** Rejects regex clauses, whose matching time the caller cannot bound; for filters from HTTP requests. */
+    public static SpanFilter parseGlobs(String expression) {
+        return parse(expression, false);
+    }
+
+    private static SpanFilter parse(String expression, boolean regexes) {
+        if (expression == null || expression.isBlank()) return ALL;
+        Pattern operation = null;
+        String operationGlob = null;
+        String exactOperation = null;
+        long minDuration = 0;
+        List<String> keys = new ArrayList<>();
+        List<TagPredicate> tags = new ArrayList<>();
+        List<String> clauses = new ArrayList<>();
+        for (String part : expression.split(";")) {
+            String clause = part.trim();
+            if (clause.isEmpty()) continue;
+            clauses.add(clause);
+            if (clause.startsWith("operation=") || clause.startsWith("operation~")) {
+                if (operation != null || operationGlob != null) {
+                    throw new IllegalArgumentException("More than one operation clause in filter: " + expression);
+                }
+                String value = clause.substring("operation=".length());
+                if (clause.charAt("operation".length()) == '~') {
+                    operation = regex(value, regexes);
+                } else {
+                    operationGlob = value;
+                    if (value.indexOf('*') < 0 && value.indexOf('?') < 0) exactOperation = value;
+                }
+            } else if (clause.startsWith("duration>=")) {
+                minDuration = Lookback.toMicros(clause.substring("duration>=".length()));
+            } else if (clause.startsWith("kind=")) {
+                String kind = clause.substring("kind=".length()).trim().toLowerCase(Locale.ROOT);
+                tags.add(new TagPredicate(slot(keys, "span.kind"), EQUALS, kind, null));
+            } else if (clause.startsWith("tag:")) {
+                tags.add(tag(keys, clause.substring("tag:".length()), regexes));
+            } else {
+                throw new IllegalArgumentException("Unknown filter clause '" + clause
+                        + "'; expected operation=, operation~, duration>=, kind= or tag:");
+            }
+        }
+        if (clauses.isEmpty()) return ALL;
+        return new SpanFilter(String.join(";", clauses), operation, operationGlob, exactOperation, minDuration,
+                keys.toArray(new String[0]), tags.toArray(new TagPredicate[0]));
+    }
+
+    private static TagPredicate tag(List<String> keys, String clause, boolean regexes) {
+        int ne = clause.indexOf("!=");
+        int eq = clause.indexOf('=');
+        int re = clause.indexOf('~');
+        int at = -1;
+        int op = PRESENT;
+        for (int[] c : new int[][]{{ne, NOT_EQUALS}, {eq, EQUALS}, {re, MATCHES}}) {
+            if (c[0] > 0 && (at < 0 || c[0] < at)) {
+                at = c[0];
+                op = c[1];
+            }
+        }
+        String key = (at < 0 ? clause : clause.substring(0, at)).trim();
+        if (key.isEmpty()) throw new IllegalArgumentException("Filter clause without a tag key: tag:" + clause);
+        if (op == PRESENT) return new TagPredicate(slot(keys, key), op, null, null);
+        String value = clause.substring(at + (op == NOT_EQUALS ? 2 : 1));
+        return new TagPredicate(slot(keys, key), op, value, op == MATCHES ? regex(value, regexes) : null);
+    }
+
+    private static int slot(List<String> keys, String key) {
+        int i = keys.indexOf(key);
+        if (i >= 0) return i;
+        keys.add(key);
+        return keys.size() - 1;
+    }
+
+    private static Pattern regex(String value, boolean regexes) {
+        if (!regexes) {
+            throw new IllegalArgumentException("Filter regex '" + value + "' is not accepted here; use operation= with * and ? wildcards");
+        }
+        try {
+            return Pattern.compile(value);
+        } catch (PatternSyntaxException e) {
+            throw new IllegalArgumentException("Invalid filter regex: " + e.getMessage());
+        }
+    }
+
+    /** Whole-name match; backtracks only to the last {@code *}, so it stays within glob length times name length. */
+    static boolean glob(String glob, String name) {
+        int g = 0, n = 0, star = -1, resume = 0;
+        while (n < name.length()) {
+            if (g < glob.length() && (glob.charAt(g) == '?' || glob.charAt(g) == name.charAt(n))) {
+                g++;
+                n++;
+            } else if (g < glob.length() && glob.charAt(g) == '*') {
+                star = g++;
+                resume = n;
+            } else if (star >= 0) {
+                g = star + 1;
+                n = ++resume;
+            } else {
+                return false;
+            }
+        }
+        while (g < glob.length() && glob.charAt(g) == '*') g++;
+        return g == glob.length();
+    }
+
+    public boolean isAll() {
+        return this == ALL;
+    }
+
+    public boolean needsTags() {
+        return tags.length > 0;
+    }
+
+    public Map<String, String> queryParams() {
+        Map<String, String> params = new LinkedHashMap<>();
+        if (exactOperation != null) params.put("operation", exactOperation);
+        if (minDuration > 0) params.put("minDuration", minDuration + "us");
+        Map<String, String> equal = equalTags();
+        if (!equal.isEmpty()) params.put("tags", new JsonObject(new LinkedHashMap<>(equal)).encode());
+        return params;
+    }
+
+    /** Null when the filter has no operation or it has wildcards. */
+    String exactOperation() {
+        return exactOperation;
+    }
+
+    long minDuration() {
+        return minDuration;
+    }
+
+    Map<String, String> equalTags() {
+        Map<String, String> equal = new LinkedHashMap<>();
+        for (TagPredicate t : tags) {
+            if (t.op == EQUALS) equal.put(tagKeys[t.slot], t.value);
+        }
+        return equal;
+    }
+
+    /** For sources that carry no tags. */
+    public TraceSink apply(TraceSink sink) {
+        if (isAll()) return sink;
+        if (needsTags()) throw new IllegalArgumentException("Filter '" + expression + "' reads tags, which this source does not carry");
+        Matcher matcher = matcher();
+        return new TraceSink() {
+            @Override
+            public void onTrace(Trace trace) {
+                boolean any = false;
+                for (int i=0;i<trace.size();i++){
+                    Span s = trace.span(i);
+                    s.skip = !matcher.matches(s);
+                    any |= !s.skip;
+                }
+                if (any) sink.onTrace(trace);
+            }
+
+            @Override
+            public String[] dimensions() {
+                return sink.dimensions();
+            }
+        };
+    }
+
+    /** One per decoder; not thread-safe. */
+    public Matcher matcher() {
+        return new Matcher();
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    public final class Matcher {
+        private final String[] values = new String[tagKeys.length];
+        private final Map<String, Boolean> operations = new HashMap<>();
+
+        private Matcher() {
+        }
+
+        /** -1 when the filter does not read {@code key}. */
+        public int slot(String key) {
+            for (int i=0;i<tagKeys.length;i++){
+                if (tagKeys[i].equals(key)) return i;
+            }
+            return -1;
+        }
+
+        public void startSpan() {
+            for (int i=0;i<values.length;i++){
+                values[i] = null;
+            }
+        }
+
+        public void tag(int slot, String value) {
+            values[slot] = value;
+        }
+
+        public boolean matches(Span span) {
+            if (span.duration < minDuration) return false;
+            if ((operation != null || operationGlob != null)
+                    && !operation(span.operationName != null ? span.operationName : "")) return false;
+            for (TagPredicate t : tags) {
+                if (!t.test(values[t.slot])) return false;
+            }
+            return true;
+        }
+
+        private boolean operation(String name) {
+            Boolean known = operations.get(name);
+            if (known != null) return known;
+            boolean match = operation != null ? operation.matcher(name).find() : glob(operationGlob, name);
+            if (operations.size() >= MAX_MEMO) operations.clear();
+            operations.put(name, match);
+            return match;
+        }
+    }
+}
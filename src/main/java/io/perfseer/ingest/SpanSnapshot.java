@@ -0,0 +1,463 @@
+package io.perfseer.ingest;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Columnar trace file written by {@code fetch --output} and read by {@code --file}. */
+public final class SpanSnapshot {
+
+    static final byte[] MAGIC = {'P', 'S', 'N', 'P'};
+    static final byte VERSION = 1;
+    static final int HEADER_BYTES = 8;
+    static final int BLOCK_SPANS = 1 << 16;
+
+    private static final int NAMES = 0, TRACES = 1, SPAN_IDS = 2, PARENTS = 3, OPERATIONS = 4, SERVICES = 5,
+            STARTS = 6, DURATIONS = 7, ERRORS = 8, NAMESPACES = 9, FUNCTIONS = 10, COLUMNS = 11;
+
+    private SpanSnapshot() {
+    }
+
+    public static boolean isSnapshot(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(MAGIC.length);
+            while (header.hasRemaining() && ch.read(header) >= 0) {
+                // fill
+            }
+            return !header.hasRemaining() && Arrays.equals(header.array(), MAGIC);
+        }
+    }
+
+    public static <S extends TraceSink> S read(Path file, S sink) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            checkHeader(ch, file);
+            List<String> names = new ArrayList<>();
+            Trace trace = new Trace();
+            long pos = HEADER_BYTES;
+            long size = ch.size();
+            while (pos < size) {
+                int length = blockLength(ch, pos, file);
+                MappedByteBuffer block = ch.map(FileChannel.MapMode.READ_ONLY, pos + 4, length);
+                new BlockReader(block, names).read(trace, sink);
+                pos += 4L + length;
+            }
+        }
+        return sink;
+    }
+
+    /** Read from the block headers only. */
+    public static long[] range(Path file) throws IOException {
+        long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            checkHeader(ch, file);
+            ByteBuffer head = ByteBuffer.allocate(24);
+            long pos = HEADER_BYTES;
+            while (pos < ch.size()) {
+                int length = blockLength(ch, pos, file);
+                head.clear();
+                readFully(ch, head, pos + 4, file);
+                if (head.getInt(4) > 0) {
+                    min = Math.min(min, head.getLong(8));
+                    max = Math.max(max, head.getLong(16));
+                }
+                pos += 4L + length;
+            }
+        }
+        if (min > max) throw new IllegalStateException(file + " has no spans");
+        return new long[]{min, max};
+    }
+
+    private static void checkHeader(FileChannel ch, Path file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        readFully(ch, header, 0, file);
+        if (!Arrays.equals(Arrays.copyOf(header.array(), MAGIC.length), MAGIC)) {
+            throw new IllegalArgumentException(file + " is not a span snapshot");
+        }
+        if (header.get(MAGIC.length) != VERSION) {
+            throw new IllegalArgumentException(file + " is a span snapshot of unsupported version " + header.get(MAGIC.length));
+        }
+    }
+
+    private static int blockLength(FileChannel ch, long pos, Path file) throws IOException {
+        ByteBuffer len = ByteBuffer.allocate(4);
+        readFully(ch, len, pos, file);
+        int length = len.getInt(0);
+        if (length < 0 || pos + 4 + length > ch.size()) throw new IllegalArgumentException(file + " is truncated");
+        return length;
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer buf, long pos, Path file) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = ch.read(buf, pos + buf.position());
+            if (n < 0) throw new IllegalArgumentException(file + " is truncated");
+        }
+    }
+
+    private static final class BlockReader {
+        private final ByteBuffer b;
+        private final List<String> names;
+        private final int[] pos = new int[COLUMNS];
+
+        BlockReader(ByteBuffer b, List<String> names) {
+            this.b = b;
+            this.names = names;
+        }
+
+        void read(Trace trace, TraceSink sink) {
+            int traces = b.getInt(0);
+            int p = 24;
+            for (int c=0;c<COLUMNS;c++){
+                pos[c] = p;
+                int length = (int) varint(c);
+                p = pos[c] + length;
+            }
+            long count = varint(NAMES);
+            for (long i=0;i<count;i++){
+                int length = (int) varint(NAMES);
+                byte[] utf8 = new byte[length];
+                b.get(pos[NAMES], utf8);
+                pos[NAMES] += length;
+                this.names.add(new String(utf8, StandardCharsets.UTF_8));
+            }
+            long base = 0;
+            long[] ids = new long[16];
+            int errorBit = 0;
+            for (int t=0;t<traces;t++){
+                trace.reset();
+                int spans = (int) varint(TRACES);
+                trace.traceId = traceId();
+                if (ids.length < spans) ids = new long[Math.max(spans, ids.length * 2)];
+                // all ids first: a parent may come after its children
+                for (int i=0;i<spans;i++){
+                    ids[i] = b.getLong(pos[SPAN_IDS]);
+                    pos[SPAN_IDS] += 8;
+                }
+                long first = 0;
+                for (int i=0;i<spans;i++){
+                    Span s = trace.addSpan();
+                    s.spanId = ids[i];
+                    long parent = varint(PARENTS);
+                    if (parent == 1) {
+                        s.parentSpanId = b.getLong(pos[PARENTS]);
+                        pos[PARENTS] += 8;
+                    } else if (parent > 1) {
+                        s.parentSpanId = ids[(int) parent - 2];
+                    }
+                    s.operationName = name(OPERATIONS);
+                    s.serviceName = name(SERVICES);
+                    long delta = unzigzag(varint(STARTS));
+                    if (i == 0) {
+                        base += delta;
+                        first = base;
+                        s.startTime = base;
+                    } else {
+                        s.startTime = first + delta;
+                    }
+                    s.duration = varint(DURATIONS);
+                    s.error = (b.get(pos[ERRORS] + (errorBit >>> 3)) & (1 << (errorBit & 7))) != 0;
+                    errorBit++;
+                    s.codeNamespace = name(NAMESPACES);
+                    s.codeFunction = name(FUNCTIONS);
+                }
+                sink.onTrace(trace);
+            }
+        }
+
+        private String traceId() {
+            long header = varint(TRACES);
+            int length = (int) (header >>> 1);
+            if ((header & 1) == 0) {
+                byte[] utf8 = new byte[length];
+                b.get(pos[TRACES], utf8);
+                pos[TRACES] += length;
+                return new String(utf8, StandardCharsets.UTF_8);
+            }
+            char[] hex = new char[length];
+            for (int i=0;i<length;i+=2){
+                int v = b.get(pos[TRACES]++) & 0xff;
+                hex[i] = Character.forDigit(v >>> 4, 16);
+                hex[i + 1] = Character.forDigit(v & 15, 16);
+            }
+            return new String(hex);
+        }
+
+        private String name(int column) {
+            long id = varint(column);
+            return id == 0 ? null : names.get((int) id - 1);
+        }
+
+        private long varint(int column) {
+            int p = pos[column];
+            long v = 0;
+            int shift = 0;
+            byte x;
+            do {
+                x = b.get(p++);
+                v |= (long) (x & 0x7f) << shift;
+                shift += 7;
+            } while (x < 0);
+            pos[column] = p;
+            return v;
+        }
+    }
+
+    /** {@link #close()} writes the last block. */
+    public static final class Writer implements TraceSink, Closeable {
+        private final OutputStream out;
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final Column[] columns = new Column[COLUMNS];
+        private final ByteBuffer head = ByteBuffer.allocate(28);
+        private long[] parentKeys = new long[64];
+        private int[] parentIndex = new int[64];
+        private int indexMask;
+        private int newNames;
+        private int blockTraces;
+        private int blockSpans;
+        private long minStart = Long.MAX_VALUE;
+        private long maxStart = Long.MIN_VALUE;
+        private long base;
+        private long traces;
+        private long spans;
+        private long bytes;
+
+        public Writer(Path file) throws IOException {
+            this.out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16);
+            for (int c=0;c<COLUMNS;c++){
+                columns[c] = new Column();
+            }
+            byte[] header = Arrays.copyOf(MAGIC, HEADER_BYTES);
+            header[MAGIC.length] = VERSION;
+            out.write(header);
+            bytes = HEADER_BYTES;
+        }
+
+        public long traces() {
+            return traces;
+        }
+
+        public long spans() {
+            return spans;
+        }
+
+        public long bytes() {
+            return bytes;
+        }
+
+        @Override
+        public void onTrace(Trace trace) {
+            int n = trace.size();
+            if (n == 0) return;
+            columns[TRACES].varint(n);
+            traceId(trace.traceId != null ? trace.traceId : "");
+            index(trace);
+            long first = trace.span(0).startTime;
+            for (int i=0;i<n;i++){
+                Span s = trace.span(i);
+                columns[SPAN_IDS].fixed64(s.spanId);
+                int parent = s.parentSpanId != 0 ? parent(s.parentSpanId) : -1;
+                if (s.parentSpanId == 0) {
+                    columns[PARENTS].varint(0);
+                } else if (parent < 0) {
+                    columns[PARENTS].varint(1);
+                    columns[PARENTS].fixed64(s.parentSpanId);
+                } else {
+                    columns[PARENTS].varint(parent + 2);
+                }
+                columns[OPERATIONS].varint(id(s.operationName));
+                columns[SERVICES].varint(id(s.serviceName));
+                columns[STARTS].varint(zigzag(i == 0 ? s.startTime - base : s.startTime - first));
+                columns[DURATIONS].varint(s.duration);
+                int bit = blockSpans + i;
+                if ((bit & 7) == 0) columns[ERRORS].put((byte) 0);
+                if (s.error) columns[ERRORS].buf[bit >>> 3] |= (byte) (1 << (bit & 7));
+                columns[NAMESPACES].varint(id(s.codeNamespace));
+                columns[FUNCTIONS].varint(id(s.codeFunction));
+                minStart = Math.min(minStart, s.startTime);
+                maxStart = Math.max(maxStart, s.startTime);
+            }
+            base = first;
+            blockTraces++;
+            blockSpans += n;
+            traces++;
+            spans += n;
+            if (blockSpans >= BLOCK_SPANS) {
+                try {
+                    flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (blockTraces > 0) flush();
+            } finally {
+                out.close();
+            }
+        }
+
+        private void flush() throws IOException {
+            // the names column leads with the count of names new in this block
+            Column count = new Column();
+            count.varint(newNames);
+            long length = 24;
+            for (int c=0;c<COLUMNS;c++){
+                int n = columns[c].len + (c == NAMES ? count.len : 0);
+                length += varintSize(n) + n;
+            }
+            if (length > Integer.MAX_VALUE) throw new IllegalStateException("snapshot block of " + length + " bytes");
+            head.clear();
+            head.putInt((int) length).putInt(blockTraces).putInt(blockSpans).putLong(minStart).putLong(maxStart);
+            out.write(head.array(), 0, head.position());
+            Column prefix = new Column();
+            for (int c=0;c<COLUMNS;c++){
+                Column col = columns[c];
+                prefix.len = 0;
+                prefix.varint(col.len + (c == NAMES ? count.len : 0));
+                out.write(prefix.buf, 0, prefix.len);
+                if (c == NAMES) out.write(count.buf, 0, count.len);
+                out.write(col.buf, 0, col.len);
+                col.len = 0;
+            }
+            bytes += 4 + length;
+            newNames = 0;
+            blockTraces = 0;
+            blockSpans = 0;
+            minStart = Long.MAX_VALUE;
+            maxStart = Long.MIN_VALUE;
+            base = 0;
+        }
+
+        private void traceId(String id) {
+            boolean hex = (id.length() & 1) == 0;
+            for (int i=0;i<id.length() && hex;i++){
+                char c = id.charAt(i);
+                hex = (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f');
+            }
+            Column col = columns[TRACES];
+            if (hex) {
+                col.varint(((long) id.length() << 1) | 1);
+                for (int i=0;i<id.length();i+=2){
+                    col.put((byte) (Character.digit(id.charAt(i), 16) << 4 | Character.digit(id.charAt(i + 1), 16)));
+                }
+            } else {
+                byte[] utf8 = id.getBytes(StandardCharsets.UTF_8);
+                col.varint((long) utf8.length << 1);
+                col.put(utf8, 0, utf8.length);
+            }
+        }
+
+        private int id(String name) {
+            if (name == null) return 0;
+            Integer id = ids.get(name);
+            if (id == null) {
+                id = ids.size() + 1;
+                ids.put(name, id);
+                byte[] utf8 = name.getBytes(StandardCharsets.UTF_8);
+                columns[NAMES].varint(utf8.length);
+                columns[NAMES].put(utf8, 0, utf8.length);
+                newNames++;
+            }
+            return id;
+        }
+
+        private void index(Trace trace) {
+            int capacity = Integer.highestOneBit(Math.max(4, trace.size() * 2 - 1)) << 1;
+            if (parentKeys.length < capacity) {
+                parentKeys = new long[capacity];
+                parentIndex = new int[capacity];
+            } else {
+                Arrays.fill(parentKeys, 0, capacity, 0L);
+            }
+            int mask = capacity - 1;
+            for (int i=0;i<trace.size();i++){
+                long id = trace.span(i).spanId;
+                if (id == 0) continue;
+                int h = slot(id, mask);
+                while (parentKeys[h] != 0 && parentKeys[h] != id) h = (h + 1) & mask;
+                if (parentKeys[h] == 0) {
+                    parentKeys[h] = id;
+                    parentIndex[h] = i;
+                }
+            }
+            indexMask = mask;
+        }
+
+        private int parent(long id) {
+            int h = slot(id, indexMask);
+            while (parentKeys[h] != 0) {
+                if (parentKeys[h] == id) return parentIndex[h];
+                h = (h + 1) & indexMask;
+            }
+            return -1;
+        }
+
+        private static int slot(long id, int mask) {
+            long h = id * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+    }
+
+    private static final class Column {
+        byte[] buf = new byte[256];
+        int len;
+
+        void put(byte v) {
+            if (len == buf.length) buf = Arrays.copyOf(buf, len * 2);
+            buf[len++] = v;
+        }
+
+        void put(byte[] src, int offset, int length) {
+            if (len + length > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + length));
+            System.arraycopy(src, offset, buf, len, length);
+            len += length;
+        }
+
+        void varint(long v) {
+            while ((v & ~0x7fL) != 0) {
+                put((byte) ((v & 0x7f) | 0x80));
+                v >>>= 7;
+            }
+            put((byte) v);
+        }
+
+        void fixed64(long v) {
+            for (int i=56;i>=0;i-=8){
+                put((byte) (v >>> i));
+            }
+        }
+    }
+
+    static int varintSize(long v) {
+        int n = 1;
+        while ((v & ~0x7fL) != 0) {
+            v >>>= 7;
+            n++;
+        }
+        return n;
+    }
+
+    static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+}
@@ -0,0 +1,26 @@
+package io.perfseer.ingest;
+
+public final class TimedSink implements TraceSink {
+    private final TraceSink sink;
+    public long traces;
+    public long spans;
+    public long nanos;
+
+    public TimedSink(TraceSink sink) {
+        this.sink = sink;
+    }
+
+    @Override
+    public void onTrace(Trace trace) {
+        traces++;
+        spans += trace.size();
+        long t0 = System.nanoTime();
+        sink.onTrace(trace);
+        nanos += System.nanoTime() - t0;
+    }
+
+    @Override
+    public String[] dimensions() {
+        return sink.dimensions();
+    }
+}
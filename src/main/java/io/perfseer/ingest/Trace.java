@@ -0,0 +1,46 @@
+package io.perfseer.ingest;
+
+import java.util.Arrays;
+
+/** Reused once {@link TraceSink#onTrace(Trace)} returns. */
+public final class Trace {
+    public String traceId;
+    private Span[] spans = new Span[16];
+    private int size;
+
+    public int size() {
+        return size;
+    }
+
+    public Span span(int i) {
+        return spans[i];
+    }
+
+    public void copyFrom(Trace other) {
+        reset();
+        traceId = other.traceId;
+        for (int i=0;i<other.size;i++){
+            addSpan().copyFrom(other.spans[i]);
+        }
+    }
+
+    Span addSpan() {
+        if (size == spans.length) {
+            spans = Arrays.copyOf(spans, size * 2);
+        }
+        Span s = spans[size];
+        if (s == null) {
+            s = new Span();
+            spans[size] = s;
+        } else {
+            s.reset();
+        }
+        size++;
+        return s;
+    }
+
+    void reset() {
+        traceId = null;
+        size = 0;
+    }
+}
@@ -0,0 +1,37 @@
+package io.perfseer.ingest;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/** A {@link SpanSnapshot} or a Jaeger JSON response, told apart by content. */
+public final class TraceFiles {
+
+    private TraceFiles() {
+    }
+
+    public static <S extends TraceSink> S read(Path file, S sink) throws IOException {
+        return read(file, SpanFilter.ALL, sink);
+    }
+
+    /** Snapshots keep no tags, so {@code filter} must not read any for them. */
+    public static <S extends TraceSink> S read(Path file, SpanFilter filter, S sink) throws IOException {
+        if (SpanSnapshot.isSnapshot(file)) {
+            SpanSnapshot.read(file, filter.apply(sink));
+            return sink;
+        }
+        return JaegerJsonDecoder.decode(file, filter, sink);
+    }
+
+    public static long[] range(Path file) throws IOException {
+        if (SpanSnapshot.isSnapshot(file)) return SpanSnapshot.range(file);
+        long[] range = {Long.MAX_VALUE, Long.MIN_VALUE};
+        JaegerJsonDecoder.decode(file, trace -> {
+            for (int i=0;i<trace.size();i++){
+                range[0] = Math.min(range[0], trace.span(i).startTime);
+                range[1] = Math.max(range[1], trace.span(i).startTime);
+            }
+        });
+        if (range[0] > range[1]) throw new IllegalStateException(file + " has no spans");
+        return range;
+    }
+}
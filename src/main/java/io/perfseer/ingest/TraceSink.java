@@ -0,0 +1,13 @@
+package io.perfseer.ingest;
+
+@FunctionalInterface
+public interface TraceSink {
+    String[] NO_DIMENSIONS = new String[0];
+
+    void onTrace(Trace trace);
+
+    /** Tag keys decoders keep in {@link Span#dimensions}. */
+    default String[] dimensions() {
+        return NO_DIMENSIONS;
+    }
+}
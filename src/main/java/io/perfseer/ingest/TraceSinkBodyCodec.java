@@ -0,0 +1,256 @@
+package io.perfseer.ingest;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.WriteStream;
+import io.vertx.ext.web.codec.BodyCodec;
+import io.vertx.ext.web.codec.spi.BodyStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/** Decodes a response body into a {@link TraceSink} chunk by chunk, off the event loop. */
+final class TraceSinkBodyCodec implements BodyCodec<Void> {
+
+    static final class Progress {
+        long bytes;
+        long nanos;
+        /** Null when the body was not kept or outgrew its limit. */
+        byte[] body;
+    }
+
+    private final TraceSink sink;
+    private final SpanFilter filter;
+    private final Object lock;
+    private final long keepBody;
+    private final Progress progress;
+    private final Executor executor;
+
+    private TraceSinkBodyCodec(TraceSink sink, SpanFilter filter, Object lock, long keepBody, Progress progress,
+                               Executor executor) {
+        this.sink = sink;
+        this.filter = filter;
+        this.lock = lock;
+        this.keepBody = keepBody;
+        this.progress = progress;
+        this.executor = executor;
+    }
+
+    static io.vertx.mutiny.ext.web.codec.BodyCodec<Void> of(TraceSink sink, Object lock, Executor executor) {
+        return of(sink, SpanFilter.ALL, lock, 0, new Progress(), executor);
+    }
+
+    /** {@code keepBody} is the largest body kept for the response cache, 0 to keep none. */
+    static io.vertx.mutiny.ext.web.codec.BodyCodec<Void> of(TraceSink sink, SpanFilter filter, Object lock, long keepBody,
+                                                          Progress progress, Executor executor) {
+        return io.vertx.mutiny.ext.web.codec.BodyCodec.newInstance(
+                new TraceSinkBodyCodec(sink, filter, lock, keepBody, progress, executor));
+    }
+
+    static BodyStream<Void> stream(BodyDecoder decoder, Object lock, long keepBody, Progress progress, Executor executor) {
+        return new DecodingStream(lock, decoder, keepBody, progress, executor, Vertx.currentContext());
+    }
+
+    @Override
+    public void create(Handler<AsyncResult<BodyStream<Void>>> handler) {
+        handler.handle(Future.succeededFuture(stream(new JaegerJsonDecoder(sink, filter), lock, keepBody, progress, executor)));
+    }
+
+    private static final class DecodingStream implements BodyStream<Void> {
+        private final Object lock;
+        private final BodyDecoder decoder;
+        private final long keepBody;
+        private final Progress progress;
+        private final Executor executor;
+        private final Context context;
+        private final Promise<Void> result = Promise.promise();
+
+        // guarded by this
+        private final ArrayDeque<Buffer> chunks = new ArrayDeque<>();
+        private long queued;
+        private long maxQueued = 1 << 20;
+        private boolean draining;
+        private boolean ended;
+        private Handler<Void> drainHandler;
+
+        // guarded by lock; the decoded chunks, which the decoder does not hold on to
+        private List<byte[]> kept;
+        private long keptBytes;
+
+        DecodingStream(Object lock, BodyDecoder decoder, long keepBody, Progress progress, Executor executor, Context context) {
+            this.lock = lock;
+            this.decoder = decoder;
+            this.keepBody = Math.min(keepBody, Integer.MAX_VALUE - 8);
+            this.kept = keepBody > 0 ? new ArrayList<>() : null;
+            this.progress = progress;
+            this.executor = executor;
+            this.context = context;
+        }
+
+        @Override
+        public Future<Void> result() {
+            return result.future();
+        }
+
+        @Override
+        public void handle(Throwable failure) {
+            result.tryFail(failure);
+        }
+
+        @Override
+        public Future<Void> write(Buffer data) {
+            if (result.future().isComplete()) {
+                return result.future();
+            }
+            boolean start;
+            synchronized (this) {
+                chunks.add(data);
+                queued += data.length();
+                start = !draining;
+                draining = true;
+            }
+            if (start) submit();
+            return Future.succeededFuture();
+        }
+
+        @Override
+        public void write(Buffer data, Handler<AsyncResult<Void>> handler) {
+            Future<Void> f = write(data);
+            if (handler != null) f.onComplete(handler);
+        }
+
+        @Override
+        public void end(Handler<AsyncResult<Void>> handler) {
+            if (!result.future().isComplete()) {
+                boolean start;
+                synchronized (this) {
+                    start = !ended && !draining;
+                    ended = true;
+                    draining = true;
+                }
+                if (start) submit();
+            }
+            if (handler != null) result.future().onComplete(handler);
+        }
+
+        private void submit() {
+            try {
+                executor.execute(this::drain);
+            } catch (RuntimeException e) {
+                onContext(() -> result.tryFail(e));
+            }
+        }
+
+        private void drain() {
+            try {
+                while (!result.future().isComplete()) {
+                    Buffer chunk;
+                    Handler<Void> resume = null;
+                    synchronized (this) {
+                        chunk = chunks.poll();
+                        if (chunk == null && !ended) {
+                            draining = false;
+                            return;
+                        }
+                        if (chunk != null) {
+                            queued -= chunk.length();
+                            if (drainHandler != null && queued <= maxQueued / 2) {
+                                resume = drainHandler;
+                                drainHandler = null;
+                            }
+                        }
+                    }
+                    if (resume != null) {
+                        Handler<Void> h = resume;
+                        onContext(() -> h.handle(null));
+                    }
+                    synchronized (lock) {
+                        long t0 = System.nanoTime();
+                        if (chunk != null) {
+                            byte[] bytes = chunk.getBytes();
+                            decoder.feed(bytes, 0, bytes.length);
+                            progress.bytes += bytes.length;
+                            keep(bytes);
+                        } else {
+                            decoder.end();
+                            progress.body = body();
+                        }
+                        progress.nanos += System.nanoTime() - t0;
+                    }
+                    if (chunk == null) {
+                        onContext(result::tryComplete);
+                        return;
+                    }
+                }
+            } catch (Exception e) {
+                onContext(() -> result.tryFail(e));
+            }
+        }
+
+        private void keep(byte[] bytes) {
+            if (kept == null) return;
+            keptBytes += bytes.length;
+            if (keptBytes > keepBody) {
+                kept = null;
+            } else {
+                kept.add(bytes);
+            }
+        }
+
+        private byte[] body() {
+            List<byte[]> chunks = kept;
+            kept = null;
+            if (chunks == null) return null;
+            if (chunks.size() == 1) return chunks.get(0);
+            byte[] body = new byte[(int) keptBytes];
+            int at = 0;
+            for (byte[] chunk : chunks) {
+                System.arraycopy(chunk, 0, body, at, chunk.length);
+                at += chunk.length;
+            }
+            return body;
+        }
+
+        /** The web client expects its callbacks on the request's event loop. */
+        private void onContext(Runnable action) {
+            if (context != null) {
+                context.runOnContext(v -> action.run());
+            } else {
+                action.run();
+            }
+        }
+
+        @Override
+        public WriteStream<Buffer> exceptionHandler(Handler<Throwable> handler) {
+            return this;
+        }
+
+        @Override
+        public synchronized WriteStream<Buffer> setWriteQueueMaxSize(int maxSize) {
+            maxQueued = maxSize;
+            return this;
+        }
+
+        @Override
+        public synchronized boolean writeQueueFull() {
+            return queued >= maxQueued;
+        }
+
+        @Override
+        public WriteStream<Buffer> drainHandler(Handler<Void> handler) {
+            boolean now;
+            synchronized (this) {
+                now = handler != null && queued <= maxQueued / 2;
+                drainHandler = now ? null : handler;
+            }
+            if (now) handler.handle(null);
+            return this;
+        }
+    }
+}
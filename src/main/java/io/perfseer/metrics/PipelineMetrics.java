@@ -0,0 +1,109 @@
+package io.perfseer.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/** The analyzer's own meters, on {@code /q/metrics}. */
+@ApplicationScoped
+public class PipelineMetrics {
+
+    public enum Stage {
+        /** From send until the body is decoded. */
+        JAEGER,
+        /** Excluding the sink it feeds. */
+        DECODE,
+        AGGREGATE,
+        TRAIN,
+        SCORE
+    }
+
+    private final MeterRegistry registry;
+    private final Map<Stage, Timer> stages = new ConcurrentHashMap<>();
+    private final Map<String, Counter> spans = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> operations = new ConcurrentHashMap<>();
+    private final Counter bytes;
+
+    @Inject
+    public PipelineMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, Timer.builder("perfseer.stage")
+                    .description("Time spent per pipeline stage")
+                    .tag("stage", stage.name().toLowerCase())
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+        this.bytes = Counter.builder("perfseer.jaeger.bytes")
+                .description("Response bytes received from Jaeger")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    public static PipelineMetrics noop() {
+        return new PipelineMetrics(new CompositeMeterRegistry());
+    }
+
+    public Timer timer(Stage stage) {
+        return stages.get(stage);
+    }
+
+    public void record(Stage stage, long nanos) {
+        stages.get(stage).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void spans(String source, long n) {
+        spans.computeIfAbsent(source, s -> Counter.builder("perfseer.spans")
+                .description("Spans decoded")
+                .tag("source", s)
+                .register(registry)).increment(n);
+    }
+
+    public void bytes(long n) {
+        bytes.increment(n);
+    }
+
+    public void operations(String service, int n) {
+        operations.computeIfAbsent(service, s -> {
+            AtomicInteger value = new AtomicInteger();
+            Gauge.builder("perfseer.operations", value, AtomicInteger::get)
+                    .description("Operations in the latest features of a service")
+                    .tag("service", s)
+                    .register(registry);
+            return value;
+        }).set(n);
+    }
+
+    public ExecutorService executor(String name, ExecutorService executor) {
+        return ExecutorServiceMetrics.monitor(registry, executor, name);
+    }
+
+    /** Meters only weakly reference {@code cache}. */
+    public <C> void cache(String name, C cache, Function<C, Map<String, Object>> stats) {
+        Tags tags = Tags.of("cache", name);
+        FunctionCounter.builder("perfseer.cache.requests", cache, c -> stat(stats.apply(c), "hits"))
+                .tags(tags).tag("result", "hit").register(registry);
+        FunctionCounter.builder("perfseer.cache.requests", cache, c -> stat(stats.apply(c), "misses"))
+                .tags(tags).tag("result", "miss").register(registry);
+        Gauge.builder("perfseer.cache.hit.ratio", cache, c -> stat(stats.apply(c), "hitRate"))
+                .tags(tags).register(registry);
+    }
+
+    private static double stat(Map<String, Object> stats, String key) {
+        Object v = stats.get(key);
+        return v instanceof Number ? ((Number) v).doubleValue() : 0.0;
+    }
+}
@@ -0,0 +1,128 @@
+package io.perfseer.ml;
+
+import io.perfseer.config.PerfConfig;
+import io.perfseer.ingest.JaegerClient;
+import io.perfseer.ingest.Lookback;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import org.jboss.logging.Logger;
+
+/** Scores many services at once and ranks them together; a failed service does not fail the batch. */
+@ApplicationScoped
+public class BatchScoringService {
+    private static final Logger LOG = Logger.getLogger(BatchScoringService.class);
+
+    @Inject
+    JaegerClient jaeger;
+    @Inject
+    ScoringService scoring;
+    @Inject
+    PerfConfig cfg;
+
+    public static final class Report {
+        public long windowStart; // epoch microseconds
+        public long windowEnd;
+        public int services;
+        public long elapsedMillis;
+        public List<ServiceScore> ranking;
+        public List<OperationScore> operations;
+        public Map<String, String> failures;
+    }
+
+    public static final class ServiceScore {
+        public String service;
+        public int operations;
+        public double maxScore;
+        public String topOperation;
+    }
+
+    public static final class OperationScore {
+        public String service;
+        public String key;
+        public double score;
+        public Map<String, Object> features;
+    }
+
+    private static final class Result {
+        final String service;
+        final List<IsolationScorer.ScoredFeature> scored;
+        final String failure;
+
+        Result(String service, List<IsolationScorer.ScoredFeature> scored, String failure) {
+            this.service = service;
+            this.scored = scored;
+            this.failure = failure;
+        }
+    }
+
+    /** Null or empty {@code services} scores every service; {@code top <= 0} keeps all operations. */
+    public Uni<Report> score(List<String> services, String lookbackBaseline, String lookbackCurrent, int top) {
+        Uni<List<String>> names = services == null || services.isEmpty()
+                ? jaeger.services()
+                : Uni.createFrom().item(services);
+        return names.onItem().transformToUni(list -> {
+            long t0 = System.nanoTime();
+            long end = Lookback.nowMicros();
+            long start = end - scoring.windowMicros(lookbackCurrent);
+            List<String> distinct = new ArrayList<>(new LinkedHashSet<>(list));
+            LOG.debugf("Scoring %d services", distinct.size());
+            return Multi.createFrom().iterable(distinct)
+                    .onItem().transformToUni(svc -> scoring.score(svc, lookbackBaseline, lookbackCurrent)
+                            .onItem().transform(scored -> new Result(svc, scored, null))
+                            .onFailure().recoverWithItem(e -> {
+                                LOG.warnf("Could not score %s: %s", svc, e.getMessage());
+                                return new Result(svc, null, String.valueOf(e.getMessage()));
+                            }))
+                    .merge(Math.max(1, cfg.batchMaxServicesInFlight()))
+                    .collect().asList()
+                    .onItem().transform(results -> report(results, start, end, top,
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0)));
+        });
+    }
+
+    private static Report report(List<Result> results, long start, long end, int top, long elapsedMillis) {
+        Report r = new Report();
+        r.windowStart = start;
+        r.windowEnd = end;
+        r.services = results.size();
+        r.elapsedMillis = elapsedMillis;
+        r.ranking = new ArrayList<>();
+        r.operations = new ArrayList<>();
+        r.failures = new TreeMap<>();
+        for (Result result : results) {
+            if (result.failure != null) {
+                r.failures.put(result.service, result.failure);
+                continue;
+            }
+            ServiceScore ss = new ServiceScore();
+            ss.service = result.service;
+            ss.operations = result.scored.size();
+            for (IsolationScorer.ScoredFeature sf : result.scored) {
+                if (ss.topOperation == null || sf.score > ss.maxScore) {
+                    ss.maxScore = sf.score;
+                    ss.topOperation = sf.key;
+                }
+                OperationScore os = new OperationScore();
+                os.service = result.service;
+                os.key = sf.key;
+                os.score = sf.score;
+                os.features = sf.featureValues;
+                r.operations.add(os);
+            }
+            r.ranking.add(ss);
+        }
+        r.ranking.sort(Comparator.comparingDouble((ServiceScore ss) -> ss.maxScore).reversed());
+        r.operations.sort(Comparator.comparingDouble((OperationScore os) -> os.score).reversed());
+        if (top > 0 && r.operations.size() > top) r.operations = new ArrayList<>(r.operations.subList(0, top));
+        return r;
+    }
+}
@@ -1,64 +1,174 @@
 package io.perfseer.ml;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import io.perfseer.aggregate.Aggregator;
+import io.perfseer.config.PerfConfig;
+import io.perfseer.metrics.PipelineMetrics;
+import io.opentelemetry.instrumentation.annotations.WithSpan;
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 import smile.anomaly.IsolationForest;
+import smile.anomaly.IsolationTree;
 
+/** Isolation forest over per-operation feature rows, one row per baseline sub-window. */
 @ApplicationScoped
 public class IsolationScorer {
 
+    static final int TREES = 100;
+    static final int MAX_SAMPLE = 256;
+
+    private final int parallelism;
+    private final ForkJoinPool pool;
+    private final PipelineMetrics metrics;
+
+    public IsolationScorer() {
+        this(1);
+    }
+
+    @Inject
+    public IsolationScorer(PerfConfig cfg, PipelineMetrics metrics) {
+        this(cfg.trainParallelism(), metrics);
+    }
+
+    public IsolationScorer(int parallelism) {
+        this(parallelism, PipelineMetrics.noop());
+    }
+
+    /** @param parallelism 1 grows trees on the calling thread, 0 uses one thread per core */
+    public IsolationScorer(int parallelism, PipelineMetrics metrics) {
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.pool = this.parallelism > 1 ? new ForkJoinPool(this.parallelism) : null;
+        this.metrics = metrics;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (pool != null) pool.shutdown();
+    }
+
     public static class ScoredFeature {
         public String key;
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        public Map<String,String> group;
         public double score; // anomaly score
         public Map<String,Object> featureValues;
+        @JsonIgnore
+        public Aggregator.Feature feature;
+    }
+
+    /** Part of the model cache key. */
+    public String schema() {
+        return "rate,errorRate,log(p50,p95,p99,selfTime,criticalPath);trees=" + TREES + ";sample=" + MAX_SAMPLE;
+    }
+
+    public IsolationForest train(List<Aggregator.Feature> baseline, long windowMicros) {
+        return train(List.of(baseline), windowMicros);
     }
 
-    public IsolationForest train(List<Aggregator.Feature> baseline) {
-        double[][] X = toMatrix(baseline);
-        int ntrees = 100;
-        int sampleSize = Math.min(256, X.length);
-        IsolationForest forest = new IsolationForest(ntrees, sampleSize);
-        forest.fit(X);
-        return forest;
+    @WithSpan("scorer.train")
+    public IsolationForest train(Iterable<List<Aggregator.Feature>> subWindows, long subWindowMicros) {
+        return metrics.timer(PipelineMetrics.Stage.TRAIN).record(() -> {
+            List<double[]> rows = new ArrayList<>();
+            for (List<Aggregator.Feature> window : subWindows) {
+                for (Aggregator.Feature f : window) rows.add(row(f, subWindowMicros));
+            }
+            double[][] X = rows.toArray(new double[0][]);
+            if (X.length < 2) throw new IllegalStateException("Baseline has " + X.length + " feature rows; at least 2 are needed");
+            return new IsolationForest(Math.min(MAX_SAMPLE, X.length), 0, trees(X, TREES, X.length));
+        });
     }
 
-    public List<ScoredFeature> score(IsolationForest model, List<Aggregator.Feature> current) {
-        double[][] X = toMatrix(current);
-        double[] s = model.score(X);
+    public List<ScoredFeature> score(IsolationForest model, List<Aggregator.Feature> current, long windowMicros) {
+        double[] s = scores(model, current, windowMicros);
         List<ScoredFeature> out = new ArrayList<>();
         for (int i=0;i<current.size();i++){
             Aggregator.Feature f = current.get(i);
             ScoredFeature sf = new ScoredFeature();
             sf.key = f.key;
+            sf.group = f.group;
             sf.score = s[i];
+            sf.feature = f;
             Map<String,Object> m = new HashMap<>();
             m.put("count", f.count);
             m.put("errorRate", f.errorRate);
             m.put("p50", f.p50);
             m.put("p95", f.p95);
             m.put("p99", f.p99);
+            m.put("selfTime", f.meanSelfTime);
+            m.put("criticalPath", f.meanCriticalPath);
             sf.featureValues = m;
             out.add(sf);
         }
         return out;
     }
 
-    private double[][] toMatrix(List<Aggregator.Feature> list){
+    /** Higher is more anomalous. */
+    @WithSpan("scorer.score")
+    public double[] scores(IsolationForest model, List<Aggregator.Feature> current, long windowMicros) {
+        return metrics.timer(PipelineMetrics.Stage.SCORE).record(() -> model.score(toMatrix(current, windowMicros)));
+    }
+
+    /** Per-tree seeds make the result independent of threading. */
+    IsolationTree[] trees(double[][] X, int n, long seed) {
+        int sampleSize = Math.min(MAX_SAMPLE, X.length);
+        int maxDepth = (int) Math.ceil(Math.log(Math.max(2, sampleSize)) / Math.log(2));
+        IntStream trees = IntStream.range(0, n);
+        if (pool == null) return trees.mapToObj(t -> tree(X, sampleSize, maxDepth, seed, t)).toArray(IsolationTree[]::new);
+        try {
+            return pool.submit(() -> trees.parallel()
+                    .mapToObj(t -> tree(X, sampleSize, maxDepth, seed, t))
+                    .toArray(IsolationTree[]::new)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while training", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Training failed", e.getCause());
+        }
+    }
+
+    private static IsolationTree tree(double[][] X, int sampleSize, int maxDepth, long seed, int t) {
+        SplittableRandom random = new SplittableRandom(seed * 31 + t);
+        // Floyd's sampling of distinct rows, in time and space of the sample rather than of X
+        Set<Integer> picked = new HashSet<>(sampleSize * 2);
+        List<double[]> sample = new ArrayList<>(sampleSize);
+        for (int j=X.length-sampleSize;j<X.length;j++){
+            int k = random.nextInt(j + 1);
+            if (!picked.add(k)) picked.add(k = j);
+            sample.add(X[k]);
+        }
+        return new IsolationTree(sample, maxDepth, 0);
+    }
+
+    double[][] toMatrix(List<Aggregator.Feature> list, long windowMicros){
         double[][] X = new double[list.size()][];
         for (int i=0;i<list.size();i++){
-            Aggregator.Feature f = list.get(i);
-            X[i] = new double[]{
-                    f.count,
-                    f.errorRate,
-                    f.p50,
-                    f.p95,
-                    f.p99
-            };
+            X[i] = row(list.get(i), windowMicros);
         }
         return X;
     }
+
+    private static double[] row(Aggregator.Feature f, long windowMicros) {
+        double seconds = Math.max(1, windowMicros) / 1e6;
+        return new double[]{
+                Math.log1p(f.count / seconds),
+                f.errorRate,
+                Math.log1p(f.p50),
+                Math.log1p(f.p95),
+                Math.log1p(f.p99),
+                Math.log1p(f.meanSelfTime),
+                Math.log1p(f.meanCriticalPath)
+        };
+    }
 }
@@ -0,0 +1,151 @@
+package io.perfseer.ml;
+
+import io.perfseer.config.PerfConfig;
+import io.perfseer.metrics.PipelineMetrics;
+import io.smallrye.mutiny.Uni;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import smile.anomaly.IsolationForest;
+
+/** Trained models by service, baseline window and schema; concurrent misses share one training run. */
+@ApplicationScoped
+public class ModelCache {
+
+    public static final class Key {
+        final String service;
+        final long baselineStart;
+        final long baselineEnd;
+        final String schema;
+        final String filter;
+
+        public Key(String service, long baselineStart, long baselineEnd, String schema) {
+            this(service, baselineStart, baselineEnd, schema, "");
+        }
+
+        public Key(String service, long baselineStart, long baselineEnd, String schema, String filter) {
+            this.service = service;
+            this.baselineStart = baselineStart;
+            this.baselineEnd = baselineEnd;
+            this.schema = schema;
+            this.filter = filter;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return baselineStart == k.baselineStart && baselineEnd == k.baselineEnd
+                    && service.equals(k.service) && schema.equals(k.schema) && filter.equals(k.filter);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(service, baselineStart, baselineEnd, schema, filter);
+        }
+    }
+
+    private static final class Entry {
+        final CompletableFuture<IsolationForest> model = new CompletableFuture<>();
+        final long createdNanos = System.nanoTime();
+    }
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long hits;
+    private long misses;
+    private long trainings;
+    private long trainNanos;
+    private long maxTrainNanos;
+
+    @Inject
+    public ModelCache(PerfConfig cfg, PipelineMetrics metrics) {
+        this(cfg.modelCacheSize(), cfg.modelCacheTtl().toNanos());
+        metrics.cache("model", this, ModelCache::stats);
+    }
+
+    public ModelCache(int maxSize, long ttlNanos) {
+        this.maxSize = maxSize;
+        this.ttlNanos = ttlNanos;
+    }
+
+    public Uni<IsolationForest> get(Key key, Supplier<Uni<IsolationForest>> trainer) {
+        if (maxSize <= 0) return trainer.get();
+        Entry entry;
+        boolean owner = false;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry != null && System.nanoTime() - entry.createdNanos > ttlNanos) {
+                entries.remove(key);
+                entry = null;
+            }
+            if (entry != null) {
+                hits++;
+            } else {
+                misses++;
+                entry = new Entry();
+                entries.put(key, entry);
+                owner = true;
+                evict();
+            }
+        }
+        if (owner) train(key, entry, trainer);
+        CompletableFuture<IsolationForest> model = entry.model;
+        // a copy, so a cancelled caller does not cancel the shared training
+        return Uni.createFrom().completionStage(model::copy);
+    }
+
+    private void train(Key key, Entry entry, Supplier<Uni<IsolationForest>> trainer) {
+        long t0 = System.nanoTime();
+        Uni<IsolationForest> training;
+        try {
+            training = trainer.get();
+        } catch (RuntimeException e) {
+            training = Uni.createFrom().failure(e);
+        }
+        training.subscribe().with(model -> {
+            long took = System.nanoTime() - t0;
+            synchronized (this) {
+                trainings++;
+                trainNanos += took;
+                maxTrainNanos = Math.max(maxTrainNanos, took);
+            }
+            entry.model.complete(model);
+        }, failure -> {
+            synchronized (this) {
+                entries.remove(key, entry);
+            }
+            entry.model.completeExceptionally(failure);
+        });
+    }
+
+    private void evict() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (entries.size() > maxSize && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("size", entries.size());
+        m.put("hits", hits);
+        m.put("misses", misses);
+        m.put("hitRate", hits + misses > 0 ? (double) hits / (hits + misses) : 0.0);
+        m.put("trainings", trainings);
+        m.put("trainMillisAvg", trainings > 0 ? trainNanos / 1e6 / trainings : 0.0);
+        m.put("trainMillisMax", maxTrainNanos / 1e6);
+        return m;
+    }
+}
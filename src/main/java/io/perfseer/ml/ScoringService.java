@@ -0,0 +1,184 @@
+package io.perfseer.ml;
+
+import io.perfseer.aggregate.Aggregator;
+import io.perfseer.aggregate.BucketedAggregation;
+import io.perfseer.config.PerfConfig;
+import io.perfseer.exec.WorkerPools;
+import io.perfseer.ingest.JaegerClient;
+import io.perfseer.ingest.Lookback;
+import io.perfseer.ingest.SpanFilter;
+import io.perfseer.ingest.TraceFiles;
+import io.perfseer.metrics.PipelineMetrics;
+import io.perfseer.storage.FeatureStore;
+import io.perfseer.stream.KafkaSpanConsumer;
+import io.opentelemetry.instrumentation.annotations.SpanAttribute;
+import io.opentelemetry.instrumentation.annotations.WithSpan;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import org.jboss.logging.Logger;
+import smile.anomaly.IsolationForest;
+
+/** Trains on a baseline of store buckets and scores a current window. */
+@ApplicationScoped
+public class ScoringService {
+    private static final Logger LOG = Logger.getLogger(ScoringService.class);
+
+    @Inject
+    JaegerClient jaeger;
+    @Inject
+    Aggregator aggregator;
+    @Inject
+    IsolationScorer scorer;
+    @Inject
+    FeatureStore store;
+    @Inject
+    ModelCache models;
+    @Inject
+    KafkaSpanConsumer stream;
+    @Inject
+    PerfConfig cfg;
+    @Inject
+    PipelineMetrics metrics;
+    @Inject
+    WorkerPools pools;
+
+    /** Requests within the same store bucket reuse the cached model. */
+    public Uni<List<IsolationScorer.ScoredFeature>> score(String service, String lookbackBaseline, String lookbackCurrent) {
+        return score(service, lookbackBaseline, lookbackCurrent, SpanFilter.ALL);
+    }
+
+    @WithSpan("scoring.score")
+    public Uni<List<IsolationScorer.ScoredFeature>> score(@SpanAttribute("service") String service, String lookbackBaseline,
+                                                          String lookbackCurrent, SpanFilter filter) {
+        long currentMicros = windowMicros(lookbackCurrent);
+        return Uni.combine().all().unis(model(service, lookbackBaseline, filter), features(service, lookbackCurrent, filter)).asTuple()
+                .emitOn(pools.compute())
+                .onItem().transform(t -> scorer.score(t.getItem1(), t.getItem2(), currentMicros));
+    }
+
+    /** Scores a trace file offline, without Jaeger or the store. */
+    public List<IsolationScorer.ScoredFeature> score(Path file, String lookbackBaseline, String lookbackCurrent) throws IOException {
+        return score(file, lookbackBaseline, lookbackCurrent, SpanFilter.ALL);
+    }
+
+    public List<IsolationScorer.ScoredFeature> score(Path file, String lookbackBaseline, String lookbackCurrent,
+                                                     SpanFilter filter) throws IOException {
+        long[] range = TraceFiles.range(file);
+        long end = range[1] + 1;
+        long currentMicros = windowMicros(lookbackCurrent);
+        long width = store.bucketMicros();
+        long baselineEnd = Math.floorDiv(end - currentMicros, width) * width;
+        long baselineStart = Math.floorDiv(range[0] + width - 1, width) * width;
+        if (lookbackBaseline != null) {
+            long span = Lookback.toMicros(lookbackBaseline);
+            baselineStart = Math.max(baselineStart, baselineEnd - Math.max(1, (span + width - 1) / width) * width);
+        }
+        if (baselineStart >= baselineEnd) {
+            throw new IllegalStateException(file + " has no whole perf.storage-bucket before its current window of "
+                    + (lookbackCurrent != null ? lookbackCurrent : cfg.lookbackDefault()));
+        }
+        BucketedAggregation baseline = aggregator.newBucketedAggregation(baselineStart, baselineEnd, width);
+        BucketedAggregation current = aggregator.newBucketedAggregation(end - currentMicros, end, currentMicros);
+        TraceFiles.read(file, filter, trace -> {
+            baseline.onTrace(trace);
+            current.onTrace(trace);
+        });
+        return scorer.score(scorer.train(perBucket(baseline), width), current.features(), currentMicros);
+    }
+
+    public Uni<IsolationForest> model(String service, String lookbackBaseline) {
+        return model(service, lookbackBaseline, SpanFilter.ALL);
+    }
+
+    public Uni<IsolationForest> model(String service, String lookbackBaseline, SpanFilter filter) {
+        String svc = service != null ? service : cfg.serviceName();
+        long width = store.bucketMicros();
+        long end = Math.floorDiv(Lookback.nowMicros(), width) * width;
+        long span = windowMicros(lookbackBaseline);
+        long start = end - Math.max(1, (span + width - 1) / width) * width;
+        return models.get(new ModelCache.Key(svc, start, end, scorer.schema(), filter.toString()),
+                () -> baseline(svc, start, end, filter)
+                        .emitOn(pools.compute())
+                        .onItem().transform(buckets -> scorer.train(buckets, width)));
+    }
+
+    /** From the Kafka stream when it covers the window, else from Jaeger. */
+    public Uni<List<Aggregator.Feature>> features(String service, String lookback) {
+        return features(service, lookback, SpanFilter.ALL);
+    }
+
+    /** A filter always reads from Jaeger. */
+    public Uni<List<Aggregator.Feature>> features(String service, String lookback, SpanFilter filter) {
+        String svc = service != null ? service : cfg.serviceName();
+        Optional<List<Aggregator.Feature>> live = filter.isAll() ? stream.features(svc, lookback) : Optional.empty();
+        Uni<List<Aggregator.Feature>> features = live.isPresent()
+                ? Uni.createFrom().item(live.get())
+                : jaeger.fetchSpans(svc, lookback, null, filter, aggregator.newAggregation())
+                        .onItem().transform(aggregation -> {
+                            if (aggregation.overflowed() > 0) {
+                                LOG.warnf("%d spans of %s beyond perf.group-max-groups=%d were counted as (other)",
+                                        aggregation.overflowed(), svc, cfg.groupMaxGroups());
+                            }
+                            return aggregation.features();
+                        });
+        return features.onItem().invoke(list -> metrics.operations(svc, list.size()));
+    }
+
+    public long windowMicros(String lookback) {
+        return Lookback.toMicros(lookback != null ? lookback : cfg.lookbackDefault());
+    }
+
+    /** {@code [start, end)} must be aligned to the bucket width. */
+    public Uni<List<List<Aggregator.Feature>>> baseline(String svc, long start, long end) {
+        return baseline(svc, start, end, SpanFilter.ALL);
+    }
+
+    /** Filtered baselines bypass the store. */
+    public Uni<List<List<Aggregator.Feature>>> baseline(String svc, long start, long end, SpanFilter filter) {
+        long width = store.bucketMicros();
+        if (!store.enabled() || !filter.isAll()) {
+            return jaeger.fetchSpans(svc, start, end, null, filter, aggregator.newBucketedAggregation(start, end, width))
+                    .onItem().transform(ScoringService::perBucket);
+        }
+        return Uni.createFrom().item(() -> stored(svc, start, end))
+                .runSubscriptionOn(pools.blocking())
+                .onItem().transformToUni(history -> Multi.createFrom().iterable(history.missing())
+                        .onItem().transformToUniAndConcatenate(range -> jaeger.fetchSpans(svc, range[0], range[1], null,
+                                aggregator.newBucketedAggregation(range[0], range[1], width)))
+                        .emitOn(pools.blocking())
+                        .onItem().invoke(buckets -> {
+                            history.fill(buckets);
+                            try {
+                                store.write(svc, buckets);
+                            } catch (RuntimeException e) {
+                                LOG.warnf(e, "Could not persist baseline of %s", svc);
+                            }
+                        })
+                        .collect().last()
+                        .onItem().transform(ignored -> history.buckets()));
+    }
+
+    private static List<List<Aggregator.Feature>> perBucket(BucketedAggregation buckets) {
+        List<List<Aggregator.Feature>> out = new ArrayList<>();
+        for (long bucket : buckets.completeBuckets()) {
+            out.add(buckets.features(bucket));
+        }
+        return out;
+    }
+
+    private FeatureStore.History stored(String service, long start, long end) {
+        try {
+            return store.history(service, start, end);
+        } catch (RuntimeException e) {
+            LOG.warnf(e, "Feature store unavailable, fetching the baseline of %s", service);
+            return new FeatureStore.History(start, end, store.bucketMicros());
+        }
+    }
+}
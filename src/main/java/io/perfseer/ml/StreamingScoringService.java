@@ -0,0 +1,171 @@
+package io.perfseer.ml;
+
+import io.perfseer.aggregate.Aggregator;
+import io.perfseer.config.PerfConfig;
+import io.perfseer.exec.WorkerPools;
+import io.perfseer.ingest.JaegerClient;
+import io.perfseer.ingest.Lookback;
+import io.perfseer.metrics.PipelineMetrics;
+import io.perfseer.stream.KafkaSpanConsumer;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.subscription.Cancellable;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jboss.logging.Logger;
+
+@ApplicationScoped
+public class StreamingScoringService {
+    private static final Logger LOG = Logger.getLogger(StreamingScoringService.class);
+
+    @Inject
+    JaegerClient jaeger;
+    @Inject
+    Aggregator aggregator;
+    @Inject
+    IsolationScorer scorer;
+    @Inject
+    KafkaSpanConsumer stream;
+    @Inject
+    PerfConfig cfg;
+    @Inject
+    PipelineMetrics metrics;
+    @Inject
+    WorkerPools pools;
+
+    private final LinkedHashMap<String, Background> background = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong droppedWindows = new AtomicLong();
+
+    private static final class Background {
+        final ArrayDeque<WindowedScorer.WindowScore> history = new ArrayDeque<>();
+        Cancellable subscription;
+        String failure;
+    }
+
+    public long windowMicros() {
+        return cfg.streamWindow().toNanos() / 1000;
+    }
+
+    /** Never completes; cancel to stop. */
+    public Multi<WindowedScorer.WindowScore> watch(String service, long windowMicros) {
+        if (windowMicros <= 0) throw new IllegalArgumentException("window must be positive: " + windowMicros);
+        String svc = service != null ? service : cfg.serviceName();
+        long settle = cfg.streamSettle().toNanos() / 1000;
+        return Multi.createFrom().deferred(() -> {
+            WindowedScorer windowed = new WindowedScorer(scorer, cfg.streamBaselineWindows(),
+                    cfg.streamTreesPerWindow(), cfg.streamRowsPerWindow(), svc.hashCode());
+            long now = Lookback.nowMicros();
+            long first = Math.floorDiv(now - settle, windowMicros) * windowMicros;
+            long next = first + windowMicros + settle;
+            Multi<WindowedScorer.WindowScore> windows = Multi.createFrom().ticks()
+                    .startingAfter(Duration.of(Math.max(0, next - now), ChronoUnit.MICROS))
+                    .every(Duration.of(windowMicros, ChronoUnit.MICROS))
+                    // a tick arriving while the previous window is still being scored skips its window
+                    .onOverflow().invoke(tick -> {
+                        droppedWindows.incrementAndGet();
+                        LOG.warnf("Dropped the window of %s ending %d: the previous one is still being scored",
+                                svc, first + (tick + 1) * windowMicros);
+                    }).drop()
+                    .onItem().transformToUniAndConcatenate(tick -> {
+                        // from the tick count rather than the clock, so an early tick cannot repeat a window
+                        long end = first + (tick + 1) * windowMicros;
+                        return window(svc, end - windowMicros, end)
+                                .emitOn(pools.compute())
+                                .onItem().transform(features -> windowed.close(end - windowMicros, end, features))
+                                .onFailure().invoke(e -> LOG.warnf("Skipping window of %s ending %d: %s",
+                                        svc, end, e.getMessage()))
+                                .onFailure().recoverWithNull();
+                    });
+            return prime(svc, windowed, first, windowMicros).onItem().transformToMulti(ignored -> windows);
+        });
+    }
+
+    /** Oldest first; the first call starts a background watch and returns nothing. */
+    public synchronized List<WindowedScorer.WindowScore> recent(String service) {
+        String svc = service != null ? service : cfg.serviceName();
+        Background b = background.get(svc);
+        if (b == null) {
+            b = start(svc);
+            evict();
+        }
+        if (b.failure != null) throw new IllegalStateException("Watch of " + svc + " failed: " + b.failure);
+        return new ArrayList<>(b.history);
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("window", cfg.streamWindow().toString());
+        m.put("baselineWindows", cfg.streamBaselineWindows());
+        m.put("services", new ArrayList<>(background.keySet()));
+        m.put("droppedWindows", droppedWindows.get());
+        return m;
+    }
+
+    private Background start(String svc) {
+        Background b = new Background();
+        background.put(svc, b);
+        b.subscription = watch(svc, windowMicros()).subscribe().with(ws -> {
+            synchronized (this) {
+                b.history.addLast(ws);
+                while (b.history.size() > Math.max(1, cfg.streamHistory())) b.history.removeFirst();
+            }
+        }, failure -> {
+            LOG.errorf(failure, "Streaming scorer of %s stopped", svc);
+            synchronized (this) {
+                b.failure = String.valueOf(failure.getMessage());
+            }
+        });
+        return b;
+    }
+
+    private void evict() {
+        Iterator<Background> it = background.values().iterator();
+        while (background.size() > Math.max(1, cfg.streamMaxServices()) && it.hasNext()) {
+            it.next().subscription.cancel();
+            it.remove();
+        }
+    }
+
+    private Uni<Void> prime(String svc, WindowedScorer windowed, long end, long windowMicros) {
+        long start = end - cfg.streamBaselineWindows() * windowMicros;
+        return jaeger.fetchSpans(svc, start, end, null, aggregator.newBucketedAggregation(start, end, windowMicros))
+                .emitOn(pools.compute())
+                .onItem().transform(buckets -> {
+                    for (long bucket : buckets.completeBuckets()) {
+                        windowed.prime(bucket, bucket + windowMicros, buckets.features(bucket));
+                    }
+                    LOG.debugf("Primed the streaming scorer of %s with %d windows", svc, windowed.size());
+                    return (Void) null;
+                })
+                .onFailure().invoke(e -> LOG.warnf("Starting the streaming scorer of %s without a baseline: %s",
+                        svc, e.getMessage()))
+                .onFailure().recoverWithNull();
+    }
+
+    private Uni<List<Aggregator.Feature>> window(String svc, long start, long end) {
+        Optional<List<Aggregator.Feature>> live = stream.features(svc, start, end);
+        Uni<List<Aggregator.Feature>> features = live.isPresent()
+                ? Uni.createFrom().item(live.get())
+                : jaeger.fetchSpans(svc, start, end, null, aggregator.newAggregation()).onItem().transform(Aggregator.Aggregation::features);
+        return features.onItem().invoke(list -> metrics.operations(svc, list.size()));
+    }
+
+    @PreDestroy
+    synchronized void shutdown() {
+        for (Background b : background.values()) {
+            b.subscription.cancel();
+        }
+        background.clear();
+    }
+}
@@ -0,0 +1,126 @@
+package io.perfseer.ml;
+
+import io.perfseer.aggregate.Aggregator;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import smile.anomaly.IsolationForest;
+import smile.anomaly.IsolationTree;
+
+/** Isolation forest over a sliding baseline of tumbling windows. Thread-safe. */
+public final class WindowedScorer {
+
+    public static final class WindowScore {
+        public long windowStart; // epoch microseconds
+        public long windowEnd;
+        /** 0 while warming up. */
+        public int baselineWindows;
+        public int trees;
+        public List<IsolationScorer.ScoredFeature> scores;
+    }
+
+    private static final class Window {
+        final double[][] rows;
+        final IsolationTree[] trees;
+
+        Window(double[][] rows, IsolationTree[] trees) {
+            this.rows = rows;
+            this.trees = trees;
+        }
+    }
+
+    private final IsolationScorer scorer;
+    private final int baselineWindows;
+    private final int treesPerWindow;
+    private final int rowsPerWindow;
+    private final Random random;
+    private final ArrayDeque<Window> windows = new ArrayDeque<>();
+    private int retainedRows;
+    private long closed;
+
+    public WindowedScorer(IsolationScorer scorer, int baselineWindows, int treesPerWindow, int rowsPerWindow, long seed) {
+        if (baselineWindows <= 0 || treesPerWindow <= 0 || rowsPerWindow <= 0) {
+            throw new IllegalArgumentException("windowed scoring needs positive window, tree and row counts");
+        }
+        this.scorer = scorer;
+        this.baselineWindows = baselineWindows;
+        this.treesPerWindow = treesPerWindow;
+        this.rowsPerWindow = rowsPerWindow;
+        this.random = new Random(seed);
+    }
+
+    public synchronized int size() {
+        return windows.size();
+    }
+
+    public synchronized long closed() {
+        return closed;
+    }
+
+    /** Scores the window against the baseline, then adds it. */
+    public synchronized WindowScore close(long start, long end, List<Aggregator.Feature> features) {
+        WindowScore ws = new WindowScore();
+        ws.windowStart = start;
+        ws.windowEnd = end;
+        IsolationForest model = model();
+        if (model != null) {
+            ws.baselineWindows = windows.size();
+            ws.trees = model.size();
+            ws.scores = scorer.score(model, features, end - start);
+        } else {
+            ws.scores = List.of();
+        }
+        add(scorer.toMatrix(features, end - start));
+        closed++;
+        return ws;
+    }
+
+    public synchronized void prime(long start, long end, List<Aggregator.Feature> features) {
+        add(scorer.toMatrix(features, end - start));
+        closed++;
+    }
+
+    private IsolationForest model() {
+        if (windows.isEmpty()) return null;
+        List<IsolationTree> trees = new ArrayList<>(windows.size() * treesPerWindow);
+        for (Window w : windows) {
+            for (IsolationTree t : w.trees) trees.add(t);
+        }
+        if (trees.isEmpty()) return null;
+        return new IsolationForest(Math.min(IsolationScorer.MAX_SAMPLE, retainedRows), 0, trees.toArray(new IsolationTree[0]));
+    }
+
+    private void add(double[][] rows) {
+        if (rows.length > rowsPerWindow) rows = sample(rows, rowsPerWindow);
+        retainedRows += rows.length;
+        if (windows.size() == baselineWindows) retainedRows -= windows.removeFirst().rows.length;
+        // grown before this window is queued, so the sample is drawn from it and the retained ones alike
+        windows.addLast(new Window(rows, grow(rows)));
+    }
+
+    private IsolationTree[] grow(double[][] rows) {
+        if (retainedRows < 2) return new IsolationTree[0];
+        double[][] all = new double[retainedRows][];
+        int n = 0;
+        for (Window w : windows) {
+            System.arraycopy(w.rows, 0, all, n, w.rows.length);
+            n += w.rows.length;
+        }
+        System.arraycopy(rows, 0, all, n, rows.length);
+        return scorer.trees(all, treesPerWindow, random.nextLong());
+    }
+
+    private double[][] sample(double[][] rows, int n) {
+        double[][] out = new double[n][];
+        for (int i=0;i<rows.length;i++){
+            if (i < n) {
+                out[i] = rows[i];
+            } else {
+                int j = random.nextInt(i + 1);
+                if (j < n) out[j] = rows[i];
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,289 @@
+package io.perfseer.storage;
+
+import io.perfseer.aggregate.Aggregator;
+import io.perfseer.aggregate.BucketedAggregation;
+import io.perfseer.aggregate.Grouping;
+import io.perfseer.aggregate.LatencySketch;
+import io.perfseer.config.PerfConfig;
+import io.perfseer.ingest.Lookback;
+import io.vertx.core.json.JsonObject;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.jboss.logging.Logger;
+
+/** SQLite store of per-operation aggregates in fixed time buckets. Calls block on JDBC. */
+@ApplicationScoped
+public class FeatureStore {
+    private static final Logger LOG = Logger.getLogger(FeatureStore.class);
+
+    private final PerfConfig cfg;
+    private Connection connection;
+
+    @Inject
+    public FeatureStore(PerfConfig cfg) {
+        this.cfg = cfg;
+    }
+
+    public boolean enabled() {
+        return cfg.storageEnabled();
+    }
+
+    public long bucketMicros() {
+        return cfg.storageBucket().toNanos() / 1000;
+    }
+
+    /** Buckets that ended less than {@code perf.storage-settle} ago are not stored. */
+    public int write(String service, BucketedAggregation aggregation) {
+        return write(service, aggregation, Lookback.nowMicros());
+    }
+
+    synchronized int write(String service, BucketedAggregation aggregation, long nowMicros) {
+        service = series(service, aggregation.dimensions());
+        long width = aggregation.bucketMicros();
+        long settled = nowMicros - cfg.storageSettle().toNanos() / 1000;
+        List<Long> buckets = new ArrayList<>();
+        for (long bucket : aggregation.completeBuckets()) {
+            if (bucket + width <= settled) buckets.add(bucket);
+        }
+        if (buckets.isEmpty()) return 0;
+        try {
+            Connection c = connection();
+            c.setAutoCommit(false);
+            try (PreparedStatement delete = c.prepareStatement(
+                         "DELETE FROM feature_bucket WHERE service=? AND bucket_width=? AND bucket_start=?");
+                 PreparedStatement insert = c.prepareStatement(
+                         "INSERT INTO feature_bucket(service,bucket_width,bucket_start,operation,count,errors,latency,self_time,critical_path,operation_name,group_tags) VALUES(?,?,?,?,?,?,?,?,?,?,?)");
+                 PreparedStatement cover = c.prepareStatement(
+                         "INSERT OR IGNORE INTO bucket_coverage(service,bucket_width,bucket_start) VALUES(?,?,?)")) {
+                for (long bucket : buckets) {
+                    delete.setString(1, service);
+                    delete.setLong(2, width);
+                    delete.setLong(3, bucket);
+                    delete.addBatch();
+                    for (Aggregator.Feature f : aggregation.features(bucket)) {
+                        insert.setString(1, service);
+                        insert.setLong(2, width);
+                        insert.setLong(3, bucket);
+                        insert.setString(4, f.key);
+                        insert.setLong(5, f.count);
+                        insert.setLong(6, f.errorCount);
+                        insert.setBytes(7, f.latency.toBytes());
+                        insert.setLong(8, f.selfTimeSum);
+                        insert.setLong(9, f.criticalPathSum);
+                        insert.setString(10, f.operation);
+                        insert.setString(11, f.group != null ? new JsonObject(new LinkedHashMap<>(f.group)).encode() : null);
+                        insert.addBatch();
+                    }
+                    cover.setString(1, service);
+                    cover.setLong(2, width);
+                    cover.setLong(3, bucket);
+                    cover.addBatch();
+                }
+                delete.executeBatch();
+                insert.executeBatch();
+                cover.executeBatch();
+                c.commit();
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(true);
+            }
+            return buckets.size();
+        } catch (SQLException e) {
+            throw failure(e);
+        }
+    }
+
+    /** The stored buckets of {@code [startMicros, endMicros)} and the ranges that still have to be fetched. */
+    public synchronized History history(String service, long startMicros, long endMicros) {
+        service = series(service, new Grouping(cfg.groupBy().orElse(List.of()), cfg.groupMaxGroups()).dimensions());
+        long width = bucketMicros();
+        History history = new History(startMicros, endMicros, width);
+        if (history.stored.length == 0) return history;
+        long first = history.start;
+        long last = first + history.stored.length * width;
+        try {
+            Connection c = connection();
+            try (PreparedStatement covered = c.prepareStatement(
+                    "SELECT bucket_start FROM bucket_coverage WHERE service=? AND bucket_width=? AND bucket_start>=? AND bucket_start<?")) {
+                covered.setString(1, service);
+                covered.setLong(2, width);
+                covered.setLong(3, first);
+                covered.setLong(4, last);
+                try (ResultSet rs = covered.executeQuery()) {
+                    while (rs.next()) {
+                        history.stored[history.index(rs.getLong(1))] = true;
+                    }
+                }
+            }
+            try (PreparedStatement select = c.prepareStatement(
+                    "SELECT bucket_start,operation,count,errors,latency,self_time,critical_path,operation_name,group_tags FROM feature_bucket WHERE service=? AND bucket_width=? AND bucket_start>=? AND bucket_start<?")) {
+                select.setString(1, service);
+                select.setLong(2, width);
+                select.setLong(3, first);
+                select.setLong(4, last);
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        int i = history.index(rs.getLong(1));
+                        if (!history.stored[i]) continue;
+                        try {
+                            history.buckets.get(i).add(feature(rs));
+                        } catch (IllegalArgumentException e) {
+                            // an unreadable stored row; its bucket is fetched instead
+                            LOG.warnf("Ignoring stored bucket %d of %s: %s", rs.getLong(1), service, e.getMessage());
+                            history.stored[i] = false;
+                        }
+                    }
+                }
+            }
+            for (int i=0;i<history.stored.length;i++){
+                if (!history.stored[i]) history.buckets.get(i).clear();
+            }
+            return history;
+        } catch (SQLException e) {
+            throw failure(e);
+        }
+    }
+
+    private static Aggregator.Feature feature(ResultSet rs) throws SQLException {
+        Aggregator.Feature f = Aggregator.Feature.of(rs.getString(2), rs.getLong(3), rs.getLong(4),
+                LatencySketch.fromBytes(rs.getBytes(5)), rs.getLong(6), rs.getLong(7));
+        String operation = rs.getString(8);
+        if (operation != null) f.operation = operation;
+        String tags = rs.getString(9);
+        if (tags != null) {
+            Map<String, String> group = new LinkedHashMap<>();
+            for (Map.Entry<String, Object> tag : new JsonObject(tags)) group.put(tag.getKey(), (String) tag.getValue());
+            f.group = group;
+        }
+        return f;
+    }
+
+    /** Buckets of a window, empty where nothing was stored, and the ranges that were not. */
+    public static final class History {
+        private final long start;
+        private final long width;
+        private final boolean[] stored;
+        private final List<List<Aggregator.Feature>> buckets = new ArrayList<>();
+
+        /** The whole buckets of {@code [start, end)}, none of them stored. */
+        public History(long start, long end, long width) {
+            this.start = Math.floorDiv(start + width - 1, width) * width;
+            this.width = width;
+            this.stored = new boolean[(int) Math.max(0, (Math.floorDiv(end, width) * width - this.start) / width)];
+            for (int i=0;i<stored.length;i++){
+                buckets.add(new ArrayList<>());
+            }
+        }
+
+        private int index(long bucket) {
+            return (int) ((bucket - start) / width);
+        }
+
+        public List<List<Aggregator.Feature>> buckets() {
+            return buckets;
+        }
+
+        /** {@code [start, end)} ranges of consecutive buckets that are not stored, in order. */
+        public List<long[]> missing() {
+            List<long[]> ranges = new ArrayList<>();
+            for (int i=0;i<stored.length;i++){
+                if (stored[i]) continue;
+                long from = start + i * width;
+                while (i + 1 < stored.length && !stored[i + 1]) i++;
+                ranges.add(new long[] {from, start + (i + 1) * width});
+            }
+            return ranges;
+        }
+
+        /** Takes the buckets {@code fetched} covers completely. */
+        public void fill(BucketedAggregation fetched) {
+            for (long bucket : fetched.completeBuckets()) {
+                int i = index(bucket);
+                if (i < 0 || i >= stored.length) continue;
+                buckets.set(i, fetched.features(bucket));
+                stored[i] = true;
+            }
+        }
+    }
+
+    private static String series(String service, String[] dimensions) {
+        return dimensions.length == 0 ? service : service + " [" + String.join(",", dimensions) + "]";
+    }
+
+    private Connection connection() throws SQLException {
+        if (connection == null) {
+            Connection c = DriverManager.getConnection("jdbc:sqlite:" + cfg.storageSqlitePath());
+            try (Statement st = c.createStatement()) {
+                st.execute("PRAGMA journal_mode=WAL");
+                st.execute("PRAGMA synchronous=NORMAL");
+                st.execute("CREATE TABLE IF NOT EXISTS feature_bucket ("
+                        + "service TEXT NOT NULL, bucket_width INTEGER NOT NULL, bucket_start INTEGER NOT NULL, "
+                        + "operation TEXT NOT NULL, count INTEGER NOT NULL, errors INTEGER NOT NULL, latency BLOB NOT NULL, "
+                        + "self_time INTEGER NOT NULL DEFAULT 0, critical_path INTEGER NOT NULL DEFAULT 0, "
+                        + "operation_name TEXT, group_tags TEXT, "
+                        + "PRIMARY KEY(service, bucket_width, bucket_start, operation))");
+                st.execute("CREATE TABLE IF NOT EXISTS bucket_coverage ("
+                        + "service TEXT NOT NULL, bucket_width INTEGER NOT NULL, bucket_start INTEGER NOT NULL, "
+                        + "PRIMARY KEY(service, bucket_width, bucket_start))");
+                migrate(st);
+            } catch (SQLException e) {
+                c.close();
+                throw e;
+            }
+            connection = c;
+        }
+        return connection;
+    }
+
+    /** Buckets stored before a column existed are dropped and fetched again. */
+    private static void migrate(Statement st) throws SQLException {
+        if (!hasColumn(st, "self_time")) {
+            LOG.info("Feature store predates self time and critical path; dropping stored buckets");
+            st.execute("ALTER TABLE feature_bucket ADD COLUMN self_time INTEGER NOT NULL DEFAULT 0");
+            st.execute("ALTER TABLE feature_bucket ADD COLUMN critical_path INTEGER NOT NULL DEFAULT 0");
+            st.execute("DELETE FROM feature_bucket");
+            st.execute("DELETE FROM bucket_coverage");
+        }
+        if (!hasColumn(st, "operation_name")) {
+            LOG.info("Feature store predates stored groups; dropping grouped series");
+            st.execute("ALTER TABLE feature_bucket ADD COLUMN operation_name TEXT");
+            st.execute("ALTER TABLE feature_bucket ADD COLUMN group_tags TEXT");
+            st.execute("DELETE FROM feature_bucket WHERE service LIKE '% [%'");
+            st.execute("DELETE FROM bucket_coverage WHERE service LIKE '% [%'");
+        }
+    }
+
+    private static boolean hasColumn(Statement st, String column) throws SQLException {
+        try (ResultSet rs = st.executeQuery("SELECT 1 FROM pragma_table_info('feature_bucket') WHERE name='" + column + "'")) {
+            return rs.next();
+        }
+    }
+
+    private IllegalStateException failure(SQLException e) {
+        return new IllegalStateException("Feature store " + cfg.storageSqlitePath() + ": " + e.getMessage(), e);
+    }
+
+    @PreDestroy
+    synchronized void close() {
+        if (connection == null) return;
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            LOG.debug("Closing feature store", e);
+        }
+        connection = null;
+    }
+}
@@ -0,0 +1,236 @@
+package io.perfseer.stream;
+
+import io.perfseer.aggregate.Aggregator;
+import io.perfseer.aggregate.RollingAggregation;
+import io.perfseer.aggregate.SpanTree;
+import io.perfseer.config.PerfConfig;
+import io.perfseer.metrics.PipelineMetrics;
+import io.perfseer.ingest.Lookback;
+import io.perfseer.ingest.OtlpDecoder;
+import io.perfseer.ingest.Span;
+import io.perfseer.ingest.Trace;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.jboss.logging.Logger;
+
+/** Keeps rolling per-service aggregates of the OTLP spans on {@code perf.kafka-topic}. */
+@ApplicationScoped
+public class KafkaSpanConsumer {
+    private static final Logger LOG = Logger.getLogger(KafkaSpanConsumer.class);
+    private static final long STATS_INTERVAL_MILLIS = 5000;
+
+    private final PerfConfig cfg;
+    private final Aggregator aggregator;
+    private final Function<Map<String, Object>, Consumer<byte[], byte[]>> consumers;
+    private final PipelineMetrics metrics;
+    private final long statsIntervalMillis;
+    private final Map<String, RollingAggregation> services = new ConcurrentHashMap<>();
+    private final OtlpDecoder decoder = new OtlpDecoder();
+    private final SpanTree tree = new SpanTree();
+
+    private volatile boolean running;
+    private volatile Consumer<byte[], byte[]> consumer;
+    private Thread thread;
+    private volatile long startedMicros;
+    private volatile long records;
+    private volatile long badRecords;
+    private volatile long lag = -1;
+    private volatile double spansPerSecond;
+    private long statsAtMillis;
+    private long statsSpans;
+
+    @Inject
+    public KafkaSpanConsumer(PerfConfig cfg, Aggregator aggregator, PipelineMetrics metrics) {
+        this(cfg, aggregator, KafkaConsumer::new, metrics, STATS_INTERVAL_MILLIS);
+    }
+
+    KafkaSpanConsumer(PerfConfig cfg, Aggregator aggregator,
+                      Function<Map<String, Object>, Consumer<byte[], byte[]>> consumers, PipelineMetrics metrics,
+                      long statsIntervalMillis) {
+        this.cfg = cfg;
+        this.aggregator = aggregator;
+        this.consumers = consumers;
+        this.metrics = metrics;
+        this.statsIntervalMillis = statsIntervalMillis;
+    }
+
+    void onStart(@Observes StartupEvent event) {
+        if (cfg.kafkaEnabled()) start();
+    }
+
+    void onStop(@Observes ShutdownEvent event) {
+        stop();
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        startedMicros = Lookback.nowMicros();
+        thread = new Thread(this::run, "perfseer-kafka-spans");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+        Consumer<byte[], byte[]> c = consumer;
+        if (c != null) c.wakeup();
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean running() {
+        return running;
+    }
+
+    /** Empty when the stream does not cover the window or features are grouped. */
+    public Optional<List<Aggregator.Feature>> features(String service, String lookback) {
+        if (aggregator.grouping().enabled()) return Optional.empty();
+        RollingAggregation rolling = services.get(service != null ? service : cfg.serviceName());
+        if (!running || rolling == null) return Optional.empty();
+        long now = Lookback.nowMicros();
+        long from = now - Lookback.toMicros(lookback != null ? lookback : cfg.lookbackDefault());
+        if (from < startedMicros || now - from > rolling.retentionMicros()) return Optional.empty();
+        return Optional.of(rolling.features(from, now + 1));
+    }
+
+    public Optional<List<Aggregator.Feature>> features(String service, long fromMicros, long toMicros) {
+        if (aggregator.grouping().enabled()) return Optional.empty();
+        RollingAggregation rolling = services.get(service != null ? service : cfg.serviceName());
+        if (!running || rolling == null) return Optional.empty();
+        if (fromMicros < startedMicros || Lookback.nowMicros() - fromMicros > rolling.retentionMicros()) return Optional.empty();
+        return Optional.of(rolling.features(fromMicros, toMicros));
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("running", running);
+        m.put("topic", cfg.kafkaTopic());
+        m.put("records", records);
+        m.put("badRecords", badRecords);
+        m.put("spans", decoder.spans());
+        m.put("spansPerSecond", spansPerSecond);
+        m.put("consumerLag", lag);
+        long dropped = 0;
+        for (RollingAggregation r : services.values()) dropped += r.dropped();
+        m.put("lateSpansDropped", dropped);
+        m.put("services", services.keySet());
+        return m;
+    }
+
+    private void run() {
+        try (Consumer<byte[], byte[]> c = consumers.apply(properties())) {
+            consumer = c;
+            c.subscribe(List.of(cfg.kafkaTopic()));
+            statsAtMillis = System.currentTimeMillis();
+            while (running) {
+                ConsumerRecords<byte[], byte[]> batch = c.poll(Duration.ofMillis(500));
+                for (ConsumerRecord<byte[], byte[]> record : batch) {
+                    consume(record);
+                }
+                // only offsets of aggregated records are committed
+                if (!batch.isEmpty()) c.commitAsync();
+                long now = System.currentTimeMillis();
+                if (now - statsAtMillis >= statsIntervalMillis) refreshStats(c, now);
+            }
+        } catch (WakeupException e) {
+            if (running) LOG.warn("Kafka span consumer woken up unexpectedly", e);
+        } catch (RuntimeException e) {
+            LOG.error("Kafka span consumer stopped", e);
+        } finally {
+            consumer = null;
+            running = false;
+        }
+    }
+
+    private void consume(ConsumerRecord<byte[], byte[]> record) {
+        records++;
+        if (record.value() == null) return;
+        try {
+            decoder.decode(record.value(), this::onTrace);
+        } catch (RuntimeException e) {
+            badRecords++;
+            LOG.debugf("Skipping undecodable OTLP record %s-%d@%d: %s",
+                    record.topic(), record.partition(), record.offset(), e.getMessage());
+        }
+    }
+
+    private void onTrace(Trace trace) {
+        // spans whose parent came in another record count as roots
+        SpanTree tree = this.tree.build(trace);
+        RollingAggregation last = null;
+        String lastService = null;
+        for (int i=0;i<trace.size();i++){
+            Span span = trace.span(i);
+            String service = span.serviceName != null ? span.serviceName : "unknown";
+            if (!service.equals(lastService)) {
+                last = services.computeIfAbsent(service, s -> aggregator.newRollingAggregation(
+                        cfg.kafkaBucket().toNanos() / 1000, buckets()));
+                lastService = service;
+            }
+            last.add(span.operationName != null ? span.operationName : "unknown", span.startTime, span.duration, span.error,
+                    tree.selfTime(i), tree.criticalPath(i));
+        }
+    }
+
+    private int buckets() {
+        long bucket = cfg.kafkaBucket().toNanos();
+        return (int) Math.max(1, (cfg.kafkaRetention().toNanos() + bucket - 1) / bucket);
+    }
+
+    private void refreshStats(Consumer<byte[], byte[]> c, long nowMillis) {
+        long spans = decoder.spans();
+        spansPerSecond = (spans - statsSpans) * 1000.0 / (nowMillis - statsAtMillis);
+        metrics.spans("kafka", spans - statsSpans);
+        statsSpans = spans;
+        statsAtMillis = nowMillis;
+        Set<TopicPartition> assignment = c.assignment();
+        if (assignment.isEmpty()) return;
+        try {
+            long total = 0;
+            for (Map.Entry<TopicPartition, Long> e : c.endOffsets(assignment).entrySet()) {
+                total += Math.max(0, e.getValue() - c.position(e.getKey()));
+            }
+            lag = total;
+        } catch (RuntimeException e) {
+            if (e instanceof WakeupException) throw e;
+            LOG.debug("Could not compute consumer lag", e);
+        }
+    }
+
+    private Map<String, Object> properties() {
+        Map<String, Object> p = new HashMap<>();
+        p.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, cfg.kafkaBootstrapServers());
+        p.put(ConsumerConfig.GROUP_ID_CONFIG, cfg.kafkaGroupId());
+        p.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
+        p.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
+        p.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest");
+        p.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+        return p;
+    }
+}
@@ -0,0 +1,134 @@
+package io.perfseer.aggregate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.perfseer.ingest.JaegerJsonDecoder;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.junit.jupiter.api.Test;
+
+class AggregatorTest {
+
+    private static final String RESPONSE = """
+            {"data":[{"traceID":"t1","spans":[
+              {"traceID":"t1","spanID":"0000000000000001","operationName":"GET /orders","processID":"p1",
+               "startTime":1000,"duration":100,"tags":[]},
+              {"traceID":"t1","spanID":"0000000000000002","operationName":"GET /orders","processID":"p2",
+               "startTime":1200,"duration":300,"tags":[{"key":"hostname","type":"string","value":"override"}]},
+              {"traceID":"t1","spanID":"0000000000000003","operationName":"load","processID":"p1",
+               "startTime":1010,"duration":50,"tags":[{"key":"error","type":"bool","value":true}],
+               "references":[{"refType":"CHILD_OF","traceID":"t1","spanID":"0000000000000001"}]}
+            ],"processes":{
+              "p1":{"serviceName":"shop","tags":[{"key":"hostname","type":"string","value":"a"}]},
+              "p2":{"serviceName":"shop","tags":[{"key":"hostname","type":"string","value":"b"}]}
+            }}]}
+            """;
+
+    private static Map<String, Aggregator.Feature> byKey(List<Aggregator.Feature> features) {
+        Map<String, Aggregator.Feature> map = new TreeMap<>();
+        for (Aggregator.Feature f : features) map.put(f.key, f);
+        return map;
+    }
+
+    @Test
+    void parsedResponseIsGroupedBySpanAndProcessTags() {
+        Aggregator aggregator = new Aggregator(LatencySketch.DEFAULT_RELATIVE_ACCURACY, 1,
+                new Grouping(List.of("hostname"), 100));
+
+        Map<String, Aggregator.Feature> features = byKey(aggregator.aggregate(new JsonObject(RESPONSE)));
+
+        assertThat(features).containsOnlyKeys("GET /orders [hostname=a]", "GET /orders [hostname=override]",
+                "load [hostname=a]");
+        assertThat(features.get("GET /orders [hostname=a]").group).isEqualTo(Map.of("hostname", "a"));
+        assertThat(features.get("GET /orders [hostname=a]").operation).isEqualTo("GET /orders");
+        assertThat(features.get("load [hostname=a]").errorCount).isEqualTo(1);
+        assertThat(features.get("GET /orders [hostname=a]").selfTimeSum).isEqualTo(50);
+    }
+
+    @Test
+    void parsedResponseMatchesAcrossParallelism() {
+        Grouping grouping = new Grouping(List.of("hostname"), 100);
+        Map<String, Aggregator.Feature> sequential = byKey(new Aggregator(LatencySketch.DEFAULT_RELATIVE_ACCURACY, 1, grouping)
+                .aggregate(new JsonObject(RESPONSE)));
+        Aggregator parallel = new Aggregator(LatencySketch.DEFAULT_RELATIVE_ACCURACY, 4, grouping);
+        try {
+            Map<String, Aggregator.Feature> sharded = byKey(parallel.aggregate(new JsonObject(RESPONSE)));
+
+            assertThat(sharded).containsOnlyKeys(sequential.keySet());
+            sharded.forEach((key, f) -> assertThat(f).usingRecursiveComparison().isEqualTo(sequential.get(key)));
+        } finally {
+            parallel.shutdown();
+        }
+    }
+
+    /** Enough two-span traces across {@code hosts} hosts to fill many batches. */
+    private static byte[] manyHosts(int traces, int hosts) {
+        JsonArray data = new JsonArray();
+        for (int i=0;i<traces;i++){
+            data.add(new JsonObject()
+                    .put("traceID", "t" + i)
+                    .put("spans", new JsonArray()
+                            .add(new JsonObject().put("traceID", "t" + i).put("spanID", "r" + i)
+                                    .put("operationName", "GET /orders").put("processID", "p1")
+                                    .put("startTime", 1000 + i).put("duration", 100 + i % 97).put("tags", new JsonArray()))
+                            .add(new JsonObject().put("traceID", "t" + i).put("spanID", "c" + i)
+                                    .put("operationName", "load").put("processID", "p1")
+                                    .put("startTime", 1010 + i).put("duration", 20 + i % 13).put("tags", new JsonArray())
+                                    .put("references", new JsonArray().add(new JsonObject()
+                                            .put("refType", "CHILD_OF").put("traceID", "t" + i).put("spanID", "r" + i)))))
+                    .put("processes", new JsonObject().put("p1", new JsonObject().put("serviceName", "shop")
+                            .put("tags", new JsonArray().add(new JsonObject()
+                                    .put("key", "hostname").put("type", "string").put("value", "h" + (i * 7) % hosts))))));
+        }
+        return new JsonObject().put("data", data).toBuffer().getBytes();
+    }
+
+    @Test
+    void parallelAggregationCapsGroupsAsTheSequentialPathDoes() throws IOException {
+        Grouping grouping = new Grouping(List.of("hostname"), 5);
+        byte[] response = manyHosts(20_000, 12);
+        Aggregator.Aggregation sequential = JaegerJsonDecoder.decode(new ByteArrayInputStream(response),
+                new Aggregator(LatencySketch.DEFAULT_RELATIVE_ACCURACY, 1, grouping).newAggregation());
+        Aggregator parallel = new Aggregator(LatencySketch.DEFAULT_RELATIVE_ACCURACY, 4, grouping);
+        try {
+            Aggregator.Aggregation sharded = JaegerJsonDecoder.decode(new ByteArrayInputStream(response), parallel.newAggregation());
+            Map<String, Aggregator.Feature> expected = byKey(sequential.features());
+            Map<String, Aggregator.Feature> actual = byKey(sharded.features());
+
+            assertThat(expected).containsKey("load [hostname=(other)]");
+            assertThat(actual).containsOnlyKeys(expected.keySet());
+            // sketches hold the same buckets, laid out from whichever value each shard saw first
+            actual.forEach((key, f) -> {
+                assertThat(f).usingRecursiveComparison().ignoringFields("latency").isEqualTo(expected.get(key));
+                assertThat(f.latency.quantile(0.99)).isEqualTo(expected.get(key).latency.quantile(0.99));
+            });
+            assertThat(sharded.overflowed()).isEqualTo(sequential.overflowed());
+        } finally {
+            parallel.shutdown();
+        }
+    }
+
+    @Test
+    void parsedResponseLinksNonHexSpanIds() {
+        JsonObject response = new JsonObject("""
+                {"data":[{"traceID":"t1","spans":[
+                  {"traceID":"t1","spanID":"root-span","operationName":"handle","processID":"p1",
+                   "startTime":1000,"duration":100,"tags":[]},
+                  {"traceID":"t1","spanID":"child-span","operationName":"query","processID":"p1",
+                   "startTime":1020,"duration":30,"tags":[],
+                   "references":[{"refType":"CHILD_OF","traceID":"t1","spanID":"root-span"}]}
+                ],"processes":{"p1":{"serviceName":"shop","tags":[]}}}]}
+                """);
+
+        Map<String, Aggregator.Feature> features = byKey(new Aggregator().aggregate(response));
+
+        assertThat(features.get("handle").selfTimeSum).isEqualTo(70);
+        assertThat(features.get("handle").criticalPathSum).isEqualTo(70);
+        assertThat(features.get("query").selfTimeSum).isEqualTo(30);
+    }
+}
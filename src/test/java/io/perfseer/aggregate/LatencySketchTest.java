@@ -0,0 +1,108 @@
+package io.perfseer.aggregate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class LatencySketchTest {
+
+    static final double[] QUANTILES = {0.01, 0.1, 0.5, 0.9, 0.95, 0.99, 0.999};
+
+    /** Log-uniform durations between 1us and {@code maxMicros}. */
+    private static long[] durations(int n, double maxMicros, long seed) {
+        Random random = new Random(seed);
+        long[] values = new long[n];
+        for (int i=0;i<n;i++){
+            values[i] = Math.round(Math.exp(random.nextDouble() * Math.log(maxMicros)));
+        }
+        return values;
+    }
+
+    private static LatencySketch sketch(double relativeAccuracy, long[] values, int from, int to) {
+        LatencySketch sketch = new LatencySketch(relativeAccuracy);
+        for (int i=from;i<to;i++){
+            sketch.add(values[i]);
+        }
+        return sketch;
+    }
+
+    private static double exact(long[] sorted, double q) {
+        long rank = (long) Math.ceil(q * sorted.length) - 1;
+        return sorted[(int) Math.max(0, Math.min(rank, sorted.length - 1))];
+    }
+
+    private static void assertWithinAccuracy(LatencySketch sketch, long[] values, double q) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        double expected = exact(sorted, q);
+        assertThat(sketch.quantile(q)).as("p%s", q * 100)
+                .isCloseTo(expected, within(expected * sketch.relativeAccuracy() * (1 + 1e-9)));
+    }
+
+    @Test
+    void quantilesStayWithinTheRelativeAccuracy() {
+        long[] values = durations(100_000, 1e7, 1);
+        for (double accuracy : new double[] {0.01, 0.02, 0.05}) {
+            LatencySketch sketch = sketch(accuracy, values, 0, values.length);
+
+            assertThat(sketch.count()).isEqualTo(values.length);
+            for (double q : QUANTILES) assertWithinAccuracy(sketch, values, q);
+        }
+    }
+
+    @Test
+    void mergedSketchesAnswerLikeOneSketch() {
+        long[] values = durations(50_000, 1e6, 2);
+        LatencySketch whole = sketch(0.01, values, 0, values.length);
+        LatencySketch merged = sketch(0.01, values, 0, 10_000);
+        merged.merge(sketch(0.01, values, 10_000, 30_000));
+        merged.merge(sketch(0.01, values, 30_000, values.length));
+        merged.merge(new LatencySketch(0.01));
+
+        assertThat(merged.count()).isEqualTo(whole.count());
+        for (double q : QUANTILES) {
+            assertThat(merged.quantile(q)).isEqualTo(whole.quantile(q));
+            assertWithinAccuracy(merged, values, q);
+        }
+        assertThatThrownBy(() -> merged.merge(new LatencySketch(0.02))).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void bucketsCollapseFromTheLowEndPastTheCap() {
+        // at 0.1% accuracy, 1us..1s spans about three times MAX_BUCKETS buckets
+        long[] values = durations(200_000, 1e6, 3);
+        LatencySketch sketch = sketch(0.001, values, 0, values.length);
+
+        int buckets = (sketch.toBytes().length - 48) / 8;
+        assertThat(buckets).isLessThanOrEqualTo(LatencySketch.MAX_BUCKETS);
+        assertThat(sketch.count()).isEqualTo(values.length);
+        // the tail keeps its accuracy, the folded low end is only bounded by the lowest kept bucket
+        for (double q : new double[] {0.9, 0.99, 0.999}) assertWithinAccuracy(sketch, values, q);
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        assertThat(sketch.quantile(0.01)).isGreaterThanOrEqualTo(exact(sorted, 0.01));
+    }
+
+    @Test
+    void bytesRoundTrip() {
+        long[] values = durations(10_000, 1e5, 4);
+        LatencySketch sketch = sketch(0.02, values, 0, values.length);
+        sketch.add(0);
+        sketch.add(-5);
+
+        byte[] bytes = sketch.toBytes();
+        LatencySketch read = LatencySketch.fromBytes(bytes);
+
+        assertThat(read.relativeAccuracy()).isEqualTo(0.02);
+        assertThat(read.count()).isEqualTo(sketch.count());
+        for (double q : QUANTILES) assertThat(read.quantile(q)).isEqualTo(sketch.quantile(q));
+        assertThat(read.toBytes()).isEqualTo(bytes);
+        assertThat(LatencySketch.fromBytes(new LatencySketch().toBytes()).quantile(0.5)).isZero();
+        assertThatThrownBy(() -> LatencySketch.fromBytes(Arrays.copyOf(bytes, bytes.length - 3)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,40 @@
+package io.perfseer.analyzer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.perfseer.aggregate.Aggregator;
+import io.perfseer.indexer.CodeIndexer;
+import io.vertx.core.json.JsonObject;
+import java.net.URISyntaxException;
+import java.nio.file.Paths;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class PerformanceAnalyzerTest {
+
+    @Test
+    void parsedResponseResolvesOperationsByCodeTags() throws URISyntaxException {
+        PerformanceAnalyzer analyzer = new PerformanceAnalyzer();
+        analyzer.aggregator = new Aggregator();
+        analyzer.codeIndexer = new CodeIndexer(null, 1);
+        String corpus = Paths.get(PerformanceAnalyzerTest.class.getResource("/indexer-corpus").toURI()).toString();
+        // an operation name no heuristic resolves, and a span id that is not hex
+        JsonObject response = new JsonObject("""
+                {"data":[{"traceID":"t1","spans":[
+                  {"traceID":"t1","spanID":"root-span","operationName":"place order","processID":"p1",
+                   "startTime":1000,"duration":2000,"tags":[
+                     {"key":"code.namespace","type":"string","value":"com.example.shop.OrderResource"},
+                     {"key":"code.function","type":"string","value":"create"}]}
+                ],"processes":{"p1":{"serviceName":"shop","tags":[]}}}]}
+                """);
+
+        List<PerformanceAnalyzer.MethodAnalysis> analyses = analyzer.analyzePerformance(corpus, response);
+
+        assertThat(analyses).singleElement().satisfies(a -> {
+            assertThat(a.fullyQualifiedName).isEqualTo("com.example.shop.OrderResource.create");
+            assertThat(a.matchedBy).isEqualTo(OperationMatcher.MatchKind.CODE_TAGS.name());
+            assertThat(a.operationName).isEqualTo("place order");
+            assertThat(a.count).isEqualTo(1);
+        });
+    }
+}
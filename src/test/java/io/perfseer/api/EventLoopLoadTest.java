@@ -0,0 +1,231 @@
+package io.perfseer.api;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.quarkus.test.common.QuarkusTestResource;
+import io.quarkus.test.common.QuarkusTestResourceLifecycleManager;
+import io.quarkus.test.common.http.TestHTTPResource;
+import io.quarkus.test.junit.QuarkusTest;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.impl.VertxThread;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.client.HttpResponse;
+import io.vertx.ext.web.client.WebClient;
+import io.vertx.ext.web.client.WebClientOptions;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Drives concurrent {@code /api/score} and {@code /api/stream/score} requests,
+ * each fetching, training and scoring without the model cache, against a fake
+ * Jaeger, and checks that no event loop spends more than
+ * {@link #MAX_TASK_CPU_MILLIS} of CPU time in one task.
+ */
+@QuarkusTest
+@QuarkusTestResource(value = EventLoopLoadTest.FakeJaeger.class, restrictToAnnotatedClass = true)
+class EventLoopLoadTest {
+
+    static final int CLIENTS = 8;
+    static final int ROUNDS = 4;
+    static final long CHECK_INTERVAL_MILLIS = 10;
+    /** Far above the few milliseconds a loop task takes here, far below training a model. */
+    static final long MAX_TASK_CPU_MILLIS = 20;
+
+    @TestHTTPResource("/")
+    URL url;
+
+    /** Answers {@code /api/traces} with traces spread over the queried range, on its own Vert.x instance. */
+    public static class FakeJaeger implements QuarkusTestResourceLifecycleManager {
+        static final int TRACES_PER_QUERY = 400;
+        static final String[] OPERATIONS = {"GET /orders/{id}", "POST /orders", "load", "SELECT orders",
+                "render", "GET /cart", "charge", "notify"};
+
+        private Vertx vertx;
+
+        @Override
+        public Map<String, String> start() {
+            vertx = Vertx.vertx();
+            HttpServer server = vertx.createHttpServer()
+                    .requestHandler(request -> vertx.executeBlocking(() -> traces(
+                                    Long.parseLong(request.getParam("start")), Long.parseLong(request.getParam("end"))))
+                            .onSuccess(body -> request.response().putHeader("content-type", "application/json").end(body))
+                            .onFailure(e -> request.response().setStatusCode(500).end(e.toString())))
+                    .listen(0, "localhost").toCompletionStage().toCompletableFuture().join();
+            return Map.of(
+                    "perf.jaeger-url", "http://localhost:" + server.actualPort(),
+                    "perf.service-name", "shop",
+                    "perf.storage-enabled", "false",
+                    "perf.model-cache-size", "0",
+                    "perf.fetch-cache-max-bytes", "0");
+        }
+
+        @Override
+        public void stop() {
+            vertx.close().toCompletionStage().toCompletableFuture().join();
+        }
+
+        static Buffer traces(long start, long end) {
+            Random rnd = new Random(start);
+            JsonArray data = new JsonArray();
+            JsonObject processes = new JsonObject().put("p1", new JsonObject().put("serviceName", "shop")
+                    .put("tags", new JsonArray().add(new JsonObject().put("key", "hostname").put("type", "string").put("value", "a"))));
+            for (int t=0;t<TRACES_PER_QUERY;t++){
+                String traceId = Long.toHexString(start) + Integer.toHexString(t);
+                long t0 = start + (long) (rnd.nextDouble() * (end - start - 1_000_000));
+                JsonArray spans = new JsonArray();
+                for (int s=0;s<6;s++){
+                    JsonArray references = new JsonArray();
+                    if (s > 0) {
+                        references.add(new JsonObject().put("refType", "CHILD_OF").put("traceID", traceId).put("spanID", "1"));
+                    }
+                    spans.add(new JsonObject()
+                            .put("traceID", traceId)
+                            .put("spanID", String.valueOf(s + 1))
+                            .put("operationName", OPERATIONS[rnd.nextInt(OPERATIONS.length)])
+                            .put("references", references)
+                            .put("startTime", t0 + s * 100L)
+                            .put("duration", 1 + (long) Math.exp(5 + 3 * rnd.nextDouble()))
+                            .put("tags", new JsonArray())
+                            .put("processID", "p1"));
+                }
+                data.add(new JsonObject().put("traceID", traceId).put("spans", spans).put("processes", processes));
+            }
+            return new JsonObject().put("data", data).toBuffer();
+        }
+    }
+
+    /**
+     * Vert.x's blocked-thread checker measures wall-clock time, so on a loaded
+     * machine a GC pause or a preempted loop reads as blocking. This one counts
+     * the CPU time each event loop thread spends in its current task.
+     */
+    static final class EventLoopCpuChecker implements AutoCloseable {
+        private final ThreadMXBean cpu = ManagementFactory.getThreadMXBean();
+        /** Per busy loop: its task's start, its CPU time when the task was first seen, and whether it was reported. */
+        private final Map<Thread, long[]> tasks = new HashMap<>();
+        private final List<String> blocked = new ArrayList<>();
+        private final Thread thread = new Thread(this::run, "event-loop-cpu-checker");
+
+        EventLoopCpuChecker() {
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void run() {
+            long limit = TimeUnit.MILLISECONDS.toNanos(MAX_TASK_CPU_MILLIS);
+            Thread[] threads = new Thread[256];
+            while (!Thread.currentThread().isInterrupted()) {
+                int n = Thread.enumerate(threads);
+                for (int i=0;i<n;i++){
+                    if (!(threads[i] instanceof VertxThread) || ((VertxThread) threads[i]).isWorker()) continue;
+                    VertxThread loop = (VertxThread) threads[i];
+                    long start = loop.startTime();
+                    long used = cpu.getThreadCpuTime(loop.getId());
+                    long[] task = tasks.get(loop);
+                    if (start == 0) {
+                        tasks.remove(loop);
+                    } else if (task == null || task[0] != start) {
+                        tasks.put(loop, new long[] {start, used, 0});
+                    } else if (task[2] == 0 && used - task[1] > limit) {
+                        task[2] = 1;
+                        StringBuilder trace = new StringBuilder(loop.getName()).append(" used ")
+                                .append(TimeUnit.NANOSECONDS.toMillis(used - task[1])).append(" ms of CPU in one task");
+                        for (StackTraceElement frame : loop.getStackTrace()) trace.append("\n\tat ").append(frame);
+                        synchronized (blocked) {
+                            blocked.add(trace.toString());
+                        }
+                    }
+                }
+                try {
+                    Thread.sleep(CHECK_INTERVAL_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        List<String> blocked() {
+            synchronized (blocked) {
+                return new ArrayList<>(blocked);
+            }
+        }
+
+        @Override
+        public void close() throws InterruptedException {
+            thread.interrupt();
+            thread.join();
+        }
+    }
+
+    @Test
+    void eventLoopsAreNotBlockedWhileScoring() throws InterruptedException {
+        Vertx clientVertx = Vertx.vertx();
+        try {
+            WebClient client = WebClient.create(clientVertx, new WebClientOptions().setMaxPoolSize(CLIENTS + 1));
+            String base = url.toString();
+            // one round first, so class loading and JIT warm-up are not counted
+            await(round(client, base, 0));
+
+            ConcurrentLinkedQueue<Integer> codes = new ConcurrentLinkedQueue<>();
+            List<String> blocked;
+            try (EventLoopCpuChecker checker = new EventLoopCpuChecker()) {
+                List<Future<?>> clients = new ArrayList<>();
+                for (int c=0;c<CLIENTS;c++){
+                    Future<?> chain = Future.succeededFuture();
+                    for (int r=0;r<ROUNDS;r++){
+                        int round = c * ROUNDS + r + 1;
+                        chain = chain.compose(v -> round(client, base, round).onSuccess(codes::addAll));
+                    }
+                    clients.add(chain);
+                }
+                await(Future.all(clients));
+                blocked = checker.blocked();
+            }
+
+            assertThat(codes).hasSize(CLIENTS * ROUNDS * 3).containsOnly(200);
+            assertThat(blocked).as("event loop tasks over %d ms of CPU", MAX_TASK_CPU_MILLIS).isEmpty();
+        } finally {
+            clientVertx.close().toCompletionStage().toCompletableFuture().join();
+        }
+    }
+
+    /** A score, a streamed score and a health check; the filter varies so no two rounds share a query. */
+    private static Future<List<Integer>> round(WebClient client, String base, int round) {
+        String filter = "duration>=" + round + "us";
+        Future<HttpResponse<Buffer>> score = client.getAbs(base + "api/score")
+                .addQueryParam("service", "shop")
+                .addQueryParam("lookbackBaseline", "30m")
+                .addQueryParam("lookbackCurrent", "5m")
+                .addQueryParam("filter", filter)
+                .send();
+        Future<HttpResponse<Buffer>> stream = client.getAbs(base + "api/stream/score")
+                .putHeader("Accept", "application/x-ndjson")
+                .addQueryParam("service", "shop")
+                .addQueryParam("lookbackBaseline", "30m")
+                .addQueryParam("lookbackCurrent", "5m")
+                .send();
+        Future<HttpResponse<Buffer>> health = client.getAbs(base + "api/health").send();
+        return Future.all(score, stream, health).map(all -> {
+            assertThat(score.result().bodyAsString()).as("scores of round %d", round).startsWith("[{");
+            assertThat(stream.result().bodyAsString()).as("streamed scores of round %d", round).startsWith("{");
+            return List.of(score.result().statusCode(), stream.result().statusCode(), health.result().statusCode());
+        });
+    }
+
+    private static <T> T await(Future<T> future) {
+        return future.toCompletionStage().toCompletableFuture().join();
+    }
+}
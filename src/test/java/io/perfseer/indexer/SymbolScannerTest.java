@@ -0,0 +1,56 @@
+package io.perfseer.indexer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.junit.jupiter.api.Test;
+
+class SymbolScannerTest {
+
+    private static List<String> index(CodeIndexer.IndexMode mode) throws URISyntaxException {
+        Path corpus = Paths.get(SymbolScannerTest.class.getResource("/indexer-corpus").toURI());
+        List<String> methods = new ArrayList<>();
+        for (CodeIndexer.CodePointer cp : new CodeIndexer(null, 1, mode).indexProject(corpus.toString())) {
+            methods.add(cp.file + " " + cp.fullyQualifiedName + ":" + cp.line + "-" + cp.endLine + " " + cp.symbol
+                    + " route=" + cp.route + " body=" + cp.bodyOffset + "+" + cp.bodyLength);
+        }
+        return methods;
+    }
+
+    @Test
+    void symbolsMatchAstOnCorpus() throws URISyntaxException {
+        List<String> ast = index(CodeIndexer.IndexMode.AST);
+
+        assertThat(index(CodeIndexer.IndexMode.SYMBOLS)).containsExactlyElementsOf(ast);
+    }
+
+    @Test
+    void corpusParsesInAstMode() throws URISyntaxException {
+        Map<String, Integer> methodsPerFile = new TreeMap<>();
+        for (String m : index(CodeIndexer.IndexMode.AST)) {
+            methodsPerFile.merge(m.substring(0, m.indexOf(' ')), 1, Integer::sum);
+        }
+
+        // a file JavaParser rejects would contribute nothing and compare equal only by accident
+        assertThat(methodsPerFile).hasSize(5).allSatisfy((file, methods) -> assertThat(methods).isPositive());
+    }
+
+    @Test
+    void namesNestedAnonymousAndLocalClassMethodsLikeAst() throws URISyntaxException {
+        assertThat(index(CodeIndexer.IndexMode.SYMBOLS))
+                .anyMatch(m -> m.contains(" com.example.shop.OrderResource.run:"))
+                .anyMatch(m -> m.contains(" com.example.shop.Best.offer:"))
+                .anyMatch(m -> m.contains(" com.example.shop.Paths.describe:"))
+                .anyMatch(m -> m.contains(" com.example.shop.Page.compareTo:"))
+                .anyMatch(m -> m.contains(" com.example.shop.OrderResource.label:"))
+                .anyMatch(m -> m.contains(" com.example.shop.Unknown.terminal:"))
+                .anyMatch(m -> m.contains(" com.example.shop.OrderResource.get:") && m.contains("route=GET /orders/{id}"))
+                .noneMatch(m -> m.contains(".fake:") || m.contains(".notAMethod:") || m.contains(".priority:"));
+    }
+}
@@ -0,0 +1,147 @@
+package io.perfseer.ingest;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpServerOptions;
+import io.vertx.grpc.common.GrpcStatus;
+import io.vertx.grpc.server.GrpcServer;
+import io.vertx.grpc.server.GrpcServerRequest;
+import io.vertx.grpc.server.GrpcServerResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * In-process stand-in for the gRPC API of Jaeger query. {@code FindTraces}
+ * streams the given {@code SpansResponseChunk} messages whatever the query,
+ * {@code GetServices} lists the given services, and other methods are
+ * UNIMPLEMENTED. Every {@code FindTraces} request is recorded in
+ * {@link #queries()}, so what a client pushed down can be checked.
+ */
+final class FakeQueryService {
+
+    private final List<Buffer> chunks = new ArrayList<>();
+    private final List<String> services;
+    private final List<String> queries = Collections.synchronizedList(new ArrayList<>());
+
+    FakeQueryService(List<byte[]> chunks, List<String> services) {
+        for (byte[] chunk : chunks) {
+            this.chunks.add(Buffer.buffer(chunk));
+        }
+        this.services = services;
+    }
+
+    /** Serves h2c on {@code port} of localhost. */
+    Future<HttpServer> listen(Vertx vertx, int port) {
+        GrpcServer grpc = GrpcServer.server(vertx).callHandler(this::handle);
+        return vertx.createHttpServer(new HttpServerOptions().setHost("localhost").setPort(port))
+                .requestHandler(grpc)
+                .listen();
+    }
+
+    /** {@code FindTraces} requests received so far, one line each. */
+    List<String> queries() {
+        synchronized (queries) {
+            return new ArrayList<>(queries);
+        }
+    }
+
+    private void handle(GrpcServerRequest<Buffer, Buffer> call) {
+        GrpcServerResponse<Buffer, Buffer> response = call.response();
+        switch (call.fullMethodName()) {
+            case JaegerGrpc.FIND_TRACES:
+                call.handler(request -> queries.add(describe(request.getBytes())));
+                call.endHandler(v -> send(response, 0));
+                break;
+            case JaegerGrpc.GET_SERVICES:
+                call.endHandler(v -> {
+                    ProtoWriter out = new ProtoWriter();
+                    for (String service : services) {
+                        out.string(1, service);
+                    }
+                    response.end(Buffer.buffer(out.toByteArray()));
+                });
+                break;
+            default:
+                response.status(GrpcStatus.UNIMPLEMENTED).statusMessage(call.fullMethodName()).end();
+        }
+    }
+
+    /** Writes chunks from {@code from} on until the write queue is full, then resumes once it drains. */
+    private void send(GrpcServerResponse<Buffer, Buffer> response, int from) {
+        int i = from;
+        while (i < chunks.size() && !response.writeQueueFull()) {
+            response.write(chunks.get(i++));
+        }
+        if (i == chunks.size()) {
+            response.end();
+        } else {
+            int next = i;
+            response.drainHandler(v -> send(response, next));
+        }
+    }
+
+    /** The fields of a {@code FindTracesRequest} that are set. */
+    static String describe(byte[] request) {
+        StringBuilder out = new StringBuilder();
+        ProtoReader in = new ProtoReader().reset(request, 0, request.length);
+        while (in.hasRemaining()) {
+            int tag = in.readTag();
+            if (tag != (1 << 3 | ProtoReader.LENGTH_DELIMITED)) {
+                in.skipField(tag);
+                continue;
+            }
+            int query = in.pushLimit(in.readLength());
+            while (in.hasRemaining()) {
+                int t = in.readTag();
+                switch (t >>> 3) {
+                    case 1: out.append(" service=").append(string(in)); break;
+                    case 2: out.append(" operation=").append(string(in)); break;
+                    case 3: {
+                        int entry = in.pushLimit(in.readLength());
+                        String key = null, value = null;
+                        while (in.hasRemaining()) {
+                            int e = in.readTag();
+                            if (e >>> 3 == 1) key = string(in);
+                            else if (e >>> 3 == 2) value = string(in);
+                            else in.skipField(e);
+                        }
+                        in.popLimit(entry);
+                        out.append(" tag:").append(key).append('=').append(value);
+                        break;
+                    }
+                    case 4: out.append(" start=").append(micros(in)); break;
+                    case 5: out.append(" end=").append(micros(in)); break;
+                    case 6: out.append(" minDuration=").append(micros(in)).append("us"); break;
+                    case 8: out.append(" searchDepth=").append(in.readVarint()); break;
+                    default: in.skipField(t);
+                }
+            }
+            in.popLimit(query);
+        }
+        return out.toString().trim();
+    }
+
+    private static String string(ProtoReader in) {
+        int len = in.readLength();
+        String s = new String(in.buffer(), in.position(), len, StandardCharsets.UTF_8);
+        in.skip(len);
+        return s;
+    }
+
+    private static long micros(ProtoReader in) {
+        int outer = in.pushLimit(in.readLength());
+        long seconds = 0, nanos = 0;
+        while (in.hasRemaining()) {
+            int t = in.readTag();
+            if (t >>> 3 == 1) seconds = in.readVarint();
+            else if (t >>> 3 == 2) nanos = in.readVarint();
+            else in.skipField(t);
+        }
+        in.popLimit(outer);
+        return seconds * 1_000_000 + nanos / 1000;
+    }
+}
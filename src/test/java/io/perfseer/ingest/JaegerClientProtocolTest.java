@@ -0,0 +1,177 @@
+package io.perfseer.ingest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.perfseer.aggregate.Aggregator;
+import io.perfseer.aggregate.Grouping;
+import io.perfseer.aggregate.LatencySketch;
+import io.perfseer.config.PerfConfig;
+import io.perfseer.exec.WorkerPools;
+import io.perfseer.metrics.PipelineMetrics;
+import io.smallrye.mutiny.Uni;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+class JaegerClientProtocolTest {
+
+    static final long START = 1_700_000_000_000_000L;
+    static final int TRACES = 200;
+    static final int SPANS_PER_TRACE = 7;
+    /** Fewer than a trace's spans, so most traces arrive in several messages. */
+    static final int SPANS_PER_CHUNK = 3;
+
+    static Vertx vertx;
+    static WorkerPools pools;
+    static FakeQueryService fake;
+    static int httpPort;
+    static int grpcPort;
+    static List<byte[]> chunks;
+
+    @BeforeAll
+    static void start() {
+        TestTraces traces = new TestTraces(TRACES, SPANS_PER_TRACE, START);
+        Buffer json = Buffer.buffer(traces.toJson());
+        chunks = traces.toChunks(SPANS_PER_CHUNK);
+        vertx = Vertx.vertx();
+        pools = new WorkerPools(2, PipelineMetrics.noop());
+        fake = new FakeQueryService(chunks, List.of("shop", "billing"));
+        grpcPort = fake.listen(vertx, 0).toCompletionStage().toCompletableFuture().join().actualPort();
+        HttpServer http = vertx.createHttpServer()
+                .requestHandler(request -> request.response().putHeader("content-type", "application/json").end(json))
+                .listen(0, "localhost").toCompletionStage().toCompletableFuture().join();
+        httpPort = http.actualPort();
+    }
+
+    @AfterAll
+    static void stop() {
+        vertx.close().toCompletionStage().toCompletableFuture().join();
+    }
+
+    private static JaegerClient client(JaegerClient.Protocol protocol) {
+        return client(protocol, 0);
+    }
+
+    private static JaegerClient client(JaegerClient.Protocol protocol, long cacheBytes) {
+        PerfConfig cfg = mock(PerfConfig.class);
+        when(cfg.jaegerUrl()).thenReturn("http://localhost:" + httpPort);
+        when(cfg.jaegerQueryPath()).thenReturn("/api/traces");
+        when(cfg.jaegerServicesPath()).thenReturn("/api/services");
+        when(cfg.jaegerProtocol()).thenReturn(protocol);
+        when(cfg.jaegerGrpcPort()).thenReturn(grpcPort);
+        when(cfg.serviceName()).thenReturn("shop");
+        when(cfg.lookbackDefault()).thenReturn("1h");
+        when(cfg.fetchSlice()).thenReturn(Duration.ZERO);
+        when(cfg.fetchMaxInFlight()).thenReturn(1);
+        when(cfg.batchMaxServicesInFlight()).thenReturn(1);
+        when(cfg.fetchRetries()).thenReturn(0);
+        when(cfg.fetchCacheMaxBytes()).thenReturn(cacheBytes);
+        when(cfg.fetchCacheTtl()).thenReturn(Duration.ofMinutes(1));
+        return new JaegerClient(new io.vertx.mutiny.core.Vertx(vertx), cfg, PipelineMetrics.noop(), pools);
+    }
+
+    /** Trace ids and span counts in arrival order, plus the features. */
+    private static Map<String, Object> fetch(JaegerClient.Protocol protocol, String filter, List<String> groupBy) {
+        Aggregator aggregator = new Aggregator(LatencySketch.DEFAULT_RELATIVE_ACCURACY, 1, new Grouping(groupBy, 100));
+        Aggregator.Aggregation aggregation = aggregator.newAggregation();
+        List<String> traces = new ArrayList<>();
+        TraceSink recording = new TraceSink() {
+            @Override
+            public void onTrace(Trace trace) {
+                traces.add(trace.traceId + "/" + trace.size());
+                aggregation.onTrace(trace);
+            }
+
+            @Override
+            public String[] dimensions() {
+                return aggregation.dimensions();
+            }
+        };
+        client(protocol).fetchSpans("shop", START, START + TRACES * 1_000L, null,
+                SpanFilter.parse(filter), recording).await().indefinitely();
+        Map<String, Aggregator.Feature> features = new TreeMap<>();
+        for (Aggregator.Feature f : aggregation.features()) features.put(f.key, f);
+        return Map.of("traces", traces, "features", features);
+    }
+
+    @Test
+    void tracesAreSplitAcrossChunks() {
+        assertThat(chunks).hasSizeGreaterThan(TRACES * 2);
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "''                                   | ''",
+            "''                                   | hostname,http.status_code",
+            "tag:http.status_code=500             | ''",
+            "tag:http.status_code=500             | hostname",
+            "operation=GET /orders/*;duration>=300us | ''",
+            "operation=GET /orders/*;duration>=300us | hostname,http.status_code",
+            "tag:hostname=pinned;kind=internal    | http.status_code",
+    })
+    void grpcAndJsonYieldTheSameFeatures(String filter, String groupBy) {
+        List<String> dimensions = groupBy.isEmpty() ? List.of() : List.of(groupBy.split(","));
+
+        Map<String, Object> json = fetch(JaegerClient.Protocol.JSON, filter, dimensions);
+        Map<String, Object> grpc = fetch(JaegerClient.Protocol.GRPC, filter, dimensions);
+
+        assertThat((Map<?, ?>) json.get("features")).isNotEmpty();
+        assertThat(grpc.get("traces")).isEqualTo(json.get("traces"));
+        assertThat(grpc.get("features")).usingRecursiveComparison().isEqualTo(json.get("features"));
+    }
+
+    @Test
+    void groupsTakeSpanTagsOverProcessTags() {
+        @SuppressWarnings("unchecked")
+        Map<String, Aggregator.Feature> features = (Map<String, Aggregator.Feature>)
+                fetch(JaegerClient.Protocol.GRPC, "", List.of("hostname")).get("features");
+
+        assertThat(features.keySet()).contains("load [hostname=host-0]", "load [hostname=pinned]");
+        assertThat(features.get("load [hostname=pinned]").codeFunction).isEqualTo("load");
+    }
+
+    @Test
+    void pushesFilterDownToFindTraces() {
+        fetch(JaegerClient.Protocol.GRPC, "operation=POST /orders;duration>=2ms;tag:http.status_code=500", List.of());
+
+        assertThat(fake.queries()).last().asString()
+                .contains("service=shop", "operation=POST /orders", "tag:http.status_code=500", "minDuration=2000us",
+                        "start=" + START, "end=" + (START + TRACES * 1_000L));
+    }
+
+    private static Uni<List<String>> traces(JaegerClient client) {
+        List<String> traces = new ArrayList<>();
+        return client.fetchSpans("shop", START, START + TRACES * 1_000L, null, SpanFilter.ALL,
+                        trace -> traces.add(trace.traceId + "/" + trace.size()))
+                .onItem().transform(sink -> traces);
+    }
+
+    @ParameterizedTest
+    @CsvSource({"JSON, 1024, 0", "JSON, 67108864, 1", "GRPC, 1024, 0", "GRPC, 67108864, 1"})
+    void coalescedFetchesShareOnlyBodiesUnderTheCacheLimit(JaegerClient.Protocol protocol, long cacheBytes, int entries) {
+        JaegerClient client = client(protocol, cacheBytes);
+
+        List<List<String>> both = Uni.join().all(traces(client), traces(client)).andFailFast().await().indefinitely();
+
+        assertThat(both.get(0)).hasSize(TRACES).isEqualTo(both.get(1));
+        assertThat(client.cacheStats()).containsEntry("entries", entries).containsEntry("misses", 1L)
+                .containsEntry("coalesced", 1L);
+    }
+
+    @Test
+    void listsServicesOverGrpc() {
+        assertThat(client(JaegerClient.Protocol.GRPC).services().await().indefinitely()).containsExactly("billing", "shop");
+    }
+}
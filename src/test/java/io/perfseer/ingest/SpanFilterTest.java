@@ -0,0 +1,137 @@
+package io.perfseer.ingest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class SpanFilterTest {
+
+    private static Span span(String operation, long duration) {
+        Span s = new Span();
+        s.operationName = operation;
+        s.duration = duration;
+        return s;
+    }
+
+    /** Whether {@code filter} keeps the span with these tags, given as key/value pairs. */
+    private static boolean matches(SpanFilter filter, Span span, String... tags) {
+        SpanFilter.Matcher matcher = filter.matcher();
+        matcher.startSpan();
+        for (int i=0;i<tags.length;i+=2){
+            int slot = matcher.slot(tags[i]);
+            if (slot >= 0) matcher.tag(slot, tags[i + 1]);
+        }
+        return matcher.matches(span);
+    }
+
+    @Test
+    void parsesClauses() {
+        assertThat(SpanFilter.parse(null)).isSameAs(SpanFilter.ALL);
+        assertThat(SpanFilter.parse(" ; ")).isSameAs(SpanFilter.ALL);
+
+        SpanFilter filter = SpanFilter.parse(" operation=GET /users/* ;duration>=5ms;; kind=Server; tag:http.status_code!=200 ");
+
+        assertThat(filter.toString()).isEqualTo("operation=GET /users/*;duration>=5ms;kind=Server;tag:http.status_code!=200");
+        assertThat(filter.needsTags()).isTrue();
+        assertThat(filter.minDuration()).isEqualTo(5_000);
+        assertThat(filter.exactOperation()).isNull();
+        assertThat(SpanFilter.parse("duration>=1s").needsTags()).isFalse();
+    }
+
+    @Test
+    void rejectsMalformedClauses() {
+        assertThatThrownBy(() -> SpanFilter.parse("service=shop")).isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Unknown filter clause 'service=shop'");
+        assertThatThrownBy(() -> SpanFilter.parse("operation=a;operation~b")).isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("More than one operation clause");
+        assertThatThrownBy(() -> SpanFilter.parse("tag: ")).isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("without a tag key");
+        assertThatThrownBy(() -> SpanFilter.parse("operation~(")).isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Invalid filter regex");
+    }
+
+    @Test
+    void globOnlyFiltersRejectRegexes() {
+        assertThat(SpanFilter.parseGlobs("operation=GET *;tag:region=eu;tag:retry").toString())
+                .isEqualTo("operation=GET *;tag:region=eu;tag:retry");
+        assertThatThrownBy(() -> SpanFilter.parseGlobs("operation~(a+)+$")).isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("not accepted here");
+        assertThatThrownBy(() -> SpanFilter.parseGlobs("tag:user~^a.*")).isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("not accepted here");
+    }
+
+    @Test
+    void pushesDownOnlyWhatJaegerCanCheck() {
+        assertThat(SpanFilter.parse("operation=GET /users;duration>=2ms;tag:region=eu;tag:retry;tag:zone!=b;kind=server")
+                .queryParams())
+                .containsExactly(Map.entry("operation", "GET /users"), Map.entry("minDuration", "2000us"),
+                        Map.entry("tags", "{\"region\":\"eu\",\"span.kind\":\"server\"}"));
+        assertThat(SpanFilter.parse("operation=GET /users/*").queryParams()).isEmpty();
+        assertThat(SpanFilter.parse("operation~^GET").queryParams()).isEmpty();
+        assertThat(SpanFilter.ALL.queryParams()).isEmpty();
+    }
+
+    @Test
+    void matchesSpans() {
+        SpanFilter glob = SpanFilter.parse("operation=GET /users/?*;duration>=1ms");
+        assertThat(matches(glob, span("GET /users/42", 1_000))).isTrue();
+        assertThat(matches(glob, span("GET /users/", 1_000))).isFalse();
+        assertThat(matches(glob, span("GET /users/42", 999))).isFalse();
+        assertThat(matches(glob, span("POST /users/42", 5_000))).isFalse();
+        assertThat(matches(glob, span(null, 5_000))).isFalse();
+
+        SpanFilter regex = SpanFilter.parse("operation~users/\\d+$");
+        assertThat(matches(regex, span("GET /users/42", 0))).isTrue();
+        assertThat(matches(regex, span("GET /users/me", 0))).isFalse();
+
+        SpanFilter tags = SpanFilter.parse("kind=SERVER;tag:region=eu;tag:zone!=b;tag:user~^bot-;tag:retry");
+        assertThat(matches(tags, span("a", 1), "span.kind", "server", "region", "eu", "zone", "a", "user", "bot-7", "retry", "1")).isTrue();
+        assertThat(matches(tags, span("a", 1), "span.kind", "server", "region", "eu", "user", "bot-7", "retry", "1")).isTrue();
+        assertThat(matches(tags, span("a", 1), "span.kind", "server", "region", "eu", "zone", "b", "user", "bot-7", "retry", "1")).isFalse();
+        assertThat(matches(tags, span("a", 1), "span.kind", "server", "region", "us", "user", "bot-7", "retry", "1")).isFalse();
+        assertThat(matches(tags, span("a", 1), "span.kind", "server", "region", "eu", "user", "human", "retry", "1")).isFalse();
+        assertThat(matches(tags, span("a", 1), "span.kind", "server", "region", "eu", "user", "bot-7")).isFalse();
+        assertThat(matches(tags, span("a", 1), "span.kind", "client", "region", "eu", "user", "bot-7", "retry", "1")).isFalse();
+    }
+
+    @Test
+    void globsMatchWholeNamesWithoutBacktracking() {
+        assertThat(SpanFilter.glob("GET *", "GET /a")).isTrue();
+        assertThat(SpanFilter.glob("GET *", "xGET /a")).isFalse();
+        assertThat(SpanFilter.glob("*.sql", "select.sql")).isTrue();
+        assertThat(SpanFilter.glob("a*b*c", "aXbYbZc")).isTrue();
+        assertThat(SpanFilter.glob("a*b*c", "aXbYbZ")).isFalse();
+        assertThat(SpanFilter.glob("a?c", "a\nc")).isTrue();
+        assertThat(SpanFilter.glob("**", "")).isTrue();
+        assertThat(SpanFilter.glob("(a+)+", "aa")).isFalse();
+        // many wildcards against a long near miss cost at most pattern length times name length
+        String pattern = "*a".repeat(30) + "b";
+        assertThat(SpanFilter.glob(pattern, "a".repeat(100_000))).isFalse();
+    }
+
+    @Test
+    void appliedFiltersSkipSpansAndDropTracesWithoutAMatch() {
+        List<Trace> kept = new ArrayList<>();
+        TraceSink sink = SpanFilter.parse("operation=GET *").apply(trace -> {
+            Trace copy = new Trace();
+            copy.copyFrom(trace);
+            kept.add(copy);
+        });
+        Trace trace = new Trace();
+        trace.addSpan().operationName = "GET /a";
+        trace.addSpan().operationName = "SELECT";
+        sink.onTrace(trace);
+        trace.span(0).operationName = "POST /a";
+        sink.onTrace(trace);
+
+        assertThat(kept).singleElement().satisfies(t -> {
+            assertThat(t.span(0).skip).isFalse();
+            assertThat(t.span(1).skip).isTrue();
+        });
+        assertThatThrownBy(() -> SpanFilter.parse("tag:region=eu").apply(kept::add)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
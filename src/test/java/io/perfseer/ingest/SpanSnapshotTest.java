@@ -0,0 +1,146 @@
+package io.perfseer.ingest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.perfseer.aggregate.Aggregator;
+import io.perfseer.aggregate.LatencySketch;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SpanSnapshotTest {
+
+    static final long T0 = 1_700_000_000_000_000L;
+
+    @TempDir
+    Path dir;
+
+    private static Span span(Trace trace, long id, long parent, String op, long start, long duration, boolean error) {
+        Span s = trace.addSpan();
+        s.spanId = id;
+        s.parentSpanId = parent;
+        s.operationName = op;
+        s.serviceName = "shop";
+        s.startTime = start;
+        s.duration = duration;
+        s.error = error;
+        return s;
+    }
+
+    /** Every field a snapshot keeps, one line per span. */
+    private static List<String> describe(List<Trace> traces) {
+        List<String> lines = new ArrayList<>();
+        for (Trace t : traces) {
+            for (int i=0;i<t.size();i++){
+                Span s = t.span(i);
+                lines.add(t.traceId + " " + Long.toHexString(s.spanId) + " " + Long.toHexString(s.parentSpanId) + " "
+                        + s.operationName + " " + s.serviceName + " " + s.startTime + " " + s.duration + " " + s.error
+                        + " " + s.codeNamespace + " " + s.codeFunction);
+            }
+        }
+        return lines;
+    }
+
+    private static List<Trace> traces() {
+        List<Trace> traces = new ArrayList<>();
+        Trace t = new Trace();
+        t.traceId = "00000000000000000000000000abcdef";
+        // a child listed before its parent, starting before the trace's first span
+        span(t, 0x11, 0x12, "load", T0 - 5, 40, true).codeFunction = "load";
+        span(t, 0x12, 0, "GET /orders", T0, 100, false).codeNamespace = "shop.Orders";
+        // a parent that is not in the trace
+        span(t, 0x13, 0x99, "callback", T0 + 20, 10, false);
+        traces.add(t);
+
+        t = new Trace();
+        t.traceId = "trace-2";
+        // starts before the previous trace, with no names at all
+        span(t, 0x21, 0, null, T0 - 1_000_000, 7, true).serviceName = null;
+        traces.add(t);
+
+        // enough spans for several blocks; names seen in the first block come back in later ones
+        for (int i=0;i<2 * SpanSnapshot.BLOCK_SPANS + 10;i++){
+            t = new Trace();
+            t.traceId = Long.toHexString(0x1000 + i);
+            String op = i < SpanSnapshot.BLOCK_SPANS ? "op-" + i % 5 : "op-" + i % 7;
+            long start = T0 + (i % 3 == 0 ? -i : i) * 1_000L;
+            span(t, i + 1, 0, op, start, i % 1000, i % 11 == 0);
+            traces.add(t);
+        }
+        return traces;
+    }
+
+    @Test
+    void snapshotRoundTripsEverySpan() throws IOException {
+        List<Trace> written = traces();
+        Path file = dir.resolve("spans.snap");
+        try (SpanSnapshot.Writer writer = new SpanSnapshot.Writer(file)) {
+            for (Trace t : written) writer.onTrace(t);
+            assertThat(writer.traces()).isEqualTo(written.size());
+        }
+
+        List<Trace> read = new ArrayList<>();
+        SpanSnapshot.read(file, trace -> {
+            Trace copy = new Trace();
+            copy.copyFrom(trace);
+            read.add(copy);
+        });
+
+        assertThat(SpanSnapshot.isSnapshot(file)).isTrue();
+        assertThat(describe(read)).containsExactlyElementsOf(describe(written));
+        long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+        for (Trace t : written) {
+            for (int i=0;i<t.size();i++){
+                min = Math.min(min, t.span(i).startTime);
+                max = Math.max(max, t.span(i).startTime);
+            }
+        }
+        assertThat(SpanSnapshot.range(file)).containsExactly(min, max);
+    }
+
+    @Test
+    void featuresOfASnapshotMatchItsJson() throws IOException {
+        JsonArray data = new JsonArray();
+        for (int i=0;i<200;i++){
+            String traceId = String.format("%032x", i + 1);
+            data.add(new JsonObject()
+                    .put("traceID", traceId)
+                    .put("spans", new JsonArray()
+                            .add(new JsonObject().put("traceID", traceId).put("spanID", String.format("%016x", 2 * i + 1))
+                                    .put("operationName", "GET /orders").put("processID", "p1")
+                                    .put("startTime", T0 + i * 1_000L).put("duration", 100 + i).put("tags", new JsonArray()))
+                            .add(new JsonObject().put("traceID", traceId).put("spanID", String.format("%016x", 2 * i + 2))
+                                    .put("operationName", "load").put("processID", "p1")
+                                    .put("startTime", T0 + i * 1_000L - 3).put("duration", 30 + i % 7)
+                                    .put("tags", new JsonArray().add(new JsonObject()
+                                            .put("key", "error").put("type", "bool").put("value", i % 4 == 0)))
+                                    .put("references", new JsonArray().add(new JsonObject().put("refType", "CHILD_OF")
+                                            .put("traceID", traceId).put("spanID", String.format("%016x", 2 * i + 1))))))
+                    .put("processes", new JsonObject().put("p1", new JsonObject().put("serviceName", "shop")
+                            .put("tags", new JsonArray()))));
+        }
+        Path json = dir.resolve("spans.json");
+        Files.write(json, new JsonObject().put("data", data).toBuffer().getBytes());
+        Path snapshot = dir.resolve("spans.snap");
+        try (SpanSnapshot.Writer writer = new SpanSnapshot.Writer(snapshot)) {
+            JaegerJsonDecoder.decode(json, writer);
+        }
+
+        // what features --file prints
+        Aggregator agg = new Aggregator(LatencySketch.DEFAULT_RELATIVE_ACCURACY, 1);
+        List<String> fromJson = new ArrayList<>();
+        TraceFiles.read(json, SpanFilter.ALL, agg.newAggregation()).features().forEach(f -> fromJson.add(f.toMap().toString()));
+        List<String> fromSnapshot = new ArrayList<>();
+        TraceFiles.read(snapshot, SpanFilter.ALL, agg.newAggregation()).features().forEach(f -> fromSnapshot.add(f.toMap().toString()));
+
+        assertThat(fromJson).hasSize(2);
+        assertThat(fromSnapshot).isEqualTo(fromJson);
+        assertThat(TraceFiles.range(snapshot)).containsExactly(TraceFiles.range(json));
+    }
+}
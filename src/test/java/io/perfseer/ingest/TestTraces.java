@@ -0,0 +1,167 @@
+package io.perfseer.ingest;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic traces rendered both as a Jaeger {@code /api/traces} response
+ * and as the {@code SpansResponseChunk} messages of {@code FindTraces}. Spans
+ * carry an int64 {@code http.status_code}, some an {@code error} flag, code
+ * tags or a {@code hostname} that overrides their process's.
+ */
+final class TestTraces {
+
+    static final String[] OPERATIONS = {"GET /orders/{id}", "POST /orders", "load", "SELECT orders", "render"};
+    static final int PROCESSES = 3;
+
+    private final int traces;
+    private final int spansPerTrace;
+    private final long start;
+
+    TestTraces(int traces, int spansPerTrace, long start) {
+        this.traces = traces;
+        this.spansPerTrace = spansPerTrace;
+        this.start = start;
+    }
+
+    private interface SpanConsumer {
+        void accept(int trace, int span, int parent, int operation, long startTime, long duration, int process,
+                    long status, boolean error, String host);
+    }
+
+    private void forEachSpan(SpanConsumer consumer) {
+        Random rnd = new Random(7);
+        for (int t=0;t<traces;t++){
+            for (int s=0;s<spansPerTrace;s++){
+                int parent = s == 0 ? -1 : rnd.nextInt(s);
+                int op = rnd.nextInt(OPERATIONS.length);
+                long startTime = start + t * 1_000L + s * 10L;
+                long duration = 1 + (long) Math.exp(5 + 2 * rnd.nextDouble());
+                int process = rnd.nextInt(PROCESSES);
+                long status = rnd.nextInt(10) == 0 ? 500 : 200;
+                boolean error = status == 500 && rnd.nextBoolean();
+                String host = rnd.nextInt(8) == 0 ? "pinned" : null;
+                consumer.accept(t, s, parent, op, startTime, duration, process, status, error, host);
+            }
+        }
+    }
+
+    private static long traceHigh(int trace) {
+        return trace % 2 == 0 ? 0 : 0x0123456789abcdefL + trace;
+    }
+
+    private static long traceLow(int trace) {
+        return 0xfedcba9800000000L + trace;
+    }
+
+    private static long spanId(int trace, int span) {
+        return (long) trace << 20 | span + 1;
+    }
+
+    byte[] toJson() {
+        JsonArray data = new JsonArray();
+        JsonArray[] spans = new JsonArray[1];
+        forEachSpan((trace, span, parent, operation, startTime, duration, process, status, error, host) -> {
+            String traceId = traceHigh(trace) == 0 ? hex(traceLow(trace)) : hex(traceHigh(trace)) + hex(traceLow(trace));
+            if (span == 0) {
+                spans[0] = new JsonArray();
+                JsonObject processes = new JsonObject();
+                for (int p=0;p<PROCESSES;p++){
+                    processes.put("p" + p, new JsonObject()
+                            .put("serviceName", "shop")
+                            .put("tags", new JsonArray().add(tag("hostname", "string", "host-" + p))));
+                }
+                data.add(new JsonObject().put("traceID", traceId).put("spans", spans[0]).put("processes", processes));
+            }
+            JsonArray tags = new JsonArray()
+                    .add(tag("span.kind", "string", span == 0 ? "server" : "internal"))
+                    .add(tag("http.status_code", "int64", status));
+            if (error) tags.add(tag("error", "bool", true));
+            if (host != null) tags.add(tag("hostname", "string", host));
+            if (operation == 2) {
+                tags.add(tag("code.namespace", "string", "com.example.Orders"));
+                tags.add(tag("code.function", "string", "load"));
+            }
+            JsonArray references = new JsonArray();
+            if (parent >= 0) {
+                references.add(new JsonObject().put("refType", "CHILD_OF").put("traceID", traceId)
+                        .put("spanID", hex(spanId(trace, parent))));
+            }
+            spans[0].add(new JsonObject()
+                    .put("traceID", traceId)
+                    .put("spanID", hex(spanId(trace, span)))
+                    .put("operationName", OPERATIONS[operation])
+                    .put("references", references)
+                    .put("startTime", startTime)
+                    .put("duration", duration)
+                    .put("tags", tags)
+                    .put("processID", "p" + process));
+        });
+        return new JsonObject().put("data", data).encode().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** The same traces in messages of at most {@code spansPerChunk} spans, so a trace may span several. */
+    List<byte[]> toChunks(int spansPerChunk) {
+        List<byte[]> chunks = new ArrayList<>();
+        ProtoWriter[] chunk = {new ProtoWriter()};
+        int[] inChunk = {0};
+        forEachSpan((trace, span, parent, operation, startTime, duration, process, status, error, host) -> {
+            if (inChunk[0] == spansPerChunk || (span == 0 && inChunk[0] > 0)) {
+                chunks.add(chunk[0].toByteArray());
+                chunk[0] = new ProtoWriter();
+                inChunk[0] = 0;
+            }
+            byte[] traceId = traceHigh(trace) == 0 ? id(traceLow(trace)) : id(traceHigh(trace), traceLow(trace));
+            ProtoWriter s = new ProtoWriter()
+                    .bytes(1, traceId)
+                    .bytes(2, id(spanId(trace, span)))
+                    .string(3, OPERATIONS[operation]);
+            if (parent >= 0) {
+                s.message(4, new ProtoWriter().bytes(1, traceId).bytes(2, id(spanId(trace, parent))));
+            }
+            s.message(6, time(startTime))
+                    .message(7, time(duration))
+                    .message(8, new ProtoWriter().string(1, "span.kind").string(3, span == 0 ? "server" : "internal"))
+                    .message(8, new ProtoWriter().string(1, "http.status_code").varint(2, 2).varint(5, status));
+            if (error) s.message(8, new ProtoWriter().string(1, "error").varint(2, 1).varint(4, 1));
+            if (host != null) s.message(8, new ProtoWriter().string(1, "hostname").string(3, host));
+            if (operation == 2) {
+                s.message(8, new ProtoWriter().string(1, "code.namespace").string(3, "com.example.Orders"));
+                s.message(8, new ProtoWriter().string(1, "code.function").string(3, "load"));
+            }
+            s.message(10, new ProtoWriter().string(1, "shop")
+                    .message(2, new ProtoWriter().string(1, "hostname").string(3, "host-" + process)));
+            chunk[0].message(1, s);
+            inChunk[0]++;
+        });
+        if (inChunk[0] > 0) chunks.add(chunk[0].toByteArray());
+        return chunks;
+    }
+
+    private static JsonObject tag(String key, String type, Object value) {
+        return new JsonObject().put("key", key).put("type", type).put("value", value);
+    }
+
+    private static ProtoWriter time(long micros) {
+        return new ProtoWriter().varint(1, micros / 1_000_000).varint(2, micros % 1_000_000 * 1000);
+    }
+
+    private static byte[] id(long... words) {
+        byte[] b = new byte[words.length * 8];
+        for (int w=0;w<words.length;w++){
+            for (int i=0;i<8;i++){
+                b[w * 8 + i] = (byte) (words[w] >>> (56 - 8 * i));
+            }
+        }
+        return b;
+    }
+
+    private static String hex(long v) {
+        String s = Long.toHexString(v);
+        return s.length() == 16 ? s : "0".repeat(16 - s.length()) + s;
+    }
+}
@@ -0,0 +1,119 @@
+package io.perfseer.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.perfseer.aggregate.Aggregator;
+import io.perfseer.aggregate.BucketedAggregation;
+import io.perfseer.aggregate.Grouping;
+import io.perfseer.aggregate.LatencySketch;
+import io.perfseer.config.PerfConfig;
+import io.perfseer.ingest.JaegerJsonDecoder;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FeatureStoreTest {
+
+    static final long WIDTH = 60_000_000L;
+    static final long T0 = 28_333_334L * WIDTH;
+    static final long LATER = T0 + 100 * WIDTH;
+
+    @TempDir
+    Path dir;
+    FeatureStore store;
+
+    private FeatureStore store(List<String> groupBy) {
+        PerfConfig cfg = mock(PerfConfig.class);
+        when(cfg.storageSqlitePath()).thenReturn(dir.resolve("features.db").toString());
+        when(cfg.storageBucket()).thenReturn(Duration.ofMinutes(1));
+        when(cfg.storageSettle()).thenReturn(Duration.ofSeconds(10));
+        when(cfg.groupBy()).thenReturn(groupBy.isEmpty() ? Optional.empty() : Optional.of(groupBy));
+        when(cfg.groupMaxGroups()).thenReturn(100);
+        return store = new FeatureStore(cfg);
+    }
+
+    @AfterEach
+    void close() {
+        if (store != null) store.close();
+    }
+
+    /** One root span of {@code op} on host {@code a} per start time. */
+    private static BucketedAggregation buckets(Grouping grouping, long start, long end, long... startTimes) throws IOException {
+        JsonArray data = new JsonArray();
+        for (int i=0;i<startTimes.length;i++){
+            data.add(new JsonObject()
+                    .put("traceID", "t" + i)
+                    .put("spans", new JsonArray().add(new JsonObject()
+                            .put("traceID", "t" + i)
+                            .put("spanID", String.format("%016x", i + 1))
+                            .put("operationName", "GET /orders")
+                            .put("processID", "p1")
+                            .put("startTime", startTimes[i])
+                            .put("duration", 100 + i)
+                            .put("tags", new JsonArray())))
+                    .put("processes", new JsonObject().put("p1", new JsonObject().put("serviceName", "shop")
+                            .put("tags", new JsonArray().add(new JsonObject().put("key", "hostname").put("type", "string").put("value", "a"))))));
+        }
+        Aggregator aggregator = new Aggregator(LatencySketch.DEFAULT_RELATIVE_ACCURACY, 1, grouping);
+        return JaegerJsonDecoder.decode(new ByteArrayInputStream(new JsonObject().put("data", data).toBuffer().getBytes()),
+                aggregator.newBucketedAggregation(start, end, WIDTH));
+    }
+
+    @Test
+    void historyReportsTheRangesThatAreNotStored() throws IOException {
+        FeatureStore store = store(List.of());
+        store.write("shop", buckets(Grouping.NONE, T0, T0 + 2 * WIDTH, T0 + 1, T0 + WIDTH + 1), LATER);
+        store.write("shop", buckets(Grouping.NONE, T0 + 3 * WIDTH, T0 + 4 * WIDTH, T0 + 3 * WIDTH + 1), LATER);
+
+        FeatureStore.History history = store.history("shop", T0, T0 + 6 * WIDTH);
+
+        assertThat(history.missing()).containsExactly(new long[] {T0 + 2 * WIDTH, T0 + 3 * WIDTH},
+                new long[] {T0 + 4 * WIDTH, T0 + 6 * WIDTH});
+        assertThat(history.buckets()).hasSize(6);
+        assertThat(history.buckets().get(0)).singleElement().satisfies(f -> assertThat(f.count).isEqualTo(1));
+        assertThat(history.buckets().get(2)).isEmpty();
+
+        history.fill(buckets(Grouping.NONE, T0 + 2 * WIDTH, T0 + 3 * WIDTH, T0 + 2 * WIDTH + 5));
+        history.fill(buckets(Grouping.NONE, T0 + 4 * WIDTH, T0 + 6 * WIDTH));
+
+        assertThat(history.missing()).isEmpty();
+        assertThat(history.buckets().get(2)).singleElement().satisfies(f -> assertThat(f.count).isEqualTo(1));
+    }
+
+    @Test
+    void bucketsAreStoredOnlyOnceSettled() throws IOException {
+        FeatureStore store = store(List.of());
+
+        int written = store.write("shop", buckets(Grouping.NONE, T0, T0 + 3 * WIDTH, T0 + 1), T0 + 3 * WIDTH + 5_000_000);
+
+        assertThat(written).isEqualTo(2);
+        assertThat(store.history("shop", T0, T0 + 3 * WIDTH).missing())
+                .containsExactly(new long[] {T0 + 2 * WIDTH, T0 + 3 * WIDTH});
+    }
+
+    @Test
+    void groupedFeaturesKeepTheirOperationAndGroup() throws IOException {
+        FeatureStore store = store(List.of("hostname"));
+        Grouping grouping = new Grouping(List.of("hostname"), 100);
+        store.write("shop", buckets(grouping, T0, T0 + WIDTH, T0 + 1), LATER);
+
+        FeatureStore.History history = store.history("shop", T0, T0 + WIDTH);
+
+        assertThat(history.missing()).isEmpty();
+        Aggregator.Feature f = history.buckets().get(0).get(0);
+        assertThat(f.key).isEqualTo("GET /orders [hostname=a]");
+        assertThat(f.operation).isEqualTo("GET /orders");
+        assertThat(f.group).isEqualTo(Map.of("hostname", "a"));
+    }
+}
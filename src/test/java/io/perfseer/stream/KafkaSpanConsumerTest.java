@@ -0,0 +1,244 @@
+package io.perfseer.stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.perfseer.aggregate.Aggregator;
+import io.perfseer.config.PerfConfig;
+import io.perfseer.ingest.Lookback;
+import io.perfseer.metrics.PipelineMetrics;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.BooleanSupplier;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.assertj.core.api.InstanceOfAssertFactories;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class KafkaSpanConsumerTest {
+
+    static final String TOPIC = "otlp_spans";
+    static final TopicPartition P0 = new TopicPartition(TOPIC, 0);
+    static final TopicPartition P1 = new TopicPartition(TOPIC, 1);
+    static final long STATS_INTERVAL_MILLIS = 500;
+
+    final MockConsumer<byte[], byte[]> kafka = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+    final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    KafkaSpanConsumer consumer;
+    long from;
+
+    @BeforeEach
+    void start() {
+        PerfConfig cfg = mock(PerfConfig.class);
+        when(cfg.kafkaTopic()).thenReturn(TOPIC);
+        when(cfg.kafkaBootstrapServers()).thenReturn("localhost:9092");
+        when(cfg.kafkaGroupId()).thenReturn("perfseer");
+        when(cfg.kafkaBucket()).thenReturn(Duration.ofMinutes(1));
+        when(cfg.kafkaRetention()).thenReturn(Duration.ofHours(1));
+        when(cfg.serviceName()).thenReturn("checkout");
+        consumer = new KafkaSpanConsumer(cfg, new Aggregator(), properties -> kafka, new PipelineMetrics(registry),
+                STATS_INTERVAL_MILLIS);
+        kafka.schedulePollTask(() -> {
+            kafka.rebalance(List.of(P0, P1));
+            kafka.updateBeginningOffsets(Map.of(P0, 0L, P1, 0L));
+        });
+        consumer.start();
+        from = Lookback.nowMicros();
+    }
+
+    @AfterEach
+    void stop() {
+        consumer.stop();
+    }
+
+    @Test
+    void aggregatesRecordsCommitsTheirOffsetsAndReportsLag() {
+        long t = from + 1_000;
+        kafka.schedulePollTask(() -> {
+            // a root of 10ms with a failing 4ms child, and another root of 20ms
+            kafka.addRecord(record(P0, 0, request(resourceSpans("checkout",
+                    span(1, 0, "GET /cart", t, 10_000, false),
+                    span(2, 1, "SELECT cart", t + 1_000, 4_000, true)))));
+            kafka.addRecord(record(P1, 0, request(
+                    resourceSpans("checkout", span(3, 0, "GET /cart", t + 2_000, 20_000, false)),
+                    resourceSpans("payments", span(4, 0, "charge", t + 3_000, 7_000, true)))));
+            kafka.addRecord(record(P0, 1, new byte[] {(byte) 0xff, 0x01}));
+            // three records of P0 beyond what has been fetched
+            kafka.updateEndOffsets(Map.of(P0, 5L, P1, 1L));
+        });
+
+        eventually(() -> kafka.committed(Set.of(P0, P1)).size() == 2 && (long) consumer.stats().get("consumerLag") >= 0);
+
+        Map<TopicPartition, OffsetAndMetadata> committed = kafka.committed(Set.of(P0, P1));
+        assertThat(committed.get(P0).offset()).isEqualTo(2);
+        assertThat(committed.get(P1).offset()).isEqualTo(1);
+        Map<String, Object> stats = consumer.stats();
+        assertThat(stats).containsEntry("records", 3L).containsEntry("badRecords", 1L).containsEntry("spans", 4L)
+                .containsEntry("consumerLag", 3L);
+        assertThat(stats.get("services")).asInstanceOf(InstanceOfAssertFactories.iterable(String.class))
+                .containsExactlyInAnyOrder("checkout", "payments");
+
+        Map<String, Aggregator.Feature> checkout = byKey(consumer.features("checkout", from, Lookback.nowMicros() + 1).orElseThrow());
+        assertThat(checkout).containsOnlyKeys("GET /cart", "SELECT cart");
+        assertThat(checkout.get("GET /cart").count).isEqualTo(2);
+        assertThat(checkout.get("GET /cart").errorCount).isZero();
+        assertThat(checkout.get("GET /cart").meanSelfTime).isCloseTo((6_000 + 20_000) / 2.0, within(1.0));
+        assertThat(checkout.get("SELECT cart").count).isEqualTo(1);
+        assertThat(checkout.get("SELECT cart").errorCount).isEqualTo(1);
+        assertThat(checkout.get("SELECT cart").p50).isCloseTo(4_000, within(4_000 * 0.02));
+        Map<String, Aggregator.Feature> payments = byKey(consumer.features("payments", from, Lookback.nowMicros() + 1).orElseThrow());
+        assertThat(payments.get("charge").errorCount).isEqualTo(1);
+    }
+
+    @Test
+    void reportsSpansPerSecond() {
+        kafka.schedulePollTask(() -> {
+            for (int i=0;i<10;i++){
+                kafka.addRecord(record(P0, i, request(resourceSpans("checkout",
+                        span(1, 0, "GET /cart", from + i, 1_000, false),
+                        span(2, 1, "SELECT cart", from + i, 500, false)))));
+            }
+        });
+
+        double[] rate = new double[1];
+        eventually(() -> (rate[0] = (double) consumer.stats().get("spansPerSecond")) > 0
+                && registry.get("perfseer.spans").tag("source", "kafka").counter().count() >= 20);
+
+        // 20 spans over at least one stats interval
+        assertThat(rate[0]).isLessThanOrEqualTo(20 * 1000.0 / STATS_INTERVAL_MILLIS);
+        assertThat(registry.get("perfseer.spans").tag("source", "kafka").counter().count()).isEqualTo(20);
+    }
+
+    @Test
+    void answersOnlyWindowsTheStreamCovers() {
+        kafka.schedulePollTask(() -> kafka.addRecord(record(P0, 0, request(resourceSpans("checkout",
+                span(1, 0, "GET /cart", from + 1_000, 1_000, false))))));
+
+        eventually(() -> ((Set<?>) consumer.stats().get("services")).contains("checkout"));
+
+        assertThat(consumer.features("checkout", from, Lookback.nowMicros() + 1)).isPresent();
+        assertThat(consumer.features("checkout", from - 60_000_000, Lookback.nowMicros() + 1)).isEmpty();
+        assertThat(consumer.features("inventory", from, Lookback.nowMicros() + 1)).isEmpty();
+    }
+
+    private static void eventually(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met within 10s").isLessThan(deadline);
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    private static Map<String, Aggregator.Feature> byKey(List<Aggregator.Feature> features) {
+        Map<String, Aggregator.Feature> map = new TreeMap<>();
+        for (Aggregator.Feature f : features) map.put(f.key, f);
+        return map;
+    }
+
+    private static ConsumerRecord<byte[], byte[]> record(TopicPartition partition, long offset, byte[] value) {
+        return new ConsumerRecord<>(partition.topic(), partition.partition(), offset, null, value);
+    }
+
+    private static byte[] request(Proto... resourceSpans) {
+        Proto request = new Proto();
+        for (Proto rs : resourceSpans) request.message(1, rs);
+        return request.toByteArray();
+    }
+
+    private static Proto resourceSpans(String service, Proto... spans) {
+        Proto scope = new Proto();
+        for (Proto span : spans) scope.message(2, span);
+        return new Proto()
+                .message(1, new Proto().message(1, new Proto()
+                        .string(1, "service.name")
+                        .message(2, new Proto().string(1, service))))
+                .message(2, scope);
+    }
+
+    private static Proto span(long spanId, long parentId, String name, long startMicros, long durationMicros, boolean error) {
+        Proto span = new Proto()
+                .bytes(1, new byte[16])
+                .bytes(2, id(spanId));
+        if (parentId != 0) span.bytes(4, id(parentId));
+        span.string(5, name)
+                .fixed64(7, startMicros * 1000)
+                .fixed64(8, (startMicros + durationMicros) * 1000);
+        if (error) span.message(15, new Proto().varint(3, 2));
+        return span;
+    }
+
+    private static byte[] id(long id) {
+        byte[] b = new byte[8];
+        for (int i=0;i<8;i++){
+            b[i] = (byte) (id >>> (56 - 8 * i));
+        }
+        return b;
+    }
+
+    /** Just enough of the protobuf wire format to write OTLP requests. */
+    private static final class Proto {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        Proto varint(int field, long value) {
+            tag(field, 0);
+            raw(value);
+            return this;
+        }
+
+        Proto fixed64(int field, long value) {
+            tag(field, 1);
+            for (int i=0;i<8;i++){
+                out.write((int) (value >>> 8 * i));
+            }
+            return this;
+        }
+
+        Proto bytes(int field, byte[] value) {
+            tag(field, 2);
+            raw(value.length);
+            out.writeBytes(value);
+            return this;
+        }
+
+        Proto string(int field, String value) {
+            return bytes(field, value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        Proto message(int field, Proto nested) {
+            return bytes(field, nested.toByteArray());
+        }
+
+        byte[] toByteArray() {
+            return out.toByteArray();
+        }
+
+        private void tag(int field, int wireType) {
+            raw(field << 3 | wireType);
+        }
+
+        private void raw(long value) {
+            while ((value & ~0x7fL) != 0) {
+                out.write((int) (value & 0x7f | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+    }
+}
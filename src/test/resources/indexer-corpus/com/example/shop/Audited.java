@@ -0,0 +1,26 @@
+package com.example.shop;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.TYPE})
+public @interface Audited {
+    String value() default "{}";
+
+    String[] tags() default {"a", "b"};
+
+    Level level() default @Level(priority = 1);
+
+    @interface Level {
+        int priority();
+    }
+
+    class Defaults {
+        static String none() {
+            return "";
+        }
+    }
+}
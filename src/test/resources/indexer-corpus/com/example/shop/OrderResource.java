@@ -0,0 +1,118 @@
+package com.example.shop;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Orders endpoint. A brace in a comment: { and } must not open a scope.
+ */
+@Path("/orders")
+public class OrderResource {
+
+    private static final String QUERY = """
+            SELECT * FROM orders WHERE note = '{ not a block }'
+            AND id = ?  -- "quoted" } brace
+            """;
+
+    private final Map<String, List<Order>> byCustomer = Map.of();
+
+    @GET
+    @Path("/{id}")
+    public Order get(@PathParam("id") long id) {
+        // } stray brace in a line comment
+        String s = "}{";
+        char c = '}';
+        return find(id, o -> o.id() == id);
+    }
+
+    @POST
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public Order create(Order order) {
+        Runnable r = new Runnable() {
+            @Override
+            public void run() {
+                System.out.println("anonymous { " + order);
+            }
+        };
+        r.run();
+        return order;
+    }
+
+    @GET
+    @Path(Paths.ALL)
+    public List<Order> all() {
+        return List.of();
+    }
+
+    <T extends Comparable<? super T>> T max(List<? extends T> items,
+                                           Function<? super T, ? extends T> map) {
+        class Best {
+            T value;
+
+            void offer(T t) {
+                if (value == null || t.compareTo(value) > 0) value = t;
+            }
+        }
+        Best best = new Best();
+        items.forEach(i -> best.offer(map.apply(i)));
+        return best.value;
+    }
+
+    private Order find(long id, java.util.function.Predicate<Order> p) {
+        return byCustomer.values().stream()
+                .flatMap(List::stream)
+                .filter(o -> {
+                    return p.test(o);
+                })
+                .findFirst()
+                .orElse(null);
+    }
+
+    public record Order(long id, String customer) {
+        public Order {
+            if (customer == null) throw new IllegalArgumentException("{customer}");
+        }
+
+        public String label() {
+            return id + "/" + customer;
+        }
+
+        static Order of(String customer) {
+            return new Order(0, customer);
+        }
+    }
+
+    interface Paths {
+        String ALL = "/all";
+
+        default String describe() {
+            return ALL;
+        }
+
+        static String root() {
+            return "/";
+        }
+    }
+
+    static class Page<T> implements Comparable<Page<T>> {
+        final List<T> items;
+
+        Page(List<T> items) {
+            this.items = items;
+        }
+
+        @Override
+        public int compareTo(Page<T> o) {
+            return Integer.compare(items.size(), o.items.size());
+        }
+
+        static <U> Page<U> empty() {
+            return new Page<>(List.of());
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.shop;
+
+public enum Status {
+    OPEN {
+        @Override
+        boolean terminal() {
+            return false;
+        }
+    },
+    CLOSED("closed") {
+        @Override
+        boolean terminal() {
+            return true;
+        }
+    };
+
+    private final String label;
+
+    Status() {
+        this("open");
+    }
+
+    Status(String label) {
+        this.label = label;
+    }
+
+    abstract boolean terminal();
+
+    public String label() {
+        return label;
+    }
+
+    public static Status parse(String s) {
+        for (Status st : values()) {
+            if (st.label.equals(s)) return st;
+        }
+        throw new IllegalArgumentException(s);
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+public final class Cache<K, V extends Comparable<V>> {
+
+    private final Map<K, V> map = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > max;
+        }
+    };
+    private final int max;
+
+    public Cache(int max) {
+        this.max = max;
+    }
+
+    public synchronized Optional<V> get(K key) {
+        return Optional.ofNullable(map.get(key));
+    }
+
+    public V computeIfAbsent(K key, Supplier<? extends V> loader) {
+        return map.computeIfAbsent(key, k -> loader.get());
+    }
+
+    public <R> R fold(R init, BiFunction<R, ? super V, R> f) {
+        R acc = init;
+        for (V v : map.values()) acc = f.apply(acc, v);
+        return acc;
+    }
+
+    @Deprecated(since = "1.2", forRemoval = true)
+    public int[] sizes()[] {
+        return new int[][] {{map.size()}, {max}};
+    }
+
+    public static <K, V extends Comparable<V>> Cache<K, V> of(int max) {
+        return new Cache<>(max);
+    }
+
+    sealed interface Shape permits Circle, Square {
+        double area();
+    }
+
+    record Circle(double r) implements Shape {
+        public double area() {
+            return Math.PI * r * r;
+        }
+    }
+
+    static final class Square implements Shape {
+        final double side = 1e-3;
+        final long mask = 0x7fL;
+        final double hex = 0x1.8p1;
+
+        public double area() {
+            return side * side;
+        }
+    }
+
+    static non-sealed class Open {
+        void open() {
+            Object o = (Runnable & java.io.Serializable) () -> { };
+            switch (o.hashCode()) {
+                case 1 -> { }
+                default -> System.out.println('{');
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+import java.util.concurrent.Callable;
+
+class Script {
+    public static void main(String[] args) throws Exception {
+        Callable<String> c = () -> "}";
+        System.out.println(c.call());
+    }
+
+    /* block comment with a fake method: void fake() { } */
+    String text() {
+        return """
+                void notAMethod() {
+                }
+                """;
+    }
+}
+
+interface Helper {
+    void help();
+}